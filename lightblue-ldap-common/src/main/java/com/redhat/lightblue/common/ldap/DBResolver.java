@@ -22,6 +22,7 @@ import java.util.Map;
 
 import com.redhat.lightblue.metadata.DataStore;
 import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
 import com.unboundid.ldap.sdk.LDAPException;
 
 /**
@@ -38,7 +39,19 @@ public interface DBResolver {
      * to the same database.
      */
     LDAPConnection get(DataStore store) throws LDAPException;
-    
+
+    /**
+     * Returns the {@link LDAPConnectionPool} that backs the {@link DataStore}. Useful
+     * when more than one connection is needed to complete an operation.
+     */
+    LDAPConnectionPool getConnectionPool(DataStore store) throws LDAPException;
+
+    /**
+     * Returns the {@link LdapDataSourceOptions} configured for the datasource backing
+     * the {@link DataStore}.
+     */
+    LdapDataSourceOptions getOptions(DataStore store);
+
     
     /**
      * @return A {@link Map} of LDAP Database name and corresponding connection
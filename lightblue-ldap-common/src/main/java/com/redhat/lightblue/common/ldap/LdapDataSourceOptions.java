@@ -0,0 +1,314 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.common.ldap;
+
+import java.io.Serializable;
+
+/**
+ * Datasource level options that influence how CRUD operations are executed
+ * against an LDAP database.
+ *
+ * @author dcrissman
+ */
+public class LdapDataSourceOptions implements Serializable {
+
+    private static final long serialVersionUID = -4325843946001557146L;
+
+    public static final long DEFAULT_HEDGE_MIN_DELAY_MILLIS = 10;
+    public static final int DEFAULT_DELETE_PARALLELISM = 1;
+    public static final int DEFAULT_DELETE_CONNECTIONS = 1;
+    public static final int DEFAULT_TRANSLATION_PARALLELISM = 1;
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 0;
+    public static final int DEFAULT_EXPORT_PAGE_SIZE = 1000;
+    public static final int DEFAULT_IMPORT_PARALLELISM = 16;
+    public static final int DEFAULT_IMPORT_CONNECTIONS = 1;
+    public static final int DEFAULT_IMPORT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_IMPORT_MAX_RETRIES = 3;
+
+    private Double hedgeDelayPercentile;
+    private long hedgeMinDelayMillis = DEFAULT_HEDGE_MIN_DELAY_MILLIS;
+    private boolean transactionalWrites;
+    private int deleteParallelism = DEFAULT_DELETE_PARALLELISM;
+    private int deleteConnections = DEFAULT_DELETE_CONNECTIONS;
+    private int translationParallelism = DEFAULT_TRANSLATION_PARALLELISM;
+    private boolean virtualThreads;
+    private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+    private boolean cacheSync;
+    private String syncCookieDirectory;
+    private boolean coalesceFinds;
+    private int exportPageSize = DEFAULT_EXPORT_PAGE_SIZE;
+    private int importParallelism = DEFAULT_IMPORT_PARALLELISM;
+    private int importConnections = DEFAULT_IMPORT_CONNECTIONS;
+    private int importBatchSize = DEFAULT_IMPORT_BATCH_SIZE;
+    private int importMaxRetries = DEFAULT_IMPORT_MAX_RETRIES;
+
+    /**
+     * @return <code>true</code> if searches should be hedged against a second server,
+     * otherwise <code>false</code>.
+     */
+    public boolean isHedgingEnabled() {
+        return hedgeDelayPercentile != null;
+    }
+
+    /**
+     * @return the latency percentile (0 - 100) a search must exceed before it is
+     * hedged, or <code>null</code> if hedging is disabled.
+     */
+    public Double getHedgeDelayPercentile() {
+        return hedgeDelayPercentile;
+    }
+
+    public void setHedgeDelayPercentile(Double hedgeDelayPercentile) {
+        if ((hedgeDelayPercentile != null)
+                && ((hedgeDelayPercentile <= 0) || (hedgeDelayPercentile >= 100))) {
+            throw new IllegalArgumentException("hedgeDelayPercentile must be between 0 and 100 exclusive: " + hedgeDelayPercentile);
+        }
+        this.hedgeDelayPercentile = hedgeDelayPercentile;
+    }
+
+    /**
+     * @return the minimum number of milliseconds to wait on the first server before
+     * hedging, regardless of the observed latencies.
+     */
+    public long getHedgeMinDelayMillis() {
+        return hedgeMinDelayMillis;
+    }
+
+    public void setHedgeMinDelayMillis(long hedgeMinDelayMillis) {
+        if (hedgeMinDelayMillis < 0) {
+            throw new IllegalArgumentException("hedgeMinDelayMillis cannot be negative: " + hedgeMinDelayMillis);
+        }
+        this.hedgeMinDelayMillis = hedgeMinDelayMillis;
+    }
+
+    /**
+     * @return <code>true</code> if multi-document inserts and saves should be applied
+     * atomically in a single LDAP transaction when the server supports it.
+     */
+    public boolean isTransactionalWrites() {
+        return transactionalWrites;
+    }
+
+    public void setTransactionalWrites(boolean transactionalWrites) {
+        this.transactionalWrites = transactionalWrites;
+    }
+
+    /**
+     * @return the maximum number of deletes that may be in flight at once. A value of
+     * <code>1</code> deletes matched entries sequentially.
+     */
+    public int getDeleteParallelism() {
+        return deleteParallelism;
+    }
+
+    public void setDeleteParallelism(int deleteParallelism) {
+        if (deleteParallelism < 1) {
+            throw new IllegalArgumentException("deleteParallelism must be at least 1: " + deleteParallelism);
+        }
+        this.deleteParallelism = deleteParallelism;
+    }
+
+    /**
+     * @return the number of pooled connections parallel deletes are spread across.
+     */
+    public int getDeleteConnections() {
+        return deleteConnections;
+    }
+
+    public void setDeleteConnections(int deleteConnections) {
+        if (deleteConnections < 1) {
+            throw new IllegalArgumentException("deleteConnections must be at least 1: " + deleteConnections);
+        }
+        this.deleteConnections = deleteConnections;
+    }
+
+    /**
+     * @return the number of threads the entries returned by a find are translated and
+     * projected with, and the records of a bulk import are translated with. A value of
+     * <code>1</code> translates find results on the calling thread.
+     */
+    public int getTranslationParallelism() {
+        return translationParallelism;
+    }
+
+    public void setTranslationParallelism(int translationParallelism) {
+        if (translationParallelism < 1) {
+            throw new IllegalArgumentException("translationParallelism must be at least 1: " + translationParallelism);
+        }
+        this.translationParallelism = translationParallelism;
+    }
+
+    /**
+     * @return <code>true</code> if asynchronous operations should run the blocking LDAP calls on
+     * threads of their own, virtual threads when the JVM supports them, rather than completing on
+     * UnboundID's listener threads.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * @return the maximum number of asynchronous operations that may run against the datasource at
+     * once on threads of their own, as all of them do when {@link #isVirtualThreads()}, or
+     * <code>0</code> if they are not limited.
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 0) {
+            throw new IllegalArgumentException("maxConcurrentRequests cannot be negative: " + maxConcurrentRequests);
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * @return <code>true</code> if the caches kept for entities on the datasource should be kept
+     * coherent with changes made outside of lightblue, by following the changes the server reports
+     * through Content Synchronization or a persistent search.
+     */
+    public boolean isCacheSync() {
+        return cacheSync;
+    }
+
+    public void setCacheSync(boolean cacheSync) {
+        this.cacheSync = cacheSync;
+    }
+
+    /**
+     * @return the directory Content Synchronization cookies are kept in, so that following changes
+     * resumes where it left off after a restart, or <code>null</code> if cookies are only kept in memory.
+     */
+    public String getSyncCookieDirectory() {
+        return syncCookieDirectory;
+    }
+
+    public void setSyncCookieDirectory(String syncCookieDirectory) {
+        this.syncCookieDirectory = syncCookieDirectory;
+    }
+
+    /**
+     * @return <code>true</code> if identical finds that are in flight at the same time should share
+     * a single search, otherwise <code>false</code>.
+     */
+    public boolean isCoalesceFinds() {
+        return coalesceFinds;
+    }
+
+    public void setCoalesceFinds(boolean coalesceFinds) {
+        this.coalesceFinds = coalesceFinds;
+    }
+
+    /**
+     * @return the number of entries requested in each page of a streaming export.
+     */
+    public int getExportPageSize() {
+        return exportPageSize;
+    }
+
+    public void setExportPageSize(int exportPageSize) {
+        if (exportPageSize < 1) {
+            throw new IllegalArgumentException("exportPageSize must be at least 1: " + exportPageSize);
+        }
+        this.exportPageSize = exportPageSize;
+    }
+
+    /**
+     * @return the maximum number of adds a bulk import may have in flight at once.
+     */
+    public int getImportParallelism() {
+        return importParallelism;
+    }
+
+    public void setImportParallelism(int importParallelism) {
+        if (importParallelism < 1) {
+            throw new IllegalArgumentException("importParallelism must be at least 1: " + importParallelism);
+        }
+        this.importParallelism = importParallelism;
+    }
+
+    /**
+     * @return the number of pooled connections the adds of a bulk import are spread across.
+     */
+    public int getImportConnections() {
+        return importConnections;
+    }
+
+    public void setImportConnections(int importConnections) {
+        if (importConnections < 1) {
+            throw new IllegalArgumentException("importConnections must be at least 1: " + importConnections);
+        }
+        this.importConnections = importConnections;
+    }
+
+    /**
+     * @return the number of records a bulk import hands to a translation thread at once.
+     */
+    public int getImportBatchSize() {
+        return importBatchSize;
+    }
+
+    public void setImportBatchSize(int importBatchSize) {
+        if (importBatchSize < 1) {
+            throw new IllegalArgumentException("importBatchSize must be at least 1: " + importBatchSize);
+        }
+        this.importBatchSize = importBatchSize;
+    }
+
+    /**
+     * @return the number of times a bulk import retries an add that failed for a transient
+     * reason, such as the server being busy, before giving up on the entry.
+     */
+    public int getImportMaxRetries() {
+        return importMaxRetries;
+    }
+
+    public void setImportMaxRetries(int importMaxRetries) {
+        if (importMaxRetries < 0) {
+            throw new IllegalArgumentException("importMaxRetries cannot be negative: " + importMaxRetries);
+        }
+        this.importMaxRetries = importMaxRetries;
+    }
+
+    @Override
+    public String toString() {
+        return "LdapDataSourceOptions [hedgeDelayPercentile=" + hedgeDelayPercentile
+                + ", hedgeMinDelayMillis=" + hedgeMinDelayMillis
+                + ", transactionalWrites=" + transactionalWrites
+                + ", deleteParallelism=" + deleteParallelism
+                + ", deleteConnections=" + deleteConnections
+                + ", translationParallelism=" + translationParallelism
+                + ", virtualThreads=" + virtualThreads
+                + ", maxConcurrentRequests=" + maxConcurrentRequests
+                + ", cacheSync=" + cacheSync
+                + ", syncCookieDirectory=" + syncCookieDirectory
+                + ", coalesceFinds=" + coalesceFinds
+                + ", exportPageSize=" + exportPageSize
+                + ", importParallelism=" + importParallelism
+                + ", importConnections=" + importConnections
+                + ", importBatchSize=" + importBatchSize
+                + ", importMaxRetries=" + importMaxRetries + "]";
+    }
+
+}
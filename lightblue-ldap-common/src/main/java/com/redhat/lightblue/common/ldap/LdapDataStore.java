@@ -29,9 +29,26 @@ public class LdapDataStore implements DataStore {
 
     private static final long serialVersionUID = 7599798419158041647L;
 
+    public static final int DEFAULT_ENTRY_CACHE_MAX_ENTRIES = 10000;
+    public static final long DEFAULT_ENTRY_CACHE_MAX_BYTES = 16L * 1024 * 1024;
+    public static final int DEFAULT_QUERY_CACHE_MAX_RESULTS = 1000;
+    public static final long DEFAULT_QUERY_CACHE_MAX_BYTES = 32L * 1024 * 1024;
+    public static final int DEFAULT_NEGATIVE_CACHE_MAX_ENTRIES = 10000;
+
     private String database;
     private String baseDN;
     private String uniqueAttr;
+    private boolean subtreeDelete;
+    private String versionAttr;
+    private long entryCacheTtlMillis;
+    private int entryCacheMaxEntries = DEFAULT_ENTRY_CACHE_MAX_ENTRIES;
+    private long entryCacheMaxBytes = DEFAULT_ENTRY_CACHE_MAX_BYTES;
+    private CacheEviction entryCacheEviction = CacheEviction.LRU;
+    private long queryCacheMaxStalenessMillis;
+    private int queryCacheMaxResults = DEFAULT_QUERY_CACHE_MAX_RESULTS;
+    private long queryCacheMaxBytes = DEFAULT_QUERY_CACHE_MAX_BYTES;
+    private long negativeCacheTtlMillis;
+    private int negativeCacheMaxEntries = DEFAULT_NEGATIVE_CACHE_MAX_ENTRIES;
 
     @Override
     public String getBackend() {
@@ -62,6 +79,182 @@ public class LdapDataStore implements DataStore {
         this.uniqueAttr = uniqueField;
     }
 
+    /**
+     * @return <code>true</code> if deleting an entry should also delete everything beneath it.
+     */
+    public boolean isSubtreeDelete() {
+        return subtreeDelete;
+    }
+
+    public void setSubtreeDelete(boolean subtreeDelete) {
+        this.subtreeDelete = subtreeDelete;
+    }
+
+    /**
+     * @return the attribute whose value a save must match in order to be applied, or
+     * <code>null</code> if saves are not checked for concurrent modification. Unless the server
+     * maintains the attribute itself (e.g. <code>modifyTimestamp</code>), each save also replaces it
+     * with the next version.
+     */
+    public String getVersionAttribute() {
+        return versionAttr;
+    }
+
+    public void setVersionAttribute(String versionAttr) {
+        this.versionAttr = versionAttr;
+    }
+
+    /**
+     * @return <code>true</code> if entries read by DN should be cached, otherwise <code>false</code>.
+     */
+    public boolean isEntryCacheEnabled() {
+        return entryCacheTtlMillis > 0;
+    }
+
+    /**
+     * @return how many milliseconds a cached entry may be served for, or <code>0</code> if
+     * entries are not cached.
+     */
+    public long getEntryCacheTtlMillis() {
+        return entryCacheTtlMillis;
+    }
+
+    public void setEntryCacheTtlMillis(long entryCacheTtlMillis) {
+        if (entryCacheTtlMillis < 0) {
+            throw new IllegalArgumentException("entryCacheTtlMillis cannot be negative: " + entryCacheTtlMillis);
+        }
+        this.entryCacheTtlMillis = entryCacheTtlMillis;
+    }
+
+    /**
+     * @return the maximum number of entries to cache.
+     */
+    public int getEntryCacheMaxEntries() {
+        return entryCacheMaxEntries;
+    }
+
+    public void setEntryCacheMaxEntries(int entryCacheMaxEntries) {
+        if (entryCacheMaxEntries < 1) {
+            throw new IllegalArgumentException("entryCacheMaxEntries must be at least 1: " + entryCacheMaxEntries);
+        }
+        this.entryCacheMaxEntries = entryCacheMaxEntries;
+    }
+
+    /**
+     * @return the maximum estimated size, in bytes, of all the cached entries together.
+     */
+    public long getEntryCacheMaxBytes() {
+        return entryCacheMaxBytes;
+    }
+
+    public void setEntryCacheMaxBytes(long entryCacheMaxBytes) {
+        if (entryCacheMaxBytes < 1) {
+            throw new IllegalArgumentException("entryCacheMaxBytes must be at least 1: " + entryCacheMaxBytes);
+        }
+        this.entryCacheMaxBytes = entryCacheMaxBytes;
+    }
+
+    /**
+     * @return the {@link CacheEviction} to make room in a full entry cache with.
+     */
+    public CacheEviction getEntryCacheEviction() {
+        return entryCacheEviction;
+    }
+
+    public void setEntryCacheEviction(CacheEviction entryCacheEviction) {
+        if (entryCacheEviction == null) {
+            throw new IllegalArgumentException("entryCacheEviction cannot be null");
+        }
+        this.entryCacheEviction = entryCacheEviction;
+    }
+
+    /**
+     * @return <code>true</code> if the results of finds should be cached, otherwise <code>false</code>.
+     */
+    public boolean isQueryCacheEnabled() {
+        return queryCacheMaxStalenessMillis > 0;
+    }
+
+    /**
+     * @return how many milliseconds a cached find result may be served for, or <code>0</code> if
+     * find results are not cached.
+     */
+    public long getQueryCacheMaxStalenessMillis() {
+        return queryCacheMaxStalenessMillis;
+    }
+
+    public void setQueryCacheMaxStalenessMillis(long queryCacheMaxStalenessMillis) {
+        if (queryCacheMaxStalenessMillis < 0) {
+            throw new IllegalArgumentException("queryCacheMaxStalenessMillis cannot be negative: " + queryCacheMaxStalenessMillis);
+        }
+        this.queryCacheMaxStalenessMillis = queryCacheMaxStalenessMillis;
+    }
+
+    /**
+     * @return the maximum number of find results to cache.
+     */
+    public int getQueryCacheMaxResults() {
+        return queryCacheMaxResults;
+    }
+
+    public void setQueryCacheMaxResults(int queryCacheMaxResults) {
+        if (queryCacheMaxResults < 1) {
+            throw new IllegalArgumentException("queryCacheMaxResults must be at least 1: " + queryCacheMaxResults);
+        }
+        this.queryCacheMaxResults = queryCacheMaxResults;
+    }
+
+    /**
+     * @return the maximum estimated size, in bytes, of all the cached find results together.
+     */
+    public long getQueryCacheMaxBytes() {
+        return queryCacheMaxBytes;
+    }
+
+    public void setQueryCacheMaxBytes(long queryCacheMaxBytes) {
+        if (queryCacheMaxBytes < 1) {
+            throw new IllegalArgumentException("queryCacheMaxBytes must be at least 1: " + queryCacheMaxBytes);
+        }
+        this.queryCacheMaxBytes = queryCacheMaxBytes;
+    }
+
+    /**
+     * @return <code>true</code> if lookups of DNs that turned out not to exist should be
+     * remembered, otherwise <code>false</code>.
+     */
+    public boolean isNegativeCacheEnabled() {
+        return negativeCacheTtlMillis > 0;
+    }
+
+    /**
+     * @return how many milliseconds a DN that was not found is remembered as missing for, or
+     * <code>0</code> if missing DNs are not remembered.
+     */
+    public long getNegativeCacheTtlMillis() {
+        return negativeCacheTtlMillis;
+    }
+
+    public void setNegativeCacheTtlMillis(long negativeCacheTtlMillis) {
+        if (negativeCacheTtlMillis < 0) {
+            throw new IllegalArgumentException("negativeCacheTtlMillis cannot be negative: " + negativeCacheTtlMillis);
+        }
+        this.negativeCacheTtlMillis = negativeCacheTtlMillis;
+    }
+
+    /**
+     * @return the maximum number of missing DNs to remember.
+     */
+    public int getNegativeCacheMaxEntries() {
+        return negativeCacheMaxEntries;
+    }
+
+    public void setNegativeCacheMaxEntries(int negativeCacheMaxEntries) {
+        if (negativeCacheMaxEntries < 1) {
+            throw new IllegalArgumentException("negativeCacheMaxEntries must be at least 1: " + negativeCacheMaxEntries);
+        }
+        this.negativeCacheMaxEntries = negativeCacheMaxEntries;
+    }
+
     public LdapDataStore(){}
 
     public LdapDataStore(String database, String baseDN, String uniqueAttr){
@@ -79,6 +272,18 @@ public class LdapDataStore implements DataStore {
                 + ((database == null) ? 0 : database.hashCode());
         result = prime * result
                 + ((uniqueAttr == null) ? 0 : uniqueAttr.hashCode());
+        result = prime * result + (subtreeDelete ? 1231 : 1237);
+        result = prime * result
+                + ((versionAttr == null) ? 0 : versionAttr.hashCode());
+        result = prime * result + (int) (entryCacheTtlMillis ^ (entryCacheTtlMillis >>> 32));
+        result = prime * result + entryCacheMaxEntries;
+        result = prime * result + (int) (entryCacheMaxBytes ^ (entryCacheMaxBytes >>> 32));
+        result = prime * result + entryCacheEviction.hashCode();
+        result = prime * result + (int) (queryCacheMaxStalenessMillis ^ (queryCacheMaxStalenessMillis >>> 32));
+        result = prime * result + queryCacheMaxResults;
+        result = prime * result + (int) (queryCacheMaxBytes ^ (queryCacheMaxBytes >>> 32));
+        result = prime * result + (int) (negativeCacheTtlMillis ^ (negativeCacheTtlMillis >>> 32));
+        result = prime * result + negativeCacheMaxEntries;
         return result;
     }
 
@@ -118,13 +323,45 @@ public class LdapDataStore implements DataStore {
         else if (!uniqueAttr.equals(other.uniqueAttr)) {
             return false;
         }
+        if (subtreeDelete != other.subtreeDelete) {
+            return false;
+        }
+        if (versionAttr == null) {
+            if (other.versionAttr != null) {
+                return false;
+            }
+        }
+        else if (!versionAttr.equals(other.versionAttr)) {
+            return false;
+        }
+        if ((entryCacheTtlMillis != other.entryCacheTtlMillis)
+                || (entryCacheMaxEntries != other.entryCacheMaxEntries)
+                || (entryCacheMaxBytes != other.entryCacheMaxBytes)
+                || (entryCacheEviction != other.entryCacheEviction)) {
+            return false;
+        }
+        if ((queryCacheMaxStalenessMillis != other.queryCacheMaxStalenessMillis)
+                || (queryCacheMaxResults != other.queryCacheMaxResults)
+                || (queryCacheMaxBytes != other.queryCacheMaxBytes)) {
+            return false;
+        }
+        if ((negativeCacheTtlMillis != other.negativeCacheTtlMillis)
+                || (negativeCacheMaxEntries != other.negativeCacheMaxEntries)) {
+            return false;
+        }
         return true;
     }
 
     @Override
     public String toString() {
         return "LdapDataStore [database=" + database + ", baseDN=" + baseDN
-                + ", uniqueAttribute=" + uniqueAttr + "]";
+                + ", uniqueAttribute=" + uniqueAttr + ", subtreeDelete=" + subtreeDelete
+                + ", versionAttribute=" + versionAttr
+                + ", entryCacheTtlMillis=" + entryCacheTtlMillis + ", entryCacheMaxEntries=" + entryCacheMaxEntries
+                + ", entryCacheMaxBytes=" + entryCacheMaxBytes + ", entryCacheEviction=" + entryCacheEviction
+                + ", queryCacheMaxStalenessMillis=" + queryCacheMaxStalenessMillis + ", queryCacheMaxResults=" + queryCacheMaxResults
+                + ", queryCacheMaxBytes=" + queryCacheMaxBytes
+                + ", negativeCacheTtlMillis=" + negativeCacheTtlMillis + ", negativeCacheMaxEntries=" + negativeCacheMaxEntries + "]";
     }
 
 }
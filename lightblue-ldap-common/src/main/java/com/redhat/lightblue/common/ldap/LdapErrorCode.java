@@ -39,6 +39,24 @@ public final class LdapErrorCode {
 
     public static final String ERR_LDAP_SAVE_ERROR_INS_WITH_NO_UPSERT = "ldap:SaveError:InsertionAttemptWithNoUpsert";
 
+    /** A transaction was aborted, none of the writes in it were applied. */
+    public static final String ERR_LDAP_TRANSACTION_ABORTED = "ldap:TransactionAborted";
+
+    /** The document was modified by someone else since the version provided with it was read. */
+    public static final String ERR_LDAP_CONCURRENT_UPDATE = "ldap:ConcurrentUpdate";
+
+    /** The caller is not allowed to find the entity. */
+    public static final String ERR_NO_FIND_ACCESS = "ldap:find:NoAccess";
+
+    /** The caller is not allowed to find by a field being queried or aggregated on. */
+    public static final String ERR_NO_FIELD_FIND_ACCESS = "ldap:find:NoFieldAccess";
+
+    /** Exported documents could not be written to the output. */
+    public static final String ERR_EXPORT_WRITE_FAILED = "ldap:ExportWriteFailed";
+
+    /** Imported records could not be read, or rejected records could not be written to the dead letter output. */
+    public static final String ERR_IMPORT_FAILED = "ldap:ImportFailed";
+
     private LdapErrorCode(){}
 
 }
@@ -19,6 +19,9 @@
 package com.redhat.lightblue.common.ldap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
@@ -29,4 +32,59 @@ public class LdapDataStoreTest {
         assertEquals(LdapConstant.BACKEND, new LdapDataStore().getBackend());
     }
 
+    @Test
+    public void testEntryCache(){
+        LdapDataStore store = new LdapDataStore("test", "dc=example,dc=com", "uid");
+        assertFalse(store.isEntryCacheEnabled());
+        assertEquals(CacheEviction.LRU, store.getEntryCacheEviction());
+
+        LdapDataStore cached = new LdapDataStore("test", "dc=example,dc=com", "uid");
+        cached.setEntryCacheTtlMillis(1000);
+        cached.setEntryCacheEviction(CacheEviction.LFU);
+        assertTrue(cached.isEntryCacheEnabled());
+        assertNotEquals(store, cached);
+
+        store.setEntryCacheTtlMillis(1000);
+        store.setEntryCacheEviction(CacheEviction.LFU);
+        assertEquals(store, cached);
+        assertEquals(store.hashCode(), cached.hashCode());
+    }
+
+    @Test
+    public void testQueryCache(){
+        LdapDataStore store = new LdapDataStore("test", "dc=example,dc=com", "uid");
+        assertFalse(store.isQueryCacheEnabled());
+
+        LdapDataStore cached = new LdapDataStore("test", "dc=example,dc=com", "uid");
+        cached.setQueryCacheMaxStalenessMillis(5000);
+        assertTrue(cached.isQueryCacheEnabled());
+        assertNotEquals(store, cached);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testQueryCache_InvalidMaxResults(){
+        new LdapDataStore().setQueryCacheMaxResults(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEntryCache_InvalidMaxEntries(){
+        new LdapDataStore().setEntryCacheMaxEntries(0);
+    }
+
+    @Test
+    public void testNegativeCache(){
+        LdapDataStore store = new LdapDataStore("test", "dc=example,dc=com", "uid");
+        assertFalse(store.isNegativeCacheEnabled());
+
+        LdapDataStore cached = new LdapDataStore("test", "dc=example,dc=com", "uid");
+        cached.setNegativeCacheTtlMillis(2000);
+        assertTrue(cached.isNegativeCacheEnabled());
+        assertNotEquals(store, cached);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeCache_InvalidTtl(){
+        new LdapDataStore().setNegativeCacheTtlMillis(-1);
+    }
+
 }
@@ -23,9 +23,11 @@ import java.util.Map;
 import java.util.Set;
 
 import com.redhat.lightblue.common.ldap.DBResolver;
+import com.redhat.lightblue.common.ldap.LdapDataSourceOptions;
 import com.redhat.lightblue.common.ldap.LdapDataStore;
 import com.redhat.lightblue.metadata.DataStore;
 import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
 import com.unboundid.ldap.sdk.LDAPException;
 
 /**
@@ -42,19 +44,37 @@ public class LdapDBResolver implements DBResolver{
     }
 
     public LDAPConnection get(DataStore store) throws LDAPException {
+        return get(getDatabase(store));
+    }
+
+    public LDAPConnection get(String database) throws LDAPException{
+        return getConfiguration(database).getLdapConnection();
+    }
+
+    @Override
+    public LDAPConnectionPool getConnectionPool(DataStore store) throws LDAPException {
+        return getConfiguration(getDatabase(store)).getLdapConnectionPool();
+    }
+
+    @Override
+    public LdapDataSourceOptions getOptions(DataStore store) {
+        return getConfiguration(getDatabase(store)).getOptions();
+    }
+
+    private String getDatabase(DataStore store){
         if(!(store instanceof LdapDataStore)){
             throw new IllegalArgumentException("DataStore of type " + store.getClass() + " is not supported.");
         }
 
-        return get(((LdapDataStore)store).getDatabase());
+        return ((LdapDataStore)store).getDatabase();
     }
 
-    public LDAPConnection get(String database) throws LDAPException{
+    private LdapDataSourceConfiguration getConfiguration(String database){
         LdapDataSourceConfiguration cnf = findByDatabase(database);
         if(cnf == null){
             throw new IllegalArgumentException("No database for " + database);
         }
-        return cnf.getLdapConnection();
+        return cnf;
     }
 
     private LdapDataSourceConfiguration findByDatabase(String database){
@@ -26,6 +26,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.redhat.lightblue.common.ldap.LdapDataSourceOptions;
 import com.redhat.lightblue.config.DataSourceConfiguration;
 import com.redhat.lightblue.metadata.ldap.parser.LdapDataStoreParser;
 import com.unboundid.ldap.sdk.BindRequest;
@@ -52,6 +53,22 @@ public class LdapDataSourceConfiguration implements DataSourceConfiguration{
     private static final String LDAP_CONFIG_PASSWORD = "password";
     private static final String LDAP_CONFIG_NUMBER_OF_INITIAL_CONNECTIONS = "numberOfInitialConnections";
     private static final String LDAP_CONFIG_MAX_NUMBER_OF_CONNECTIONS = "maxNumberOfConnections";
+    private static final String LDAP_CONFIG_HEDGE_DELAY_PERCENTILE = "hedgeDelayPercentile";
+    private static final String LDAP_CONFIG_HEDGE_MIN_DELAY_MILLIS = "hedgeMinDelayMillis";
+    private static final String LDAP_CONFIG_TRANSACTIONAL_WRITES = "transactionalWrites";
+    private static final String LDAP_CONFIG_DELETE_PARALLELISM = "deleteParallelism";
+    private static final String LDAP_CONFIG_DELETE_CONNECTIONS = "deleteConnections";
+    private static final String LDAP_CONFIG_TRANSLATION_PARALLELISM = "translationParallelism";
+    private static final String LDAP_CONFIG_VIRTUAL_THREADS = "virtualThreads";
+    private static final String LDAP_CONFIG_MAX_CONCURRENT_REQUESTS = "maxConcurrentRequests";
+    private static final String LDAP_CONFIG_CACHE_SYNC = "cacheSync";
+    private static final String LDAP_CONFIG_SYNC_COOKIE_DIRECTORY = "syncCookieDirectory";
+    private static final String LDAP_CONFIG_COALESCE_FINDS = "coalesceFinds";
+    private static final String LDAP_CONFIG_EXPORT_PAGE_SIZE = "exportPageSize";
+    private static final String LDAP_CONFIG_IMPORT_PARALLELISM = "importParallelism";
+    private static final String LDAP_CONFIG_IMPORT_CONNECTIONS = "importConnections";
+    private static final String LDAP_CONFIG_IMPORT_BATCH_SIZE = "importBatchSize";
+    private static final String LDAP_CONFIG_IMPORT_MAX_RETRIES = "importMaxRetries";
     private static final String LDAP_SERVER_CONFIG_HOST = "host";
     private static final String LDAP_SERVER_CONFIG_PORT = "port";
 
@@ -59,12 +76,20 @@ public class LdapDataSourceConfiguration implements DataSourceConfiguration{
     private static final int DEFAULT_MAX_NUMBER_OF_CONNECTIONS = 10;
 
     private String databaseName;
+    private final LdapDataSourceOptions options = new LdapDataSourceOptions();
     private transient LDAPConnectionPool connectionPool;
 
     public String getDatabaseName(){
         return databaseName;
     }
 
+    /**
+     * @return the {@link LdapDataSourceOptions} parsed for this datasource.
+     */
+    public LdapDataSourceOptions getOptions(){
+        return options;
+    }
+
     @Override
     @SuppressWarnings("rawtypes")
     public Class<LdapDataStoreParser> getMetadataDataStoreParser() {
@@ -126,6 +151,55 @@ public class LdapDataSourceConfiguration implements DataSourceConfiguration{
             serverSet = new RoundRobinServerSet(hosts, ports);
         }
 
+        parseHedging(node, hostPortMap.size());
+
+        JsonNode transactionalWritesNode = parseJsonNode(node, LDAP_CONFIG_TRANSACTIONAL_WRITES, false);
+        if(transactionalWritesNode != null){
+            options.setTransactionalWrites(transactionalWritesNode.asBoolean());
+        }
+
+        parseDeletes(node, maxConnections);
+
+        JsonNode translationParallelismNode = parseJsonNode(node, LDAP_CONFIG_TRANSLATION_PARALLELISM, false);
+        if(translationParallelismNode != null){
+            options.setTranslationParallelism(
+                    translationParallelismNode.asInt(LdapDataSourceOptions.DEFAULT_TRANSLATION_PARALLELISM));
+        }
+
+        JsonNode virtualThreadsNode = parseJsonNode(node, LDAP_CONFIG_VIRTUAL_THREADS, false);
+        if(virtualThreadsNode != null){
+            options.setVirtualThreads(virtualThreadsNode.asBoolean());
+        }
+
+        JsonNode maxConcurrentRequestsNode = parseJsonNode(node, LDAP_CONFIG_MAX_CONCURRENT_REQUESTS, false);
+        if(maxConcurrentRequestsNode != null){
+            options.setMaxConcurrentRequests(
+                    maxConcurrentRequestsNode.asInt(LdapDataSourceOptions.DEFAULT_MAX_CONCURRENT_REQUESTS));
+        }
+
+        JsonNode cacheSyncNode = parseJsonNode(node, LDAP_CONFIG_CACHE_SYNC, false);
+        if(cacheSyncNode != null){
+            options.setCacheSync(cacheSyncNode.asBoolean());
+        }
+
+        JsonNode syncCookieDirectoryNode = parseJsonNode(node, LDAP_CONFIG_SYNC_COOKIE_DIRECTORY, false);
+        if(syncCookieDirectoryNode != null){
+            options.setSyncCookieDirectory(syncCookieDirectoryNode.asText());
+        }
+
+        JsonNode coalesceFindsNode = parseJsonNode(node, LDAP_CONFIG_COALESCE_FINDS, false);
+        if(coalesceFindsNode != null){
+            options.setCoalesceFinds(coalesceFindsNode.asBoolean());
+        }
+
+        JsonNode exportPageSizeNode = parseJsonNode(node, LDAP_CONFIG_EXPORT_PAGE_SIZE, false);
+        if(exportPageSizeNode != null){
+            options.setExportPageSize(
+                    exportPageSizeNode.asInt(LdapDataSourceOptions.DEFAULT_EXPORT_PAGE_SIZE));
+        }
+
+        parseImports(node, maxConnections);
+
         try{
             connectionPool = new LDAPConnectionPool(serverSet, bindRequest, initialConnections, maxConnections);
         }
@@ -158,6 +232,68 @@ public class LdapDataSourceConfiguration implements DataSourceConfiguration{
         return hostPortMap;
     }
 
+    private void parseHedging(JsonNode node, int numberOfServers) {
+        JsonNode percentileNode = parseJsonNode(node, LDAP_CONFIG_HEDGE_DELAY_PERCENTILE, false);
+        if(percentileNode == null){
+            return;
+        }
+        if(numberOfServers < 2){
+            LOGGER.warn("Hedged reads require at least 2 servers, hedging will be disabled for ldap database " + databaseName);
+            return;
+        }
+
+        options.setHedgeDelayPercentile(percentileNode.asDouble());
+
+        JsonNode minDelayNode = parseJsonNode(node, LDAP_CONFIG_HEDGE_MIN_DELAY_MILLIS, false);
+        if(minDelayNode != null){
+            options.setHedgeMinDelayMillis(minDelayNode.asLong(LdapDataSourceOptions.DEFAULT_HEDGE_MIN_DELAY_MILLIS));
+        }
+    }
+
+    private void parseDeletes(JsonNode node, int maxConnections) {
+        JsonNode parallelismNode = parseJsonNode(node, LDAP_CONFIG_DELETE_PARALLELISM, false);
+        if(parallelismNode != null){
+            options.setDeleteParallelism(parallelismNode.asInt(LdapDataSourceOptions.DEFAULT_DELETE_PARALLELISM));
+        }
+
+        JsonNode connectionsNode = parseJsonNode(node, LDAP_CONFIG_DELETE_CONNECTIONS, false);
+        if(connectionsNode != null){
+            int deleteConnections = connectionsNode.asInt(LdapDataSourceOptions.DEFAULT_DELETE_CONNECTIONS);
+            if(deleteConnections >= maxConnections){
+                throw new IllegalArgumentException(LDAP_CONFIG_DELETE_CONNECTIONS + " must be less than "
+                        + LDAP_CONFIG_MAX_NUMBER_OF_CONNECTIONS + " for ldap database " + databaseName);
+            }
+            options.setDeleteConnections(deleteConnections);
+        }
+    }
+
+    private void parseImports(JsonNode node, int maxConnections) {
+        JsonNode parallelismNode = parseJsonNode(node, LDAP_CONFIG_IMPORT_PARALLELISM, false);
+        if(parallelismNode != null){
+            options.setImportParallelism(parallelismNode.asInt(LdapDataSourceOptions.DEFAULT_IMPORT_PARALLELISM));
+        }
+
+        JsonNode connectionsNode = parseJsonNode(node, LDAP_CONFIG_IMPORT_CONNECTIONS, false);
+        if(connectionsNode != null){
+            int importConnections = connectionsNode.asInt(LdapDataSourceOptions.DEFAULT_IMPORT_CONNECTIONS);
+            if(importConnections >= maxConnections){
+                throw new IllegalArgumentException(LDAP_CONFIG_IMPORT_CONNECTIONS + " must be less than "
+                        + LDAP_CONFIG_MAX_NUMBER_OF_CONNECTIONS + " for ldap database " + databaseName);
+            }
+            options.setImportConnections(importConnections);
+        }
+
+        JsonNode batchSizeNode = parseJsonNode(node, LDAP_CONFIG_IMPORT_BATCH_SIZE, false);
+        if(batchSizeNode != null){
+            options.setImportBatchSize(batchSizeNode.asInt(LdapDataSourceOptions.DEFAULT_IMPORT_BATCH_SIZE));
+        }
+
+        JsonNode maxRetriesNode = parseJsonNode(node, LDAP_CONFIG_IMPORT_MAX_RETRIES, false);
+        if(maxRetriesNode != null){
+            options.setImportMaxRetries(maxRetriesNode.asInt(LdapDataSourceOptions.DEFAULT_IMPORT_MAX_RETRIES));
+        }
+    }
+
     private int parseMaxConnections(JsonNode node) {
         int maxConnections = DEFAULT_MAX_NUMBER_OF_CONNECTIONS;
         JsonNode maxConnectionsNode = parseJsonNode(node, LDAP_CONFIG_MAX_NUMBER_OF_CONNECTIONS, false);
@@ -19,7 +19,11 @@
 package com.redhat.lightblue.config.ldap;
 
 import static com.redhat.lightblue.util.test.AbstractJsonNodeTest.loadJsonNode;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 
@@ -28,6 +32,7 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.redhat.lightblue.common.ldap.LdapDataSourceOptions;
 import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
 import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
 import com.unboundid.ldap.sdk.LDAPConnection;
@@ -60,6 +65,117 @@ public class LdapDataSourceConfigurationTest {
 
         LDAPConnection conn = configuration.getLdapConnection();
         assertNotNull(conn);
+        assertFalse(configuration.getOptions().isHedgingEnabled());
+        assertFalse(configuration.getOptions().isTransactionalWrites());
+        assertEquals(LdapDataSourceOptions.DEFAULT_DELETE_PARALLELISM, configuration.getOptions().getDeleteParallelism());
+        assertEquals(LdapDataSourceOptions.DEFAULT_TRANSLATION_PARALLELISM, configuration.getOptions().getTranslationParallelism());
+        assertFalse(configuration.getOptions().isVirtualThreads());
+        assertEquals(LdapDataSourceOptions.DEFAULT_MAX_CONCURRENT_REQUESTS, configuration.getOptions().getMaxConcurrentRequests());
+        assertFalse(configuration.getOptions().isCacheSync());
+        assertNull(configuration.getOptions().getSyncCookieDirectory());
+        assertFalse(configuration.getOptions().isCoalesceFinds());
+        assertEquals(LdapDataSourceOptions.DEFAULT_EXPORT_PAGE_SIZE, configuration.getOptions().getExportPageSize());
+        assertEquals(LdapDataSourceOptions.DEFAULT_IMPORT_PARALLELISM, configuration.getOptions().getImportParallelism());
+        assertEquals(LdapDataSourceOptions.DEFAULT_IMPORT_CONNECTIONS, configuration.getOptions().getImportConnections());
+    }
+
+    @Test
+    public void testInitializeFromJson_Hedging() throws IOException, LDAPException, LDIFException{
+        JsonNode ldapDatasourcesNode = loadJsonNode("./ldap-datasources.json");
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapDatasourcesNode.get("ldap-hedged"));
+
+        LdapDataSourceOptions options = configuration.getOptions();
+        assertTrue(options.isHedgingEnabled());
+        assertEquals(95.0, options.getHedgeDelayPercentile(), 0.0);
+        assertEquals(20, options.getHedgeMinDelayMillis());
+    }
+
+    @Test
+    public void testInitializeFromJson_TransactionalWrites() throws IOException, LDAPException, LDIFException{
+        JsonNode ldapDatasourcesNode = loadJsonNode("./ldap-datasources.json");
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapDatasourcesNode.get("ldap-transactional"));
+
+        assertTrue(configuration.getOptions().isTransactionalWrites());
+    }
+
+    @Test
+    public void testInitializeFromJson_Deletes() throws IOException, LDAPException, LDIFException{
+        JsonNode ldapDatasourcesNode = loadJsonNode("./ldap-datasources.json");
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapDatasourcesNode.get("ldap-transactional"));
+
+        assertEquals(16, configuration.getOptions().getDeleteParallelism());
+        assertEquals(2, configuration.getOptions().getDeleteConnections());
+    }
+
+    @Test
+    public void testInitializeFromJson_TranslationParallelism() throws IOException, LDAPException, LDIFException{
+        JsonNode ldapDatasourcesNode = loadJsonNode("./ldap-datasources.json");
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapDatasourcesNode.get("ldap-transactional"));
+
+        assertEquals(8, configuration.getOptions().getTranslationParallelism());
+    }
+
+    @Test
+    public void testInitializeFromJson_VirtualThreads() throws IOException, LDAPException, LDIFException{
+        JsonNode ldapDatasourcesNode = loadJsonNode("./ldap-datasources.json");
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapDatasourcesNode.get("ldap-transactional"));
+
+        assertTrue(configuration.getOptions().isVirtualThreads());
+        assertEquals(64, configuration.getOptions().getMaxConcurrentRequests());
+    }
+
+    @Test
+    public void testInitializeFromJson_CacheSync() throws IOException, LDAPException, LDIFException{
+        JsonNode ldapDatasourcesNode = loadJsonNode("./ldap-datasources.json");
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapDatasourcesNode.get("ldap-transactional"));
+
+        assertTrue(configuration.getOptions().isCacheSync());
+        assertEquals("/var/lib/lightblue/ldap-sync", configuration.getOptions().getSyncCookieDirectory());
+    }
+
+    @Test
+    public void testInitializeFromJson_CoalesceFinds() throws IOException, LDAPException, LDIFException{
+        JsonNode ldapDatasourcesNode = loadJsonNode("./ldap-datasources.json");
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapDatasourcesNode.get("ldap-transactional"));
+
+        assertTrue(configuration.getOptions().isCoalesceFinds());
+    }
+
+    @Test
+    public void testInitializeFromJson_ExportPageSize() throws IOException, LDAPException, LDIFException{
+        JsonNode ldapDatasourcesNode = loadJsonNode("./ldap-datasources.json");
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapDatasourcesNode.get("ldap-transactional"));
+
+        assertEquals(500, configuration.getOptions().getExportPageSize());
+    }
+
+    @Test
+    public void testInitializeFromJson_Imports() throws IOException, LDAPException, LDIFException{
+        JsonNode ldapDatasourcesNode = loadJsonNode("./ldap-datasources.json");
+
+        LdapDataSourceConfiguration configuration = new LdapDataSourceConfiguration();
+        configuration.initializeFromJson(ldapDatasourcesNode.get("ldap-transactional"));
+
+        assertEquals(128, configuration.getOptions().getImportParallelism());
+        assertEquals(3, configuration.getOptions().getImportConnections());
+        assertEquals(250, configuration.getOptions().getImportBatchSize());
+        assertEquals(5, configuration.getOptions().getImportMaxRetries());
     }
 
     @Test(expected = IllegalStateException.class)
@@ -0,0 +1,259 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.matchingrules.MatchingRule;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.RootDSE;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import com.unboundid.ldap.sdk.schema.Schema;
+
+/**
+ * Counts and groups the entries matched by a search without materializing them. Entries are
+ * streamed through a {@link SearchResultListener} as they arrive, so only the running totals
+ * are ever held in memory, and no more of each entry than is needed is requested from the server.
+ *
+ * @author dcrissman
+ */
+public final class Aggregation {
+
+    static final String NUM_SUBORDINATES = "numSubordinates";
+    static final String HAS_SUBORDINATES = "hasSubordinates";
+
+    /** Number of entries to request at a time when counting by pages. */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /**
+     * @param rootDSE - {@link RootDSE} of the server, may be <code>null</code>.
+     * @return <code>true</code> if the server advertises support for simple paged results.
+     */
+    public static boolean isPagedResultsSupported(RootDSE rootDSE) {
+        return (rootDSE != null)
+                && rootDSE.supportsControl(SimplePagedResultsControl.PAGED_RESULTS_OID);
+    }
+
+    /**
+     * Counts the entries matched by the <code>request</code>. No attributes are requested, and
+     * each entry is discarded as soon as it has been counted.
+     * @param connection - {@link LDAPConnection} to search with.
+     * @param request - {@link SearchRequest} to count the matches of.
+     * @return the number of matching entries.
+     * @throws LDAPException if the search failed.
+     */
+    public static long countBySearch(LDAPConnection connection, SearchRequest request) throws LDAPException {
+        SearchResult result = connection.search(copy(request, new ValueCounter(null, null), SearchRequest.NO_ATTRIBUTES));
+        return result.getEntryCount();
+    }
+
+    /**
+     * Counts the entries matched by the <code>request</code> a page at a time, so that a server's size
+     * limit does not cut the count short. As with {@link #countBySearch(LDAPConnection, SearchRequest)},
+     * no attributes are requested and each entry is discarded as soon as it has been counted. Unlike the
+     * content count of a virtual list view, which servers are allowed to estimate, the count is exact.
+     * @param connection - {@link LDAPConnection} to search with.
+     * @param request - {@link SearchRequest} to count the matches of.
+     * @param pageSize - number of entries to request at a time.
+     * @return the number of matching entries.
+     * @throws LDAPException if any of the searches failed.
+     */
+    public static long countByPages(LDAPConnection connection, SearchRequest request, int pageSize) throws LDAPException {
+        long count = 0;
+        ASN1OctetString cookie = null;
+        do {
+            SearchRequest pageRequest = copy(request, new ValueCounter(null, null), SearchRequest.NO_ATTRIBUTES);
+            pageRequest.addControl(new SimplePagedResultsControl(pageSize, cookie, true));
+            SearchResult result = connection.search(pageRequest);
+            count += result.getEntryCount();
+
+            SimplePagedResultsControl response = SimplePagedResultsControl.get(result);
+            cookie = (response == null) ? null : response.getCookie();
+        } while ((cookie != null) && (cookie.getValueLength() > 0));
+        return count;
+    }
+
+    /**
+     * Reads the number of entries immediately beneath <code>dn</code> from the
+     * <code>numSubordinates</code> or <code>hasSubordinates</code> operational attributes.
+     * @param connection - {@link LDAPConnection} to read the entry with.
+     * @param dn - DN of the entry to count the children of.
+     * @return the number of children, or <code>null</code> if the server does not maintain either attribute.
+     * @throws LDAPException if the entry could not be read.
+     */
+    public static Long countSubordinates(LDAPConnection connection, String dn) throws LDAPException {
+        SearchResultEntry entry = connection.getEntry(dn, NUM_SUBORDINATES, HAS_SUBORDINATES);
+        return (entry == null) ? null : getSubordinateCount(entry);
+    }
+
+    /**
+     * @return the number of children the <code>entry</code> reports having, <code>0</code> if it only
+     * reports that it has none, or <code>null</code> if it reports neither.
+     */
+    static Long getSubordinateCount(Entry entry) {
+        Long numSubordinates = entry.getAttributeValueAsLong(NUM_SUBORDINATES);
+        if (numSubordinates != null) {
+            return numSubordinates;
+        }
+        //hasSubordinates alone can only answer when there are none.
+        return Boolean.FALSE.equals(entry.getAttributeValueAsBoolean(HAS_SUBORDINATES)) ? 0L : null;
+    }
+
+    /**
+     * Counts the entries matched by the <code>request</code> for each distinct value of the
+     * <code>attribute</code>. Only the <code>attribute</code> is requested, and each entry is discarded
+     * as soon as its values have been counted. An entry with several values is counted once under
+     * each of them. Values are compared using the attribute's equality matching rule, as the server
+     * would, so values that differ only in case, for instance, are usually counted together.
+     * @param connection - {@link LDAPConnection} to search with.
+     * @param request - {@link SearchRequest} to group the matches of.
+     * @param attribute - name of the attribute to group on.
+     * @param schema - (optional) {@link Schema} to find the attribute's matching rule in. Without it,
+     * values are compared ignoring case and insignificant spaces.
+     * @return the number of entries with each value, keyed by the first form of the value seen, with
+     * the entries that have no value counted under <code>null</code>.
+     * @throws LDAPException if the search failed.
+     */
+    public static Map<String, Long> countValues(LDAPConnection connection, SearchRequest request, String attribute,
+            Schema schema) throws LDAPException {
+        ValueCounter counter = new ValueCounter(attribute, MatchingRule.selectEqualityMatchingRule(attribute, schema));
+        connection.search(copy(request, counter, attribute));
+        return counter.getCounts();
+    }
+
+    /**
+     * @return a copy of the <code>request</code> that streams its entries to the <code>listener</code>
+     * and only returns the <code>attributes</code>.
+     */
+    private static SearchRequest copy(SearchRequest request, SearchResultListener listener, String... attributes) {
+        return new SearchRequest(
+                listener,
+                request.getControls(),
+                request.getBaseDN(),
+                request.getScope(),
+                request.getDereferencePolicy(),
+                request.getSizeLimit(),
+                request.getTimeLimitSeconds(),
+                request.typesOnly(),
+                request.getFilter(),
+                attributes);
+    }
+
+    /**
+     * Tallies the values of an attribute across the entries streamed to it, keyed by their normalized
+     * form. Each value's count is kept in a {@link Tally} so that it can be incremented in place, rather
+     * than boxing a new {@link Long} for every entry.
+     */
+    private static final class ValueCounter implements SearchResultListener {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String attribute;
+        private final MatchingRule matchingRule;
+        private final Map<String, Tally> counts = new HashMap<>();
+
+        /**
+         * @param attribute - name of the attribute to tally, or <code>null</code> to only count the entries.
+         * @param matchingRule - {@link MatchingRule} to normalize the values with.
+         */
+        ValueCounter(String attribute, MatchingRule matchingRule) {
+            this.attribute = attribute;
+            this.matchingRule = matchingRule;
+        }
+
+        @Override
+        public void searchEntryReturned(SearchResultEntry searchEntry) {
+            if (attribute == null) {
+                return;
+            }
+            Attribute values = searchEntry.getAttribute(attribute);
+            if ((values == null) || !values.hasValue()) {
+                increment(null);
+                return;
+            }
+            for (String value : values.getValues()) {
+                increment(value);
+            }
+        }
+
+        private void increment(String value) {
+            String key = normalize(value);
+            Tally tally = counts.get(key);
+            if (tally == null) {
+                counts.put(key, new Tally(value));
+            }
+            else {
+                tally.count++;
+            }
+        }
+
+        private String normalize(String value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return matchingRule.normalize(new ASN1OctetString(value)).stringValue();
+            } catch (LDAPException e) {
+                //Not valid for the syntax, so only equal to itself.
+                return value;
+            }
+        }
+
+        @Override
+        public void searchReferenceReturned(SearchResultReference searchReference) {
+            //Referrals are not followed.
+        }
+
+        Map<String, Long> getCounts() {
+            Map<String, Long> totals = new HashMap<>(counts.size() * 2);
+            for (Tally tally : counts.values()) {
+                totals.put(tally.value, tally.count);
+            }
+            return totals;
+        }
+
+    }
+
+    /**
+     * Number of entries with a value, and the form of the value first seen.
+     */
+    private static final class Tally {
+
+        final String value;
+        long count = 1;
+
+        Tally(String value) {
+            this.value = value;
+        }
+
+    }
+
+    private Aggregation() {}
+
+}
@@ -0,0 +1,453 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import com.redhat.lightblue.common.ldap.DBResolver;
+import com.redhat.lightblue.common.ldap.LdapDataSourceOptions;
+import com.redhat.lightblue.common.ldap.LdapDataStore;
+import com.redhat.lightblue.common.ldap.LdapErrorCode;
+import com.redhat.lightblue.common.ldap.LdapFieldNameTranslator;
+import com.redhat.lightblue.crud.CRUDDeleteResponse;
+import com.redhat.lightblue.crud.CRUDFindResponse;
+import com.redhat.lightblue.crud.CRUDInsertionResponse;
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.crud.CRUDSaveResponse;
+import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.crud.ldap.translator.AttributeDescriptions;
+import com.redhat.lightblue.crud.ldap.translator.EntryTranslatorFromJson;
+import com.redhat.lightblue.crud.ldap.translator.ModificationTranslatorFromJson;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.Sort;
+import com.redhat.lightblue.util.Error;
+import com.unboundid.ldap.sdk.AddRequest;
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncResultListener;
+import com.unboundid.ldap.sdk.DeleteRequest;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+
+/**
+ * {@link LdapCRUDController} that can also be driven asynchronously. Each asynchronous
+ * operation sends its requests with {@link LDAPConnection}'s async methods and returns
+ * immediately; the returned {@link CompletableFuture} is completed by UnboundID's listener
+ * thread once the server has answered every request. All of an operation's requests are sent
+ * over a single connection, so the responses to them are handled one at a time.
+ *
+ * The asynchronous operations report errors on the {@link CRUDOperationContext} exactly as the
+ * synchronous ones do. Transactional writes, hedged reads, and pipelined or subtree deletes
+ * already manage their own requests, as do reads of entities whose entries, find results or
+ * missing DNs are cached and reads that are coalesced with identical ones in flight. Those run the
+ * synchronous operation through the datasource's {@link BlockingOperationExecutor} instead, so
+ * they never block the caller either, but each one does occupy a thread while it runs.
+ *
+ * Alternatively, a datasource with {@link LdapDataSourceOptions#isVirtualThreads()} set has every
+ * asynchronous operation run the synchronous one that way, on a virtual thread where the JVM
+ * supports them. Either way, {@link LdapDataSourceOptions#getMaxConcurrentRequests()} bounds how
+ * many operations run on threads of their own at once.
+ *
+ * @author dcrissman
+ */
+public class AsyncLdapCRUDController extends LdapCRUDController {
+
+    private final Map<String, BlockingOperationExecutor> blockingOperationExecutors = new ConcurrentHashMap<>();
+
+    public AsyncLdapCRUDController(DBResolver dbResolver) {
+        super(dbResolver);
+    }
+
+    /**
+     * Asynchronous {@link #find(CRUDOperationContext, QueryExpression, Projection, Sort, Long, Long)}.
+     */
+    public CompletableFuture<CRUDFindResponse> findAsync(CRUDOperationContext ctx,
+            QueryExpression query, Projection projection, Sort sort, Long from,
+            Long to) {
+        LdapDataStore store = LdapCrudUtil.getLdapDataStore(ctx.getEntityMetadata(ctx.getEntityName()));
+        LdapDataSourceOptions options = dbResolver.getOptions(store);
+        if (options.isVirtualThreads()) {
+            return getBlockingOperationExecutor(store, options).submit(() -> find(ctx, query, projection, sort, from, to));
+        }
+        if (options.isHedgingEnabled() || options.isCoalesceFinds()
+                || store.isEntryCacheEnabled() || store.isQueryCacheEnabled() || store.isNegativeCacheEnabled()) {
+            return getBlockingOperationExecutor(store, options).submit(() -> find(ctx, query, projection, sort, from, to));
+        }
+
+        PreparedFind find = prepareFind(ctx, query, projection, sort, from, to);
+
+        return search(ctx, find.connection, find.searchRequest, find.rangeSelector)
+                .thenApply((List<SearchResultEntry> entries) -> completeFind(ctx, find, entries, find.translatorFactory));
+    }
+
+    /**
+     * Asynchronous {@link #insert(CRUDOperationContext, Projection)}.
+     */
+    public CompletableFuture<CRUDInsertionResponse> insertAsync(CRUDOperationContext ctx,
+            Projection projection) {
+        EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+        LdapDataStore store = LdapCrudUtil.getLdapDataStore(md);
+        LdapFieldNameTranslator fieldNameTranslator = LdapCrudUtil.getLdapFieldNameTranslator(md);
+
+        LdapDataSourceOptions options = dbResolver.getOptions(store);
+        if (options.isVirtualThreads() || isTransactionalWrites(options, ctx)) {
+            return getBlockingOperationExecutor(store, options).submit(() -> insert(ctx, projection));
+        }
+
+        LDAPConnection connection = getLdapConnection(store);
+
+        EntryTranslatorFromJson entryTranslatorFromJson = new EntryTranslatorFromJson(md, fieldNameTranslator);
+
+        //Create Entry instances for each document.
+        Map<String, DocCtx> documentToDnMap = new HashMap<>();
+        List<Entry> entries = parseDocuments(ctx, fieldNameTranslator, (DocCtx document, String dn) -> {
+            Entry entry = entryTranslatorFromJson.translate(document, dn);
+            documentToDnMap.put(dn, document);
+            return entry;
+        });
+
+        //Persist each Entry.
+        AtomicInteger numInserted = new AtomicInteger();
+        List<CompletableFuture<Void>> inserts = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            inserts.add(execute(ctx,
+                    (AsyncResultListener listener) -> connection.asyncAdd(new AddRequest(entry), listener),
+                    (LDAPResult result) -> numInserted.incrementAndGet()));
+        }
+
+        return allOf(inserts).thenApply((Void done) -> {
+            CRUDInsertionResponse response = new CRUDInsertionResponse();
+            response.setNumInserted(numInserted.get());
+
+            invalidateEntries(store, documentToDnMap.keySet());
+            projectChanges(projection, ctx, documentToDnMap);
+
+            return response;
+        });
+    }
+
+    /**
+     * Asynchronous {@link #save(CRUDOperationContext, boolean, Projection)}. The existing entry for
+     * each document is read, and then modified or created, independently of the other documents.
+     */
+    public CompletableFuture<CRUDSaveResponse> saveAsync(CRUDOperationContext ctx, boolean upsert,
+            Projection projection) {
+        EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+        LdapDataStore store = LdapCrudUtil.getLdapDataStore(md);
+        LdapFieldNameTranslator fieldNameTranslator = LdapCrudUtil.getLdapFieldNameTranslator(md);
+
+        LdapDataSourceOptions options = dbResolver.getOptions(store);
+        if (options.isVirtualThreads() || isTransactionalWrites(options, ctx)) {
+            return getBlockingOperationExecutor(store, options).submit(() -> save(ctx, upsert, projection));
+        }
+
+        LDAPConnection connection = getLdapConnection(store);
+
+        /*
+         * Only the multi-valued attributes are read back, so that array fields can be
+         * saved by sending just the values that changed.
+         */
+        String[] arrayAttributes = gatherArrayAttributes(md, fieldNameTranslator);
+        AttributeDescriptions attributeDescriptions = AttributeDescriptions.build(Arrays.asList(arrayAttributes), getSchema(store, connection));
+
+        NegativeLookupCache negativeLookupCache = getNegativeLookupCache(store);
+        Map<String, DocCtx> documentToDnMap = new HashMap<>();
+        AtomicInteger numSaved = new AtomicInteger();
+        List<CompletableFuture<Void>> saves = parseDocuments(ctx, fieldNameTranslator, (DocCtx document, String dn) -> {
+            documentToDnMap.put(dn, document);
+
+            return getEntry(connection, negativeLookupCache, dn, arrayAttributes)
+                    .thenCompose((SearchResultEntry entity) -> {
+                        if (entity != null) {
+                            ModifyRequest modifyRequest = new ModificationTranslatorFromJson(md, fieldNameTranslator,
+                                    store.getVersionAttribute(), attributeDescriptions).translate(document, dn, entity);
+                            return execute(ctx,
+                                    (AsyncResultListener listener) -> connection.asyncModify(modifyRequest, listener),
+                                    (LDAPResult result) -> numSaved.incrementAndGet(),
+                                    (LDAPResult result) -> {
+                                        if (ResultCode.ASSERTION_FAILED.equals(result.getResultCode())) {
+                                            //The version asserted by the document is no longer current.
+                                            addError(document, Error.get(LdapErrorCode.ERR_LDAP_CONCURRENT_UPDATE, dn));
+                                            return true;
+                                        }
+                                        return false;
+                                    });
+                        }
+                        else if (upsert) {
+                            //DNs that do not already exist, need to be created.
+                            Entry entry = new EntryTranslatorFromJson(md, fieldNameTranslator).translate(document, dn);
+                            return execute(ctx,
+                                    (AsyncResultListener listener) -> connection.asyncAdd(new AddRequest(entry), listener),
+                                    (LDAPResult result) -> numSaved.incrementAndGet());
+                        }
+
+                        addError(document, Error.get(LdapErrorCode.ERR_LDAP_SAVE_ERROR_INS_WITH_NO_UPSERT, "New document, but upsert=false"));
+                        return CompletableFuture.<Void> completedFuture(null);
+                    })
+                    .exceptionally((Throwable t) -> {
+                        addError(document, toError(t));
+                        return null;
+                    });
+        });
+
+        return allOf(saves).thenApply((Void done) -> {
+            CRUDSaveResponse response = new CRUDSaveResponse();
+            response.setNumSaved(numSaved.get());
+
+            invalidateEntries(store, documentToDnMap.keySet());
+            projectChanges(projection, ctx, documentToDnMap);
+
+            return response;
+        });
+    }
+
+    /**
+     * Asynchronous {@link #delete(CRUDOperationContext, QueryExpression)}. The matched entries
+     * are all deleted concurrently.
+     */
+    public CompletableFuture<CRUDDeleteResponse> deleteAsync(CRUDOperationContext ctx,
+            QueryExpression query) {
+        if (query == null) {
+            throw new IllegalArgumentException("No query was provided.");
+        }
+
+        EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+        LdapDataStore store = LdapCrudUtil.getLdapDataStore(md);
+
+        LdapDataSourceOptions options = dbResolver.getOptions(store);
+        if (options.isVirtualThreads() || store.isSubtreeDelete() || (options.getDeleteParallelism() > 1)) {
+            return getBlockingOperationExecutor(store, options).submit(() -> delete(ctx, query));
+        }
+
+        SearchRequest searchRequest = buildSearchRequest(store.getBaseDN(), md, query, null, SearchRequest.NO_ATTRIBUTES);
+
+        LDAPConnection connection = getLdapConnection(store);
+
+        AtomicInteger numDeleted = new AtomicInteger();
+        return search(ctx, connection, searchRequest, RangedAttributeRetrieval.ALL_VALUES)
+                .thenCompose((List<SearchResultEntry> entries) -> {
+                    List<CompletableFuture<Void>> deletes = new ArrayList<>(entries.size());
+                    for (SearchResultEntry entry : entries) {
+                        deletes.add(execute(ctx,
+                                (AsyncResultListener listener) -> connection.asyncDelete(new DeleteRequest(entry.getDN()), listener),
+                                (LDAPResult result) -> {
+                                    numDeleted.incrementAndGet();
+                                    invalidateEntries(store, Collections.singleton(entry.getDN()));
+                                }));
+                    }
+                    return allOf(deletes);
+                })
+                .thenApply((Void done) -> {
+                    CRUDDeleteResponse response = new CRUDDeleteResponse();
+                    response.setNumDeleted(numDeleted.get());
+                    return response;
+                });
+    }
+
+    private BlockingOperationExecutor getBlockingOperationExecutor(LdapDataStore store, LdapDataSourceOptions options) {
+        return blockingOperationExecutors.computeIfAbsent(store.getDatabase(),
+                (String database) -> new BlockingOperationExecutor(options.isVirtualThreads(), options.getMaxConcurrentRequests()));
+    }
+
+    /**
+     * @return <code>true</code> if the writes to the <code>ctx</code>'s documents may be made in a
+     * transaction. Whether the server supports transactions is left to the synchronous operation to
+     * find out, so that reading the RootDSE does not block the caller.
+     */
+    private static boolean isTransactionalWrites(LdapDataSourceOptions options, CRUDOperationContext ctx) {
+        List<DocCtx> documents = ctx.getInputDocumentsWithoutErrors();
+        return options.isTransactionalWrites() && (documents != null) && (documents.size() > 1);
+    }
+
+    private static CompletableFuture<Void> allOf(List<CompletableFuture<Void>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+    }
+
+    /**
+     * Searches with the <code>searchRequest</code>, completing with the returned entries. Any
+     * ranged attributes the <code>rangeSelector</code> selects are completed by chaining further
+     * searches over the same connection, without waiting on any thread. A failed search is reported
+     * on the <code>ctx</code> and completes with no entries.
+     */
+    private CompletableFuture<List<SearchResultEntry>> search(CRUDOperationContext ctx,
+            LDAPConnection connection, SearchRequest searchRequest, RangedAttributeRetrieval.RangeSelector rangeSelector) {
+        AsyncSearch search;
+        try {
+            search = AsyncSearch.start(connection, searchRequest);
+        } catch (LDAPException e) {
+            addError(ctx, Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
+            return CompletableFuture.completedFuture(Collections.<SearchResultEntry> emptyList());
+        }
+
+        return search.getFuture().thenCompose((SearchResult result) -> {
+            if (!ResultCode.SUCCESS.equals(result.getResultCode())) {
+                addError(ctx, Error.get(
+                        LdapErrorCode.ERR_LDAP_UNSUCCESSFUL_RESPONSE,
+                        result.getResultCode().toString()));
+                return CompletableFuture.completedFuture(Collections.<SearchResultEntry> emptyList());
+            }
+            return RangedAttributeRetrieval.completeAsync(connection, result, rangeSelector)
+                    .thenApply((SearchResult completed) -> completed.getSearchEntries())
+                    .exceptionally((Throwable t) -> {
+                        addError(ctx, Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, unwrap(t)));
+                        return Collections.<SearchResultEntry> emptyList();
+                    });
+        });
+    }
+
+    /**
+     * Reads the entry with the <code>dn</code>, unless the <code>negativeLookupCache</code> knows it
+     * to be missing, completing with <code>null</code> if it does not exist.
+     */
+    private static CompletableFuture<SearchResultEntry> getEntry(LDAPConnection connection,
+            NegativeLookupCache negativeLookupCache, String dn, String... attributes) {
+        if (negativeLookupCache == null) {
+            return getEntry(connection, dn, attributes);
+        }
+        if (negativeLookupCache.isMissing(dn)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long lookupStarted = negativeLookupCache.startLookup();
+        return getEntry(connection, dn, attributes).thenApply((SearchResultEntry entry) -> {
+            if (entry == null) {
+                negativeLookupCache.putMissing(dn, lookupStarted);
+            }
+            return entry;
+        });
+    }
+
+    /**
+     * Reads the entry with the <code>dn</code>, completing with <code>null</code> if it does not exist.
+     * Any ranged attributes are completed by {@link RangedAttributeRetrieval#completeAsync(LDAPConnection, SearchResult)}.
+     */
+    private static CompletableFuture<SearchResultEntry> getEntry(LDAPConnection connection, String dn, String... attributes) {
+        AsyncSearch search;
+        try {
+            search = AsyncSearch.start(connection,
+                    new SearchRequest(dn, SearchScope.BASE, Filter.createPresenceFilter("objectClass"), attributes));
+        } catch (LDAPException e) {
+            CompletableFuture<SearchResultEntry> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        return search.getFuture().thenCompose((SearchResult result) -> {
+            if (ResultCode.NO_SUCH_OBJECT.equals(result.getResultCode())) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (!ResultCode.SUCCESS.equals(result.getResultCode())) {
+                throw new CompletionException(new LDAPException(result));
+            }
+            return RangedAttributeRetrieval.completeAsync(connection, result).thenApply((SearchResult completed) ->
+                    completed.getSearchEntries().isEmpty() ? null : completed.getSearchEntries().get(0));
+        });
+    }
+
+    /**
+     * Adds the <code>error</code> to the <code>ctx</code>. Responses are handled on UnboundID's listener
+     * thread while the calling thread may still be sending requests and reporting failures to send
+     * them, so errors are only added while holding the <code>ctx</code>'s lock.
+     */
+    private static void addError(CRUDOperationContext ctx, Error error) {
+        synchronized (ctx) {
+            ctx.addError(error);
+        }
+    }
+
+    /**
+     * Adds the <code>error</code> to the <code>document</code> while holding its lock, for the same
+     * reason as {@link #addError(CRUDOperationContext, Error)}.
+     */
+    private static void addError(DocCtx document, Error error) {
+        synchronized (document) {
+            document.addError(error);
+        }
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        return ((t instanceof CompletionException) && (t.getCause() != null)) ? t.getCause() : t;
+    }
+
+    private static Error toError(Throwable t) {
+        Throwable cause = unwrap(t);
+        if (cause instanceof Error) {
+            return (Error) cause;
+        }
+        return Error.get(cause);
+    }
+
+    private CompletableFuture<Void> execute(CRUDOperationContext ctx, AsyncOperation operation, Consumer<LDAPResult> onSuccess) {
+        return execute(ctx, operation, onSuccess, (LDAPResult result) -> false);
+    }
+
+    /**
+     * Asynchronous counterpart to {@link LdapCRUDController}'s execute. Sends the <code>operation</code>
+     * and completes once its result has been handled.
+     * @param onFailure - returns <code>true</code> if the failure has been handled, otherwise a
+     * generic error is added to the {@link CRUDOperationContext}.
+     */
+    private CompletableFuture<Void> execute(CRUDOperationContext ctx, AsyncOperation operation,
+            Consumer<LDAPResult> onSuccess, Predicate<LDAPResult> onFailure) {
+        CompletableFuture<LDAPResult> response = new CompletableFuture<>();
+        try {
+            operation.send((AsyncRequestID requestID, LDAPResult result) -> response.complete(result));
+        } catch (LDAPException e) {
+            if (!onFailure.test(e.toLDAPResult())) {
+                addError(ctx, Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return response.thenAccept((LDAPResult result) -> {
+            if (ResultCode.SUCCESS.equals(result.getResultCode())) {
+                onSuccess.accept(result);
+            } else if (!onFailure.test(result)) {
+                addError(ctx, Error.get(
+                        LdapErrorCode.ERR_LDAP_UNSUCCESSFUL_RESPONSE,
+                        result.getResultCode().toString()));
+            }
+        });
+    }
+
+    private interface AsyncOperation {
+        AsyncRequestID send(AsyncResultListener listener) throws LDAPException;
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncSearchResultListener;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultReference;
+
+/**
+ * Runs a {@link SearchRequest} asynchronously, collecting the returned entries so that
+ * a complete {@link SearchResult} is available once the server has finished responding.
+ *
+ * @author dcrissman
+ */
+public class AsyncSearch implements AsyncSearchResultListener {
+
+    private static final long serialVersionUID = 4718529389201773582L;
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncSearch.class);
+
+    private final transient LDAPConnection connection;
+    private final transient CompletableFuture<SearchResult> future = new CompletableFuture<>();
+    private final List<SearchResultEntry> entries = new ArrayList<>();
+    private final List<SearchResultReference> references = new ArrayList<>();
+    private transient AsyncRequestID requestId;
+
+    /**
+     * Sends the <code>searchRequest</code> over the <code>connection</code> without waiting
+     * for a response.
+     * @param connection - {@link LDAPConnection} to send the search over.
+     * @param searchRequest - {@link SearchRequest} to send, it is copied and left unaltered.
+     * @return the in-flight {@link AsyncSearch}.
+     * @throws LDAPException if the request could not be sent.
+     */
+    public static AsyncSearch start(LDAPConnection connection, SearchRequest searchRequest) throws LDAPException {
+        AsyncSearch search = new AsyncSearch(connection);
+        search.requestId = connection.asyncSearch(search.copy(searchRequest));
+        return search;
+    }
+
+    private AsyncSearch(LDAPConnection connection) {
+        this.connection = connection;
+    }
+
+    private SearchRequest copy(SearchRequest searchRequest) {
+        SearchRequest copy = new SearchRequest(
+                this,
+                searchRequest.getControls(),
+                searchRequest.getBaseDN(),
+                searchRequest.getScope(),
+                searchRequest.getDereferencePolicy(),
+                searchRequest.getSizeLimit(),
+                searchRequest.getTimeLimitSeconds(),
+                searchRequest.typesOnly(),
+                searchRequest.getFilter(),
+                searchRequest.getAttributes());
+        copy.setResponseTimeoutMillis(searchRequest.getResponseTimeoutMillis(connection));
+        return copy;
+    }
+
+    /**
+     * @return the {@link LDAPConnection} the search was sent over.
+     */
+    public LDAPConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * @return a {@link CompletableFuture} that completes with the full {@link SearchResult},
+     * including all returned entries, regardless of the {@link com.unboundid.ldap.sdk.ResultCode}.
+     */
+    public CompletableFuture<SearchResult> getFuture() {
+        return future;
+    }
+
+    /**
+     * Asks the server to stop processing the search. Any failure to do so is logged
+     * and otherwise ignored, as the results are no longer wanted.
+     */
+    public void abandon() {
+        if (future.isDone()) {
+            return;
+        }
+        try {
+            connection.abandon(requestId);
+        } catch (LDAPException e) {
+            LOGGER.debug("Unable to abandon search " + requestId, e);
+        }
+    }
+
+    @Override
+    public void searchEntryReturned(SearchResultEntry searchEntry) {
+        entries.add(searchEntry);
+    }
+
+    @Override
+    public void searchReferenceReturned(SearchResultReference searchReference) {
+        references.add(searchReference);
+    }
+
+    @Override
+    public void searchResultReceived(AsyncRequestID requestID, SearchResult searchResult) {
+        future.complete(new SearchResult(
+                searchResult.getMessageID(),
+                searchResult.getResultCode(),
+                searchResult.getDiagnosticMessage(),
+                searchResult.getMatchedDN(),
+                searchResult.getReferralURLs(),
+                entries,
+                references,
+                entries.size(),
+                references.size(),
+                searchResult.getResponseControls()));
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+
+/**
+ * Runs blocking LDAP operations off the calling thread, each on a thread of its own. If virtual
+ * threads are requested and the JVM supports them (Java 21 and later), every operation gets a
+ * new virtual thread; otherwise platform threads are taken from a cached pool. How many operations
+ * may run against the datasource at once is bounded by a fair {@link Semaphore}, independently of
+ * how many threads there are.
+ *
+ * A permit is waited for on the operation's own thread, before it checks out a connection. Neither
+ * that wait, the {@link LDAPConnectionPool} checkout, nor waiting for a response holds a monitor,
+ * so a virtual thread unmounts from its carrier while it waits rather than pinning it. Operations
+ * submitted here should likewise not block inside <code>synchronized</code> code.
+ *
+ * @author dcrissman
+ */
+public class BlockingOperationExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlockingOperationExecutor.class);
+
+    /** <code>Executors.newVirtualThreadPerTaskExecutor()</code>, or <code>null</code> before Java 21. */
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadPerTaskExecutor();
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final Semaphore permits;
+
+    /**
+     * @param virtualThreads - <code>true</code> to run operations on virtual threads when the JVM
+     * supports them.
+     * @param maxConcurrentOperations - maximum number of operations to run at once, or <code>0</code>
+     * to not limit them.
+     */
+    public BlockingOperationExecutor(boolean virtualThreads, int maxConcurrentOperations) {
+        if (maxConcurrentOperations < 0) {
+            throw new IllegalArgumentException("maxConcurrentOperations cannot be negative: " + maxConcurrentOperations);
+        }
+
+        ExecutorService virtualExecutor = null;
+        if (virtualThreads) {
+            virtualExecutor = newVirtualThreadPerTaskExecutor();
+            if (virtualExecutor == null) {
+                LOGGER.warn("Virtual threads are not supported by this JVM, blocking LDAP operations will run on platform threads.");
+            }
+        }
+
+        virtual = (virtualExecutor != null);
+        executor = virtual ? virtualExecutor : Executors.newCachedThreadPool((Runnable runnable) -> {
+            Thread thread = new Thread(runnable, "ldap-blocking-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        permits = (maxConcurrentOperations > 0) ? new Semaphore(maxConcurrentOperations, true) : null;
+    }
+
+    /**
+     * @return <code>true</code> if this JVM supports virtual threads, otherwise <code>false</code>.
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * @return <code>true</code> if operations are run on virtual threads, otherwise <code>false</code>.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Runs the <code>operation</code> on a thread of its own once a permit is available.
+     * @param operation - blocking operation to run.
+     * @return a {@link CompletableFuture} completed with the result of the <code>operation</code>,
+     * or exceptionally with whatever it threw.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                if (permits != null) {
+                    permits.acquire();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+                return;
+            }
+
+            try {
+                future.complete(operation.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        });
+        return future;
+    }
+
+    private static Method findVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.debug("Unable to create a virtual thread executor.", e);
+            return null;
+        }
+    }
+
+}
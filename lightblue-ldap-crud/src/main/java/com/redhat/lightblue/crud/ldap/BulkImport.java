@@ -0,0 +1,622 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.unboundid.ldap.sdk.AddRequest;
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ResultCode;
+
+/**
+ * Loads entries from a stream of records, either newline delimited json documents or LDIF. Records
+ * are read on the calling thread and handed, a batch at a time, to a pool of threads that translate
+ * them into entries and send each as an asynchronous add, pipelined over one or more pooled
+ * connections. Only a bounded number of batches and adds are outstanding at once, so reading stops
+ * while the server catches up and memory use does not grow with the size of the input.
+ * <br><br>
+ * Adds that fail for a transient reason, such as the server being busy or a connection being lost,
+ * are retried with an exponential backoff. If an attempt timed out or lost its connection, the entry
+ * may have been added anyways, so a retry that finds the entry already exists counts it as imported.
+ * Records that cannot be translated, or whose adds are rejected, are written to a dead letter
+ * {@link Writer} along with the reason, and the import carries on without them.
+ *
+ * @author dcrissman
+ */
+public class BulkImport implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkImport.class);
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    public static final long DEFAULT_RETRY_DELAY_MILLIS = 100;
+
+    /** Failures that may well succeed if the add is simply sent again. */
+    static final Set<ResultCode> TRANSIENT_RESULT_CODES = new HashSet<>(Arrays.asList(
+            ResultCode.BUSY,
+            ResultCode.UNAVAILABLE,
+            ResultCode.SERVER_DOWN,
+            ResultCode.CONNECT_ERROR,
+            ResultCode.TIMEOUT));
+
+    /** Failures that leave it unknown whether the add was applied or not. */
+    static final Set<ResultCode> UNCERTAIN_RESULT_CODES = new HashSet<>(Arrays.asList(
+            ResultCode.SERVER_DOWN,
+            ResultCode.TIMEOUT));
+
+    private static final String LDIF_VERSION_PREFIX = "version:";
+
+    /**
+     * Formats records can be read in.
+     */
+    public enum Format {
+        /** One json document per line, blank lines are ignored. */
+        NDJSON,
+        /** LDIF content records, separated by blank lines. */
+        LDIF
+    }
+
+    private final LDAPConnectionPool pool;
+    private final int parallelism;
+    private final int batchSize;
+    private final int maxRetries;
+    private final long retryDelayMillis;
+    private final Semaphore inFlight;
+    private final int maxPendingBatches;
+    private final Semaphore pendingBatches;
+    private final List<LDAPConnection> connections = new CopyOnWriteArrayList<>();
+    private final ReentrantLock connectionLock = new ReentrantLock();
+    private final AtomicInteger nextConnection = new AtomicInteger();
+    private final ExecutorService translators;
+    private final ScheduledExecutorService retries;
+
+    private final AtomicLong read = new AtomicLong();
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong alreadyAdded = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile long started;
+    private volatile long finished;
+
+    private Format format;
+    private Writer deadLetter;
+    private final ReentrantLock deadLetterLock = new ReentrantLock();
+    private final AtomicReference<IOException> deadLetterFailure = new AtomicReference<>();
+
+    /**
+     * @param pool - {@link LDAPConnectionPool} to check connections out of.
+     * @param threads - number of threads to translate records with.
+     * @param parallelism - maximum number of adds to have in flight at once.
+     * @param numberOfConnections - number of pooled connections to spread the adds across.
+     * @param batchSize - number of records to hand to a translating thread at once.
+     * @param maxRetries - number of times to retry an add that failed for a transient reason.
+     * @throws LDAPException if the connections could not be checked out.
+     */
+    public BulkImport(LDAPConnectionPool pool, int threads, int parallelism, int numberOfConnections,
+            int batchSize, int maxRetries) throws LDAPException {
+        this(pool, threads, parallelism, numberOfConnections, batchSize, maxRetries, DEFAULT_RETRY_DELAY_MILLIS);
+    }
+
+    BulkImport(LDAPConnectionPool pool, int threads, int parallelism, int numberOfConnections,
+            int batchSize, int maxRetries, long retryDelayMillis) throws LDAPException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1: " + threads);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        if (numberOfConnections < 1) {
+            throw new IllegalArgumentException("numberOfConnections must be at least 1: " + numberOfConnections);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1: " + batchSize);
+        }
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries cannot be negative: " + maxRetries);
+        }
+        this.pool = pool;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+        this.maxRetries = maxRetries;
+        this.retryDelayMillis = retryDelayMillis;
+        inFlight = new Semaphore(parallelism);
+        //Enough to keep every thread busy with another batch ready behind it.
+        maxPendingBatches = threads * 2;
+        pendingBatches = new Semaphore(maxPendingBatches);
+
+        try {
+            for (int x = 0; x < numberOfConnections; x++) {
+                connections.add(pool.getConnection());
+            }
+        } catch (LDAPException e) {
+            releaseConnections();
+            throw e;
+        }
+
+        translators = Executors.newFixedThreadPool(threads, (Runnable runnable) -> {
+            Thread thread = new Thread(runnable, "ldap-bulk-import-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        retries = Executors.newSingleThreadScheduledExecutor((Runnable runnable) -> {
+            Thread thread = new Thread(runnable, "ldap-bulk-import-retry-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Imports every record read from <code>in</code>, returning once each has either been added or
+     * written to the <code>deadLetter</code>. Neither <code>in</code> nor the <code>deadLetter</code> is closed.
+     * @param in - {@link Reader} to read records from.
+     * @param format - {@link Format} of the records.
+     * @param translator - {@link RecordTranslator} that turns each record into an {@link Entry}. It is
+     * called from several threads at once, so must be thread safe.
+     * @param deadLetter - {@link Writer} that rejected records are written to, in the same format as
+     * they were read. json documents are wrapped as the <code>record</code> of an object that also
+     * holds the <code>line</code> they were read from and the <code>error</code>, LDIF records are
+     * preceded by a comment giving both.
+     * @return the {@link Report} for the import.
+     * @throws IOException if a record could not be read or a rejected record could not be written.
+     */
+    public Report run(Reader in, Format format, RecordTranslator translator, Writer deadLetter) throws IOException {
+        this.format = format;
+        this.deadLetter = deadLetter;
+        read.set(0);
+        imported.set(0);
+        retried.set(0);
+        rejected.set(0);
+        deadLetterFailure.set(null);
+        finished = 0;
+        started = System.nanoTime();
+
+        BufferedReader reader = (in instanceof BufferedReader) ? (BufferedReader) in : new BufferedReader(in);
+        RecordReader records = (format == Format.LDIF) ? new LdifRecordReader(reader) : new NdjsonRecordReader(reader);
+        try {
+            List<Record> batch = new ArrayList<>(batchSize);
+            Record record;
+            while ((record = records.next()) != null) {
+                read.incrementAndGet();
+                batch.add(record);
+                if (batch.size() == batchSize) {
+                    submit(batch, translator);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                submit(batch, translator);
+            }
+        } finally {
+            pendingBatches.acquireUninterruptibly(maxPendingBatches);
+            pendingBatches.release(maxPendingBatches);
+            awaitCompletion();
+            finished = System.nanoTime();
+        }
+
+        if (deadLetterFailure.get() != null) {
+            throw deadLetterFailure.get();
+        }
+        deadLetter.flush();
+
+        Report report = getReport();
+        LOGGER.info("Bulk import finished: " + report);
+        return report;
+    }
+
+    /**
+     * Hands the <code>batch</code> to a translating thread, blocking while the maximum number of batches
+     * are already waiting to be, or being, translated.
+     */
+    private void submit(List<Record> batch, RecordTranslator translator) {
+        pendingBatches.acquireUninterruptibly();
+        try {
+            translators.execute(() -> {
+                try {
+                    for (Record record : batch) {
+                        translate(record, translator);
+                    }
+                } finally {
+                    pendingBatches.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            pendingBatches.release();
+            throw e;
+        }
+    }
+
+    private void translate(Record record, RecordTranslator translator) {
+        Entry entry;
+        try {
+            entry = translator.translate(record.text);
+        } catch (Exception e) {
+            reject(record, e.toString());
+            return;
+        }
+
+        inFlight.acquireUninterruptibly();
+        send(new PendingAdd(record, entry));
+    }
+
+    /**
+     * Sends the add, the caller must already hold an in flight permit for it.
+     */
+    private void send(PendingAdd add) {
+        LDAPConnection connection = connections.get(Math.abs(nextConnection.getAndIncrement() % connections.size()));
+        try {
+            connection.asyncAdd(new AddRequest(add.entry),
+                    (AsyncRequestID requestID, LDAPResult result) -> complete(add, connection, result));
+        } catch (LDAPException e) {
+            complete(add, connection, e.toLDAPResult());
+        }
+    }
+
+    private void complete(PendingAdd add, LDAPConnection connection, LDAPResult result) {
+        ResultCode resultCode = result.getResultCode();
+        if (ResultCode.SUCCESS.equals(resultCode)) {
+            imported.incrementAndGet();
+            inFlight.release();
+            return;
+        }
+        if (ResultCode.ENTRY_ALREADY_EXISTS.equals(resultCode) && add.uncertain) {
+            //The result of an earlier attempt was lost, but the entry was added all the same.
+            imported.incrementAndGet();
+            alreadyAdded.incrementAndGet();
+            inFlight.release();
+            return;
+        }
+
+        if (!ResultCode.isConnectionUsable(resultCode)) {
+            replaceConnection(connection);
+        }
+        if (TRANSIENT_RESULT_CODES.contains(resultCode) && (add.attempts < maxRetries)) {
+            //The in flight permit is kept until the retry completes.
+            long delay = retryDelayMillis << add.attempts;
+            add.attempts++;
+            add.uncertain |= UNCERTAIN_RESULT_CODES.contains(resultCode);
+            retried.incrementAndGet();
+            retries.schedule(() -> send(add), delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        String message = "dn=" + add.entry.getDN() + ": " + resultCode;
+        if (result.getDiagnosticMessage() != null) {
+            message += ": " + result.getDiagnosticMessage();
+        }
+        reject(add.record, message);
+        inFlight.release();
+    }
+
+    private void replaceConnection(LDAPConnection defunct) {
+        connectionLock.lock();
+        try {
+            int index = connections.indexOf(defunct);
+            if (index < 0) {
+                //Already replaced by another add that failed on it.
+                return;
+            }
+            connections.set(index, pool.replaceDefunctConnection(defunct));
+        } catch (LDAPException e) {
+            LOGGER.warn("Unable to replace defunct bulk import connection", e);
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    private void reject(Record record, String reason) {
+        rejected.incrementAndGet();
+        deadLetterLock.lock();
+        try {
+            if (format == Format.LDIF) {
+                deadLetter.write("# line " + record.line + ": " + reason.replace('\n', ' ') + "\n");
+                deadLetter.write(record.text);
+                deadLetter.write("\n\n");
+            }
+            else {
+                ObjectNode rejection = JsonNodeFactory.instance.objectNode();
+                rejection.put("line", record.line);
+                rejection.put("error", reason);
+                rejection.put("record", record.text);
+                deadLetter.write(rejection.toString());
+                deadLetter.write('\n');
+            }
+        } catch (IOException e) {
+            deadLetterFailure.compareAndSet(null, e);
+        } finally {
+            deadLetterLock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until every add that has been sent, including any retries, has completed.
+     */
+    private void awaitCompletion() {
+        inFlight.acquireUninterruptibly(parallelism);
+        inFlight.release(parallelism);
+    }
+
+    /**
+     * @return the {@link Report} of the current, or last, import.
+     */
+    public Report getReport() {
+        long elapsedNanos = ((finished == 0) ? System.nanoTime() : finished) - started;
+        return new Report(read.get(), imported.get(), alreadyAdded.get(), retried.get(), rejected.get(), elapsedNanos);
+    }
+
+    /**
+     * Waits for all adds to complete, then stops the threads and returns the connections to the pool.
+     */
+    @Override
+    public void close() {
+        awaitCompletion();
+        translators.shutdown();
+        retries.shutdown();
+        releaseConnections();
+    }
+
+    private void releaseConnections() {
+        for (LDAPConnection connection : connections) {
+            pool.releaseConnection(connection);
+        }
+        connections.clear();
+    }
+
+    /**
+     * Translates a single record into the {@link Entry} to add.
+     */
+    public interface RecordTranslator {
+
+        /**
+         * @param record - text of the record, the lines of an LDIF record are separated by <code>\n</code>.
+         * @return the {@link Entry} to add.
+         * @throws Exception if the record is invalid, it is written to the dead letter {@link Writer}
+         * with the exception's message.
+         */
+        Entry translate(String record) throws Exception;
+
+    }
+
+    /**
+     * Totals for an import, along with how quickly entries were added.
+     */
+    public static final class Report {
+
+        private final long read;
+        private final long imported;
+        private final long alreadyAdded;
+        private final long retried;
+        private final long rejected;
+        private final long elapsedNanos;
+
+        Report(long read, long imported, long alreadyAdded, long retried, long rejected, long elapsedNanos) {
+            this.read = read;
+            this.imported = imported;
+            this.alreadyAdded = alreadyAdded;
+            this.retried = retried;
+            this.rejected = rejected;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the number of records read.
+         */
+        public long getRead() {
+            return read;
+        }
+
+        /**
+         * @return the number of entries added.
+         */
+        public long getImported() {
+            return imported;
+        }
+
+        /**
+         * @return the number of imported entries that a retried add found to already exist, after
+         * an earlier attempt failed without it being known whether the entry had been added. These
+         * are included in {@link #getImported()}.
+         */
+        public long getAlreadyAdded() {
+            return alreadyAdded;
+        }
+
+        /**
+         * @return the number of times an add was retried.
+         */
+        public long getRetried() {
+            return retried;
+        }
+
+        /**
+         * @return the number of records written to the dead letter {@link Writer}.
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+
+        /**
+         * @return the number of entries added per second.
+         */
+        public double getEntriesPerSecond() {
+            return (elapsedNanos <= 0) ? 0 : imported * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Report [read=" + read
+                    + ", imported=" + imported
+                    + ", alreadyAdded=" + alreadyAdded
+                    + ", retried=" + retried
+                    + ", rejected=" + rejected
+                    + ", elapsedMillis=" + getElapsedMillis()
+                    + ", entriesPerSecond=" + Math.round(getEntriesPerSecond()) + "]";
+        }
+
+    }
+
+    /**
+     * A record, and the line it started on.
+     */
+    private static final class Record {
+
+        final long line;
+        final String text;
+
+        Record(long line, String text) {
+            this.line = line;
+            this.text = text;
+        }
+
+    }
+
+    /**
+     * An add along with the number of times it has been retried, and whether any of those attempts
+     * may have been applied.
+     */
+    private static final class PendingAdd {
+
+        final Record record;
+        final Entry entry;
+        int attempts;
+        boolean uncertain;
+
+        PendingAdd(Record record, Entry entry) {
+            this.record = record;
+            this.entry = entry;
+        }
+
+    }
+
+    private interface RecordReader {
+
+        /**
+         * @return the next {@link Record}, or <code>null</code> at the end of the input.
+         */
+        Record next() throws IOException;
+
+    }
+
+    private static final class NdjsonRecordReader implements RecordReader {
+
+        private final BufferedReader reader;
+        private long line;
+
+        NdjsonRecordReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Record next() throws IOException {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (!text.trim().isEmpty()) {
+                    return new Record(line, text);
+                }
+            }
+            return null;
+        }
+
+    }
+
+    /**
+     * Splits LDIF into records on blank lines, dropping comments and the version line.
+     */
+    private static final class LdifRecordReader implements RecordReader {
+
+        private final BufferedReader reader;
+        private long line;
+        private boolean first = true;
+
+        LdifRecordReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Record next() throws IOException {
+            StringBuilder text = new StringBuilder();
+            long startLine = 0;
+            boolean inComment = false;
+            String current;
+            while ((current = reader.readLine()) != null) {
+                line++;
+                if (current.isEmpty()) {
+                    if (text.length() > 0) {
+                        break;
+                    }
+                    continue;
+                }
+                if (current.charAt(0) == '#' || (inComment && (current.charAt(0) == ' '))) {
+                    //Comments may be folded onto following lines as well.
+                    inComment = true;
+                    continue;
+                }
+                inComment = false;
+                if (first) {
+                    first = false;
+                    if (current.regionMatches(true, 0, LDIF_VERSION_PREFIX, 0, LDIF_VERSION_PREFIX.length())) {
+                        continue;
+                    }
+                }
+                if (text.length() == 0) {
+                    startLine = line;
+                }
+                else {
+                    text.append('\n');
+                }
+                text.append(current);
+            }
+            return (text.length() == 0) ? null : new Record(startLine, text.toString());
+        }
+
+    }
+
+}
@@ -0,0 +1,399 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.IntermediateResponse;
+import com.unboundid.ldap.sdk.IntermediateResponseListener;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.RootDSE;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.ContentSyncDoneControl;
+import com.unboundid.ldap.sdk.controls.ContentSyncInfoIntermediateResponse;
+import com.unboundid.ldap.sdk.controls.ContentSyncRequestControl;
+import com.unboundid.ldap.sdk.controls.ContentSyncRequestMode;
+import com.unboundid.ldap.sdk.controls.ContentSyncState;
+import com.unboundid.ldap.sdk.controls.ContentSyncStateControl;
+import com.unboundid.ldap.sdk.controls.EntryChangeNotificationControl;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import com.unboundid.ldap.sdk.controls.PersistentSearchRequestControl;
+
+/**
+ * Follows the changes made beneath a base DN, by whoever made them, and reports them to a
+ * {@link Listener} so that caches of the entries can be kept coherent. Content Synchronization
+ * (RFC 4533) is used in refreshAndPersist mode when the server supports it, resuming from the
+ * last cookie the server handed out, so that only the changes since then are replayed. Otherwise
+ * a persistent search is used, which cannot resume, so the {@link Listener} is told to discard
+ * everything each time the search is (re)started.
+ *
+ * The search runs on a daemon thread of its own over a connection checked out of the pool for as
+ * long as it lasts. If the search ends, for whatever reason, it is started again after a delay
+ * until this is closed.
+ *
+ * @author dcrissman
+ */
+public class CacheSync implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheSync.class);
+
+    public static final long DEFAULT_RETRY_DELAY_MILLIS = 5000;
+
+    /**
+     * How changes are followed.
+     */
+    public enum Mode {
+        CONTENT_SYNC,
+        PERSISTENT_SEARCH
+    }
+
+    /**
+     * Receives the changes.
+     */
+    public interface Listener {
+
+        /**
+         * The entry at the <code>dn</code> was added, modified, deleted or renamed to or from the <code>dn</code>.
+         */
+        void entryChanged(String dn);
+
+        /**
+         * Changes may have been missed, or cannot be attributed to a DN, so everything known
+         * about the entries should be discarded.
+         */
+        void resynchronize();
+
+    }
+
+    private final LDAPConnectionPool pool;
+    private final String baseDN;
+    private final Mode mode;
+    private final SyncCookieStore cookieStore;
+    private final String cookieId;
+    private final Listener listener;
+    private final long retryDelayMillis;
+    private final Thread thread;
+
+    private volatile boolean closed;
+    private volatile LDAPConnection connection;
+    private volatile ASN1OctetString cookie;
+
+    /**
+     * @param pool - {@link LDAPConnectionPool} to check the connection the changes are followed over out of.
+     * @param baseDN - DN beneath which to follow changes.
+     * @param mode - {@link Mode} to follow the changes with.
+     * @param cookieStore - {@link SyncCookieStore} to keep cookies in, or <code>null</code> to only
+     * keep them in memory.
+     * @param cookieId - identifies the cookie within the <code>cookieStore</code>.
+     * @param listener - {@link Listener} to report the changes to.
+     * @param retryDelayMillis - milliseconds to wait before starting the search again once it ends.
+     */
+    public CacheSync(LDAPConnectionPool pool, String baseDN, Mode mode, SyncCookieStore cookieStore,
+            String cookieId, Listener listener, long retryDelayMillis) {
+        if (retryDelayMillis < 0) {
+            throw new IllegalArgumentException("retryDelayMillis cannot be negative: " + retryDelayMillis);
+        }
+        this.pool = pool;
+        this.baseDN = baseDN;
+        this.mode = mode;
+        this.cookieStore = cookieStore;
+        this.cookieId = cookieId;
+        this.listener = listener;
+        this.retryDelayMillis = retryDelayMillis;
+        cookie = loadCookie();
+
+        thread = new Thread(this::run, "ldap-cache-sync-" + baseDN);
+        thread.setDaemon(true);
+    }
+
+    /**
+     * @param rootDSE - {@link RootDSE} of the server, may be <code>null</code>.
+     * @return the {@link Mode} changes can be followed with, preferring Content Synchronization,
+     * or <code>null</code> if the server supports neither.
+     */
+    public static Mode getSupportedMode(RootDSE rootDSE) {
+        if (rootDSE == null) {
+            return null;
+        }
+        if (rootDSE.supportsControl(ContentSyncRequestControl.SYNC_REQUEST_OID)) {
+            return Mode.CONTENT_SYNC;
+        }
+        if (rootDSE.supportsControl(PersistentSearchRequestControl.PERSISTENT_SEARCH_REQUEST_OID)) {
+            return Mode.PERSISTENT_SEARCH;
+        }
+        return null;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the last cookie the server handed out, or <code>null</code> if there is none.
+     */
+    ASN1OctetString getCookie() {
+        return cookie;
+    }
+
+    /**
+     * Starts following changes.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops following changes.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LDAPConnection current = connection;
+        if (current != null) {
+            current.close();
+        }
+        thread.interrupt();
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                follow();
+            } catch (LDAPException e) {
+                if (!closed) {
+                    LOGGER.warn("Stopped following changes beneath " + baseDN + ", retrying in " + retryDelayMillis + "ms", e);
+                }
+            }
+
+            try {
+                TimeUnit.MILLISECONDS.sleep(retryDelayMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void follow() throws LDAPException {
+        LDAPConnection current = pool.getConnection();
+        connection = current;
+        try {
+            if (closed) {
+                return;
+            }
+            if ((mode == Mode.PERSISTENT_SEARCH) || (cookie == null)) {
+                listener.resynchronize();
+            }
+
+            SearchResult result;
+            try {
+                result = current.search(createSearchRequest());
+            } catch (LDAPSearchException e) {
+                handleResult(e.getSearchResult());
+                throw e;
+            }
+            handleResult(result);
+        } finally {
+            connection = null;
+            //The connection was held for as long as the search lasted, so do not hand it back out.
+            pool.releaseDefunctConnection(current);
+        }
+    }
+
+    /**
+     * @return the {@link SearchRequest} that follows changes in the {@link Mode}, starting from the
+     * current cookie.
+     */
+    SearchRequest createSearchRequest() {
+        ChangeListener changeListener = new ChangeListener();
+        SearchRequest request = new SearchRequest(
+                changeListener,
+                baseDN,
+                SearchScope.SUB,
+                Filter.createPresenceFilter("objectClass"),
+                SearchRequest.NO_ATTRIBUTES);
+        request.setIntermediateResponseListener(changeListener);
+        //The search lasts until it is abandoned.
+        request.setResponseTimeoutMillis(0L);
+
+        if (mode == Mode.CONTENT_SYNC) {
+            request.addControl(new ContentSyncRequestControl(true, ContentSyncRequestMode.REFRESH_AND_PERSIST, cookie, false));
+        }
+        else {
+            request.addControl(new PersistentSearchRequestControl(PersistentSearchChangeType.allChangeTypes(), true, true, true));
+        }
+        return request;
+    }
+
+    void handleEntry(SearchResultEntry entry) {
+        if (mode == Mode.CONTENT_SYNC) {
+            ContentSyncStateControl state = null;
+            try {
+                state = ContentSyncStateControl.get(entry);
+            } catch (LDAPException e) {
+                LOGGER.warn("Unable to decode the sync state of " + entry.getDN(), e);
+            }
+
+            if ((state == null) || (state.getState() != ContentSyncState.PRESENT)) {
+                listener.entryChanged(entry.getDN());
+            }
+            if (state != null) {
+                updateCookie(state.getCookie());
+            }
+        }
+        else {
+            listener.entryChanged(entry.getDN());
+
+            try {
+                EntryChangeNotificationControl change = EntryChangeNotificationControl.get(entry);
+                if ((change != null) && (change.getPreviousDN() != null)) {
+                    listener.entryChanged(change.getPreviousDN());
+                }
+            } catch (LDAPException e) {
+                //A rename cannot be told apart, so the previous DN is unknown.
+                LOGGER.warn("Unable to decode the entry change notification of " + entry.getDN(), e);
+                listener.resynchronize();
+            }
+        }
+    }
+
+    void handleIntermediateResponse(IntermediateResponse response) {
+        if (!ContentSyncInfoIntermediateResponse.SYNC_INFO_OID.equals(response.getOID())) {
+            return;
+        }
+
+        ContentSyncInfoIntermediateResponse info;
+        try {
+            info = ContentSyncInfoIntermediateResponse.decode(response);
+        } catch (LDAPException e) {
+            LOGGER.warn("Unable to decode sync info beneath " + baseDN, e);
+            listener.resynchronize();
+            return;
+        }
+
+        switch (info.getType()) {
+            case SYNC_ID_SET:
+                //Deleted entries are only identified by their entryUUID, not their DN.
+                if (info.refreshDeletes()) {
+                    listener.resynchronize();
+                }
+                break;
+            case REFRESH_PRESENT:
+                //Whatever was not reported present has been deleted, which again leaves the DNs unknown.
+                listener.resynchronize();
+                break;
+            default:
+                break;
+        }
+        updateCookie(info.getCookie());
+    }
+
+    void handleResult(SearchResult result) {
+        if (result == null) {
+            return;
+        }
+
+        if (ResultCode.E_SYNC_REFRESH_REQUIRED.equals(result.getResultCode())) {
+            //The cookie is too old to resume from, so start over.
+            updateCookie(null, true);
+            listener.resynchronize();
+            return;
+        }
+
+        try {
+            ContentSyncDoneControl done = ContentSyncDoneControl.get(result);
+            if (done != null) {
+                updateCookie(done.getCookie());
+            }
+        } catch (LDAPException e) {
+            LOGGER.warn("Unable to decode the sync done control beneath " + baseDN, e);
+        }
+    }
+
+    private void updateCookie(ASN1OctetString newCookie) {
+        if (newCookie != null) {
+            updateCookie(newCookie, false);
+        }
+    }
+
+    private void updateCookie(ASN1OctetString newCookie, boolean discard) {
+        cookie = newCookie;
+        if (cookieStore == null) {
+            return;
+        }
+        try {
+            cookieStore.store(cookieId, discard ? null : newCookie.getValue());
+        } catch (IOException e) {
+            LOGGER.warn("Unable to store the sync cookie for " + cookieId, e);
+        }
+    }
+
+    private ASN1OctetString loadCookie() {
+        if (cookieStore == null) {
+            return null;
+        }
+        try {
+            byte[] value = cookieStore.load(cookieId);
+            return (value == null) ? null : new ASN1OctetString(value);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to load the sync cookie for " + cookieId + ", starting over", e);
+            return null;
+        }
+    }
+
+    /**
+     * Hands the responses to the search back to the {@link CacheSync}.
+     */
+    private class ChangeListener implements SearchResultListener, IntermediateResponseListener {
+
+        private static final long serialVersionUID = 2216537364735628381L;
+
+        @Override
+        public void searchEntryReturned(SearchResultEntry entry) {
+            handleEntry(entry);
+        }
+
+        @Override
+        public void searchReferenceReturned(SearchResultReference reference) {
+            //Changes beneath a referral are made on another server, which is not followed.
+        }
+
+        @Override
+        public void intermediateResponseReturned(IntermediateResponse response) {
+            handleIntermediateResponse(response);
+        }
+
+    }
+
+}
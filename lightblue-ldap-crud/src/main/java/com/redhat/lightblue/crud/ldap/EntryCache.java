@@ -0,0 +1,367 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import com.redhat.lightblue.common.ldap.CacheEviction;
+import com.redhat.lightblue.common.ldap.LdapDataStore;
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+
+/**
+ * Read-through cache of the entries of a single entity, keyed by DN and the set of attributes
+ * that were requested. Entries are served until their time to live runs out, and the cache is
+ * bounded both by a number of entries and by their estimated size in bytes, making room by
+ * either {@link CacheEviction#LRU} or {@link CacheEviction#LFU}.
+ *
+ * Writes must {@link #invalidate(String)} the DNs they touch. Loads that were already in
+ * flight when an invalidation happened are not cached, so a write can not be undone by a
+ * slower read of the old entry. Entries are shared between readers and must not be modified.
+ *
+ * @author dcrissman
+ */
+public class EntryCache {
+
+    /** Rough, fixed costs of the objects behind a cached entry, its attributes and their values. */
+    static final long ENTRY_OVERHEAD_BYTES = 160;
+    static final long ATTRIBUTE_OVERHEAD_BYTES = 80;
+    static final long VALUE_OVERHEAD_BYTES = 40;
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final CacheEviction eviction;
+    private final LongSupplier nanoClock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    /** In access order, so the first node is the least recently used. */
+    private final LinkedHashMap<Key, Node> nodes = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<Key>> keysByDn = new HashMap<>();
+    /** Only maintained for {@link CacheEviction#LFU}. */
+    private final TreeMap<Long, LinkedHashSet<Key>> keysByFrequency = new TreeMap<>();
+    private long bytes;
+    private long invalidations;
+    private long hits;
+    private long misses;
+
+    public EntryCache(LdapDataStore store) {
+        this(store.getEntryCacheTtlMillis(), store.getEntryCacheMaxEntries(), store.getEntryCacheMaxBytes(),
+                store.getEntryCacheEviction(), System::nanoTime);
+    }
+
+    EntryCache(long ttlMillis, int maxEntries, long maxBytes, CacheEviction eviction, LongSupplier nanoClock) {
+        ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.eviction = eviction;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @param store - {@link LdapDataStore} to compare settings with.
+     * @return <code>true</code> if this cache was built with the entry cache settings of the <code>store</code>.
+     */
+    public boolean isConfiguredFor(LdapDataStore store) {
+        return (ttlNanos == TimeUnit.MILLISECONDS.toNanos(store.getEntryCacheTtlMillis()))
+                && (maxEntries == store.getEntryCacheMaxEntries())
+                && (maxBytes == store.getEntryCacheMaxBytes())
+                && (eviction == store.getEntryCacheEviction());
+    }
+
+    /**
+     * Returns the entry at the <code>dn</code>, loading and caching it if it is not already cached.
+     * @param dn - DN of the entry.
+     * @param attributes - attributes that were requested for the entry.
+     * @param loader - reads the entry from the directory on a miss.
+     * @return the entry, or <code>null</code> if the <code>loader</code> found none. Missing
+     * entries are not cached.
+     * @throws LDAPException if the <code>loader</code> failed.
+     */
+    public SearchResultEntry get(String dn, String[] attributes, EntryLoader loader) throws LDAPException {
+        Key key = new Key(normalize(dn), attributes);
+        long loadedAfter;
+
+        lock.lock();
+        try {
+            Node node = nodes.get(key);
+            if ((node != null) && (nanoClock.getAsLong() - node.loadedNanos < ttlNanos)) {
+                hits++;
+                if (eviction == CacheEviction.LFU) {
+                    reposition(key, node.frequency, ++node.frequency);
+                }
+                return node.entry;
+            }
+            if (node != null) {
+                remove(key);
+            }
+            misses++;
+            loadedAfter = invalidations;
+        } finally {
+            lock.unlock();
+        }
+
+        SearchResultEntry entry = loader.load();
+        if (entry == null) {
+            return null;
+        }
+
+        long size = estimateBytes(entry);
+        lock.lock();
+        try {
+            if ((loadedAfter != invalidations) || (size > maxBytes)) {
+                return entry;
+            }
+            remove(key);
+            //Make room first, so that the new entry is not itself the one evicted.
+            while (!nodes.isEmpty() && ((nodes.size() >= maxEntries) || (bytes + size > maxBytes))) {
+                remove(nextToEvict());
+            }
+            Node node = new Node(entry, size, nanoClock.getAsLong());
+            nodes.put(key, node);
+            keysByDn.computeIfAbsent(key.dn, (String k) -> new HashSet<>()).add(key);
+            if (eviction == CacheEviction.LFU) {
+                reposition(key, 0, node.frequency);
+            }
+            bytes += size;
+        } finally {
+            lock.unlock();
+        }
+        return entry;
+    }
+
+    /**
+     * Discards every cached form of the entry at the <code>dn</code>.
+     * @param dn - DN of the entry that was written.
+     */
+    public void invalidate(String dn) {
+        String normalizedDn = normalize(dn);
+        lock.lock();
+        try {
+            invalidations++;
+            Set<Key> keys = keysByDn.get(normalizedDn);
+            if (keys != null) {
+                for (Key key : keys.toArray(new Key[0])) {
+                    remove(key);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Discards everything in the cache.
+     */
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            invalidations++;
+            nodes.clear();
+            keysByDn.clear();
+            keysByFrequency.clear();
+            bytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of cached entries.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return nodes.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the estimated size, in bytes, of all the cached entries together.
+     */
+    public long getEstimatedBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        lock.lock();
+        try {
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMisses() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Key nextToEvict() {
+        if (eviction == CacheEviction.LFU) {
+            return keysByFrequency.firstEntry().getValue().iterator().next();
+        }
+        return nodes.keySet().iterator().next();
+    }
+
+    private void remove(Key key) {
+        Node node = nodes.remove(key);
+        if (node == null) {
+            return;
+        }
+        bytes -= node.bytes;
+
+        Set<Key> keys = keysByDn.get(key.dn);
+        keys.remove(key);
+        if (keys.isEmpty()) {
+            keysByDn.remove(key.dn);
+        }
+        if (eviction == CacheEviction.LFU) {
+            reposition(key, node.frequency, 0);
+        }
+    }
+
+    /**
+     * Moves the <code>key</code> between frequency buckets, where a frequency of <code>0</code>
+     * means it is not in any.
+     */
+    private void reposition(Key key, long from, long to) {
+        if (from > 0) {
+            LinkedHashSet<Key> keys = keysByFrequency.get(from);
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysByFrequency.remove(from);
+            }
+        }
+        if (to > 0) {
+            keysByFrequency.computeIfAbsent(to, (Long k) -> new LinkedHashSet<>()).add(key);
+        }
+    }
+
+    /**
+     * @return an estimate of the memory held by the <code>entry</code>.
+     */
+    static long estimateBytes(SearchResultEntry entry) {
+        long size = ENTRY_OVERHEAD_BYTES + 2L * entry.getDN().length();
+        for (Attribute attribute : entry.getAttributes()) {
+            size += ATTRIBUTE_OVERHEAD_BYTES + 2L * attribute.getName().length();
+            for (ASN1OctetString value : attribute.getRawValues()) {
+                size += VALUE_OVERHEAD_BYTES + value.getValueLength();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the <code>dn</code> in a form that compares equal however it was written.
+     */
+    static String normalize(String dn) {
+        try {
+            return DN.normalize(dn);
+        } catch (LDAPException e) {
+            return dn.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Reads an entry from the directory.
+     */
+    public interface EntryLoader {
+        /**
+         * @return the entry, or <code>null</code> if there is none.
+         */
+        SearchResultEntry load() throws LDAPException;
+    }
+
+    private static final class Key {
+
+        final String dn;
+        final String[] attributes;
+        final int hash;
+
+        Key(String dn, String[] attributes) {
+            this.dn = dn;
+            this.attributes = new String[attributes.length];
+            for (int x = 0; x < attributes.length; x++) {
+                this.attributes[x] = attributes[x].toLowerCase(Locale.ROOT);
+            }
+            Arrays.sort(this.attributes);
+            hash = (31 * dn.hashCode()) + Arrays.hashCode(this.attributes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return dn.equals(other.dn) && Arrays.equals(attributes, other.attributes);
+        }
+
+    }
+
+    private static final class Node {
+
+        final SearchResultEntry entry;
+        final long bytes;
+        final long loadedNanos;
+        long frequency = 1;
+
+        Node(SearchResultEntry entry, long bytes, long loadedNanos) {
+            this.entry = entry;
+            this.bytes = bytes;
+            this.loadedNanos = loadedNanos;
+        }
+
+    }
+
+}
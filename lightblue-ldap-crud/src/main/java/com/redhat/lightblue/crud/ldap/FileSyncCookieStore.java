@@ -0,0 +1,83 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * {@link SyncCookieStore} that keeps each cookie in a file of its own within a directory. Cookies
+ * are written to a temporary file first and then moved into place, so a crash part way through
+ * leaves the previous cookie intact.
+ *
+ * @author dcrissman
+ */
+public class FileSyncCookieStore implements SyncCookieStore {
+
+    private static final String COOKIE_SUFFIX = ".cookie";
+
+    private final Path directory;
+
+    /**
+     * @param directory - directory to keep the cookies in, which is created if it does not exist.
+     * @throws IOException if the directory could not be created.
+     */
+    public FileSyncCookieStore(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    @Override
+    public byte[] load(String id) throws IOException {
+        Path file = getFile(id);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        return Files.readAllBytes(file);
+    }
+
+    @Override
+    public void store(String id, byte[] cookie) throws IOException {
+        Path file = getFile(id);
+        if (cookie == null) {
+            Files.deleteIfExists(file);
+            return;
+        }
+
+        Path temp = Files.createTempFile(directory, null, null);
+        try {
+            Files.write(temp, cookie);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path getFile(String id) {
+        try {
+            return directory.resolve(URLEncoder.encode(id, "UTF-8") + COOKIE_SUFFIX);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.common.ldap.LdapDataSourceOptions;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+
+/**
+ * Performs hedged reads. A search is first sent to a single server, if that server has not
+ * answered within the configured latency percentile, then the same search is sent to a
+ * second server and whichever answers first is used. The slower search is abandoned.
+ *
+ * @author dcrissman
+ */
+public class HedgedSearch {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HedgedSearch.class);
+
+    /**
+     * Number of pooled connections to try when looking for one that is connected to
+     * a different server than the original search.
+     */
+    static final int MAX_ALTERNATE_ATTEMPTS = 3;
+
+    private final LDAPConnectionPool connectionPool;
+    private final LdapDataSourceOptions options;
+    private final LatencyTracker latencyTracker;
+
+    public HedgedSearch(LDAPConnectionPool connectionPool, LdapDataSourceOptions options) {
+        if (!options.isHedgingEnabled()) {
+            throw new IllegalArgumentException("Hedging is not enabled: " + options);
+        }
+        this.connectionPool = connectionPool;
+        this.options = options;
+        latencyTracker = new LatencyTracker(options.getHedgeDelayPercentile());
+    }
+
+    /**
+     * @return number of milliseconds to wait on the first server before hedging.
+     */
+    public long getHedgeDelayMillis() {
+        return Math.max(options.getHedgeMinDelayMillis(), latencyTracker.getEstimate());
+    }
+
+    /**
+     * Performs the search, hedging against a second server if necessary.
+     * @param connection - {@link LDAPConnection} to send the initial search over.
+     * @param searchRequest - {@link SearchRequest} to perform.
+     * @return the {@link SearchResult} of whichever server answered first.
+     * @throws LDAPSearchException if the search was not successful.
+     */
+    public SearchResult search(LDAPConnection connection, SearchRequest searchRequest) throws LDAPException {
+        long start = System.nanoTime();
+        long timeoutMillis = searchRequest.getResponseTimeoutMillis(connection);
+        if (timeoutMillis <= 0) {
+            timeoutMillis = Long.MAX_VALUE;
+        }
+
+        AsyncSearch primary = AsyncSearch.start(connection, searchRequest);
+        SearchResult result = await(primary, getHedgeDelayMillis());
+        if (result == null) {
+            LDAPConnection alternateConnection = checkoutAlternateConnection(connection);
+            if (alternateConnection == null) {
+                result = awaitOrAbandon(primary, timeoutMillis);
+            }
+            else {
+                try {
+                    result = race(primary, AsyncSearch.start(alternateConnection, searchRequest), timeoutMillis);
+                } finally {
+                    connectionPool.releaseConnection(alternateConnection);
+                }
+            }
+        }
+
+        latencyTracker.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        if (!ResultCode.SUCCESS.equals(result.getResultCode())) {
+            throw new LDAPSearchException(result);
+        }
+        return result;
+    }
+
+    private SearchResult race(AsyncSearch first, AsyncSearch second, long timeoutMillis) throws LDAPException {
+        try {
+            CompletableFuture.anyOf(first.getFuture(), second.getFuture()).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            first.abandon();
+            second.abandon();
+            throw new LDAPSearchException(ResultCode.TIMEOUT, "Timed out waiting on hedged search results.");
+        } catch (InterruptedException | ExecutionException e) {
+            first.abandon();
+            second.abandon();
+            throw interrupted(e);
+        }
+
+        AsyncSearch winner = first.getFuture().isDone() ? first : second;
+        AsyncSearch loser = (winner == first) ? second : first;
+        SearchResult result = winner.getFuture().join();
+
+        if (!ResultCode.SUCCESS.equals(result.getResultCode())) {
+            //The faster server failed, give the other server a chance to answer.
+            SearchResult other = awaitOrAbandon(loser, timeoutMillis);
+            if (ResultCode.SUCCESS.equals(other.getResultCode())) {
+                return other;
+            }
+            return result;
+        }
+
+        loser.abandon();
+        return result;
+    }
+
+    private SearchResult awaitOrAbandon(AsyncSearch search, long timeoutMillis) throws LDAPException {
+        SearchResult result = await(search, timeoutMillis);
+        if (result == null) {
+            search.abandon();
+            throw new LDAPSearchException(ResultCode.TIMEOUT, "Timed out waiting on search results.");
+        }
+        return result;
+    }
+
+    /**
+     * @return the {@link SearchResult} or <code>null</code> if the search did not complete
+     * within <code>timeoutMillis</code>.
+     */
+    private SearchResult await(AsyncSearch search, long timeoutMillis) throws LDAPException {
+        try {
+            return search.getFuture().get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException | ExecutionException e) {
+            search.abandon();
+            throw interrupted(e);
+        }
+    }
+
+    private LDAPException interrupted(Exception e) {
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        return new LDAPSearchException(ResultCode.LOCAL_ERROR, "Interrupted while waiting on search results.", e);
+    }
+
+    /**
+     * Checks out a pooled connection to a different server than the one <code>connection</code>
+     * is connected to. The pool spreads its connections over the servers in its ServerSet,
+     * so only a few attempts are made before giving up.
+     * @return an {@link LDAPConnection} to a different server, or <code>null</code> if one
+     * could not be found.
+     */
+    private LDAPConnection checkoutAlternateConnection(LDAPConnection connection) {
+        List<LDAPConnection> rejected = new ArrayList<>();
+        try {
+            for (int x = 0; x < MAX_ALTERNATE_ATTEMPTS; x++) {
+                LDAPConnection candidate = connectionPool.getConnection();
+                if (isSameServer(connection, candidate)) {
+                    rejected.add(candidate);
+                }
+                else {
+                    return candidate;
+                }
+            }
+        } catch (LDAPException e) {
+            LOGGER.debug("Unable to checkout a connection to hedge a search with.", e);
+        } finally {
+            for (LDAPConnection r : rejected) {
+                connectionPool.releaseConnection(r);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSameServer(LDAPConnection a, LDAPConnection b) {
+        return (a.getConnectedPort() == b.getConnectedPort())
+                && String.valueOf(a.getConnectedAddress()).equals(String.valueOf(b.getConnectedAddress()));
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.Arrays;
+
+/**
+ * Keeps a sliding window of recently observed latencies and estimates a
+ * configured percentile from it. The estimate is refreshed periodically rather
+ * than on every read so that looking it up stays cheap.
+ *
+ * @author dcrissman
+ */
+public class LatencyTracker {
+
+    static final int WINDOW_SIZE = 1024;
+    static final int REFRESH_INTERVAL = 64;
+
+    private final double percentile;
+    private final long[] samples = new long[WINDOW_SIZE];
+    private int next = 0;
+    private int count = 0;
+    private long recorded = 0;
+    private volatile long estimate = 0;
+
+    /**
+     * @param percentile - the percentile (0 - 100 exclusive) to estimate.
+     */
+    public LatencyTracker(double percentile) {
+        if ((percentile <= 0) || (percentile >= 100)) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100 exclusive: " + percentile);
+        }
+        this.percentile = percentile;
+    }
+
+    /**
+     * Records an observed latency.
+     * @param millis - latency in milliseconds.
+     */
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % WINDOW_SIZE;
+        if (count < WINDOW_SIZE) {
+            count++;
+        }
+        if (++recorded % REFRESH_INTERVAL == 0) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil((percentile / 100) * count) - 1;
+            estimate = sorted[Math.max(0, index)];
+        }
+    }
+
+    /**
+     * @return the latest percentile estimate in milliseconds, or <code>0</code> if not
+     * enough samples have been recorded yet.
+     */
+    public long getEstimate() {
+        return estimate;
+    }
+
+}
@@ -14,19 +14,37 @@
  */
 package com.redhat.lightblue.crud.ldap;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.redhat.lightblue.common.ldap.DBResolver;
 import com.redhat.lightblue.common.ldap.LdapConstant;
+import com.redhat.lightblue.common.ldap.LdapDataSourceOptions;
 import com.redhat.lightblue.common.ldap.LdapDataStore;
 import com.redhat.lightblue.common.ldap.LdapErrorCode;
 import com.redhat.lightblue.common.ldap.LdapFieldNameTranslator;
@@ -37,40 +55,62 @@ import com.redhat.lightblue.crud.CRUDInsertionResponse;
 import com.redhat.lightblue.crud.CRUDOperationContext;
 import com.redhat.lightblue.crud.CRUDSaveResponse;
 import com.redhat.lightblue.crud.CRUDUpdateResponse;
+import com.redhat.lightblue.crud.ConstraintValidator;
 import com.redhat.lightblue.crud.CrudConstants;
 import com.redhat.lightblue.crud.DocCtx;
 import com.redhat.lightblue.crud.CRUDHealth;
 import com.redhat.lightblue.crud.ListDocumentStream;
 import com.redhat.lightblue.crud.ldap.translator.EntryTranslatorFromJson;
 import com.redhat.lightblue.crud.ldap.translator.ModificationTranslatorFromJson;
+import com.redhat.lightblue.crud.ldap.translator.AttributeDescriptions;
+import com.redhat.lightblue.crud.ldap.translator.ProjectionPlan;
 import com.redhat.lightblue.crud.ldap.translator.ResultTranslatorToJson;
 import com.redhat.lightblue.crud.ldap.translator.SortTranslator;
 import com.redhat.lightblue.eval.FieldAccessRoleEvaluator;
 import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.metadata.ArrayField;
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.FieldCursor;
 import com.redhat.lightblue.metadata.MetadataConstants;
 import com.redhat.lightblue.metadata.MetadataListener;
 import com.redhat.lightblue.metadata.PredefinedFields;
 import com.redhat.lightblue.metadata.types.StringType;
+import com.redhat.lightblue.query.BinaryComparisonOperator;
 import com.redhat.lightblue.query.Projection;
 import com.redhat.lightblue.query.QueryExpression;
 import com.redhat.lightblue.query.Sort;
 import com.redhat.lightblue.query.UpdateExpression;
+import com.redhat.lightblue.query.ValueComparisonExpression;
 import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonUtils;
 import com.redhat.lightblue.util.Path;
+import com.unboundid.ldap.sdk.AddRequest;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.LDAPSearchException;
 import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.RDN;
 import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.RootDSE;
 import com.unboundid.ldap.sdk.SearchRequest;
 import com.unboundid.ldap.sdk.SearchResult;
 import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
 import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.UpdatableLDAPRequest;
+import com.unboundid.ldap.sdk.controls.MatchedValuesFilter;
+import com.unboundid.ldap.sdk.controls.MatchedValuesRequestControl;
 import com.unboundid.ldap.sdk.controls.ServerSideSortRequestControl;
+import com.unboundid.ldap.sdk.controls.SubtreeDeleteRequestControl;
 import com.unboundid.ldap.sdk.controls.VirtualListViewRequestControl;
+import com.unboundid.ldap.sdk.schema.Schema;
+import com.unboundid.ldif.LDIFReader;
 
 /**
  * {@link CRUDController} implementation for LDAP.
@@ -79,7 +119,25 @@ import com.unboundid.ldap.sdk.controls.VirtualListViewRequestControl;
  */
 public class LdapCRUDController implements CRUDController {
 
-    private final DBResolver dbResolver;
+    private static final Logger LOGGER = LoggerFactory.getLogger(LdapCRUDController.class);
+
+    /** How long a failure to read the schema or RootDSE is remembered before reading it again. */
+    private static final long FAILED_READ_RETRY_MILLIS = 30000;
+
+    final DBResolver dbResolver;
+    private final Map<String, HedgedSearch> hedgedSearches = new ConcurrentHashMap<>();
+    private final Map<String, ParallelTranslation> parallelTranslations = new ConcurrentHashMap<>();
+    private final Map<String, ServerInfo<RootDSE>> rootDSEs = new ConcurrentHashMap<>();
+    private final Map<String, ServerInfo<Schema>> schemas = new ConcurrentHashMap<>();
+    /*
+     * Entities, and versions of them, that share a database and base DN share the same entries,
+     * so they also share caches. A write through any one of them must be seen by all the others.
+     */
+    private final Map<CacheKey, EntryCache> entryCaches = new ConcurrentHashMap<>();
+    private final Map<CacheKey, QueryResultCache> queryResultCaches = new ConcurrentHashMap<>();
+    private final Map<CacheKey, NegativeLookupCache> negativeLookupCaches = new ConcurrentHashMap<>();
+    private final Map<CacheKey, SingleFlight> singleFlights = new ConcurrentHashMap<>();
+    private final Map<CacheKey, Optional<CacheSync>> cacheSyncs = new ConcurrentHashMap<>();
 
     public LdapCRUDController(DBResolver dbResolver) {
         this.dbResolver = dbResolver;
@@ -107,10 +165,24 @@ public class LdapCRUDController implements CRUDController {
 
         //Persist each Entry.
         LDAPConnection connection = getLdapConnection(store);
-        for (com.unboundid.ldap.sdk.Entry entry : entries) {
-            runInsert(connection, ctx, entry, (LDAPResult) -> response.setNumInserted(response.getNumInserted() + 1));
+        if (isTransactional(store, connection, entries.size())) {
+            List<AddRequest> requests = new ArrayList<>();
+            for (com.unboundid.ldap.sdk.Entry entry : entries) {
+                requests.add(new AddRequest(entry));
+            }
+            if (!runTransaction(connection, ctx, documentToDnMap, requests)) {
+                //Nothing was written, so there is nothing to project.
+                return response;
+            }
+            response.setNumInserted(requests.size());
+        }
+        else {
+            for (com.unboundid.ldap.sdk.Entry entry : entries) {
+                runInsert(connection, ctx, entry, (LDAPResult) -> response.setNumInserted(response.getNumInserted() + 1));
+            }
         }
 
+        invalidateEntries(store, documentToDnMap.keySet());
         projectChanges(projection, ctx, documentToDnMap);
 
         return response;
@@ -127,19 +199,41 @@ public class LdapCRUDController implements CRUDController {
         LdapFieldNameTranslator fieldNameTranslator = LdapCrudUtil.getLdapFieldNameTranslator(md);
         LDAPConnection connection = getLdapConnection(store);
 
-        ModificationTranslatorFromJson modificationTranslator = new ModificationTranslatorFromJson(md, fieldNameTranslator);
         EntryTranslatorFromJson entryTranslator = new EntryTranslatorFromJson(md, fieldNameTranslator);
 
+        /*
+         * Only the multi-valued attributes are read back, so that array fields can be
+         * saved by sending just the values that changed.
+         */
+        String[] arrayAttributes = gatherArrayAttributes(md, fieldNameTranslator);
+        ModificationTranslatorFromJson modificationTranslator = new ModificationTranslatorFromJson(md, fieldNameTranslator,
+                store.getVersionAttribute(), AttributeDescriptions.build(Arrays.asList(arrayAttributes), getSchema(store, connection)));
+        Filter anyEntry = Filter.createPresenceFilter("objectClass");
+
         //Create Entry instances for each document.
         Map<String, DocCtx> documentToDnMap = new HashMap<>();
         List<com.unboundid.ldap.sdk.Entry> entries = new ArrayList<>();
+        NegativeLookupCache negativeLookupCache = getNegativeLookupCache(store);
         List<ModifyRequest> modifications = parseDocuments(ctx, fieldNameTranslator, (DocCtx document, String dn) -> {
             documentToDnMap.put(dn, document);
 
-            SearchResultEntry entity = connection.getEntry(dn);
+            SearchResultEntry entity;
+            if (negativeLookupCache == null) {
+                entity = getEntry(connection, dn, anyEntry, arrayAttributes);
+            }
+            else if (negativeLookupCache.isMissing(dn)) {
+                entity = null;
+            }
+            else {
+                long lookupStarted = negativeLookupCache.startLookup();
+                entity = getEntry(connection, dn, anyEntry, arrayAttributes);
+                if (entity == null) {
+                    negativeLookupCache.putMissing(dn, lookupStarted);
+                }
+            }
 
             if(entity != null){
-                return modificationTranslator.translate(document, dn);
+                return modificationTranslator.translate(document, dn, entity);
             }
             else if(upsert){
                 //DNs that do not already exist, need to be created.
@@ -153,6 +247,23 @@ public class LdapCRUDController implements CRUDController {
         });
 
         //Persist each change as either an insert or a modify.
+        if (isTransactional(store, connection, modifications.size() + entries.size())) {
+            List<UpdatableLDAPRequest> requests = new ArrayList<>(modifications);
+            for (com.unboundid.ldap.sdk.Entry entry : entries) {
+                requests.add(new AddRequest(entry));
+            }
+            if (!runTransaction(connection, ctx, documentToDnMap, requests)) {
+                //Nothing was written, so there is nothing to project.
+                return response;
+            }
+            response.setNumSaved(requests.size());
+
+            invalidateEntries(store, documentToDnMap.keySet());
+            projectChanges(projection, ctx, documentToDnMap);
+
+            return response;
+        }
+
         for (ModifyRequest modifyRequest : modifications) {
             execute(ctx, new ExecutionHandler() {
 
@@ -165,6 +276,17 @@ public class LdapCRUDController implements CRUDController {
                 LDAPResult execute() throws LDAPException {
                     return connection.modify(modifyRequest);
                 }
+
+                @Override
+                boolean onFailure(LDAPResult result) {
+                    if (ResultCode.ASSERTION_FAILED.equals(result.getResultCode())) {
+                        //The version asserted by the document is no longer current.
+                        documentToDnMap.get(modifyRequest.getDN()).addError(
+                                Error.get(LdapErrorCode.ERR_LDAP_CONCURRENT_UPDATE, modifyRequest.getDN()));
+                        return true;
+                    }
+                    return false;
+                }
             });
         }
 
@@ -174,6 +296,7 @@ public class LdapCRUDController implements CRUDController {
             }
         }
 
+        invalidateEntries(store, documentToDnMap.keySet());
         projectChanges(projection, ctx, documentToDnMap);
 
         return response;
@@ -205,7 +328,26 @@ public class LdapCRUDController implements CRUDController {
 
         LDAPConnection connection = getLdapConnection(store);
 
-        runSearch(connection, searchRequest, ctx,
+        LdapDataSourceOptions options = dbResolver.getOptions(store);
+        if (store.isSubtreeDelete()) {
+            try {
+                runSubtreeDelete(connection, store, options, ctx, searchRequest, deleteResponse);
+            } finally {
+                //Entries beneath the matched ones are deleted too.
+                invalidateAllEntries(store);
+            }
+            return deleteResponse;
+        }
+        if (options.getDeleteParallelism() > 1) {
+            try {
+                runPipelinedDelete(connection, store, options, ctx, searchRequest, deleteResponse);
+            } finally {
+                invalidateAllEntries(store);
+            }
+            return deleteResponse;
+        }
+
+        runSearch(() -> connection.search(searchRequest), ctx,
                 (SearchResultEntry entry) -> {
                     //LDAP only supports performing 1 delete at a time.
                     execute(ctx, new ExecutionHandler() {
@@ -213,6 +355,7 @@ public class LdapCRUDController implements CRUDController {
                         @Override
                         void onSuccess(LDAPResult deleteResult) {
                             deleteResponse.setNumDeleted(deleteResponse.getNumDeleted() + 1);
+                            invalidateEntries(store, Collections.singleton(entry.getDN()));
                         }
 
                         @Override
@@ -230,6 +373,130 @@ public class LdapCRUDController implements CRUDController {
             QueryExpression query, Projection projection, Sort sort, Long from,
             Long to) {
 
+        PreparedFind find = prepareFind(ctx, query, projection, sort, from, to);
+        LDAPConnection connection = find.connection;
+        SearchRequest searchRequest = find.searchRequest;
+
+        if ((find.options.getTranslationParallelism() > 1) && !find.options.isHedgingEnabled()
+                && !find.options.isCoalesceFinds() && (getQueryResultCache(find.store) == null)
+                && ((find.uniqueDN == null) || ((getEntryCache(find.store) == null) && (getNegativeLookupCache(find.store) == null)))) {
+            //Nothing needs the whole result at once, so translate the entries as they arrive.
+            return streamFind(ctx, find);
+        }
+
+        //Ranged attributes are only completed once translated, so whatever is shared or cached below is as returned.
+        SearchOperation searchOperation;
+        if (find.options.isHedgingEnabled()) {
+            HedgedSearch hedgedSearch = getHedgedSearch(find.store, find.options);
+            searchOperation = () -> hedgedSearch.search(connection, searchRequest);
+        }
+        else {
+            searchOperation = () -> connection.search(searchRequest);
+        }
+
+        if (find.options.isCoalesceFinds()) {
+            //Identical finds in flight at the same time share one search, each projecting the entries for itself.
+            SingleFlight singleFlight = getSingleFlight(find.store);
+            SearchOperation uncoalescedSearchOperation = searchOperation;
+            searchOperation = () -> singleFlight.search(searchRequest, uncoalescedSearchOperation::search);
+        }
+
+        QueryResultCache queryResultCache = getQueryResultCache(find.store);
+        if (queryResultCache != null) {
+            SearchOperation uncachedSearchOperation = searchOperation;
+            searchOperation = () -> queryResultCache.get(searchRequest, uncachedSearchOperation::search);
+        }
+
+        EntryCache entryCache = getEntryCache(find.store);
+        if ((entryCache != null) && (find.uniqueDN != null)) {
+            /*
+             * The query can only match the entry at uniqueDN, so read it through the cache. An
+             * entry that is not there may still be elsewhere beneath the base DN, so search for it.
+             */
+            SearchOperation subtreeSearchOperation = searchOperation;
+            searchOperation = () -> {
+                SearchResultEntry entry = entryCache.get(find.uniqueDN, searchRequest.getAttributes(),
+                        () -> getEntry(connection, find.uniqueDN, searchRequest.getFilter(), searchRequest.getAttributes()));
+                return (entry == null) ? subtreeSearchOperation.search() : toSearchResult(Collections.singletonList(entry));
+            };
+        }
+
+        NegativeLookupCache negativeLookupCache = getNegativeLookupCache(find.store);
+        if ((negativeLookupCache != null) && (find.uniqueDN != null)) {
+            //Nothing can match a unique value that was recently found not to exist.
+            SearchOperation lookupOperation = searchOperation;
+            searchOperation = () -> {
+                if (negativeLookupCache.isMissing(find.uniqueDN)) {
+                    return toSearchResult(Collections.<SearchResultEntry> emptyList());
+                }
+                long lookupStarted = negativeLookupCache.startLookup();
+                SearchResult result = lookupOperation.search();
+                if (ResultCode.SUCCESS.equals(result.getResultCode()) && (result.getEntryCount() == 0)) {
+                    negativeLookupCache.putMissing(find.uniqueDN, lookupStarted);
+                }
+                return result;
+            };
+        }
+
+        List<SearchResultEntry> entries = new ArrayList<>();
+        runSearch(searchOperation, ctx, (SearchResultEntry entry) -> entries.add(entry));
+
+        return completeFind(ctx, find, entries, completingRanges(find));
+    }
+
+    /**
+     * Hands each entry to a {@link ParallelTranslation.Pipeline} from the search's
+     * {@link SearchResultListener}, so translation overlaps with the server still returning entries.
+     * Entries are added in the order they arrive, so any requested sort is kept.
+     */
+    private CRUDFindResponse streamFind(CRUDOperationContext ctx, PreparedFind find) {
+        //Remaining ranges are fetched by a translating thread, never by the one receiving the entries.
+        ParallelTranslation.Pipeline<DocCtx> translation = getParallelTranslation(find.store, find.options).start(completingRanges(find));
+
+        List<DocCtx> translatedDocs;
+        if (runStreamingSearch(find.connection, find.searchRequest, ctx, translation::add)) {
+            translatedDocs = translation.finish();
+        }
+        else {
+            translation.cancel();
+            translatedDocs = Collections.emptyList();
+        }
+        return setFoundDocuments(ctx, translatedDocs);
+    }
+
+    /**
+     * @return the {@link PreparedFind#translatorFactory}, but first completing the ranged attributes
+     * the translation reads. The translating thread waits for the remaining ranges, so it must never
+     * be the one that receives the search's responses.
+     */
+    private static Supplier<Function<SearchResultEntry, DocCtx>> completingRanges(PreparedFind find) {
+        return () -> {
+            Function<SearchResultEntry, DocCtx> translator = find.translatorFactory.get();
+            return (SearchResultEntry entry) -> translator.apply(completeRanges(find.connection, entry, find.rangeSelector));
+        };
+    }
+
+    private static SearchResultEntry completeRanges(LDAPConnection connection, SearchResultEntry entry,
+            RangedAttributeRetrieval.RangeSelector rangeSelector) {
+        if (!RangedAttributeRetrieval.hasRanges(entry)) {
+            return entry;
+        }
+        try {
+            return RangedAttributeRetrieval.complete(connection, entry, rangeSelector);
+        } catch (LDAPException e) {
+            throw Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e);
+        }
+    }
+
+    /**
+     * Builds everything a find needs, short of actually searching.
+     * @return the {@link PreparedFind}.
+     * @throws IllegalArgumentException if no <code>query</code> or <code>projection</code> was provided.
+     */
+    PreparedFind prepareFind(CRUDOperationContext ctx,
+            QueryExpression query, Projection projection, Sort sort, Long from,
+            Long to) {
+
         if (query == null) {
             throw new IllegalArgumentException("No query was provided.");
         }
@@ -240,18 +507,16 @@ public class LdapCRUDController implements CRUDController {
         EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
         LdapDataStore store = LdapCrudUtil.getLdapDataStore(md);
 
-        CRUDFindResponse response = new CRUDFindResponse();
-        response.setSize(0);
-
         LDAPConnection connection = getLdapConnection(store);
 
         LdapFieldNameTranslator fieldNameTranslator = LdapCrudUtil.getLdapFieldNameTranslator(md);
 
+        Set<String> requiredAttributeNames = translateFieldNames(fieldNameTranslator, gatherRequiredFields(md, projection, query, sort));
         SearchRequest searchRequest = buildSearchRequest(
                 store.getBaseDN(),
                 md,
                 query,
-                translateFieldNames(fieldNameTranslator, gatherRequiredFields(md, projection, query, sort)).toArray(new String[0]));
+                requiredAttributeNames.toArray(new String[0]));
         if (sort != null) {
             searchRequest.addControl(new ServerSideSortRequestControl(false, new SortTranslator(fieldNameTranslator).translate(sort)));
         }
@@ -259,32 +524,419 @@ public class LdapCRUDController implements CRUDController {
             int endPos = to.intValue() - from.intValue();
             searchRequest.addControl(new VirtualListViewRequestControl(from.intValue(), 0, endPos, 0, null, false));
         }
+        List<MatchedValuesFilter> matchedValuesFilters = new MatchedValuesBuilder(fieldNameTranslator).build(projection, sort);
+        if (!matchedValuesFilters.isEmpty()) {
+            //Non-critical, the Projector trims the values anyways if the server ignores it.
+            searchRequest.addControl(new MatchedValuesRequestControl(false, matchedValuesFilters.toArray(new MatchedValuesFilter[0])));
+        }
 
-        ResultTranslatorToJson resultTranslator = new ResultTranslatorToJson(ctx.getFactory().getNodeFactory(), md, fieldNameTranslator);
+        //Returned attributes may differ in case, carry options or use a schema alias.
+        AttributeDescriptions attributeDescriptions = AttributeDescriptions.build(requiredAttributeNames, getSchema(store, connection));
+        Set<Path> countOnlyArrays = gatherCountOnlyArrays(md, projection, query, sort);
+        RangedAttributeRetrieval.RangeSelector rangeSelector = selectRanges(
+                translateFieldNames(fieldNameTranslator, gatherRequiredFields(md, projection, null, null)),
+                translateFieldNames(fieldNameTranslator, countOnlyArrays),
+                attributeDescriptions);
+
+        Projection effectiveProjection = Projection.add(
+                projection,
+                new FieldAccessRoleEvaluator(
+                        md,
+                        ctx.getCallerRoles()).getExcludedFields(FieldAccessRoleEvaluator.Operation.find)
+                );
+        //Plain field projections are written directly in their projected form.
+        ProjectionPlan projectionPlan = ProjectionPlan.compile(md, fieldNameTranslator, effectiveProjection, attributeDescriptions);
+
+        Supplier<Function<SearchResultEntry, DocCtx>> translatorFactory;
+        if (projectionPlan == null) {
+            //ResultTranslatorToJson keeps state about the entry being translated, so each slice needs its own.
+            translatorFactory = () -> {
+                ResultTranslatorToJson resultTranslator = new ResultTranslatorToJson(ctx.getFactory().getNodeFactory(), md,
+                        fieldNameTranslator, countOnlyArrays, attributeDescriptions);
+                Projector projector = Projector.getInstance(effectiveProjection, md);
+                return (SearchResultEntry entry) -> {
+                    DocCtx document = new DocCtx(resultTranslator.translate(entry));
+                    document.setOutputDocument(projector.project(document, ctx.getFactory().getNodeFactory()));
+                    return document;
+                };
+            };
+        }
+        else {
+            translatorFactory = () -> (SearchResultEntry entry) -> {
+                JsonDoc projected = projectionPlan.translate(entry, ctx.getFactory().getNodeFactory());
+                DocCtx document = new DocCtx(projected);
+                document.setOutputDocument(projected);
+                return document;
+            };
+        }
 
-        List<DocCtx> translatedDocs = new ArrayList<>();
-        runSearch(connection, searchRequest, ctx, (SearchResultEntry entry) -> {
-            translatedDocs.add(new DocCtx(resultTranslator.translate(entry)));
-            response.setSize(response.getSize() + 1);
-        });
+        //Only a plain lookup by the unique attribute may be served from the entry or negative lookup caches.
+        String uniqueDN = ((store.isEntryCacheEnabled() || store.isNegativeCacheEnabled()) && searchRequest.getControlList().isEmpty())
+                ? getUniqueDN(store, fieldNameTranslator, query) : null;
 
-        Projector projector = Projector.getInstance(
-                Projection.add(
-                        projection,
-                        new FieldAccessRoleEvaluator(
-                                md,
-                                ctx.getCallerRoles()).getExcludedFields(FieldAccessRoleEvaluator.Operation.find)
-                        ),
-                md);
-        for (DocCtx document : translatedDocs) {
-            document.setOutputDocument(projector.project(document, ctx.getFactory().getNodeFactory()));
+        return new PreparedFind(store, dbResolver.getOptions(store), connection, searchRequest, translatorFactory,
+                rangeSelector, projectionPlan, uniqueDN);
+    }
+
+    /**
+     * @param projectedAttributeNames - names of the attributes the projection reads.
+     * @param countedAttributeNames - names of the attributes only the array count of is read.
+     * @return a {@link RangedAttributeRetrieval.RangeSelector} that only counts the values of the
+     * <code>countedAttributeNames</code>, retrieves every value of the other <code>projectedAttributeNames</code>,
+     * and leaves any other ranged attribute, such as one only needed by the query or sort, as returned.
+     */
+    private static RangedAttributeRetrieval.RangeSelector selectRanges(Set<String> projectedAttributeNames,
+            Set<String> countedAttributeNames, AttributeDescriptions attributeDescriptions) {
+        return (SearchResultEntry entry, Attribute rangedAttribute) -> {
+            if (isResolvedTo(entry, rangedAttribute, countedAttributeNames, attributeDescriptions)) {
+                return RangedAttributeRetrieval.Retrieval.COUNT;
+            }
+            if (isResolvedTo(entry, rangedAttribute, projectedAttributeNames, attributeDescriptions)) {
+                return RangedAttributeRetrieval.Retrieval.VALUES;
+            }
+            return RangedAttributeRetrieval.Retrieval.NONE;
+        };
+    }
+
+    /**
+     * @return <code>true</code> if any of the <code>attributeNames</code> would be translated from the
+     * <code>attribute</code>, otherwise <code>false</code>.
+     */
+    private static boolean isResolvedTo(SearchResultEntry entry, Attribute attribute, Set<String> attributeNames,
+            AttributeDescriptions attributeDescriptions) {
+        for (String attributeName : attributeNames) {
+            if (attributeDescriptions.resolve(entry, attributeName) == attribute) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Translates and projects the <code>entries</code> a {@link PreparedFind} returned onto the <code>ctx</code>.
+     * @param translatorFactory - the {@link PreparedFind#translatorFactory}, or one that also completes ranged attributes.
+     * @return the {@link CRUDFindResponse}.
+     */
+    CRUDFindResponse completeFind(CRUDOperationContext ctx, PreparedFind find, List<SearchResultEntry> entries,
+            Supplier<Function<SearchResultEntry, DocCtx>> translatorFactory) {
+        List<DocCtx> translatedDocs;
+        if (find.options.getTranslationParallelism() > 1) {
+            //Slices are joined back in order, so any requested sort is kept.
+            translatedDocs = getParallelTranslation(find.store, find.options).translate(entries, translatorFactory);
+        }
+        else {
+            Function<SearchResultEntry, DocCtx> translator = translatorFactory.get();
+            translatedDocs = new ArrayList<>(entries.size());
+            for (SearchResultEntry entry : entries) {
+                translatedDocs.add(translator.apply(entry));
+            }
         }
+        return setFoundDocuments(ctx, translatedDocs);
+    }
 
+    private static CRUDFindResponse setFoundDocuments(CRUDOperationContext ctx, List<DocCtx> translatedDocs) {
         ctx.setDocumentStream(new ListDocumentStream<>(translatedDocs));
 
+        CRUDFindResponse response = new CRUDFindResponse();
+        response.setSize(translatedDocs.size());
         return response;
     }
 
+    /**
+     * A find that is ready to be searched.
+     */
+    static final class PreparedFind {
+
+        final LdapDataStore store;
+        final LdapDataSourceOptions options;
+        final LDAPConnection connection;
+        final SearchRequest searchRequest;
+        final Supplier<Function<SearchResultEntry, DocCtx>> translatorFactory;
+        /** Chooses which ranged attributes the translation needs completed, and how. */
+        final RangedAttributeRetrieval.RangeSelector rangeSelector;
+        /** Plan to write entries directly in their projected form, or <code>null</code> if they must be projected. */
+        final ProjectionPlan projectionPlan;
+        /** DN of the only entry the find can match, or <code>null</code> if it is not a lookup by DN. */
+        final String uniqueDN;
+
+        PreparedFind(LdapDataStore store, LdapDataSourceOptions options, LDAPConnection connection,
+                SearchRequest searchRequest, Supplier<Function<SearchResultEntry, DocCtx>> translatorFactory,
+                RangedAttributeRetrieval.RangeSelector rangeSelector, ProjectionPlan projectionPlan, String uniqueDN) {
+            this.store = store;
+            this.options = options;
+            this.connection = connection;
+            this.searchRequest = searchRequest;
+            this.translatorFactory = translatorFactory;
+            this.rangeSelector = rangeSelector;
+            this.projectionPlan = projectionPlan;
+            this.uniqueDN = uniqueDN;
+        }
+
+    }
+
+    /**
+     * Exports every document matching the <code>query</code> to <code>out</code> as newline delimited
+     * json, one projected document per line. Entries are read a page at a time and written as they
+     * arrive, through the {@link ProjectionPlan} when the <code>projection</code> allows it, so the
+     * documents are never held in memory together. As the mediator is bypassed, the caller must be
+     * allowed to find the entity and every field the <code>query</code> uses.
+     * @param ctx - {@link CRUDOperationContext}, any failure or lack of access is added to it as an error.
+     * @param query - {@link QueryExpression} to export the matches of.
+     * @param projection - {@link Projection} to apply to each document.
+     * @param out - {@link OutputStream} to write to, it is flushed after each page but not closed.
+     * @param resumeFrom - (optional) {@link StreamingExport.Checkpoint} returned by an earlier export of
+     * the same <code>query</code> and <code>projection</code> that did not finish.
+     * @return the {@link StreamingExport.Checkpoint} to resume from, or <code>null</code> if every
+     * matching document was written or the caller may not find them.
+     */
+    public StreamingExport.Checkpoint export(CRUDOperationContext ctx, QueryExpression query, Projection projection,
+            OutputStream out, StreamingExport.Checkpoint resumeFrom) {
+        if (!checkFindAccess(ctx, ctx.getEntityMetadata(ctx.getEntityName()), query)) {
+            return null;
+        }
+        PreparedFind find = prepareFind(ctx, query, projection, null, null, null);
+
+        StreamingExport.EntryWriter entryWriter;
+        if (find.projectionPlan != null) {
+            JsonNodeFactory nodeFactory = ctx.getFactory().getNodeFactory();
+            entryWriter = (SearchResultEntry entry, JsonGenerator generator) -> find.projectionPlan.write(entry, generator, nodeFactory);
+        }
+        else {
+            Function<SearchResultEntry, DocCtx> translator = find.translatorFactory.get();
+            entryWriter = (SearchResultEntry entry, JsonGenerator generator) ->
+                generator.writeTree(translator.apply(entry).getOutputDocument().getRoot());
+        }
+
+        StreamingExport export = new StreamingExport(find.connection, entryWriter, find.options.getExportPageSize());
+        try {
+            export.export(find.searchRequest, out, resumeFrom);
+        } catch (LDAPException e) {
+            ctx.addError(Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
+        } catch (IOException e) {
+            ctx.addError(Error.get(LdapErrorCode.ERR_EXPORT_WRITE_FAILED, e));
+        }
+        return export.getCheckpoint();
+    }
+
+    /**
+     * Imports every record read from <code>in</code> as a new document through a {@link BulkImport}.
+     * json documents are translated like those of an insert, and LDIF entries must be beneath the
+     * base DN. As the mediator is bypassed, its checks are made here instead: the caller must be allowed
+     * to insert the entity and every field given, and each record must satisfy the entity's constraints.
+     * Records that are invalid or rejected by the server are written to the <code>deadLetter</code>
+     * rather than being reported as errors.
+     * @param ctx - {@link CRUDOperationContext}, any failure to read or write the records, or lack of
+     * access to the entity, is added to it as an error.
+     * @param format - {@link BulkImport.Format} of the records.
+     * @param in - {@link Reader} to read the records from.
+     * @param deadLetter - {@link Writer} that rejected records are written to.
+     * @return the {@link BulkImport.Report}.
+     */
+    public BulkImport.Report bulkImport(CRUDOperationContext ctx, BulkImport.Format format, Reader in, Writer deadLetter) {
+        EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+        LdapDataStore store = LdapCrudUtil.getLdapDataStore(md);
+        LdapFieldNameTranslator fieldNameTranslator = LdapCrudUtil.getLdapFieldNameTranslator(md);
+        LdapDataSourceOptions options = dbResolver.getOptions(store);
+        if (!md.getAccess().getInsert().hasAccess(ctx.getCallerRoles())) {
+            ctx.addError(Error.get(CrudConstants.ERR_NO_ACCESS, "insert " + ctx.getEntityName()));
+            return new BulkImport.Report(0, 0, 0, 0, 0, 0);
+        }
+        FieldAccessRoleEvaluator roles = new FieldAccessRoleEvaluator(md, ctx.getCallerRoles());
+
+        BulkImport.RecordTranslator translator;
+        if (format == BulkImport.Format.LDIF) {
+            //Each translating thread needs its own, as ResultTranslatorToJson is not thread safe.
+            ThreadLocal<ResultTranslatorToJson> resultTranslators = ThreadLocal.withInitial(
+                    () -> new ResultTranslatorToJson(ctx.getFactory().getNodeFactory(), md, fieldNameTranslator));
+            translator = (String record) -> {
+                com.unboundid.ldap.sdk.Entry entry = LDIFReader.decodeEntry(record.split("\n"));
+                if (!entry.getParsedDN().isDescendantOf(store.getBaseDN(), false)) {
+                    throw new IllegalArgumentException("dn=" + entry.getDN() + " is not beneath " + store.getBaseDN());
+                }
+                Set<Path> fields = new HashSet<>();
+                for (Attribute attribute : entry.getAttributes()) {
+                    fields.add(fieldNameTranslator.translateAttributeName(attribute.getBaseName()));
+                }
+                if (!roles.hasAccess(fields, FieldAccessRoleEvaluator.Operation.insert)) {
+                    throw Error.get(CrudConstants.ERR_NO_FIELD_INSERT_ACCESS, fields.toString());
+                }
+                validateConstraints(ctx, md, resultTranslators.get().translate(new SearchResultEntry(entry)));
+                return entry;
+            };
+        }
+        else {
+            EntryTranslatorFromJson entryTranslatorFromJson = new EntryTranslatorFromJson(md, fieldNameTranslator);
+            Path uniqueFieldPath = fieldNameTranslator.translateAttributeName(store.getUniqueAttribute());
+            translator = (String record) -> {
+                JsonDoc document = new JsonDoc(JsonUtils.json(record));
+                Set<Path> inaccessible = roles.getInaccessibleFields_Insert(document);
+                if ((inaccessible != null) && !inaccessible.isEmpty()) {
+                    throw Error.get(CrudConstants.ERR_NO_FIELD_INSERT_ACCESS, inaccessible.toString());
+                }
+                JsonNode uniqueNode = document.get(uniqueFieldPath);
+                if (uniqueNode == null) {
+                    throw Error.get(MetadataConstants.ERR_PARSE_MISSING_ELEMENT, store.getUniqueAttribute());
+                }
+                validateConstraints(ctx, md, document);
+                return entryTranslatorFromJson.translate(document, LdapCrudUtil.createDN(store, uniqueNode.asText()));
+            };
+        }
+
+        BulkImport bulkImport;
+        try {
+            bulkImport = new BulkImport(getLdapConnectionPool(store), options.getTranslationParallelism(),
+                    options.getImportParallelism(), options.getImportConnections(), options.getImportBatchSize(),
+                    options.getImportMaxRetries());
+        } catch (LDAPException e) {
+            ctx.addError(Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
+            return new BulkImport.Report(0, 0, 0, 0, 0, 0);
+        }
+
+        try {
+            return bulkImport.run(in, format, translator, deadLetter);
+        } catch (IOException e) {
+            ctx.addError(Error.get(LdapErrorCode.ERR_IMPORT_FAILED, e));
+            return bulkImport.getReport();
+        } finally {
+            bulkImport.close();
+            //Anything cached about the imported DNs, such as that they did not exist, is stale.
+            invalidateAllEntries(store);
+        }
+    }
+
+    /**
+     * Checks the <code>document</code> against the constraints of the entity.
+     * @throws Error the first constraint the <code>document</code> violates.
+     */
+    private static void validateConstraints(CRUDOperationContext ctx, EntityMetadata md, JsonDoc document) {
+        ConstraintValidator validator = ctx.getFactory().getConstraintValidator(md);
+        validator.validateDoc(document);
+        List<Error> errors = new ArrayList<>(validator.getErrors());
+        List<Error> documentErrors = validator.getDocErrors().get(document);
+        if (documentErrors != null) {
+            errors.addAll(documentErrors);
+        }
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+    }
+
+    /**
+     * Counts the documents matching the <code>query</code> without reading any of them. The matching
+     * entries are streamed back without any attributes and counted as they arrive, a page at a time if
+     * the server supports paged results. The count is always exact, so the content count of a virtual
+     * list view, which servers may estimate, is not used. Without a
+     * <code>query</code> the entries immediately beneath the base DN are counted, which servers
+     * maintaining <code>numSubordinates</code> can answer from the base entry alone. As the mediator is
+     * bypassed, the caller must be allowed to find the entity and every field the <code>query</code> uses.
+     * @param ctx - {@link CRUDOperationContext}, any failure or lack of access is added to it as an error.
+     * @param query - (optional) {@link QueryExpression} to count the matches of.
+     * @return a {@link CRUDFindResponse} with the count as its size, no documents are set on the <code>ctx</code>.
+     */
+    public CRUDFindResponse count(CRUDOperationContext ctx, QueryExpression query) {
+        CRUDFindResponse response = new CRUDFindResponse();
+        response.setSize(0);
+
+        EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+        if (!checkFindAccess(ctx, md, query)) {
+            return response;
+        }
+        LdapDataStore store = LdapCrudUtil.getLdapDataStore(md);
+        LDAPConnection connection = getLdapConnection(store);
+
+        try {
+            Long count = null;
+            if (query == null) {
+                count = Aggregation.countSubordinates(connection, store.getBaseDN());
+            }
+            SearchRequest searchRequest = buildAggregationRequest(store, md, query);
+            if ((count == null) && Aggregation.isPagedResultsSupported(getRootDSE(store, connection))) {
+                count = Aggregation.countByPages(connection, searchRequest, Aggregation.DEFAULT_PAGE_SIZE);
+            }
+            if (count == null) {
+                count = Aggregation.countBySearch(connection, searchRequest);
+            }
+            response.setSize(count);
+        } catch (LDAPException e) {
+            ctx.addError(Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
+        }
+
+        return response;
+    }
+
+    /**
+     * Counts the documents matching the <code>query</code> for each distinct value of the
+     * <code>field</code>. Only the attribute the <code>field</code> maps to is read, and the
+     * values are tallied as the entries stream in rather than translating them into documents. As the
+     * mediator is bypassed, the caller must be allowed to find the entity, the <code>field</code> and
+     * every field the <code>query</code> uses.
+     * @param ctx - {@link CRUDOperationContext}, any failure or lack of access is added to it as an error.
+     * @param query - (optional) {@link QueryExpression} to group the matches of, without one the
+     * entries immediately beneath the base DN are grouped.
+     * @param field - {@link Path} of the field to group on.
+     * @return the number of documents with each value of the <code>field</code>, with the documents
+     * that have no value counted under <code>null</code>, or an empty {@link Map} if the grouping failed.
+     */
+    public Map<String, Long> countBy(CRUDOperationContext ctx, QueryExpression query, Path field) {
+        EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+        if (!checkFindAccess(ctx, md, query)) {
+            return new HashMap<>();
+        }
+        if (!new FieldAccessRoleEvaluator(md, ctx.getCallerRoles()).hasAccess(field, FieldAccessRoleEvaluator.Operation.find)) {
+            ctx.addError(Error.get(LdapErrorCode.ERR_NO_FIELD_FIND_ACCESS, field.toString()));
+            return new HashMap<>();
+        }
+
+        LdapDataStore store = LdapCrudUtil.getLdapDataStore(md);
+        String attribute = LdapCrudUtil.getLdapFieldNameTranslator(md).translateFieldName(field);
+        LDAPConnection connection = getLdapConnection(store);
+
+        try {
+            return Aggregation.countValues(connection, buildAggregationRequest(store, md, query), attribute,
+                    getSchema(store, connection));
+        } catch (LDAPException e) {
+            ctx.addError(Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * Makes the checks the mediator would before a find, for the operations that bypass it.
+     * @param ctx - {@link CRUDOperationContext}, lack of access is added to it as an error.
+     * @param md - {@link EntityMetadata} of the entity being found.
+     * @param query - (optional) {@link QueryExpression} whose fields must also be accessible.
+     * @return <code>true</code> if the caller may find the entity by the <code>query</code>, otherwise <code>false</code>.
+     */
+    private boolean checkFindAccess(CRUDOperationContext ctx, EntityMetadata md, QueryExpression query) {
+        if (!md.getAccess().getFind().hasAccess(ctx.getCallerRoles())) {
+            ctx.addError(Error.get(LdapErrorCode.ERR_NO_FIND_ACCESS, "find " + ctx.getEntityName()));
+            return false;
+        }
+        if (query != null) {
+            Set<Path> fields = gatherRequiredFields(md, null, query, null);
+            if (!new FieldAccessRoleEvaluator(md, ctx.getCallerRoles()).hasAccess(fields, FieldAccessRoleEvaluator.Operation.find)) {
+                ctx.addError(Error.get(LdapErrorCode.ERR_NO_FIELD_FIND_ACCESS, fields.toString()));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a {@link SearchRequest} matching the entries the <code>query</code> would find, or
+     * every entry immediately beneath the base DN if there is no <code>query</code>.
+     */
+    private static SearchRequest buildAggregationRequest(LdapDataStore store, EntityMetadata md, QueryExpression query) {
+        if (query == null) {
+            return new SearchRequest(
+                    store.getBaseDN(),
+                    SearchScope.ONE,
+                    Filter.createPresenceFilter("objectClass"),
+                    SearchRequest.NO_ATTRIBUTES);
+        }
+        return buildSearchRequest(store.getBaseDN(), md, query, SearchRequest.NO_ATTRIBUTES);
+    }
+
     @Override
     public void updatePredefinedFields(CRUDOperationContext ctx, JsonDoc doc) {
         //Do Nothing!!
@@ -332,6 +984,64 @@ public class LdapCRUDController implements CRUDController {
         return paths;
     }
 
+    /**
+     * Returns the paths of the array fields whose count field is needed for the operation, but
+     * which are not themselves needed. Such arrays can be counted without being translated.
+     * @param md - {@link EntityMetadata}.
+     * @param projection - (optional) {@link Projection}.
+     * @param query - (optional) {@link QueryExpression}.
+     * @param sort - (optional) {@link Sort}.
+     * @return paths of the count only arrays.
+     */
+    private Set<Path> gatherCountOnlyArrays(EntityMetadata md,
+            Projection projection, QueryExpression query, Sort sort) {
+        Set<Path> countedArrays = new HashSet<>();
+        Set<Path> requiredArrays = new HashSet<>();
+
+        FieldCursor cursor = md.getFieldCursor();
+        while (cursor.next()) {
+            Path node = cursor.getCurrentPath();
+            if (!(((projection != null) && projection.isFieldRequiredToEvaluateProjection(node))
+                    || ((query != null) && query.isRequired(node))
+                    || ((sort != null) && sort.isRequired(node)))) {
+                continue;
+            }
+
+            String fieldName = node.getLast();
+            if (PredefinedFields.isFieldAnArrayCount(fieldName, md.getFields())) {
+                countedArrays.add(node.mutableCopy().setLast(PredefinedFields.createArrayFieldNameFromCountField(fieldName)).immutableCopy());
+            }
+            else if (cursor.getCurrentNode() instanceof ArrayField) {
+                requiredArrays.add(node);
+            }
+        }
+
+        countedArrays.removeAll(requiredArrays);
+        return countedArrays;
+    }
+
+    /**
+     * Returns the attribute names of all the array fields in the entity, or
+     * {@link SearchRequest#NO_ATTRIBUTES} if there are none.
+     * @param md - {@link EntityMetadata}.
+     * @param fieldNameTranslator - {@link LdapFieldNameTranslator}.
+     * @return the multi-valued attribute names.
+     */
+    String[] gatherArrayAttributes(EntityMetadata md, LdapFieldNameTranslator fieldNameTranslator) {
+        Set<String> attributes = new HashSet<>();
+        FieldCursor cursor = md.getFieldCursor();
+        while (cursor.next()) {
+            if (cursor.getCurrentNode() instanceof ArrayField) {
+                attributes.add(fieldNameTranslator.translateFieldName(cursor.getCurrentPath()));
+            }
+        }
+
+        if (attributes.isEmpty()) {
+            return new String[]{SearchRequest.NO_ATTRIBUTES};
+        }
+        return attributes.toArray(new String[0]);
+    }
+
     /**
      * Translates a <code>Collection</code> of fieldNames into a <code>Set</code> of
      * attributeNames
@@ -355,16 +1065,21 @@ public class LdapCRUDController implements CRUDController {
      * @param ctx - {@link CRUDOperationContext}
      * @param documentToDnMap - Map linking {@link DocCtx} to the DN that represents it.
      */
-    private void projectChanges(Projection projection, CRUDOperationContext ctx, Map<String, DocCtx> documentToDnMap) {
+    void projectChanges(Projection projection, CRUDOperationContext ctx, Map<String, DocCtx> documentToDnMap) {
         if (projection == null) {
             return;
         }
 
         EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+        LdapDataStore store = LdapCrudUtil.getLdapDataStore(md);
         JsonNodeFactory factory = ctx.getFactory().getNodeFactory();
         LdapFieldNameTranslator fieldNameTranslator = LdapCrudUtil.getLdapFieldNameTranslator(md);
 
         Set<String> requiredAttributeNames = translateFieldNames(fieldNameTranslator, gatherRequiredFields(md, projection, null, null));
+        String[] requiredAttributes = requiredAttributeNames.toArray(new String[0]);
+        EntryCache entryCache = getEntryCache(store);
+        LDAPConnection connection = null;
+        ResultTranslatorToJson resultTranslator = null;
         Projector projector = Projector.getInstance(
                 Projection.add(
                         projection,
@@ -387,6 +1102,24 @@ public class LdapCRUDController implements CRUDController {
                 jdoc.modify(dnFieldPath, StringType.TYPE.toJson(factory, dn), true);
                 projectionResponseJson = new DocCtx(jdoc);
             }
+            else if (entryCache != null) {
+                //Read the written entry back through the cache, so that later finds are served from it.
+                if (connection == null) {
+                    connection = getLdapConnection(store);
+                    resultTranslator = new ResultTranslatorToJson(factory, md, fieldNameTranslator);
+                }
+                LDAPConnection entryConnection = connection;
+                try {
+                    SearchResultEntry entry = entryCache.get(dn, requiredAttributes,
+                            () -> getEntry(entryConnection, dn, Filter.createPresenceFilter("objectClass"), requiredAttributes));
+                    if (entry != null) {
+                        projectionResponseJson = new DocCtx(resultTranslator.translate(entry));
+                    }
+                } catch (LDAPException e) {
+                    document.addError(Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
+                    continue;
+                }
+            }
             //TODO: else fetch entity from LDAP and project results.
             //TODO: Probably want to batch fetch as opposed to individual fetches.
 
@@ -400,7 +1133,7 @@ public class LdapCRUDController implements CRUDController {
      * @return a connection to ldap
      * @throws RuntimeException when unable to connect to ldap.
      */
-    private LDAPConnection getLdapConnection(LdapDataStore store) {
+    LDAPConnection getLdapConnection(LdapDataStore store) {
         LDAPConnection connection = null;
         try {
             connection = dbResolver.get(store);
@@ -411,7 +1144,453 @@ public class LdapCRUDController implements CRUDController {
         return connection;
     }
 
-    private static SearchRequest buildSearchRequest(String baseDn, EntityMetadata md, QueryExpression query, String... attributes) {
+    /**
+     * Returns the {@link EntryCache} for the datastore, creating it if necessary. A cache built with
+     * other settings, such as before the entity's metadata changed, is replaced.
+     * @param store - {@link LdapDataStore} to cache entries of.
+     * @return the {@link EntryCache}, or <code>null</code> if the datastore does not cache entries.
+     */
+    EntryCache getEntryCache(LdapDataStore store) {
+        if (!store.isEntryCacheEnabled()) {
+            return null;
+        }
+        CacheKey cacheKey = new CacheKey(store);
+        EntryCache entryCache = entryCaches.get(cacheKey);
+        if ((entryCache == null) || !entryCache.isConfiguredFor(store)) {
+            entryCache = publish(entryCaches, cacheKey, entryCache, new EntryCache(store));
+        }
+        getCacheSync(store);
+        return entryCache;
+    }
+
+    /**
+     * Returns the {@link QueryResultCache} for the datastore, creating it if necessary. A cache built
+     * with other settings is replaced.
+     * @param store - {@link LdapDataStore} to cache find results of.
+     * @return the {@link QueryResultCache}, or <code>null</code> if the datastore does not cache find results.
+     */
+    QueryResultCache getQueryResultCache(LdapDataStore store) {
+        if (!store.isQueryCacheEnabled()) {
+            return null;
+        }
+        CacheKey cacheKey = new CacheKey(store);
+        QueryResultCache queryResultCache = queryResultCaches.get(cacheKey);
+        if ((queryResultCache == null) || !queryResultCache.isConfiguredFor(store)) {
+            queryResultCache = publish(queryResultCaches, cacheKey, queryResultCache, new QueryResultCache(store));
+        }
+        getCacheSync(store);
+        return queryResultCache;
+    }
+
+    /**
+     * Returns the {@link NegativeLookupCache} for the datastore, creating it if necessary. A cache
+     * built with other settings is replaced.
+     * @param store - {@link LdapDataStore} to remember missing DNs of.
+     * @return the {@link NegativeLookupCache}, or <code>null</code> if the datastore does not remember missing DNs.
+     */
+    NegativeLookupCache getNegativeLookupCache(LdapDataStore store) {
+        if (!store.isNegativeCacheEnabled()) {
+            return null;
+        }
+        CacheKey cacheKey = new CacheKey(store);
+        NegativeLookupCache negativeLookupCache = negativeLookupCaches.get(cacheKey);
+        if ((negativeLookupCache == null) || !negativeLookupCache.isConfiguredFor(store)) {
+            negativeLookupCache = publish(negativeLookupCaches, cacheKey, negativeLookupCache, new NegativeLookupCache(store));
+        }
+        getCacheSync(store);
+        return negativeLookupCache;
+    }
+
+    /**
+     * Publishes the <code>created</code> value in place of the <code>current</code> one, unless another
+     * thread has already published something else.
+     * @return whichever value is published.
+     */
+    private static <T> T publish(Map<CacheKey, T> map, CacheKey cacheKey, T current, T created) {
+        if (current == null) {
+            T existing = map.putIfAbsent(cacheKey, created);
+            return (existing == null) ? created : existing;
+        }
+        if (map.replace(cacheKey, current, created)) {
+            return created;
+        }
+        T existing = map.get(cacheKey);
+        return (existing == null) ? created : existing;
+    }
+
+    /**
+     * Returns the {@link SingleFlight} coalescing identical finds of the datastore, creating it if necessary.
+     * @param store - {@link LdapDataStore} to coalesce finds of.
+     * @return the {@link SingleFlight}.
+     */
+    SingleFlight getSingleFlight(LdapDataStore store) {
+        return singleFlights.computeIfAbsent(new CacheKey(store), (CacheKey cacheKey) -> new SingleFlight());
+    }
+
+    /**
+     * Returns the {@link CacheSync} keeping the caches of the datastore coherent with changes made
+     * outside of lightblue, starting it on first use if the datasource asks for it.
+     * @param store - {@link LdapDataStore} whose caches to keep coherent.
+     * @return the {@link CacheSync}, or <code>null</code> if changes are not being followed, in which
+     * case cached entries and find results are only ever expired.
+     */
+    CacheSync getCacheSync(LdapDataStore store) {
+        CacheKey cacheKey = new CacheKey(store);
+        Optional<CacheSync> cacheSync = cacheSyncs.get(cacheKey);
+        if (cacheSync == null) {
+            //Started outside of the map, as starting reads the RootDSE and starts a thread.
+            Optional<CacheSync> started = Optional.ofNullable(startCacheSync(store, cacheKey));
+            cacheSync = cacheSyncs.putIfAbsent(cacheKey, started);
+            if (cacheSync == null) {
+                cacheSync = started;
+            }
+            else if (started.isPresent()) {
+                //Another thread got there first.
+                started.get().close();
+            }
+        }
+        return cacheSync.orElse(null);
+    }
+
+    private CacheSync startCacheSync(final LdapDataStore store, final CacheKey cacheKey) {
+        LdapDataSourceOptions options = dbResolver.getOptions(store);
+        if ((options == null) || !options.isCacheSync()) {
+            return null;
+        }
+
+        try {
+            LDAPConnectionPool pool = dbResolver.getConnectionPool(store);
+            RootDSE rootDSE;
+            LDAPConnection connection = pool.getConnection();
+            try {
+                rootDSE = getRootDSE(store, connection);
+            } finally {
+                pool.releaseConnection(connection);
+            }
+
+            CacheSync.Mode mode = CacheSync.getSupportedMode(rootDSE);
+            if (mode == null) {
+                LOGGER.warn("ldap database " + store.getDatabase() + " supports neither Content Synchronization nor persistent search, "
+                        + "caches of " + store.getBaseDN() + " will only expire");
+                return null;
+            }
+
+            SyncCookieStore cookieStore = (options.getSyncCookieDirectory() == null)
+                    ? null
+                    : new FileSyncCookieStore(Paths.get(options.getSyncCookieDirectory()));
+            CacheSync cacheSync = new CacheSync(pool, store.getBaseDN(), mode, cookieStore,
+                    cacheKey.toString(), new CacheSync.Listener() {
+
+                        @Override
+                        public void entryChanged(String dn) {
+                            invalidateEntries(cacheKey, Collections.singleton(dn));
+                        }
+
+                        @Override
+                        public void resynchronize() {
+                            invalidateAllEntries(cacheKey);
+                        }
+
+                    }, CacheSync.DEFAULT_RETRY_DELAY_MILLIS);
+            cacheSync.start();
+            return cacheSync;
+        } catch (LDAPException | IOException e) {
+            LOGGER.warn("Unable to follow changes beneath " + store.getBaseDN() + ", its caches will only expire", e);
+            return null;
+        }
+    }
+
+    /**
+     * Discards any cached forms of the entries at the <code>dns</code>, which have just been
+     * written, along with every cached find result of the datastore. Any of the <code>dns</code>
+     * that were remembered as missing are forgotten, as they may just have been created.
+     */
+    void invalidateEntries(LdapDataStore store, Collection<String> dns) {
+        invalidateEntries(new CacheKey(store), dns);
+    }
+
+    private void invalidateEntries(CacheKey cacheKey, Collection<String> dns) {
+        //Caches that do not exist yet can not hold anything stale.
+        EntryCache entryCache = entryCaches.get(cacheKey);
+        NegativeLookupCache negativeLookupCache = negativeLookupCaches.get(cacheKey);
+        for (String dn : dns) {
+            if (entryCache != null) {
+                entryCache.invalidate(dn);
+            }
+            if (negativeLookupCache != null) {
+                negativeLookupCache.invalidate(dn);
+            }
+        }
+        invalidateSearches(cacheKey);
+    }
+
+    /**
+     * Discards every cached entry, find result and missing DN of the datastore, for writes that do
+     * not know all the DNs they touched.
+     */
+    void invalidateAllEntries(LdapDataStore store) {
+        invalidateAllEntries(new CacheKey(store));
+    }
+
+    private void invalidateAllEntries(CacheKey cacheKey) {
+        EntryCache entryCache = entryCaches.get(cacheKey);
+        if (entryCache != null) {
+            entryCache.invalidateAll();
+        }
+        NegativeLookupCache negativeLookupCache = negativeLookupCaches.get(cacheKey);
+        if (negativeLookupCache != null) {
+            negativeLookupCache.invalidateAll();
+        }
+        invalidateSearches(cacheKey);
+    }
+
+    /**
+     * Discards every cached find result of the datastore, and stops later finds from sharing the
+     * result of a search that was already in flight.
+     */
+    private void invalidateSearches(CacheKey cacheKey) {
+        QueryResultCache queryResultCache = queryResultCaches.get(cacheKey);
+        if (queryResultCache != null) {
+            queryResultCache.invalidateAll();
+        }
+        SingleFlight singleFlight = singleFlights.get(cacheKey);
+        if (singleFlight != null) {
+            singleFlight.invalidateAll();
+        }
+    }
+
+    /**
+     * Returns the DN of the only entry the <code>query</code> can match, which it can if the
+     * <code>query</code> is nothing more than an equality match on the unique attribute. Entities
+     * are written directly beneath the base DN and named by their unique attribute.
+     * @return the DN, or <code>null</code> if the <code>query</code> could match other entries.
+     */
+    static String getUniqueDN(LdapDataStore store, LdapFieldNameTranslator fieldNameTranslator, QueryExpression query) {
+        if (!(query instanceof ValueComparisonExpression)) {
+            return null;
+        }
+        ValueComparisonExpression comparison = (ValueComparisonExpression) query;
+        if ((comparison.getOp() != BinaryComparisonOperator._eq)
+                || (comparison.getRvalue() == null)
+                || (comparison.getRvalue().getValue() == null)
+                || !store.getUniqueAttribute().equalsIgnoreCase(fieldNameTranslator.translateFieldName(comparison.getField()))) {
+            return null;
+        }
+
+        String uniqueValue = comparison.getRvalue().getValue().toString();
+        if (!new RDN(store.getUniqueAttribute(), uniqueValue).toString().equals(store.getUniqueAttribute() + "=" + uniqueValue)) {
+            //Values that would need escaping are not named the same way by LdapCrudUtil.createDN.
+            return null;
+        }
+        return LdapCrudUtil.createDN(store, uniqueValue);
+    }
+
+    /**
+     * Reads the entry at the <code>dn</code>, if it matches the <code>filter</code>, completing any ranged attributes.
+     * @return the entry, or <code>null</code> if there is no such entry.
+     */
+    static SearchResultEntry getEntry(LDAPConnection connection, String dn, Filter filter, String... attributes) throws LDAPException {
+        SearchResult result;
+        try {
+            result = connection.search(new SearchRequest(dn, SearchScope.BASE, filter, attributes));
+        } catch (LDAPSearchException e) {
+            if (ResultCode.NO_SUCH_OBJECT.equals(e.getResultCode())) {
+                return null;
+            }
+            throw e;
+        }
+        return getCompleteEntry(connection, result);
+    }
+
+    /**
+     * @return the only entry of a base search <code>result</code>, with any ranged attributes completed,
+     * or <code>null</code> if it returned none.
+     */
+    static SearchResultEntry getCompleteEntry(LDAPConnection connection, SearchResult result) throws LDAPException {
+        List<SearchResultEntry> entries = RangedAttributeRetrieval.complete(connection, result).getSearchEntries();
+        return entries.isEmpty() ? null : entries.get(0);
+    }
+
+    private static SearchResult toSearchResult(List<SearchResultEntry> entries) {
+        return new SearchResult(-1, ResultCode.SUCCESS, null, null, null,
+                entries, Collections.<SearchResultReference> emptyList(), entries.size(), 0, null);
+    }
+
+    /**
+     * Returns the {@link HedgedSearch} for the datastore, creating it if necessary. A single
+     * instance is kept per database so that observed latencies accumulate across requests.
+     * @param store - {@link LdapDataStore} to hedge searches for.
+     * @param options - {@link LdapDataSourceOptions} with hedging enabled.
+     * @return the {@link HedgedSearch} for the datastore.
+     */
+    private HedgedSearch getHedgedSearch(LdapDataStore store, LdapDataSourceOptions options) {
+        return hedgedSearches.computeIfAbsent(store.getDatabase(),
+                (String database) -> new HedgedSearch(getLdapConnectionPool(store), options));
+    }
+
+    private ParallelTranslation getParallelTranslation(LdapDataStore store, LdapDataSourceOptions options) {
+        return parallelTranslations.computeIfAbsent(store.getDatabase(),
+                (String database) -> new ParallelTranslation(options.getTranslationParallelism()));
+    }
+
+    /**
+     * Returns the connection pool for ldap.
+     * @param store - {@link LdapDataStore} to get the pool for.
+     * @return the connection pool for ldap
+     * @throws RuntimeException when unable to get the pool.
+     */
+    private LDAPConnectionPool getLdapConnectionPool(LdapDataStore store) {
+        try {
+            return dbResolver.getConnectionPool(store);
+        } catch (LDAPException e) {
+            //TODO: throw more relevant exception.
+            throw new RuntimeException("Unable to establish connection to LDAP", e);
+        }
+    }
+
+    /**
+     * Returns the {@link Schema} for the datastore, fetching it on first use. <code>null</code>
+     * is returned if the {@link Schema} could not be read, and the read is not retried for
+     * {@value #FAILED_READ_RETRY_MILLIS}ms.
+     * @param store - {@link LdapDataStore} to get the {@link Schema} for.
+     * @param connection - {@link LDAPConnection} to read the {@link Schema} with.
+     * @return the {@link Schema} for the datastore.
+     */
+    Schema getSchema(LdapDataStore store, LDAPConnection connection) {
+        return getServerInfo(schemas, store, "schema", () -> connection.getSchema());
+    }
+
+    /**
+     * Returns the {@link RootDSE} for the datastore, fetching it on first use. <code>null</code>
+     * is returned if the {@link RootDSE} could not be read, and the read is not retried for
+     * {@value #FAILED_READ_RETRY_MILLIS}ms.
+     * @param store - {@link LdapDataStore} to get the {@link RootDSE} for.
+     * @param connection - {@link LDAPConnection} to read the {@link RootDSE} with.
+     * @return the {@link RootDSE} for the datastore.
+     */
+    private RootDSE getRootDSE(LdapDataStore store, LDAPConnection connection) {
+        return getServerInfo(rootDSEs, store, "RootDSE", () -> connection.getRootDSE());
+    }
+
+    /**
+     * Reads the server information outside of the <code>map</code>, so that no lock is held
+     * while waiting on the server, and publishes it unless another thread already has.
+     */
+    private static <T> T getServerInfo(Map<String, ServerInfo<T>> map, LdapDataStore store, String name,
+            ServerInfoRead<T> read) {
+        String database = store.getDatabase();
+        ServerInfo<T> current = map.get(database);
+        if ((current != null) && !current.isExpired()) {
+            return current.value;
+        }
+
+        ServerInfo<T> created;
+        try {
+            created = new ServerInfo<>(read.read(), Long.MAX_VALUE);
+        } catch (LDAPException e) {
+            LOGGER.warn("Unable to read the " + name + " for ldap database " + database, e);
+            created = new ServerInfo<>(null, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FAILED_READ_RETRY_MILLIS));
+        }
+
+        if (current == null) {
+            current = map.putIfAbsent(database, created);
+            if (current == null) {
+                return created.value;
+            }
+            if (!current.isExpired()) {
+                //Another thread read it first.
+                return current.value;
+            }
+        }
+        map.replace(database, current, created);
+        return created.value;
+    }
+
+    private interface ServerInfoRead<T> {
+        T read() throws LDAPException;
+    }
+
+    /**
+     * Information read from the server. A failed read is remembered as a <code>null</code> value
+     * until it expires.
+     */
+    private static final class ServerInfo<T> {
+
+        final T value;
+        final long expiresAt;
+
+        ServerInfo(T value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return (expiresAt != Long.MAX_VALUE) && (System.nanoTime() - expiresAt >= 0);
+        }
+
+    }
+
+    /**
+     * Determines if a set of writes should be applied in a single transaction.
+     * @param store - {@link LdapDataStore} being written to.
+     * @param connection - {@link LDAPConnection} the writes will be made with.
+     * @param numberOfWrites - number of writes to be made.
+     * @return <code>true</code> if transactional writes are enabled for the datasource, there is more
+     * than one write to make, and the server supports transactions.
+     */
+    boolean isTransactional(LdapDataStore store, LDAPConnection connection, int numberOfWrites) {
+        return (numberOfWrites > 1)
+                && dbResolver.getOptions(store).isTransactionalWrites()
+                && LdapTransaction.isSupported(getRootDSE(store, connection));
+    }
+
+    /**
+     * Applies all the <code>requests</code> in a single {@link LdapTransaction}. If the transaction
+     * aborts, an error identifying the offending DN is added to the <code>ctx</code>. A write aborted
+     * by a failed version assertion is also reported on its document as a concurrent update.
+     * @param connection - {@link LDAPConnection} to use.
+     * @param ctx - {@link CRUDOperationContext}.
+     * @param documentToDnMap - the document each DN was written from.
+     * @param requests - writes to apply.
+     * @return <code>true</code> if the transaction committed, otherwise <code>false</code>.
+     */
+    private boolean runTransaction(LDAPConnection connection, CRUDOperationContext ctx,
+            Map<String, DocCtx> documentToDnMap, List<? extends UpdatableLDAPRequest> requests) {
+        try {
+            LdapTransaction.Result result = LdapTransaction.execute(connection, requests);
+            if (result.isCommitted()) {
+                return true;
+            }
+
+            ResultCode resultCode = result.getResult().getResultCode();
+            String message = resultCode.toString();
+            if (result.getFailedIndex() >= 0) {
+                String dn = getDN(requests.get(result.getFailedIndex()));
+                message = "dn=" + dn + ": " + message;
+                DocCtx document = documentToDnMap.get(dn);
+                if (ResultCode.ASSERTION_FAILED.equals(resultCode) && (document != null)) {
+                    //The version asserted by the document is no longer current.
+                    document.addError(Error.get(LdapErrorCode.ERR_LDAP_CONCURRENT_UPDATE, dn));
+                }
+            }
+            ctx.addError(Error.get(LdapErrorCode.ERR_LDAP_TRANSACTION_ABORTED, message));
+        } catch (LDAPException e) {
+            ctx.addError(Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
+        }
+        return false;
+    }
+
+    private static String getDN(UpdatableLDAPRequest request) {
+        if (request instanceof AddRequest) {
+            return ((AddRequest) request).getDN();
+        }
+        else if (request instanceof ModifyRequest) {
+            return ((ModifyRequest) request).getDN();
+        }
+        return request.toString();
+    }
+
+    static SearchRequest buildSearchRequest(String baseDn, EntityMetadata md, QueryExpression query, String... attributes) {
         //TODO: Support scopes other than SUB
         return new SearchRequest(
                 baseDn,
@@ -420,27 +1599,154 @@ public class LdapCRUDController implements CRUDController {
                 attributes);
     }
 
-    private void runSearch(LDAPConnection connection, SearchRequest searchRequest, CRUDOperationContext ctx, SearchResultProcessor searchRunner) {
-        execute(ctx, new ExecutionHandler() {
+    /**
+     * @return <code>true</code> if the search succeeded, otherwise an error has been added to the <code>ctx</code>.
+     */
+    private boolean runSearch(SearchOperation searchOperation, CRUDOperationContext ctx, SearchResultProcessor searchRunner) {
+        return execute(ctx, new ExecutionHandler() {
 
             @Override
             void onSuccess(LDAPResult searchResult) {
-                for (SearchResultEntry entry : ((SearchResult) searchResult).getSearchEntries()) {
+                List<SearchResultEntry> entries = ((SearchResult) searchResult).getSearchEntries();
+                if (entries == null) {
+                    //Already streamed to the SearchResultListener.
+                    return;
+                }
+                for (SearchResultEntry entry : entries) {
                     searchRunner.process(entry);
                 }
             }
 
             @Override
             SearchResult execute() throws LDAPException {
-                return connection.search(searchRequest);
+                return searchOperation.search();
             }
         });
     }
 
+    /**
+     * {@link #runSearch(SearchOperation, CRUDOperationContext, SearchResultProcessor)}, but the <code>searchRunner</code>
+     * is given each entry as soon as it arrives, on the thread running the search, rather than once all have.
+     * Entries that arrive before the search fails will already have been processed.
+     */
+    private boolean runStreamingSearch(LDAPConnection connection, SearchRequest searchRequest,
+            CRUDOperationContext ctx, SearchResultProcessor searchRunner) {
+        SearchRequest streamingRequest = new SearchRequest(
+                new SearchResultListener() {
+
+                    private static final long serialVersionUID = 5829316042557819413L;
+
+                    @Override
+                    public void searchEntryReturned(SearchResultEntry searchEntry) {
+                        searchRunner.process(searchEntry);
+                    }
+
+                    @Override
+                    public void searchReferenceReturned(SearchResultReference searchReference) {
+                        //Referrals are not followed.
+                    }
+                },
+                searchRequest.getControls(),
+                searchRequest.getBaseDN(),
+                searchRequest.getScope(),
+                searchRequest.getDereferencePolicy(),
+                searchRequest.getSizeLimit(),
+                searchRequest.getTimeLimitSeconds(),
+                searchRequest.typesOnly(),
+                searchRequest.getFilter(),
+                searchRequest.getAttributes());
+        streamingRequest.setResponseTimeoutMillis(searchRequest.getResponseTimeoutMillis(connection));
+        return runSearch(() -> connection.search(streamingRequest), ctx, searchRunner);
+    }
+
+    private interface SearchOperation {
+        SearchResult search() throws LDAPException;
+    }
+
     private interface SearchResultProcessor {
         void process(SearchResultEntry searchResultEntry);
     }
 
+    /**
+     * Streams the DNs matched by the <code>searchRequest</code> into a {@link PipelinedDelete}.
+     * Each DN that could not be deleted is reported as its own error on the <code>ctx</code>.
+     */
+    private void runPipelinedDelete(LDAPConnection connection, LdapDataStore store, LdapDataSourceOptions options,
+            CRUDOperationContext ctx, SearchRequest searchRequest, CRUDDeleteResponse deleteResponse) {
+        PipelinedDelete pipelinedDelete;
+        try {
+            pipelinedDelete = new PipelinedDelete(getLdapConnectionPool(store),
+                    options.getDeleteParallelism(), options.getDeleteConnections());
+        } catch (LDAPException e) {
+            ctx.addError(Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
+            return;
+        }
+
+        try {
+            execute(ctx, new ExecutionHandler() {
+
+                @Override
+                void onSuccess(LDAPResult searchResult) {
+                    //Deletes are counted as they complete.
+                }
+
+                @Override
+                LDAPResult execute() throws LDAPException {
+                    return pipelinedDelete.deleteMatching(connection, searchRequest);
+                }
+            });
+        } finally {
+            pipelinedDelete.close();
+        }
+
+        deleteResponse.setNumDeleted((int) pipelinedDelete.getNumDeleted());
+        addDeleteFailures(ctx, pipelinedDelete);
+    }
+
+    /**
+     * Deletes the entries matched by the <code>searchRequest</code> along with everything
+     * beneath them, using the {@link SubtreeDeleteRequestControl} when the server supports it.
+     * Only matched entries are counted as deleted, not their descendants.
+     */
+    private void runSubtreeDelete(LDAPConnection connection, LdapDataStore store, LdapDataSourceOptions options,
+            CRUDOperationContext ctx, SearchRequest searchRequest, CRUDDeleteResponse deleteResponse) {
+        List<String> matchedDns = new ArrayList<>();
+        runSearch(() -> connection.search(searchRequest), ctx,
+                (SearchResultEntry entry) -> matchedDns.add(entry.getDN()));
+        if (matchedDns.isEmpty()) {
+            return;
+        }
+
+        try (PipelinedDelete pipelinedDelete = new PipelinedDelete(getLdapConnectionPool(store),
+                options.getDeleteParallelism(), options.getDeleteConnections())) {
+            SubtreeDelete subtreeDelete = new SubtreeDelete(connection, pipelinedDelete,
+                    SubtreeDelete.isControlSupported(getRootDSE(store, connection)));
+            try {
+                deleteResponse.setNumDeleted(subtreeDelete.delete(matchedDns));
+            } finally {
+                addDeleteFailures(ctx, pipelinedDelete);
+            }
+        } catch (LDAPException e) {
+            ctx.addError(Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
+        }
+    }
+
+    /**
+     * Adds an error to the <code>ctx</code> for each DN the {@link PipelinedDelete} failed to delete.
+     */
+    private void addDeleteFailures(CRUDOperationContext ctx, PipelinedDelete pipelinedDelete) {
+        for (PipelinedDelete.Failure failure : pipelinedDelete.getFailures()) {
+            Error.push("dn=" + failure.getDN());
+            try {
+                ctx.addError(Error.get(
+                        LdapErrorCode.ERR_LDAP_UNSUCCESSFUL_RESPONSE,
+                        failure.getResult().getResultCode().toString()));
+            } finally {
+                Error.pop();
+            }
+        }
+    }
+
     private void runInsert(LDAPConnection connection, CRUDOperationContext ctx, com.unboundid.ldap.sdk.Entry entry, InsertResultProcessor processor) {
         execute(ctx, new ExecutionHandler() {
 
@@ -460,7 +1766,7 @@ public class LdapCRUDController implements CRUDController {
         void process(LDAPResult result);
     }
 
-    private <T> List<T> parseDocuments(CRUDOperationContext ctx, LdapFieldNameTranslator fieldNameTranslator, DocumentProcessor<T> processor) {
+    <T> List<T> parseDocuments(CRUDOperationContext ctx, LdapFieldNameTranslator fieldNameTranslator, DocumentProcessor<T> processor) {
         List<DocCtx> documents = ctx.getInputDocumentsWithoutErrors();
         if (documents == null || documents.isEmpty()) {
             return new ArrayList<>();
@@ -504,23 +1810,30 @@ public class LdapCRUDController implements CRUDController {
         return items;
     }
 
-    private interface DocumentProcessor<T> {
+    interface DocumentProcessor<T> {
         T process(DocCtx document, String dn) throws Exception;
     }
 
-    private void execute(CRUDOperationContext ctx, ExecutionHandler handler){
+    /**
+     * @return <code>true</code> if the request succeeded, otherwise <code>false</code>.
+     */
+    private boolean execute(CRUDOperationContext ctx, ExecutionHandler handler){
         try {
             LDAPResult result = handler.execute();
             if (ResultCode.SUCCESS.equals(result.getResultCode())) {
                 handler.onSuccess(result);
-            } else {
+                return true;
+            } else if (!handler.onFailure(result)) {
                 ctx.addError(Error.get(
                         LdapErrorCode.ERR_LDAP_UNSUCCESSFUL_RESPONSE,
                         result.getResultCode().toString()));
             }
         } catch (LDAPException e) {
-            ctx.addError(Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
+            if (!handler.onFailure(e.toLDAPResult())) {
+                ctx.addError(Error.get(LdapErrorCode.ERR_LDAP_REQUEST_FAILED, e));
+            }
         }
+        return false;
     }
 
     private abstract class ExecutionHandler {
@@ -529,6 +1842,14 @@ public class LdapCRUDController implements CRUDController {
 
         abstract void onSuccess(LDAPResult result);
 
+        /**
+         * @return <code>true</code> if the failure has been handled, otherwise a generic
+         * error is added to the {@link CRUDOperationContext}.
+         */
+        boolean onFailure(LDAPResult result) {
+            return false;
+        }
+
     }
     
     @Override
@@ -550,6 +1871,77 @@ public class LdapCRUDController implements CRUDController {
                         .append(", Status: ").append(connectionStatus.getValue()).toString());
             }
         }
+
+        for (Map.Entry<CacheKey, EntryCache> entryCache : entryCaches.entrySet()) {
+            details.add(new StringBuilder("EntryCache [BaseDN: ").append(entryCache.getKey().getBaseDN())
+                    .append(", Hits: ").append(entryCache.getValue().getHits())
+                    .append(", Misses: ").append(entryCache.getValue().getMisses())
+                    .append(", Entries: ").append(entryCache.getValue().size())
+                    .append(", EstimatedBytes: ").append(entryCache.getValue().getEstimatedBytes()).append("]").toString());
+        }
+        for (Map.Entry<CacheKey, QueryResultCache> queryResultCache : queryResultCaches.entrySet()) {
+            details.add(new StringBuilder("QueryResultCache [BaseDN: ").append(queryResultCache.getKey().getBaseDN())
+                    .append(", ").append(queryResultCache.getValue().getStatistics()).append("]").toString());
+        }
+        for (Map.Entry<CacheKey, NegativeLookupCache> negativeLookupCache : negativeLookupCaches.entrySet()) {
+            details.add(new StringBuilder("NegativeLookupCache [BaseDN: ").append(negativeLookupCache.getKey().getBaseDN())
+                    .append(", Hits: ").append(negativeLookupCache.getValue().getHits())
+                    .append(", Misses: ").append(negativeLookupCache.getValue().getMisses())
+                    .append(", Entries: ").append(negativeLookupCache.getValue().size()).append("]").toString());
+        }
+        for (Map.Entry<CacheKey, SingleFlight> singleFlight : singleFlights.entrySet()) {
+            details.add(new StringBuilder("SingleFlight [BaseDN: ").append(singleFlight.getKey().getBaseDN())
+                    .append(", Searches: ").append(singleFlight.getValue().getSearches())
+                    .append(", Coalesced: ").append(singleFlight.getValue().getCoalesced()).append("]").toString());
+        }
+        for (Map.Entry<CacheKey, Optional<CacheSync>> cacheSync : cacheSyncs.entrySet()) {
+            if (cacheSync.getValue().isPresent()) {
+                details.add(new StringBuilder("CacheSync [BaseDN: ").append(cacheSync.getKey().getBaseDN())
+                        .append(", Mode: ").append(cacheSync.getValue().get().getMode()).append("]").toString());
+            }
+        }
         return new CRUDHealth(isHealthy, details.toString());
     }
+
+    /**
+     * Identifies the entries a datastore holds: its database and normalized base DN.
+     */
+    static final class CacheKey {
+
+        private final String database;
+        private final String baseDN;
+
+        CacheKey(LdapDataStore store) {
+            database = store.getDatabase();
+            baseDN = EntryCache.normalize(store.getBaseDN());
+        }
+
+        String getBaseDN() {
+            return baseDN;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(database, baseDN);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) obj;
+            return Objects.equals(database, other.database) && baseDN.equals(other.baseDN);
+        }
+
+        @Override
+        public String toString() {
+            return database + ":" + baseDN;
+        }
+
+    }
+
 }
@@ -0,0 +1,217 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.AddRequest;
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncResultListener;
+import com.unboundid.ldap.sdk.DeleteRequest;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.RootDSE;
+import com.unboundid.ldap.sdk.UpdatableLDAPRequest;
+import com.unboundid.ldap.sdk.controls.TransactionSpecificationRequestControl;
+import com.unboundid.ldap.sdk.extensions.EndTransactionExtendedRequest;
+import com.unboundid.ldap.sdk.extensions.EndTransactionExtendedResult;
+import com.unboundid.ldap.sdk.extensions.StartTransactionExtendedRequest;
+import com.unboundid.ldap.sdk.extensions.StartTransactionExtendedResult;
+
+/**
+ * Executes a group of write requests inside a single RFC 5805 transaction. The writes are
+ * pipelined over the connection rather than sent one round-trip at a time, and either all
+ * of them are committed or none are.
+ *
+ * @author dcrissman
+ */
+public final class LdapTransaction {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LdapTransaction.class);
+
+    private static final AsyncResultListener IGNORE_RESULT = (AsyncRequestID requestID, LDAPResult result) -> {
+        //Results are collected from the AsyncRequestID.
+    };
+
+    /**
+     * @param rootDSE - {@link RootDSE} of the server, may be <code>null</code>.
+     * @return <code>true</code> if the server advertises support for RFC 5805 transactions.
+     */
+    public static boolean isSupported(RootDSE rootDSE) {
+        return (rootDSE != null)
+                && rootDSE.supportsExtendedOperation(StartTransactionExtendedRequest.START_TRANSACTION_REQUEST_OID)
+                && rootDSE.supportsExtendedOperation(EndTransactionExtendedRequest.END_TRANSACTION_REQUEST_OID)
+                && rootDSE.supportsControl(TransactionSpecificationRequestControl.TRANSACTION_SPECIFICATION_REQUEST_OID);
+    }
+
+    /**
+     * Executes the <code>requests</code> in a single transaction.
+     * @param connection - {@link LDAPConnection} to use.
+     * @param requests - {@link AddRequest}s, {@link ModifyRequest}s and/or {@link DeleteRequest}s
+     * to execute, in order. The requests themselves are not altered.
+     * @return {@link Result} describing the outcome of the transaction.
+     * @throws LDAPException if the transaction could not be started or ended. Any failure to then
+     * abort the transaction is attached to it as a suppressed exception.
+     */
+    public static Result execute(LDAPConnection connection, List<? extends UpdatableLDAPRequest> requests) throws LDAPException {
+        StartTransactionExtendedResult startResult = new StartTransactionExtendedResult(
+                connection.processExtendedOperation(new StartTransactionExtendedRequest()));
+        if (!ResultCode.SUCCESS.equals(startResult.getResultCode())) {
+            throw new LDAPException(startResult);
+        }
+        ASN1OctetString transactionId = startResult.getTransactionID();
+        TransactionSpecificationRequestControl transactionControl = new TransactionSpecificationRequestControl(transactionId);
+
+        List<AsyncRequestID> requestIds = new ArrayList<>();
+        int failedIndex = -1;
+        LDAPResult failure = null;
+        try {
+            for (UpdatableLDAPRequest request : requests) {
+                requestIds.add(send(connection, request, transactionControl));
+            }
+
+            for (int x = 0; x < requestIds.size(); x++) {
+                LDAPResult result = await(requestIds.get(x), requests.get(x).getResponseTimeoutMillis(connection));
+                if ((failure == null) && !ResultCode.SUCCESS.equals(result.getResultCode())) {
+                    failedIndex = x;
+                    failure = result;
+                }
+            }
+        } catch (LDAPException e) {
+            try {
+                abort(connection, transactionId);
+            } catch (LDAPException abortFailure) {
+                e.addSuppressed(abortFailure);
+            }
+            throw e;
+        }
+
+        if (failure != null) {
+            try {
+                abort(connection, transactionId);
+            } catch (LDAPException e) {
+                //Nothing was committed, so the failed request is still the outcome to report.
+                LOGGER.warn("Unable to abort transaction after request " + failedIndex + " failed", e);
+            }
+            return new Result(failedIndex, failure);
+        }
+
+        EndTransactionExtendedResult endResult = new EndTransactionExtendedResult(
+                connection.processExtendedOperation(new EndTransactionExtendedRequest(transactionId, true)));
+        if (ResultCode.SUCCESS.equals(endResult.getResultCode())) {
+            return new Result(-1, endResult);
+        }
+
+        for (int x = 0; x < requestIds.size(); x++) {
+            if (requestIds.get(x).getMessageID() == endResult.getFailedOpMessageID()) {
+                failedIndex = x;
+                break;
+            }
+        }
+        return new Result(failedIndex, endResult);
+    }
+
+    private static AsyncRequestID send(LDAPConnection connection, UpdatableLDAPRequest request,
+            TransactionSpecificationRequestControl transactionControl) throws LDAPException {
+        if (request instanceof AddRequest) {
+            AddRequest add = ((AddRequest) request).duplicate();
+            add.addControl(transactionControl);
+            return connection.asyncAdd(add, IGNORE_RESULT);
+        }
+        else if (request instanceof ModifyRequest) {
+            ModifyRequest modify = ((ModifyRequest) request).duplicate();
+            modify.addControl(transactionControl);
+            return connection.asyncModify(modify, IGNORE_RESULT);
+        }
+        else if (request instanceof DeleteRequest) {
+            DeleteRequest delete = ((DeleteRequest) request).duplicate();
+            delete.addControl(transactionControl);
+            return connection.asyncDelete(delete, IGNORE_RESULT);
+        }
+        throw new IllegalArgumentException("Unsupported request type: " + request.getClass().getName());
+    }
+
+    private static LDAPResult await(AsyncRequestID requestId, long timeoutMillis) throws LDAPException {
+        try {
+            if (timeoutMillis <= 0) {
+                return requestId.get();
+            }
+            return requestId.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new LDAPException(ResultCode.TIMEOUT, "Timed out waiting on transactional write.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LDAPException(ResultCode.LOCAL_ERROR, "Interrupted while waiting on transactional write.", e);
+        }
+    }
+
+    private static void abort(LDAPConnection connection, ASN1OctetString transactionId) throws LDAPException {
+        connection.processExtendedOperation(new EndTransactionExtendedRequest(transactionId, false));
+    }
+
+    /**
+     * Outcome of a transaction.
+     */
+    public static final class Result {
+
+        private final int failedIndex;
+        private final LDAPResult result;
+
+        private Result(int failedIndex, LDAPResult result) {
+            this.failedIndex = failedIndex;
+            this.result = result;
+        }
+
+        /**
+         * @return <code>true</code> if every request was committed.
+         */
+        public boolean isCommitted() {
+            return ResultCode.SUCCESS.equals(result.getResultCode());
+        }
+
+        /**
+         * @return index of the request that caused the transaction to abort, or <code>-1</code>
+         * if the transaction was committed or the failing request could not be identified.
+         */
+        public int getFailedIndex() {
+            return failedIndex;
+        }
+
+        /**
+         * @return the {@link LDAPResult} that determined the outcome of the transaction.
+         */
+        public LDAPResult getResult() {
+            return result;
+        }
+
+    }
+
+    private LdapTransaction() {}
+
+}
@@ -0,0 +1,257 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.redhat.lightblue.common.ldap.LdapFieldNameTranslator;
+import com.redhat.lightblue.metadata.PredefinedFields;
+import com.redhat.lightblue.query.AllMatchExpression;
+import com.redhat.lightblue.query.ArrayContainsExpression;
+import com.redhat.lightblue.query.ArrayMatchExpression;
+import com.redhat.lightblue.query.ArrayQueryMatchProjection;
+import com.redhat.lightblue.query.FieldComparisonExpression;
+import com.redhat.lightblue.query.NaryFieldRelationalExpression;
+import com.redhat.lightblue.query.NaryLogicalExpression;
+import com.redhat.lightblue.query.NaryValueRelationalExpression;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.ProjectionList;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.QueryIteratorSkeleton;
+import com.redhat.lightblue.query.RegexMatchExpression;
+import com.redhat.lightblue.query.Sort;
+import com.redhat.lightblue.query.UnaryLogicalExpression;
+import com.redhat.lightblue.query.Value;
+import com.redhat.lightblue.query.ValueComparisonExpression;
+import com.redhat.lightblue.util.Path;
+import com.unboundid.ldap.sdk.controls.MatchedValuesFilter;
+
+/**
+ * Builds the {@link MatchedValuesFilter}s for a
+ * {@link com.unboundid.ldap.sdk.controls.MatchedValuesRequestControl} so that the LDAP server
+ * only returns the values of a multi-valued attribute that the {@link Projection} would keep
+ * anyways.
+ *
+ * Filters are only derived from array match projections (ie. <code>{"field": "member",
+ * "match": {...}}</code>), and only when nothing else (another projection, the array count,
+ * or the sort) needs the array in its entirety. Match queries that cannot be expressed as a
+ * values filter are skipped, the {@link com.redhat.lightblue.eval.Projector} will still
+ * trim those client side.
+ *
+ * @author dcrissman
+ */
+public class MatchedValuesBuilder {
+
+    private final LdapFieldNameTranslator fieldNameTranslator;
+
+    public MatchedValuesBuilder(LdapFieldNameTranslator fieldNameTranslator){
+        this.fieldNameTranslator = fieldNameTranslator;
+    }
+
+    /**
+     * @return the {@link MatchedValuesFilter}s for the <code>projection</code>, or an empty
+     * {@link List} if every value of every attribute must be returned.
+     */
+    public List<MatchedValuesFilter> build(Projection projection, Sort sort){
+        List<ArrayQueryMatchProjection> matches = new ArrayList<>();
+        List<Projection> others = new ArrayList<>();
+        flatten(projection, matches, others);
+
+        Set<Path> seen = new HashSet<>();
+        Set<Path> duplicates = new HashSet<>();
+        for(ArrayQueryMatchProjection match : matches){
+            if(!seen.add(match.getField())){
+                duplicates.add(match.getField());
+            }
+        }
+
+        ProjectionList otherProjections = new ProjectionList(others);
+        List<MatchedValuesFilter> filters = new ArrayList<>();
+        for(ArrayQueryMatchProjection match : matches){
+            Path array = match.getField();
+            if(duplicates.contains(array)
+                    || isArrayRequiredInFull(array, projection, otherProjections, sort)){
+                continue;
+            }
+
+            List<MatchedValuesFilter> arrayFilters =
+                    new MatchedValuesQueryIterator(fieldNameTranslator.translateFieldName(array)).iterate(match.getMatch());
+            if(arrayFilters != null){
+                filters.addAll(arrayFilters);
+            }
+        }
+        return filters;
+    }
+
+    /*
+     * Recursive method!
+     */
+    private void flatten(Projection projection, List<ArrayQueryMatchProjection> matches, List<Projection> others){
+        if(projection instanceof ProjectionList){
+            for(Projection item : ((ProjectionList) projection).getItems()){
+                flatten(item, matches, others);
+            }
+        }
+        else if((projection instanceof ArrayQueryMatchProjection)
+                && ((ArrayQueryMatchProjection) projection).isInclude()){
+            matches.add((ArrayQueryMatchProjection) projection);
+        }
+        else if(projection != null){
+            others.add(projection);
+        }
+    }
+
+    private boolean isArrayRequiredInFull(Path array, Projection projection, Projection otherProjections, Sort sort){
+        if(array.nAnys() > 0){
+            return true;
+        }
+
+        switch(otherProjections.getFieldInclusion(array)){
+            case explicit_inclusion:
+            case implicit_inclusion:
+                return true;
+            default:
+                break;
+        }
+
+        Path countField = array.mutableCopy().setLast(
+                PredefinedFields.createArrayCountFieldName(array.getLast())).immutableCopy();
+        if(projection.isFieldRequiredToEvaluateProjection(countField)){
+            return true;
+        }
+
+        return (sort != null) && sort.isRequired(array);
+    }
+
+    /**
+     * Translates the match query of a simple array into {@link MatchedValuesFilter}s on the
+     * attribute backing the array. Returns <code>null</code> if the query cannot be expressed
+     * as values filters.
+     */
+    private static class MatchedValuesQueryIterator extends QueryIteratorSkeleton<List<MatchedValuesFilter>> {
+
+        private final String attributeName;
+
+        public MatchedValuesQueryIterator(String attributeName){
+            this.attributeName = attributeName;
+        }
+
+        private boolean isElement(Path field){
+            return (field.numSegments() == 1) && Path.THIS.equals(field.head(0));
+        }
+
+        @Override
+        protected List<MatchedValuesFilter> itrValueComparisonExpression(ValueComparisonExpression query, Path path){
+            if(!isElement(query.getField())){
+                return null;
+            }
+            String rValue = query.getRvalue().getValue().toString();
+
+            List<MatchedValuesFilter> filters = new ArrayList<>();
+            switch(query.getOp()){
+                case _eq:
+                    filters.add(MatchedValuesFilter.createEqualityFilter(attributeName, rValue));
+                    return filters;
+                default:
+                    /*
+                     * Values filters cannot be negated. Ordering is left to the Projector too, as the
+                     * server orders by the attribute's ordering matching rule (if it has one at all),
+                     * which need not agree with how the Projector compares values.
+                     */
+                    return null;
+            }
+        }
+
+        @Override
+        protected List<MatchedValuesFilter> itrNaryValueRelationalExpression(NaryValueRelationalExpression query, Path path){
+            if(!isElement(query.getField())){
+                return null;
+            }
+            switch(query.getOp()){
+                case _in:
+                    List<MatchedValuesFilter> filters = new ArrayList<>();
+                    for(Value value : query.getValues()){
+                        filters.add(MatchedValuesFilter.createEqualityFilter(attributeName, value.getValue().toString()));
+                    }
+                    return filters;
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        protected List<MatchedValuesFilter> itrNaryLogicalExpression(NaryLogicalExpression query, Path path){
+            switch(query.getOp()){
+                case _or:
+                    //A value is returned if any one of the values filters matches it.
+                    List<MatchedValuesFilter> filters = new ArrayList<>();
+                    for(QueryExpression subQuery : query.getQueries()){
+                        List<MatchedValuesFilter> subFilters = iterate(subQuery, path);
+                        if(subFilters == null){
+                            return null;
+                        }
+                        filters.addAll(subFilters);
+                    }
+                    return filters;
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        protected List<MatchedValuesFilter> itrArrayContainsExpression(ArrayContainsExpression query, Path path){
+            return null;
+        }
+
+        @Override
+        protected List<MatchedValuesFilter> itrArrayMatchExpression(ArrayMatchExpression query, Path path){
+            return null;
+        }
+
+        @Override
+        protected List<MatchedValuesFilter> itrFieldComparisonExpression(FieldComparisonExpression query, Path path){
+            return null;
+        }
+
+        @Override
+        protected List<MatchedValuesFilter> itrRegexMatchExpression(RegexMatchExpression query, Path path){
+            return null;
+        }
+
+        @Override
+        protected List<MatchedValuesFilter> itrUnaryLogicalExpression(UnaryLogicalExpression query, Path path){
+            return null;
+        }
+
+        @Override
+        protected List<MatchedValuesFilter> itrAllMatchExpression(AllMatchExpression query, Path path){
+            return null;
+        }
+
+        @Override
+        protected List<MatchedValuesFilter> itrNaryFieldRelationalExpression(NaryFieldRelationalExpression query, Path path){
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import com.redhat.lightblue.common.ldap.LdapDataStore;
+
+/**
+ * Remembers, for a short while, the DNs of a single entity that were looked up and found not to
+ * exist, so that repeated lookups of them are answered without asking the directory. DNs are
+ * remembered in the order they were found missing, and as every DN is remembered for the same
+ * time to live, the oldest is always the first to expire or to make room for another.
+ *
+ * Writes must {@link #invalidate(String)} the DNs they create. A lookup that was already in
+ * flight when an invalidation happened is not remembered, so a slower lookup can not hide an
+ * entry that was just created.
+ *
+ * @author dcrissman
+ */
+public class NegativeLookupCache {
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final LongSupplier nanoClock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    /** Normalized DN to when it was found missing, in insertion order. */
+    private final LinkedHashMap<String, Long> missing = new LinkedHashMap<>();
+    private long invalidations;
+    private long hits;
+    private long misses;
+
+    public NegativeLookupCache(LdapDataStore store) {
+        this(store.getNegativeCacheTtlMillis(), store.getNegativeCacheMaxEntries(), System::nanoTime);
+    }
+
+    NegativeLookupCache(long ttlMillis, int maxEntries, LongSupplier nanoClock) {
+        ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxEntries = maxEntries;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @param store - {@link LdapDataStore} to compare settings with.
+     * @return <code>true</code> if this cache was built with the negative cache settings of the <code>store</code>.
+     */
+    public boolean isConfiguredFor(LdapDataStore store) {
+        return (ttlNanos == TimeUnit.MILLISECONDS.toNanos(store.getNegativeCacheTtlMillis()))
+                && (maxEntries == store.getNegativeCacheMaxEntries());
+    }
+
+    /**
+     * @param dn - DN about to be looked up.
+     * @return <code>true</code> if the <code>dn</code> was recently found not to exist, and so need
+     * not be looked up, otherwise <code>false</code>.
+     */
+    public boolean isMissing(String dn) {
+        String normalizedDn = EntryCache.normalize(dn);
+        lock.lock();
+        try {
+            Long foundMissingNanos = missing.get(normalizedDn);
+            if ((foundMissingNanos != null) && (nanoClock.getAsLong() - foundMissingNanos < ttlNanos)) {
+                hits++;
+                return true;
+            }
+            if (foundMissingNanos != null) {
+                missing.remove(normalizedDn);
+            }
+            misses++;
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return a marker to pass to {@link #putMissing(String, long)} once the lookup that is
+     * about to start has completed.
+     */
+    public long startLookup() {
+        lock.lock();
+        try {
+            return invalidations;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remembers the <code>dn</code> as missing, unless something was invalidated while it was being looked up.
+     * @param dn - DN that was found not to exist.
+     * @param lookupStarted - what {@link #startLookup()} returned before the lookup began.
+     */
+    public void putMissing(String dn, long lookupStarted) {
+        String normalizedDn = EntryCache.normalize(dn);
+        lock.lock();
+        try {
+            if (lookupStarted != invalidations) {
+                return;
+            }
+            missing.remove(normalizedDn);
+            if (missing.size() >= maxEntries) {
+                Iterator<String> oldest = missing.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+            }
+            missing.put(normalizedDn, nanoClock.getAsLong());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets that the <code>dn</code> was missing.
+     * @param dn - DN of an entry that may have been created.
+     */
+    public void invalidate(String dn) {
+        String normalizedDn = EntryCache.normalize(dn);
+        lock.lock();
+        try {
+            invalidations++;
+            missing.remove(normalizedDn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets every missing DN.
+     */
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            invalidations++;
+            missing.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of DNs remembered as missing.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return missing.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        lock.lock();
+        try {
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMisses() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.unboundid.ldap.sdk.SearchResultEntry;
+
+/**
+ * Translates the entries of a search result concurrently. The entries are split into
+ * contiguous slices, one per worker, and the translated slices are joined back together,
+ * so the translated entries are always in the same order as the search returned them.
+ * Results too small to be worth splitting are translated on the calling thread. Entries can
+ * also be fed in while the search is still returning them, through a {@link Pipeline}.
+ *
+ * @author dcrissman
+ */
+public class ParallelTranslation {
+
+    /** Fewest entries a slice is worth handing to another thread for. */
+    static final int MIN_SLICE_SIZE = 64;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param parallelism - maximum number of threads to translate with.
+     */
+    public ParallelTranslation(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Translates the <code>entries</code>.
+     * @param entries - {@link SearchResultEntry}s to translate.
+     * @param translatorFactory - creates the translating {@link Function} for each slice. Each
+     * {@link Function} is only ever used by a single thread, so need not be thread safe.
+     * @return the translated entries, in the same order as the <code>entries</code>.
+     */
+    public <T> List<T> translate(List<SearchResultEntry> entries,
+            Supplier<Function<SearchResultEntry, T>> translatorFactory) {
+        int slices = Math.min(pool.getParallelism(), entries.size() / MIN_SLICE_SIZE);
+        if (slices < 2) {
+            return translateSlice(entries, translatorFactory.get());
+        }
+
+        List<Future<List<T>>> translatedSlices = new ArrayList<>(slices);
+        for (int x = 0; x < slices; x++) {
+            List<SearchResultEntry> slice = entries.subList(
+                    (int) ((long) entries.size() * x / slices),
+                    (int) ((long) entries.size() * (x + 1) / slices));
+            translatedSlices.add(pool.submit(() -> translateSlice(slice, translatorFactory.get())));
+        }
+
+        List<T> translated = new ArrayList<>(entries.size());
+        join(translatedSlices, translated);
+        return translated;
+    }
+
+    /**
+     * Starts translating entries as they arrive, rather than once they have all been collected.
+     * @param translatorFactory - creates the translating {@link Function}s. Each {@link Function}
+     * is only ever used by a single thread at a time, so need not be thread safe.
+     * @return a {@link Pipeline} to feed the entries to.
+     */
+    public <T> Pipeline<T> start(Supplier<Function<SearchResultEntry, T>> translatorFactory) {
+        return new Pipeline<>(translatorFactory);
+    }
+
+    private static <T> void join(List<Future<List<T>>> translatedSlices, List<T> translated) {
+        try {
+            for (Future<List<T>> translatedSlice : translatedSlices) {
+                translated.addAll(translatedSlice.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted translating search results", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Unable to translate search results", cause);
+        } finally {
+            for (Future<List<T>> translatedSlice : translatedSlices) {
+                translatedSlice.cancel(false);
+            }
+        }
+    }
+
+    private static <T> List<T> translateSlice(List<SearchResultEntry> slice, Function<SearchResultEntry, T> translator) {
+        List<T> translated = new ArrayList<>(slice.size());
+        for (SearchResultEntry entry : slice) {
+            translated.add(translator.apply(entry));
+        }
+        return translated;
+    }
+
+    /**
+     * Translates entries as they are fed in. Every {@link #MIN_SLICE_SIZE} entries are handed to
+     * the pool as a slice, in arrival order, while the rest are still being returned. Entries
+     * must be fed in from one thread at a time, e.g. from a search's <code>SearchResultListener</code>.
+     */
+    public final class Pipeline<T> {
+
+        private final Supplier<Function<SearchResultEntry, T>> translatorFactory;
+        private final Queue<Function<SearchResultEntry, T>> idleTranslators = new ConcurrentLinkedQueue<>();
+        private final List<Future<List<T>>> translatedSlices = new ArrayList<>();
+        private List<SearchResultEntry> slice = new ArrayList<>(MIN_SLICE_SIZE);
+        private int size;
+
+        private Pipeline(Supplier<Function<SearchResultEntry, T>> translatorFactory) {
+            this.translatorFactory = translatorFactory;
+        }
+
+        /**
+         * @param entry - the next {@link SearchResultEntry} to translate.
+         */
+        public void add(SearchResultEntry entry) {
+            slice.add(entry);
+            size++;
+            if (slice.size() == MIN_SLICE_SIZE) {
+                List<SearchResultEntry> fullSlice = slice;
+                translatedSlices.add(pool.submit(() -> translate(fullSlice)));
+                slice = new ArrayList<>(MIN_SLICE_SIZE);
+            }
+        }
+
+        /**
+         * Translates whatever did not fill a slice on the calling thread, then waits for the rest.
+         * @return the translated entries, in the order they were added.
+         */
+        public List<T> finish() {
+            List<T> lastSlice;
+            try {
+                lastSlice = translate(slice);
+            } catch (RuntimeException | Error e) {
+                cancel();
+                throw e;
+            }
+            List<T> translated = new ArrayList<>(size);
+            join(translatedSlices, translated);
+            translated.addAll(lastSlice);
+            return translated;
+        }
+
+        /**
+         * Abandons any translation that has not yet started, e.g. because the search failed.
+         */
+        public void cancel() {
+            for (Future<List<T>> translatedSlice : translatedSlices) {
+                translatedSlice.cancel(false);
+            }
+        }
+
+        private List<T> translate(List<SearchResultEntry> entries) {
+            Function<SearchResultEntry, T> translator = idleTranslators.poll();
+            if (translator == null) {
+                translator = translatorFactory.get();
+            }
+            try {
+                return translateSlice(entries, translator);
+            } finally {
+                idleTranslators.offer(translator);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,233 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncResultListener;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.DeleteRequest;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+
+/**
+ * Deletes entries by pipelining asynchronous delete requests over one or more pooled
+ * connections. The number of deletes in flight at any one time is bounded, so DNs can be
+ * streamed in (for example straight from a search) without buffering them all in memory.
+ * Failures are collected per DN rather than stopping the remaining deletes.
+ *
+ * @author dcrissman
+ */
+public class PipelinedDelete implements AutoCloseable {
+
+    private final LDAPConnectionPool pool;
+    private final int parallelism;
+    private final Semaphore inFlight;
+    private final List<LDAPConnection> connections = new ArrayList<>();
+    private final AtomicInteger nextConnection = new AtomicInteger();
+    private final AtomicLong numDeleted = new AtomicLong();
+    private final ConcurrentLinkedQueue<Failure> failures = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param pool - {@link LDAPConnectionPool} to check connections out of.
+     * @param parallelism - maximum number of deletes to have in flight at once.
+     * @param numberOfConnections - number of pooled connections to spread the deletes across.
+     * @throws LDAPException if the connections could not be checked out.
+     */
+    public PipelinedDelete(LDAPConnectionPool pool, int parallelism, int numberOfConnections) throws LDAPException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        if (numberOfConnections < 1) {
+            throw new IllegalArgumentException("numberOfConnections must be at least 1: " + numberOfConnections);
+        }
+        this.pool = pool;
+        this.parallelism = parallelism;
+        inFlight = new Semaphore(parallelism);
+
+        try {
+            for (int x = 0; x < numberOfConnections; x++) {
+                connections.add(pool.getConnection());
+            }
+        } catch (LDAPException e) {
+            releaseConnections();
+            throw e;
+        }
+    }
+
+    /**
+     * Searches with the <code>searchRequest</code>, deleting each returned entry as soon as it
+     * arrives. Returns once the search has finished and every delete has completed.
+     * @param searchConnection - {@link LDAPConnection} to search over, must not be one of the
+     * connections used for deleting.
+     * @param searchRequest - {@link SearchRequest} matching the entries to delete. It is copied
+     * and left unaltered.
+     * @return the {@link SearchResult}, which will not contain the matched entries.
+     * @throws LDAPException if the search fails.
+     */
+    public SearchResult deleteMatching(LDAPConnection searchConnection, SearchRequest searchRequest) throws LDAPException {
+        SearchRequest streamingRequest = new SearchRequest(
+                new SearchResultListener() {
+
+                    private static final long serialVersionUID = -1683462478217946218L;
+
+                    @Override
+                    public void searchEntryReturned(SearchResultEntry searchEntry) {
+                        delete(searchEntry.getDN());
+                    }
+
+                    @Override
+                    public void searchReferenceReturned(SearchResultReference searchReference) {
+                        //Referrals are not followed.
+                    }
+                },
+                searchRequest.getControls(),
+                searchRequest.getBaseDN(),
+                searchRequest.getScope(),
+                searchRequest.getDereferencePolicy(),
+                searchRequest.getSizeLimit(),
+                searchRequest.getTimeLimitSeconds(),
+                searchRequest.typesOnly(),
+                searchRequest.getFilter(),
+                searchRequest.getAttributes());
+        streamingRequest.setResponseTimeoutMillis(searchRequest.getResponseTimeoutMillis(searchConnection));
+
+        try {
+            return searchConnection.search(streamingRequest);
+        } finally {
+            awaitCompletion();
+        }
+    }
+
+    /**
+     * Sends a delete for the <code>dn</code>, blocking only if the maximum number of deletes
+     * are already in flight.
+     * @param dn - DN to delete.
+     * @param controls - {@link Control}s to attach to the delete request.
+     */
+    public void delete(String dn, Control... controls) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failures.add(new Failure(dn, new LDAPException(ResultCode.LOCAL_ERROR, e).toLDAPResult()));
+            return;
+        }
+
+        LDAPConnection connection = connections.get(Math.abs(nextConnection.getAndIncrement() % connections.size()));
+        try {
+            connection.asyncDelete(new DeleteRequest(dn, controls), (AsyncRequestID requestID, LDAPResult result) -> {
+                try {
+                    record(dn, result);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (LDAPException e) {
+            failures.add(new Failure(dn, e.toLDAPResult()));
+            inFlight.release();
+        }
+    }
+
+    private void record(String dn, LDAPResult result) {
+        if (ResultCode.SUCCESS.equals(result.getResultCode())) {
+            numDeleted.incrementAndGet();
+        }
+        else {
+            failures.add(new Failure(dn, result));
+        }
+    }
+
+    /**
+     * Blocks until every delete that has been sent has completed.
+     */
+    public void awaitCompletion() {
+        inFlight.acquireUninterruptibly(parallelism);
+        inFlight.release(parallelism);
+    }
+
+    /**
+     * @return number of entries successfully deleted so far.
+     */
+    public long getNumDeleted() {
+        return numDeleted.get();
+    }
+
+    /**
+     * @return the {@link Failure}s encountered so far.
+     */
+    public List<Failure> getFailures() {
+        return Collections.unmodifiableList(new ArrayList<>(failures));
+    }
+
+    /**
+     * Waits for all deletes to complete, then returns the connections to the pool.
+     */
+    @Override
+    public void close() {
+        awaitCompletion();
+        releaseConnections();
+    }
+
+    private void releaseConnections() {
+        for (LDAPConnection connection : connections) {
+            pool.releaseConnection(connection);
+        }
+        connections.clear();
+    }
+
+    /**
+     * A DN that could not be deleted.
+     */
+    public static final class Failure {
+
+        private final String dn;
+        private final LDAPResult result;
+
+        private Failure(String dn, LDAPResult result) {
+            this.dn = dn;
+            this.result = result;
+        }
+
+        public String getDN() {
+            return dn;
+        }
+
+        public LDAPResult getResult() {
+            return result;
+        }
+
+    }
+
+}
@@ -0,0 +1,316 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import com.redhat.lightblue.common.ldap.LdapDataStore;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.util.Base64;
+
+/**
+ * Caches the entries found by the searches of a single entity, keyed by everything about the
+ * {@link SearchRequest} that can change what it returns: the normalized filter, base DN, scope,
+ * attributes, limits and controls. Results are served for at most the entity's maximum staleness,
+ * and the cache is bounded by a number of results and by their estimated size in bytes, evicting
+ * the least recently used result first.
+ *
+ * Any write to the entity may change the result of any search, so writes
+ * {@link #invalidateAll()}. Searches that were already in flight at the time are not cached.
+ * Cached entries are shared between readers and must not be modified.
+ *
+ * @author dcrissman
+ */
+public class QueryResultCache {
+
+    /** Rough, fixed cost of a cached result beyond its entries. */
+    static final long RESULT_OVERHEAD_BYTES = 128;
+
+    private final long maxStalenessNanos;
+    private final int maxResults;
+    private final long maxBytes;
+    private final LongSupplier nanoClock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    /** In access order, so the first result is the least recently used. */
+    private final LinkedHashMap<String, CachedResult> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long invalidations;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public QueryResultCache(LdapDataStore store) {
+        this(store.getQueryCacheMaxStalenessMillis(), store.getQueryCacheMaxResults(), store.getQueryCacheMaxBytes(),
+                System::nanoTime);
+    }
+
+    QueryResultCache(long maxStalenessMillis, int maxResults, long maxBytes, LongSupplier nanoClock) {
+        maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+        this.maxResults = maxResults;
+        this.maxBytes = maxBytes;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @param store - {@link LdapDataStore} to compare settings with.
+     * @return <code>true</code> if this cache was built with the query cache settings of the <code>store</code>.
+     */
+    public boolean isConfiguredFor(LdapDataStore store) {
+        return (maxStalenessNanos == TimeUnit.MILLISECONDS.toNanos(store.getQueryCacheMaxStalenessMillis()))
+                && (maxResults == store.getQueryCacheMaxResults())
+                && (maxBytes == store.getQueryCacheMaxBytes());
+    }
+
+    /**
+     * Returns the result of the <code>request</code>, searching and caching it if it is not already cached.
+     * @param request - {@link SearchRequest} to get the result of.
+     * @param search - runs the <code>request</code> on a miss.
+     * @return the {@link SearchResult}. Only successful results are cached, and a cached result
+     * carries no response controls.
+     * @throws LDAPException if the <code>search</code> failed.
+     */
+    public SearchResult get(SearchRequest request, Search search) throws LDAPException {
+        String key = createKey(request);
+        long searchedAfter;
+
+        lock.lock();
+        try {
+            CachedResult cached = results.get(key);
+            if ((cached != null) && (nanoClock.getAsLong() - cached.searchedNanos < maxStalenessNanos)) {
+                hits++;
+                return toSearchResult(cached.entries);
+            }
+            if (cached != null) {
+                remove(key);
+            }
+            misses++;
+            searchedAfter = invalidations;
+        } finally {
+            lock.unlock();
+        }
+
+        SearchResult result = search.search();
+        if (!ResultCode.SUCCESS.equals(result.getResultCode()) || (result.getSearchEntries() == null)) {
+            return result;
+        }
+
+        List<SearchResultEntry> entries = result.getSearchEntries();
+        long size = RESULT_OVERHEAD_BYTES + 2L * key.length();
+        for (SearchResultEntry entry : entries) {
+            size += EntryCache.estimateBytes(entry);
+        }
+
+        lock.lock();
+        try {
+            if ((searchedAfter != invalidations) || (size > maxBytes)) {
+                return result;
+            }
+            remove(key);
+            while (!results.isEmpty() && ((results.size() >= maxResults) || (bytes + size > maxBytes))) {
+                remove(results.keySet().iterator().next());
+                evictions++;
+            }
+            results.put(key, new CachedResult(entries, size, nanoClock.getAsLong()));
+            bytes += size;
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Discards every cached result, as the entity has been written to.
+     */
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            invalidations++;
+            results.clear();
+            bytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return a point in time copy of the cache's metrics.
+     */
+    public Statistics getStatistics() {
+        lock.lock();
+        try {
+            return new Statistics(hits, misses, evictions, invalidations, results.size(), bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(String key) {
+        CachedResult cached = results.remove(key);
+        if (cached != null) {
+            bytes -= cached.bytes;
+        }
+    }
+
+    /**
+     * @return a key that is equal for, and only for, requests that return the same result.
+     */
+    static String createKey(SearchRequest request) {
+        StringBuilder key = new StringBuilder()
+                .append(EntryCache.normalize(request.getBaseDN()))
+                .append('|').append(request.getScope().intValue())
+                .append('|').append(request.getDereferencePolicy().intValue())
+                .append('|').append(request.getSizeLimit())
+                .append('|').append(request.getTimeLimitSeconds())
+                .append('|').append(request.typesOnly())
+                .append('|').append(request.getFilter().toNormalizedString())
+                .append('|');
+
+        String[] attributes = request.getAttributes();
+        String[] normalizedAttributes = new String[attributes.length];
+        for (int x = 0; x < attributes.length; x++) {
+            normalizedAttributes[x] = attributes[x].toLowerCase(Locale.ROOT);
+        }
+        Arrays.sort(normalizedAttributes);
+        for (String attribute : normalizedAttributes) {
+            key.append(attribute).append(',');
+        }
+
+        for (Control control : request.getControls()) {
+            key.append('|').append(control.getOID()).append(control.isCritical() ? '!' : '?');
+            if (control.hasValue()) {
+                key.append(Base64.encode(control.getValue().getValue()));
+            }
+        }
+        return key.toString();
+    }
+
+    private static SearchResult toSearchResult(List<SearchResultEntry> entries) {
+        return new SearchResult(-1, ResultCode.SUCCESS, null, null, null,
+                entries, Collections.<SearchResultReference> emptyList(), entries.size(), 0, null);
+    }
+
+    /**
+     * Runs a search on a cache miss.
+     */
+    public interface Search {
+        SearchResult search() throws LDAPException;
+    }
+
+    /**
+     * Metrics of a {@link QueryResultCache}.
+     */
+    public static final class Statistics {
+
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+        private final int size;
+        private final long estimatedBytes;
+
+        Statistics(long hits, long misses, long evictions, long invalidations, int size, long estimatedBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.size = size;
+            this.estimatedBytes = estimatedBytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return the fraction (0 - 1) of lookups that were served from the cache.
+         */
+        public double getHitRatio() {
+            long lookups = hits + misses;
+            return (lookups == 0) ? 0 : ((double) hits / lookups);
+        }
+
+        /**
+         * @return the number of results discarded to make room for others.
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * @return the number of times the cache was cleared by a write.
+         */
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        /**
+         * @return the number of cached results.
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return the estimated size, in bytes, of all the cached results together.
+         */
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Hits: " + hits + ", Misses: " + misses + ", Evictions: " + evictions
+                    + ", Invalidations: " + invalidations + ", Results: " + size + ", EstimatedBytes: " + estimatedBytes;
+        }
+
+    }
+
+    private static final class CachedResult {
+
+        final List<SearchResultEntry> entries;
+        final long bytes;
+        final long searchedNanos;
+
+        CachedResult(List<SearchResultEntry> entries, long bytes, long searchedNanos) {
+            this.entries = entries;
+            this.bytes = bytes;
+            this.searchedNanos = searchedNanos;
+        }
+
+    }
+
+}
@@ -0,0 +1,403 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+
+/**
+ * Completes multi-valued attributes that a server, such as Active Directory, has returned in
+ * ranges (e.g. <code>member;range=0-1499</code>) rather than all at once. Only entries that
+ * actually came back with a partial range cause any further requests, and a {@link RangeSelector}
+ * can limit them to the attributes that will actually be read. The remaining ranges for every
+ * such attribute, across all entries, are requested concurrently over the same connection, with
+ * each attribute's next range being requested as soon as the previous one arrives, from the
+ * callback that received it.
+ *
+ * @author dcrissman
+ */
+public final class RangedAttributeRetrieval {
+
+    private static final String RANGE_OPTION_PREFIX = "range=";
+    private static final String RANGE_END = "*";
+    private static final ASN1OctetString UNKEPT_VALUE = new ASN1OctetString();
+
+    /**
+     * How much of a ranged attribute to retrieve.
+     */
+    public enum Retrieval {
+        /** Every value. */
+        VALUES,
+        /**
+         * Only how many values there are. Every range must still be read to count them, but their
+         * values are not kept, so the completed attribute holds that many empty values.
+         */
+        COUNT,
+        /** Nothing further, the attribute is left as the server returned it. */
+        NONE
+    }
+
+    /**
+     * Chooses how much of each ranged attribute of an entry to retrieve.
+     */
+    public interface RangeSelector {
+
+        /**
+         * @param entry - {@link SearchResultEntry} the <code>rangedAttribute</code> was returned with.
+         * @param rangedAttribute - the first range of the {@link Attribute}, as returned.
+         * @return the {@link Retrieval} to complete the <code>rangedAttribute</code> with.
+         */
+        Retrieval select(SearchResultEntry entry, Attribute rangedAttribute);
+
+    }
+
+    /** Retrieves every value of every ranged attribute. */
+    public static final RangeSelector ALL_VALUES = (SearchResultEntry entry, Attribute rangedAttribute) -> Retrieval.VALUES;
+
+    /**
+     * Replaces any ranged attributes in the <code>result</code> with the complete attribute,
+     * named without the range option, waiting for the remaining ranges to arrive.
+     * @param connection - {@link LDAPConnection} to fetch the remaining ranges over.
+     * @param result - {@link SearchResult} to complete.
+     * @return a {@link SearchResult} with complete attributes, or the <code>result</code> itself
+     * if nothing needed to be completed.
+     * @throws LDAPException if a remaining range could not be fetched.
+     */
+    public static SearchResult complete(LDAPConnection connection, SearchResult result) throws LDAPException {
+        return await(completeAsync(connection, result, ALL_VALUES));
+    }
+
+    /**
+     * Replaces the ranged attributes the <code>rangeSelector</code> selects in a single <code>entry</code>
+     * with the complete attribute, waiting for the remaining ranges to arrive.
+     * @param connection - {@link LDAPConnection} to fetch the remaining ranges over.
+     * @param entry - {@link SearchResultEntry} to complete.
+     * @param rangeSelector - {@link RangeSelector} choosing what to retrieve of each ranged attribute.
+     * @return a {@link SearchResultEntry} with complete attributes, or the <code>entry</code> itself
+     * if nothing needed to be completed.
+     * @throws LDAPException if a remaining range could not be fetched.
+     */
+    public static SearchResultEntry complete(LDAPConnection connection, SearchResultEntry entry,
+            RangeSelector rangeSelector) throws LDAPException {
+        return await(completeEntries(connection, Collections.singletonList(entry), rangeSelector)).get(0);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws LDAPException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LDAPException(ResultCode.LOCAL_ERROR, "Interrupted retrieving ranged attributes", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof LDAPException) {
+                throw (LDAPException) e.getCause();
+            }
+            throw new LDAPException(ResultCode.LOCAL_ERROR, "Unable to retrieve ranged attributes", e.getCause());
+        }
+    }
+
+    /**
+     * Asynchronous {@link #complete(LDAPConnection, SearchResult)}.
+     * @see #completeAsync(LDAPConnection, SearchResult, RangeSelector)
+     */
+    public static CompletableFuture<SearchResult> completeAsync(LDAPConnection connection, SearchResult result) {
+        return completeAsync(connection, result, ALL_VALUES);
+    }
+
+    /**
+     * Asynchronously replaces the ranged attributes the <code>rangeSelector</code> selects in the
+     * <code>result</code> with the complete attribute. No thread waits on the remaining ranges: each
+     * one is requested from the callback that received the range before it, so the returned
+     * {@link CompletableFuture} is completed by UnboundID's listener thread. A range that is not
+     * answered within the connection's response timeout fails with {@link ResultCode#TIMEOUT}.
+     * @param connection - {@link LDAPConnection} to fetch the remaining ranges over.
+     * @param result - {@link SearchResult} to complete.
+     * @param rangeSelector - {@link RangeSelector} choosing what to retrieve of each ranged attribute.
+     * @return a {@link CompletableFuture} completing with the {@link SearchResult} with complete attributes,
+     * or the <code>result</code> itself if nothing needed to be completed, or exceptionally with an
+     * {@link LDAPException} if a remaining range could not be fetched.
+     */
+    public static CompletableFuture<SearchResult> completeAsync(LDAPConnection connection, SearchResult result,
+            RangeSelector rangeSelector) {
+        List<SearchResultEntry> entries = result.getSearchEntries();
+        if (entries == null) {
+            return CompletableFuture.completedFuture(result);
+        }
+
+        return completeEntries(connection, entries, rangeSelector).thenApply((List<SearchResultEntry> completedEntries) -> {
+            if (completedEntries == entries) {
+                return result;
+            }
+            return new SearchResult(
+                    result.getMessageID(),
+                    result.getResultCode(),
+                    result.getDiagnosticMessage(),
+                    result.getMatchedDN(),
+                    result.getReferralURLs(),
+                    completedEntries,
+                    result.getSearchReferences(),
+                    completedEntries.size(),
+                    result.getReferenceCount(),
+                    result.getResponseControls());
+        });
+    }
+
+    /**
+     * @return a {@link CompletableFuture} completing with the completed entries, in the same order,
+     * or the <code>entries</code> themselves if none of them has a selected ranged attribute.
+     */
+    private static CompletableFuture<List<SearchResultEntry>> completeEntries(LDAPConnection connection,
+            List<SearchResultEntry> entries, RangeSelector rangeSelector) {
+        List<CompletableFuture<Void>> fetches = new ArrayList<>();
+        List<Map<Attribute, RangedAttribute>> rangedByEntry = new ArrayList<>(entries.size());
+        boolean anySelected = false;
+        for (SearchResultEntry entry : entries) {
+            Map<Attribute, RangedAttribute> ranged = null;
+            for (Attribute attribute : entry.getAttributes()) {
+                String range = getRange(attribute);
+                if (range == null) {
+                    continue;
+                }
+                Retrieval retrieval = rangeSelector.select(entry, attribute);
+                if (retrieval == Retrieval.NONE) {
+                    continue;
+                }
+                RangedAttribute rangedAttribute = new RangedAttribute(entry.getDN(), attribute, range, retrieval == Retrieval.COUNT);
+                if (ranged == null) {
+                    ranged = new IdentityHashMap<>();
+                }
+                ranged.put(attribute, rangedAttribute);
+                if (!rangedAttribute.isComplete()) {
+                    fetches.add(rangedAttribute.fetchRemaining(connection));
+                }
+            }
+            anySelected |= (ranged != null);
+            rangedByEntry.add(ranged);
+        }
+
+        if (!anySelected) {
+            return CompletableFuture.completedFuture(entries);
+        }
+
+        return CompletableFuture.allOf(fetches.toArray(new CompletableFuture<?>[fetches.size()]))
+                .thenApply((Void done) -> assemble(entries, rangedByEntry));
+    }
+
+    private static List<SearchResultEntry> assemble(List<SearchResultEntry> entries, List<Map<Attribute, RangedAttribute>> rangedByEntry) {
+        List<SearchResultEntry> completedEntries = new ArrayList<>(entries.size());
+        for (int x = 0; x < entries.size(); x++) {
+            SearchResultEntry entry = entries.get(x);
+            Map<Attribute, RangedAttribute> ranged = rangedByEntry.get(x);
+            if (ranged == null) {
+                completedEntries.add(entry);
+                continue;
+            }
+
+            List<Attribute> attributes = new ArrayList<>();
+            for (Attribute attribute : entry.getAttributes()) {
+                RangedAttribute rangedAttribute = ranged.get(attribute);
+                attributes.add((rangedAttribute == null) ? attribute : rangedAttribute.toAttribute());
+            }
+            completedEntries.add(new SearchResultEntry(entry.getMessageID(), entry.getDN(), attributes, entry.getControls()));
+        }
+        return completedEntries;
+    }
+
+    /**
+     * @param result - {@link SearchResult} to check.
+     * @return <code>true</code> if any entry in the <code>result</code> has a ranged attribute,
+     * and so would need to be completed, otherwise <code>false</code>.
+     */
+    public static boolean hasRanges(SearchResult result) {
+        List<SearchResultEntry> entries = result.getSearchEntries();
+        if (entries == null) {
+            return false;
+        }
+        for (SearchResultEntry entry : entries) {
+            if (hasRanges(entry)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param entry - {@link SearchResultEntry} to check.
+     * @return <code>true</code> if the <code>entry</code> has a ranged attribute, otherwise <code>false</code>.
+     */
+    public static boolean hasRanges(SearchResultEntry entry) {
+        for (Attribute attribute : entry.getAttributes()) {
+            if (getRange(attribute) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the value of the range option (e.g. <code>0-1499</code>), or <code>null</code>
+     * if the attribute is not ranged.
+     */
+    static String getRange(Attribute attribute) {
+        for (String option : attribute.getOptions()) {
+            if (isRangeOption(option)) {
+                return option.substring(RANGE_OPTION_PREFIX.length());
+            }
+        }
+        return null;
+    }
+
+    private static boolean isRangeOption(String option) {
+        return option.regionMatches(true, 0, RANGE_OPTION_PREFIX, 0, RANGE_OPTION_PREFIX.length());
+    }
+
+    /**
+     * @return the name of the <code>attribute</code> with any options, such as <code>binary</code> or
+     * a language tag, other than its range.
+     */
+    static String getNameWithoutRange(Attribute attribute) {
+        StringBuilder name = new StringBuilder(attribute.getBaseName());
+        for (String option : attribute.getOptions()) {
+            if (!isRangeOption(option)) {
+                name.append(';').append(option);
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * A single multi-valued attribute being assembled from its ranges.
+     */
+    private static final class RangedAttribute {
+
+        private final String dn;
+        /** Attribute description to request the remaining ranges with, which is also the completed attribute's name. */
+        private final String name;
+        private final boolean countOnly;
+        private final List<ASN1OctetString> values = new ArrayList<>();
+        private int count;
+        private String upperBound;
+
+        RangedAttribute(String dn, Attribute firstRange, String range, boolean countOnly) {
+            this.dn = dn;
+            this.countOnly = countOnly;
+            name = getNameWithoutRange(firstRange);
+            append(firstRange, range);
+        }
+
+        private void append(Attribute attribute, String range) {
+            if (!countOnly) {
+                values.addAll(Arrays.asList(attribute.getRawValues()));
+            }
+            count += attribute.size();
+            int separator = range.indexOf('-');
+            upperBound = (separator < 0) ? RANGE_END : range.substring(separator + 1);
+        }
+
+        boolean isComplete() {
+            return RANGE_END.equals(upperBound);
+        }
+
+        /**
+         * Requests the next range, and from its response the one after that, until the attribute is complete.
+         */
+        CompletableFuture<Void> fetchRemaining(LDAPConnection connection) {
+            if (isComplete()) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            AsyncSearch nextRange;
+            try {
+                nextRange = AsyncSearch.start(connection, new SearchRequest(
+                        dn,
+                        SearchScope.BASE,
+                        Filter.createPresenceFilter("objectClass"),
+                        name + ";" + RANGE_OPTION_PREFIX + nextStart() + "-" + RANGE_END));
+            } catch (LDAPException e) {
+                CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+
+            return nextRange.getFuture().thenCompose((SearchResult result) -> {
+                receive(result);
+                return fetchRemaining(connection);
+            });
+        }
+
+        private int nextStart() throws LDAPException {
+            try {
+                return Integer.parseInt(upperBound) + 1;
+            } catch (NumberFormatException e) {
+                throw new LDAPException(ResultCode.DECODING_ERROR, "Unable to parse range for " + name + ": " + upperBound, e);
+            }
+        }
+
+        private void receive(SearchResult result) {
+            if (!ResultCode.SUCCESS.equals(result.getResultCode())) {
+                throw new CompletionException(new LDAPException(result.getResultCode(),
+                        "Unable to retrieve range of " + name + " for " + dn + ": " + result.getDiagnosticMessage()));
+            }
+
+            for (SearchResultEntry entry : result.getSearchEntries()) {
+                for (Attribute attribute : entry.getAttributes()) {
+                    String range = getRange(attribute);
+                    if ((range != null) && getNameWithoutRange(attribute).equalsIgnoreCase(name)) {
+                        append(attribute, range);
+                        return;
+                    }
+                }
+            }
+
+            //The server returned nothing further, so there are no more values.
+            upperBound = RANGE_END;
+        }
+
+        Attribute toAttribute() {
+            if (countOnly) {
+                ASN1OctetString[] unkeptValues = new ASN1OctetString[count];
+                Arrays.fill(unkeptValues, UNKEPT_VALUE);
+                return new Attribute(name, unkeptValues);
+            }
+            return new Attribute(name, values.toArray(new ASN1OctetString[0]));
+        }
+
+    }
+
+    private RangedAttributeRetrieval() {}
+
+}
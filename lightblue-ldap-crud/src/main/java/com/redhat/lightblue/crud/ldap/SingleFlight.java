@@ -0,0 +1,164 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+
+/**
+ * Coalesces identical searches of a single entity that are in flight at the same time, so that
+ * only the first actually reaches the directory and the rest wait for, and share, its result.
+ * Searches are identical when they have the same key as a {@link QueryResultCache} would give
+ * them: the same normalized filter, base DN, scope, attributes, limits and controls.
+ *
+ * Only the raw entries are shared; every caller translates and projects them for itself, under
+ * its own field access roles. Shared entries must not be modified.
+ *
+ * Writes {@link #invalidateAll()}, after which new searches no longer join those that were
+ * already in flight, and so see the write.
+ *
+ * @author dcrissman
+ */
+public class SingleFlight {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, CompletableFuture<SearchResult>> inFlight = new HashMap<>();
+    private long searches;
+    private long coalesced;
+
+    /**
+     * Returns the result of the <code>request</code>, joining an identical search if one is already
+     * in flight, otherwise running the <code>search</code>.
+     * @param request - {@link SearchRequest} to get the result of.
+     * @param search - runs the <code>request</code> if no identical search is in flight.
+     * @return the {@link SearchResult}, which may be shared with other callers.
+     * @throws LDAPException if the <code>search</code> failed, for every caller that joined it.
+     */
+    public SearchResult search(SearchRequest request, Search search) throws LDAPException {
+        String key = QueryResultCache.createKey(request);
+        CompletableFuture<SearchResult> flight;
+        boolean leader;
+
+        lock.lock();
+        try {
+            flight = inFlight.get(key);
+            leader = (flight == null);
+            if (leader) {
+                flight = new CompletableFuture<>();
+                inFlight.put(key, flight);
+                searches++;
+            }
+            else {
+                coalesced++;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return leader ? lead(key, flight, search) : join(request, flight);
+    }
+
+    private SearchResult lead(String key, CompletableFuture<SearchResult> flight, Search search) throws LDAPException {
+        try {
+            SearchResult result = search.search();
+            flight.complete(result);
+            return result;
+        } catch (Throwable t) {
+            flight.completeExceptionally(t);
+            throw t;
+        } finally {
+            lock.lock();
+            try {
+                inFlight.remove(key, flight);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static SearchResult join(SearchRequest request, CompletableFuture<SearchResult> flight) throws LDAPException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LDAPException(ResultCode.LOCAL_ERROR, "Interrupted waiting on an identical search of " + request.getBaseDN(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof LDAPException) {
+                throw (LDAPException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new LDAPException(ResultCode.LOCAL_ERROR, "Identical search of " + request.getBaseDN() + " failed", cause);
+        }
+    }
+
+    /**
+     * Stops new searches from joining any that are already in flight.
+     */
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            inFlight.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of searches that actually reached the directory.
+     */
+    public long getSearches() {
+        lock.lock();
+        try {
+            return searches;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of searches that joined an identical one rather than reaching the directory.
+     */
+    public long getCoalesced() {
+        lock.lock();
+        try {
+            return coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs a search that no other is identical to.
+     */
+    public interface Search {
+        SearchResult search() throws LDAPException;
+    }
+
+}
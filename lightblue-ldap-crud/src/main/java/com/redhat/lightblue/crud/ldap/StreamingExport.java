@@ -0,0 +1,318 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.redhat.lightblue.util.JsonUtils;
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+
+/**
+ * Streams every entry matched by a search to an {@link OutputStream} as newline delimited json,
+ * one document per line. Entries are requested a page at a time with the
+ * {@link SimplePagedResultsControl}, and each is written as soon as it arrives rather than being
+ * collected, so memory use does not grow with the number of entries. Nothing further is read from
+ * the server while a write is blocked, so a slow {@link OutputStream} slows the export rather than
+ * causing entries to pile up.
+ * <br><br>
+ * A {@link Checkpoint} records the cookie of the page being written and the DN of the last entry
+ * written, so that an export that did not finish can be resumed where it left off.
+ *
+ * @author dcrissman
+ */
+public class StreamingExport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingExport.class);
+
+    private final LDAPConnection connection;
+    private final EntryWriter entryWriter;
+    private final int pageSize;
+
+    private Checkpoint resumeFrom;
+    private byte[] pageCookie;
+    private String lastDN;
+    private boolean lastDNInPage;
+    private String skipThroughDN;
+    private boolean finished;
+    private long exported;
+
+    /**
+     * @param connection - {@link LDAPConnection} to search with, every page is requested over it.
+     * @param entryWriter - {@link EntryWriter} that writes each entry as a json document.
+     * @param pageSize - number of entries to request in each page.
+     */
+    public StreamingExport(LDAPConnection connection, EntryWriter entryWriter, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be at least 1: " + pageSize);
+        }
+        this.connection = connection;
+        this.entryWriter = entryWriter;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Writes the entries matched by the <code>request</code> to <code>out</code>, which is flushed after
+     * each page but not closed. If the server no longer accepts the cookie being resumed from, the search
+     * is started over and the entries up to and including the checkpointed DN are skipped.
+     * @param request - {@link SearchRequest} to export the matches of.
+     * @param out - {@link OutputStream} to write to.
+     * @param resumeFrom - (optional) {@link Checkpoint} of an earlier export of the same <code>request</code>
+     * to resume from.
+     * @throws LDAPException if a page could not be read, or the export could not be resumed because the
+     * checkpointed entry no longer matches the <code>request</code>.
+     * @throws IOException if a document could not be written. The last document may have been partially
+     * written, anything written after the {@link #getCheckpoint()} should be discarded before resuming.
+     */
+    public void export(SearchRequest request, OutputStream out, Checkpoint resumeFrom) throws LDAPException, IOException {
+        this.resumeFrom = (resumeFrom == null) ? new Checkpoint(null, null) : resumeFrom;
+        pageCookie = this.resumeFrom.getCookie();
+        lastDN = this.resumeFrom.getDN();
+        lastDNInPage = this.resumeFrom.isDNInPage();
+        //Resuming with the cookie only returns entries of that page, and the last DN may have come from an earlier one.
+        skipThroughDN = ((pageCookie == null) || lastDNInPage) ? lastDN : null;
+        finished = false;
+
+        //Each document is handed to out as soon as it is complete, but only out decides when to write it through.
+        PageWriter pageWriter = new PageWriter(out, JsonUtils.getObjectMapper().getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM)
+                .setRootValueSeparator(null));
+
+        boolean resumingFromCookie = (pageCookie != null);
+        while (true) {
+            pageWriter.startPage();
+            SearchResult result;
+            try {
+                result = connection.search(createPageRequest(request, pageWriter));
+            } catch (LDAPSearchException e) {
+                if (!resumingFromCookie || (pageWriter.getWrittenInPage() > 0)) {
+                    throw e;
+                }
+                LOGGER.warn("Unable to resume export from its paged results cookie, starting over from the beginning: "
+                        + e.getResultCode());
+                resumingFromCookie = false;
+                pageCookie = null;
+                skipThroughDN = this.resumeFrom.getDN();
+                continue;
+            }
+            resumingFromCookie = false;
+            pageWriter.endPage();
+
+            SimplePagedResultsControl response = SimplePagedResultsControl.get(result);
+            if ((response == null) || !response.moreResultsToReturn()) {
+                break;
+            }
+            pageCookie = response.getCookie().getValue();
+            //Kept, so that starting over can still skip past it if the server rejects the cookie.
+            lastDNInPage = false;
+        }
+
+        if (skipThroughDN != null) {
+            throw new LDAPException(ResultCode.NO_SUCH_OBJECT,
+                    "Unable to resume export after " + skipThroughDN + ", it no longer matches the search");
+        }
+        finished = true;
+    }
+
+    private SearchRequest createPageRequest(SearchRequest request, SearchResultListener listener) {
+        SearchRequest pageRequest = new SearchRequest(
+                listener,
+                request.getControls(),
+                request.getBaseDN(),
+                request.getScope(),
+                request.getDereferencePolicy(),
+                request.getSizeLimit(),
+                request.getTimeLimitSeconds(),
+                request.typesOnly(),
+                request.getFilter(),
+                request.getAttributes());
+        pageRequest.addControl(new SimplePagedResultsControl(
+                pageSize, (pageCookie == null) ? null : new ASN1OctetString(pageCookie), true));
+        return pageRequest;
+    }
+
+    /**
+     * @return the {@link Checkpoint} to resume from, or <code>null</code> if the last call to
+     * {@link #export(SearchRequest, OutputStream, Checkpoint)} wrote every matching entry.
+     */
+    public Checkpoint getCheckpoint() {
+        if (finished) {
+            return null;
+        }
+        //Nothing has been written yet, so the position being resumed from still stands.
+        return (skipThroughDN != null) ? resumeFrom : new Checkpoint(pageCookie, lastDN, lastDNInPage);
+    }
+
+    /**
+     * @return the number of documents written across all calls to
+     * {@link #export(SearchRequest, OutputStream, Checkpoint)}.
+     */
+    public long getExported() {
+        return exported;
+    }
+
+    /**
+     * Writes entries as they arrive, skipping any up to and including the DN being resumed after.
+     * Failures are held until the page completes, as they cannot be thrown from the listener.
+     */
+    private final class PageWriter implements SearchResultListener {
+
+        private static final long serialVersionUID = 1L;
+
+        private final OutputStream out;
+        private final JsonGenerator generator;
+        private int writtenInPage;
+        private Exception failure;
+
+        PageWriter(OutputStream out, JsonGenerator generator) {
+            this.out = out;
+            this.generator = generator;
+        }
+
+        void startPage() {
+            writtenInPage = 0;
+        }
+
+        int getWrittenInPage() {
+            return writtenInPage;
+        }
+
+        @Override
+        public void searchEntryReturned(SearchResultEntry searchEntry) {
+            if (failure != null) {
+                return;
+            }
+            if (skipThroughDN != null) {
+                if (skipThroughDN.equalsIgnoreCase(searchEntry.getDN())) {
+                    skipThroughDN = null;
+                }
+                return;
+            }
+            try {
+                entryWriter.write(searchEntry, generator);
+                generator.writeRaw('\n');
+                generator.flush();
+                lastDN = searchEntry.getDN();
+                lastDNInPage = true;
+                writtenInPage++;
+                exported++;
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        @Override
+        public void searchReferenceReturned(SearchResultReference searchReference) {
+            //Referrals are not followed.
+        }
+
+        /**
+         * Flushes the page, or throws whatever prevented it from being written.
+         */
+        void endPage() throws IOException {
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            else if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+            out.flush();
+        }
+
+    }
+
+    /**
+     * Writes a single entry as a json document.
+     */
+    public interface EntryWriter {
+
+        void write(SearchResultEntry entry, JsonGenerator generator) throws IOException;
+
+    }
+
+    /**
+     * Position an export can be resumed from.
+     */
+    public static final class Checkpoint implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] cookie;
+        private final String dn;
+        private final boolean dnInPage;
+
+        /**
+         * @param cookie - (optional) paged results cookie of the page to resume with, <code>null</code>
+         * to start from the first page.
+         * @param dn - (optional) DN of the last entry written from that page, <code>null</code> if
+         * nothing was.
+         */
+        public Checkpoint(byte[] cookie, String dn) {
+            this(cookie, dn, dn != null);
+        }
+
+        /**
+         * @param cookie - (optional) paged results cookie of the page to resume with, <code>null</code>
+         * to start from the first page.
+         * @param dn - (optional) DN of the last entry written, <code>null</code> if nothing was.
+         * @param dnInPage - <code>true</code> if the <code>dn</code> was written from the page the
+         * <code>cookie</code> requests, <code>false</code> if it was written from an earlier page.
+         */
+        public Checkpoint(byte[] cookie, String dn, boolean dnInPage) {
+            this.cookie = cookie;
+            this.dn = dn;
+            this.dnInPage = dnInPage;
+        }
+
+        public byte[] getCookie() {
+            return cookie;
+        }
+
+        public String getDN() {
+            return dn;
+        }
+
+        public boolean isDNInPage() {
+            return dnInPage;
+        }
+
+        @Override
+        public String toString() {
+            return "Checkpoint [cookieLength=" + ((cookie == null) ? 0 : cookie.length) + ", dn=" + dn
+                    + ", dnInPage=" + dnInPage + "]";
+        }
+
+    }
+
+}
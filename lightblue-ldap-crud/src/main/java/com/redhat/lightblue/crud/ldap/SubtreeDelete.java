@@ -0,0 +1,189 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.RootDSE;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.SubtreeDeleteRequestControl;
+
+/**
+ * Deletes entries along with everything beneath them. If the server supports the
+ * {@link SubtreeDeleteRequestControl} then each subtree is removed with a single request,
+ * otherwise the subtrees are read and then deleted bottom-up, deepest entries first, with
+ * the entries at each depth being deleted in parallel.
+ *
+ * @author dcrissman
+ */
+public class SubtreeDelete {
+
+    private final LDAPConnection searchConnection;
+    private final PipelinedDelete pipelinedDelete;
+    private final boolean useControl;
+
+    /**
+     * @param rootDSE - {@link RootDSE} of the server, may be <code>null</code>.
+     * @return <code>true</code> if the server advertises support for the {@link SubtreeDeleteRequestControl}.
+     */
+    public static boolean isControlSupported(RootDSE rootDSE) {
+        return (rootDSE != null)
+                && rootDSE.supportsControl(SubtreeDeleteRequestControl.SUBTREE_DELETE_REQUEST_OID);
+    }
+
+    /**
+     * @param searchConnection - {@link LDAPConnection} used to read the subtrees, must not be one
+     * of the connections used by the <code>pipelinedDelete</code>.
+     * @param pipelinedDelete - {@link PipelinedDelete} to send the deletes through.
+     * @param useControl - <code>true</code> to use the {@link SubtreeDeleteRequestControl}.
+     */
+    public SubtreeDelete(LDAPConnection searchConnection, PipelinedDelete pipelinedDelete, boolean useControl) {
+        this.searchConnection = searchConnection;
+        this.pipelinedDelete = pipelinedDelete;
+        this.useControl = useControl;
+    }
+
+    /**
+     * Deletes each of the <code>matchedDns</code> along with all of their descendants. Any
+     * failures can be found on the {@link PipelinedDelete}. A subtree that could not be removed
+     * entirely may still have been partly deleted, so each DN is counted by its own outcome.
+     * @param matchedDns - DNs to delete. A DN may be a descendant of another in the collection.
+     * @return the number of <code>matchedDns</code> that no longer exist.
+     * @throws LDAPException if a subtree could not be read.
+     */
+    public int delete(Collection<String> matchedDns) throws LDAPException {
+        Map<DN, DN> matchedToRoot = findRoots(matchedDns);
+        Set<DN> roots = new HashSet<>(matchedToRoot.values());
+
+        if (useControl) {
+            SubtreeDeleteRequestControl control = new SubtreeDeleteRequestControl(true);
+            for (DN root : roots) {
+                pipelinedDelete.delete(root.toString(), control);
+            }
+            pipelinedDelete.awaitCompletion();
+        }
+        else {
+            deleteBottomUp(roots);
+        }
+
+        Set<DN> failed = new HashSet<>();
+        for (PipelinedDelete.Failure failure : pipelinedDelete.getFailures()) {
+            failed.add(new DN(failure.getDN()));
+        }
+
+        int numDeleted = 0;
+        for (Map.Entry<DN, DN> matched : matchedToRoot.entrySet()) {
+            DN dn = matched.getKey();
+            if (failed.contains(dn)) {
+                continue;
+            }
+            /*
+             * Bottom up, every entry gets its own delete, so only its own failure matters. With the
+             * control, only the root does, and the server may have removed part of it before failing.
+             */
+            if (useControl && failed.contains(matched.getValue()) && exists(dn)) {
+                continue;
+            }
+            numDeleted++;
+        }
+        return numDeleted;
+    }
+
+    private boolean exists(DN dn) throws LDAPException {
+        return searchConnection.getEntry(dn.toString(), SearchRequest.NO_ATTRIBUTES) != null;
+    }
+
+    /**
+     * Maps each DN to the highest DN in the collection that it is, or is beneath.
+     */
+    private static Map<DN, DN> findRoots(Collection<String> matchedDns) throws LDAPException {
+        Set<DN> matched = new HashSet<>();
+        for (String dn : matchedDns) {
+            matched.add(new DN(dn));
+        }
+
+        Map<DN, DN> matchedToRoot = new HashMap<>();
+        for (DN dn : matched) {
+            DN root = dn;
+            for (DN parent = dn.getParent(); parent != null; parent = parent.getParent()) {
+                if (matched.contains(parent)) {
+                    root = parent;
+                }
+            }
+            matchedToRoot.put(dn, root);
+        }
+        return matchedToRoot;
+    }
+
+    /**
+     * Reads every entry beneath the <code>roots</code> and deletes them one depth at a time,
+     * starting with the deepest, so that an entry is only deleted once it has become a leaf.
+     */
+    private void deleteBottomUp(Set<DN> roots) throws LDAPException {
+        TreeMap<Integer, List<String>> dnsByDepth = new TreeMap<>();
+        for (DN root : roots) {
+            SearchResult result;
+            try {
+                result = searchConnection.search(new SearchRequest(
+                        root.toString(),
+                        SearchScope.SUB,
+                        Filter.createPresenceFilter("objectClass"),
+                        SearchRequest.NO_ATTRIBUTES));
+            } catch (LDAPSearchException e) {
+                if (!ResultCode.NO_SUCH_OBJECT.equals(e.getResultCode())) {
+                    throw e;
+                }
+                //Let the delete itself report that the entry does not exist.
+                addAtDepth(dnsByDepth, root, root.toString());
+                continue;
+            }
+            for (SearchResultEntry entry : result.getSearchEntries()) {
+                addAtDepth(dnsByDepth, entry.getParsedDN(), entry.getDN());
+            }
+        }
+
+        for (List<String> dns : dnsByDepth.descendingMap().values()) {
+            for (String dn : dns) {
+                pipelinedDelete.delete(dn);
+            }
+            pipelinedDelete.awaitCompletion();
+        }
+    }
+
+    private static void addAtDepth(Map<Integer, List<String>> dnsByDepth, DN parsedDn, String dn) {
+        dnsByDepth.computeIfAbsent(parsedDn.getRDNs().length, (Integer depth) -> new ArrayList<>()).add(dn);
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import java.io.IOException;
+
+/**
+ * Keeps the cookies Content Synchronization (RFC 4533) hands out, so that a {@link CacheSync}
+ * can resume following changes from where it left off rather than starting over.
+ *
+ * @author dcrissman
+ */
+public interface SyncCookieStore {
+
+    /**
+     * @param id - identifies what the cookie synchronizes.
+     * @return the last cookie stored for the <code>id</code>, or <code>null</code> if there is none.
+     * @throws IOException if the cookie could not be read.
+     */
+    byte[] load(String id) throws IOException;
+
+    /**
+     * @param id - identifies what the cookie synchronizes.
+     * @param cookie - the cookie to keep, or <code>null</code> to discard the cookie for the <code>id</code>.
+     * @throws IOException if the cookie could not be written.
+     */
+    void store(String id, byte[] cookie) throws IOException;
+
+}
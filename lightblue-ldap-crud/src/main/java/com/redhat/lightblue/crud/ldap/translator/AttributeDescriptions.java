@@ -0,0 +1,162 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.schema.AttributeTypeDefinition;
+import com.unboundid.ldap.sdk.schema.Schema;
+
+/**
+ * Resolves the {@link Attribute} an {@link Entry} holds for an attribute name taken from the
+ * metadata, the way LDAP compares attribute descriptions: without regard to case, ignoring
+ * options (e.g. <code>cn;lang-en</code>) and, if the server schema is known, accepting any
+ * of the attribute type's other names (e.g. <code>commonName</code> for <code>cn</code>).
+ *
+ * The names each attribute may go by are lowercased and interned once, when built, so that
+ * resolving never allocates.
+ *
+ * @author dcrissman
+ */
+public final class AttributeDescriptions {
+
+    /** Resolves without any schema aliases. */
+    public static final AttributeDescriptions WITHOUT_SCHEMA = new AttributeDescriptions(Collections.<String, String[]> emptyMap(), null);
+
+    private final Map<String, String[]> namesByAttribute;
+    private final Schema schema;
+
+    /**
+     * @param attributeNames - names of the attributes that will be resolved.
+     * @param schema - server {@link Schema}, may be <code>null</code> if it is unknown.
+     * @return an {@link AttributeDescriptions} for the <code>attributeNames</code>.
+     */
+    public static AttributeDescriptions build(Collection<String> attributeNames, Schema schema) {
+        Map<String, String[]> namesByAttribute = new HashMap<>();
+        for (String attributeName : attributeNames) {
+            Set<String> names = new LinkedHashSet<>();
+            String baseName = Attribute.getBaseName(attributeName);
+            names.add(normalize(baseName));
+
+            AttributeTypeDefinition definition = (schema == null) ? null : schema.getAttributeType(baseName);
+            if (definition != null) {
+                for (String name : definition.getNames()) {
+                    names.add(normalize(name));
+                }
+                names.add(normalize(definition.getOID()));
+            }
+
+            namesByAttribute.put(attributeName, names.toArray(new String[names.size()]));
+        }
+        return new AttributeDescriptions(namesByAttribute, schema);
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ENGLISH).intern();
+    }
+
+    private AttributeDescriptions(Map<String, String[]> namesByAttribute, Schema schema) {
+        this.namesByAttribute = namesByAttribute;
+        this.schema = schema;
+    }
+
+    /**
+     * @param attributeName - name of the attribute as known to the metadata.
+     * @return <code>true</code> if the schema marks the attribute as NO-USER-MODIFICATION, meaning
+     * the server maintains it (e.g. <code>modifyTimestamp</code>), otherwise <code>false</code>. If
+     * the server schema is unknown, the standard schema is consulted instead.
+     */
+    public boolean isServerMaintained(String attributeName) {
+        Schema s = (schema == null) ? getStandardSchema() : schema;
+        if (s == null) {
+            return false;
+        }
+        AttributeTypeDefinition definition = s.getAttributeType(Attribute.getBaseName(attributeName));
+        return (definition != null) && definition.isNoUserModification();
+    }
+
+    private static Schema getStandardSchema() {
+        try {
+            return Schema.getDefaultStandardSchema();
+        } catch (LDAPException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param entry - {@link Entry} to find the attribute on.
+     * @param attributeName - name of the attribute as known to the metadata.
+     * @return the matching {@link Attribute}, preferring one without options, or
+     * <code>null</code> if the <code>entry</code> does not have one.
+     */
+    public Attribute resolve(Entry entry, String attributeName) {
+        Attribute attr = entry.getAttribute(attributeName);
+        if (attr != null) {
+            return attr;
+        }
+
+        String[] names = namesByAttribute.get(attributeName);
+        Attribute withOptions = null;
+        for (Attribute candidate : entry.getAttributes()) {
+            String candidateName = candidate.getName();
+            int baseLength = candidateName.indexOf(';');
+            boolean hasOptions = baseLength >= 0;
+            if (!hasOptions) {
+                baseLength = candidateName.length();
+            }
+
+            if (matches(candidateName, baseLength, names, attributeName)) {
+                if (!hasOptions) {
+                    return candidate;
+                }
+                if (withOptions == null) {
+                    withOptions = candidate;
+                }
+            }
+        }
+        return withOptions;
+    }
+
+    private static boolean matches(String candidateName, int baseLength, String[] names, String attributeName) {
+        if (names == null) {
+            int nameLength = attributeName.indexOf(';');
+            return matches(candidateName, baseLength, attributeName, (nameLength < 0) ? attributeName.length() : nameLength);
+        }
+        for (String name : names) {
+            if (matches(candidateName, baseLength, name, name.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String candidateName, int baseLength, String name, int nameLength) {
+        return (baseLength == nameLength) && candidateName.regionMatches(true, 0, name, 0, baseLength);
+    }
+
+}
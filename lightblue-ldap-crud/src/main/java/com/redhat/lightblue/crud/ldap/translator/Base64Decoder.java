@@ -0,0 +1,94 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import java.util.Arrays;
+
+/**
+ * Decodes base64 text directly into a <code>byte[]</code> of exactly the decoded size, without
+ * first copying the text into bytes or growing intermediate buffers. Accepts the same input
+ * that Jackson's default base64 variant does: the standard alphabet, optional padding, and
+ * whitespace, which is ignored.
+ *
+ * @author dcrissman
+ */
+public final class Base64Decoder {
+
+    private static final int[] SEXTETS = new int[128];
+
+    static {
+        Arrays.fill(SEXTETS, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            SEXTETS[alphabet.charAt(i)] = i;
+        }
+    }
+
+    /**
+     * @param text - base64 encoded text.
+     * @return the decoded bytes.
+     * @throws IllegalArgumentException if the <code>text</code> is not valid base64.
+     */
+    public static byte[] decode(CharSequence text) {
+        int length = text.length();
+
+        int sextets = 0;
+        int padding = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c <= ' ') {
+                continue;
+            }
+            if (c == '=') {
+                padding++;
+            }
+            else if ((padding > 0) || (c >= SEXTETS.length) || (SEXTETS[c] < 0)) {
+                throw new IllegalArgumentException("Invalid base64 character at index " + i);
+            }
+            else {
+                sextets++;
+            }
+        }
+        if (((sextets % 4) == 1) || (padding > 2)
+                || ((padding > 0) && (((sextets + padding) % 4) != 0))) {
+            throw new IllegalArgumentException("Invalid base64 length: " + sextets);
+        }
+
+        byte[] decoded = new byte[(sextets * 3) / 4];
+        int bits = 0;
+        int bitCount = 0;
+        int pos = 0;
+        for (int i = 0; pos < decoded.length; i++) {
+            char c = text.charAt(i);
+            if ((c <= ' ') || (c == '=')) {
+                continue;
+            }
+            bits = (bits << 6) | SEXTETS[c];
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                decoded[pos++] = (byte) (bits >> bitCount);
+            }
+        }
+        return decoded;
+    }
+
+    private Base64Decoder() {}
+
+}
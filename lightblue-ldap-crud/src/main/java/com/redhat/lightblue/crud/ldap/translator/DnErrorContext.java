@@ -0,0 +1,108 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import com.redhat.lightblue.common.ldap.LdapConstant;
+import com.redhat.lightblue.util.Error;
+
+/**
+ * Error context for the DN of the entry being translated, which is only rendered if an
+ * {@link Error} is actually raised. Rather than building <code>dn=...</code> for every
+ * entry, a constant placeholder is pushed onto the {@link Error} context and replaced
+ * with the DN when the {@link Error} is caught on its way out of the translator.
+ * <pre>
+ * DnErrorContext.push();
+ * try {
+ *     ...
+ * }
+ * catch (Error e) {
+ *     throw DnErrorContext.render(e, dn);
+ * }
+ * finally {
+ *     DnErrorContext.pop();
+ * }
+ * </pre>
+ *
+ * @author dcrissman
+ */
+final class DnErrorContext {
+
+    /** Stands in for the DN until it is rendered. */
+    static final String PLACEHOLDER = LdapConstant.ATTRIBUTE_DN + "=?";
+
+    private static final char DELIMITER = '/';
+
+    static void push() {
+        Error.push(PLACEHOLDER);
+    }
+
+    static void pop() {
+        Error.pop();
+    }
+
+    /**
+     * Replaces the innermost placeholder in the <code>error</code>'s context with the DN. The
+     * <code>error</code> is changed in place, as constructing another {@link Error} would log it again.
+     * @param error - {@link Error} raised while the placeholder was pushed.
+     * @param dn - DN of the entry being translated.
+     * @return the <code>error</code>, with the DN in its context if it contained the placeholder.
+     */
+    static Error render(Error error, String dn) {
+        String context = error.getContext();
+        int index = lastIndexOfPlaceholder(context);
+        if (index < 0) {
+            return error;
+        }
+
+        //Pop everything pushed after the placeholder, then the placeholder itself.
+        Deque<String> inner = new ArrayDeque<>();
+        int placeholderEnd = index + PLACEHOLDER.length();
+        while (context.length() > placeholderEnd) {
+            error.popContext();
+            String popped = error.getContext();
+            inner.push(context.substring(popped.length() + 1));
+            context = popped;
+        }
+        error.popContext();
+
+        error.pushContext(LdapConstant.ATTRIBUTE_DN + "=" + dn);
+        for (String element : inner) {
+            error.pushContext(element);
+        }
+        return error;
+    }
+
+    private static int lastIndexOfPlaceholder(String context) {
+        int index = context.length();
+        while ((index = context.lastIndexOf(PLACEHOLDER, index - 1)) >= 0) {
+            int end = index + PLACEHOLDER.length();
+            if (((index == 0) || (context.charAt(index - 1) == DELIMITER))
+                    && ((end == context.length()) || (context.charAt(end) == DELIMITER))) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private DnErrorContext() {}
+
+}
@@ -57,12 +57,15 @@ public class EntryTranslatorFromJson extends LdapTranslatorFromJson<Entry>{
 
     @Override
     public void translate(JsonDoc document, Entry target){
-        Error.push(LdapConstant.ATTRIBUTE_DN + "=" + target.getDN());
+        DnErrorContext.push();
         try{
             super.translate(document, target);
         }
+        catch(Error e){
+            throw DnErrorContext.render(e, target.getDN());
+        }
         finally{
-            Error.pop();
+            DnErrorContext.pop();
         }
     }
 
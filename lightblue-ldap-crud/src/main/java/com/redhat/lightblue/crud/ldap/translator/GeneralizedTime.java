@@ -0,0 +1,192 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import java.text.ParseException;
+import java.util.Date;
+
+import com.unboundid.util.StaticUtils;
+
+/**
+ * Thread safe encoder/decoder for the UTC generalized time values, in the form
+ * <code>yyyyMMddHHmmss[.fff]Z</code>, that {@link com.redhat.lightblue.metadata.types.DateType}
+ * attributes hold. Unlike {@link StaticUtils#encodeGeneralizedTime(Date)} and
+ * {@link StaticUtils#decodeGeneralizedTime(String)}, no date formats or calendars are created;
+ * the calendar arithmetic is done inline on the proleptic Gregorian calendar. Values outside
+ * of that form (time zone offsets, missing seconds, dates before the Gregorian cutover, etc)
+ * are handed off to {@link StaticUtils} so the results are always the same.
+ *
+ * @author dcrissman
+ */
+public final class GeneralizedTime {
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    /** 1582-10-15T00:00:00Z, before which {@link StaticUtils} uses the Julian calendar. */
+    private static final long GREGORIAN_CUTOVER_MILLIS = -12219292800000L;
+
+    /** 9999-12-31T23:59:59.999Z, the last instant with a four digit year. */
+    private static final long MAX_MILLIS = 253402300799999L;
+
+    /** Days between 0000-03-01 and 1970-01-01. */
+    private static final int EPOCH_DAY_OFFSET = 719468;
+    private static final int DAYS_PER_ERA = 146097;
+
+    /**
+     * @param date - {@link Date} to encode.
+     * @return the <code>date</code> as a generalized time, in UTC with millisecond precision.
+     */
+    public static String encode(Date date) {
+        long millis = date.getTime();
+        if ((millis < GREGORIAN_CUTOVER_MILLIS) || (millis > MAX_MILLIS)) {
+            return StaticUtils.encodeGeneralizedTime(date);
+        }
+
+        long days = Math.floorDiv(millis, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(millis, MILLIS_PER_DAY);
+
+        //civil from days, where each 400 year era starts on March 1st.
+        long z = days + EPOCH_DAY_OFFSET;
+        long era = Math.floorDiv(z, DAYS_PER_ERA);
+        int dayOfEra = (int) (z - (era * DAYS_PER_ERA));
+        int yearOfEra = (dayOfEra - (dayOfEra / 1460) + (dayOfEra / 36524) - (dayOfEra / 146096)) / 365;
+        int dayOfYear = dayOfEra - ((365 * yearOfEra) + (yearOfEra / 4) - (yearOfEra / 100));
+        int shiftedMonth = ((5 * dayOfYear) + 2) / 153;
+        int day = (dayOfYear - (((153 * shiftedMonth) + 2) / 5)) + 1;
+        int month = (shiftedMonth < 10) ? (shiftedMonth + 3) : (shiftedMonth - 9);
+        int year = (int) (yearOfEra + (era * 400) + ((month <= 2) ? 1 : 0));
+
+        char[] chars = new char[19];
+        write(chars, 0, year, 4);
+        write(chars, 4, month, 2);
+        write(chars, 6, day, 2);
+        write(chars, 8, millisOfDay / 3600000, 2);
+        write(chars, 10, (millisOfDay / 60000) % 60, 2);
+        write(chars, 12, (millisOfDay / 1000) % 60, 2);
+        chars[14] = '.';
+        write(chars, 15, millisOfDay % 1000, 3);
+        chars[18] = 'Z';
+        return new String(chars);
+    }
+
+    /**
+     * @param value - generalized time to decode.
+     * @return the decoded {@link Date}.
+     * @throws ParseException if the <code>value</code> is not a valid generalized time.
+     */
+    public static Date decode(String value) throws ParseException {
+        long millis = decodeUTC(value);
+        if (millis == Long.MIN_VALUE) {
+            return StaticUtils.decodeGeneralizedTime(value);
+        }
+        return new Date(millis);
+    }
+
+    /**
+     * @return the milliseconds since the epoch, or {@link Long#MIN_VALUE} if the
+     * <code>value</code> is not of the form <code>yyyyMMddHHmmss[.f+]Z</code> or falls before
+     * the Gregorian cutover.
+     */
+    private static long decodeUTC(String value) {
+        int length = value.length();
+        if ((length < 15) || (value.charAt(length - 1) != 'Z')) {
+            return Long.MIN_VALUE;
+        }
+
+        int year = read(value, 0, 4);
+        int month = read(value, 4, 2);
+        int day = read(value, 6, 2);
+        int hour = read(value, 8, 2);
+        int minute = read(value, 10, 2);
+        int second = read(value, 12, 2);
+        if ((year < 1583) || (month < 1) || (month > 12) || (day < 1) || (day > daysInMonth(year, month))
+                || (hour < 0) || (hour > 23) || (minute < 0) || (minute > 59) || (second < 0) || (second > 59)) {
+            return Long.MIN_VALUE;
+        }
+
+        int millis = 0;
+        if (length > 15) {
+            int fractionDigits = length - 16;
+            if ((value.charAt(14) != '.') || (fractionDigits < 1)) {
+                return Long.MIN_VALUE;
+            }
+            //Precision beyond milliseconds is truncated, as StaticUtils does.
+            millis = read(value, 15, Math.min(3, fractionDigits));
+            if ((millis < 0) || (read(value, 15, fractionDigits) < 0)) {
+                return Long.MIN_VALUE;
+            }
+            for (int i = fractionDigits; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+
+        //days from civil, where each 400 year era starts on March 1st.
+        int y = (month <= 2) ? (year - 1) : year;
+        int era = y / 400;
+        int yearOfEra = y - (era * 400);
+        int dayOfYear = ((((153 * (month + ((month > 2) ? -3 : 9))) + 2) / 5) + day) - 1;
+        int dayOfEra = ((yearOfEra * 365) + (yearOfEra / 4) - (yearOfEra / 100)) + dayOfYear;
+        long days = ((long) era * DAYS_PER_ERA) + dayOfEra - EPOCH_DAY_OFFSET;
+
+        return (days * MILLIS_PER_DAY) + (((((hour * 60) + minute) * 60) + second) * 1000L) + millis;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (((year % 4) == 0) && (((year % 100) != 0) || ((year % 400) == 0))) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * @return the non-negative integer made up of the <code>length</code> digits starting at
+     * <code>offset</code>, or <code>-1</code> if any of them are not a digit. Digits beyond
+     * the ninth are validated but not accumulated.
+     */
+    private static int read(String value, int offset, int length) {
+        int result = 0;
+        for (int i = offset; i < (offset + length); i++) {
+            char c = value.charAt(i);
+            if ((c < '0') || (c > '9')) {
+                return -1;
+            }
+            if ((i - offset) < 9) {
+                result = (result * 10) + (c - '0');
+            }
+        }
+        return result;
+    }
+
+    private static void write(char[] chars, int offset, int value, int length) {
+        for (int i = (offset + length) - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + (value % 10));
+            value /= 10;
+        }
+    }
+
+    private GeneralizedTime() {}
+
+}
@@ -5,13 +5,13 @@ import java.util.Date;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.redhat.lightblue.common.ldap.LdapErrorCode;
 import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.MetadataConstants;
 import com.redhat.lightblue.metadata.Type;
 import com.redhat.lightblue.metadata.translator.NonPersistedPredefinedFieldTranslatorFromJson;
 import com.redhat.lightblue.metadata.types.BinaryType;
 import com.redhat.lightblue.metadata.types.DateType;
 import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.Path;
-import com.unboundid.util.StaticUtils;
 
 public abstract class LdapTranslatorFromJson<T> extends NonPersistedPredefinedFieldTranslatorFromJson<T> {
 
@@ -28,14 +28,31 @@ public abstract class LdapTranslatorFromJson<T> extends NonPersistedPredefinedFi
     @Override
     protected Object fromJson(Type type, JsonNode node){
         if(type instanceof DateType){
-            return StaticUtils.encodeGeneralizedTime((Date)type.fromJson(node));
+            return GeneralizedTime.encode((Date)type.fromJson(node));
         }
         else if(type instanceof BinaryType){
-            return type.fromJson(node);
+            return binaryFromJson(node);
         }
         else{
             return super.fromJson(type, node).toString();
         }
     }
 
+    /**
+     * A {@link com.fasterxml.jackson.databind.node.BinaryNode} hands back its backing array, and
+     * base64 text is decoded straight into an array of the decoded size. Either way the result
+     * is wrapped, not copied, by the UnboundID attribute it is handed to.
+     */
+    private Object binaryFromJson(JsonNode node){
+        if((node == null) || !node.isTextual()){
+            return BinaryType.TYPE.fromJson(node);
+        }
+        try{
+            return Base64Decoder.decode(node.textValue());
+        }
+        catch(IllegalArgumentException e){
+            throw Error.get(BinaryType.NAME, MetadataConstants.ERR_INCOMPATIBLE_VALUE, node.toString());
+        }
+    }
+
 }
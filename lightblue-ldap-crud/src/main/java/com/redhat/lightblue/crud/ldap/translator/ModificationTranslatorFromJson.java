@@ -1,12 +1,14 @@
 package com.redhat.lightblue.crud.ldap.translator;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.redhat.lightblue.common.ldap.LdapConstant;
 import com.redhat.lightblue.common.ldap.LdapFieldNameTranslator;
 import com.redhat.lightblue.metadata.ArrayElement;
 import com.redhat.lightblue.metadata.ArrayField;
@@ -17,26 +19,94 @@ import com.redhat.lightblue.metadata.types.BinaryType;
 import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonDoc;
 import com.redhat.lightblue.util.Path;
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.Modification;
 import com.unboundid.ldap.sdk.ModificationType;
 import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.controls.AssertionRequestControl;
+import com.unboundid.ldap.sdk.controls.PermissiveModifyRequestControl;
 
 public class ModificationTranslatorFromJson extends LdapTranslatorFromJson<List<Modification>> {
 
+    private static final String RANGE_OPTION_PREFIX = "range=";
+
     private final LdapFieldNameTranslator fieldNameTranslator;
+    private final String versionAttribute;
+    private final AttributeDescriptions attributeDescriptions;
     private final Set<Path> modifiedPaths = new HashSet<>();
+    private String expectedVersion;
+    private Entry currentEntry;
+    private boolean incremental;
 
     public ModificationTranslatorFromJson(EntityMetadata entityMetadata, LdapFieldNameTranslator fieldNameTranslator) {
+        this(entityMetadata, fieldNameTranslator, null);
+    }
+
+    /**
+     * @param entityMetadata - {@link EntityMetadata}
+     * @param fieldNameTranslator - {@link LdapFieldNameTranslator}
+     * @param versionAttribute - (optional) attribute used for optimistic concurrency. If a document
+     * contains a value for it, that value is asserted to still be the current value when the
+     * modification is applied, and the attribute is advanced to a new version. See
+     * {@link #nextVersion(String)}.
+     */
+    public ModificationTranslatorFromJson(EntityMetadata entityMetadata, LdapFieldNameTranslator fieldNameTranslator,
+            String versionAttribute) {
+        this(entityMetadata, fieldNameTranslator, versionAttribute, AttributeDescriptions.WITHOUT_SCHEMA);
+    }
+
+    /**
+     * @param entityMetadata - {@link EntityMetadata}
+     * @param fieldNameTranslator - {@link LdapFieldNameTranslator}
+     * @param versionAttribute - (optional) attribute used for optimistic concurrency.
+     * @param attributeDescriptions - {@link AttributeDescriptions} used to find each attribute on the
+     * current entry, which may carry options or use a schema alias.
+     */
+    public ModificationTranslatorFromJson(EntityMetadata entityMetadata, LdapFieldNameTranslator fieldNameTranslator,
+            String versionAttribute, AttributeDescriptions attributeDescriptions) {
         super(entityMetadata);
         this.fieldNameTranslator = fieldNameTranslator;
+        this.versionAttribute = versionAttribute;
+        this.attributeDescriptions = attributeDescriptions;
     }
 
     public ModifyRequest translate(JsonDoc document, String dn) {
-        Error.push(LdapConstant.ATTRIBUTE_DN + "=" + dn);
+        return translate(document, dn, null);
+    }
+
+    /**
+     * Translates the <code>document</code> into a {@link ModifyRequest}.
+     * @param document - {@link JsonDoc} to translate.
+     * @param dn - DN of the entry being modified.
+     * @param currentEntry - (optional) the entry as it currently exists, containing at least the
+     * multi-valued attributes. If provided, array fields are sent as <code>ADD</code>/<code>DELETE</code>
+     * modifications of only the values that changed, rather than replacing every value.
+     * @return the {@link ModifyRequest}.
+     */
+    public ModifyRequest translate(JsonDoc document, String dn, Entry currentEntry) {
+        DnErrorContext.push();
         try {
-            return new ModifyRequest(dn, translate(document));
+            expectedVersion = null;
+            this.currentEntry = currentEntry;
+            incremental = false;
+            ModifyRequest request = new ModifyRequest(dn, translate(document));
+            if (expectedVersion != null) {
+                request.addControl(new AssertionRequestControl(
+                        Filter.createEqualityFilter(versionAttribute, expectedVersion)));
+            }
+            if (incremental) {
+                //Ignore values that were added or removed by someone else in the meantime.
+                request.addControl(new PermissiveModifyRequestControl(false));
+            }
+            return request;
+        } catch (Error e) {
+            throw DnErrorContext.render(e, dn);
         } finally {
-            Error.pop();
+            this.currentEntry = null;
+            DnErrorContext.pop();
         }
     }
 
@@ -53,6 +123,16 @@ public class ModificationTranslatorFromJson extends LdapTranslatorFromJson<List<
 
         Type type = field.getType();
         Object o = fromJson(type, node);
+        if((versionAttribute != null) && versionAttribute.equalsIgnoreCase(attributeName)) {
+            expectedVersion = o.toString();
+            if(attributeDescriptions.isServerMaintained(attributeName)) {
+                //The server advances the version itself on every change.
+                return;
+            }
+            ((List<Modification>) target).add(new Modification(ModificationType.REPLACE, attributeName, nextVersion(expectedVersion)));
+            modifiedPaths.add(field.getFullPath());
+            return;
+        }
         if(type instanceof BinaryType) {
             ((List<Modification>) target).add(new Modification(ModificationType.REPLACE, attributeName, (byte[])o));
         } else {
@@ -62,6 +142,19 @@ public class ModificationTranslatorFromJson extends LdapTranslatorFromJson<List<
         modifiedPaths.add(field.getFullPath());
     }
 
+    /**
+     * @param version - the version the document was read at.
+     * @return the version written in place of <code>version</code>: the next number if it is
+     * numeric, otherwise a random UUID.
+     */
+    static String nextVersion(String version) {
+        try {
+            return Long.toString(Math.addExact(Long.parseLong(version), 1));
+        } catch (NumberFormatException | ArithmeticException e) {
+            return UUID.randomUUID().toString();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     protected void translate(ArrayField field, List<Object> items, Object target) {
@@ -69,22 +162,77 @@ public class ModificationTranslatorFromJson extends LdapTranslatorFromJson<List<
         Type arrayElementType = arrayElement.getType();
         String attributeName = fieldNameTranslator.translateFieldName(field.getFullPath());
 
-        if(arrayElementType instanceof BinaryType){
-            List<byte[]> bytes = new ArrayList<>();
-            for(Object item : items){
-                bytes.add((byte[])item);
+        List<ASN1OctetString> values = new ArrayList<>();
+        for(Object item : items){
+            if(arrayElementType instanceof BinaryType){
+                values.add(new ASN1OctetString((byte[])item));
             }
-            ((List<Modification>) target).add(new Modification(ModificationType.REPLACE, attributeName, bytes.toArray(new byte[0][])));
+            else{
+                values.add(new ASN1OctetString(item.toString()));
+            }
+        }
+
+        List<Modification> modifications = (List<Modification>) target;
+        if(currentEntry == null){
+            modifications.add(new Modification(ModificationType.REPLACE, attributeName, values.toArray(new ASN1OctetString[0])));
         }
         else{
-            List<String> values = new ArrayList<>();
-            for(Object item : items){
-                values.add(item.toString());
-            }
-            ((List<Modification>) target).add(new Modification(ModificationType.REPLACE, attributeName, values.toArray(new String[0])));
+            diff(attributeName, values, modifications);
         }
 
         modifiedPaths.add(field.getFullPath());
     }
 
+    /**
+     * Adds <code>DELETE</code> and <code>ADD</code> modifications for only those values that differ
+     * between the current entry and the <code>values</code>. Values are compared byte for byte,
+     * so a value that only differs by case is deleted and re-added. Values are deleted from the
+     * attribute as the current entry names it, so that any options it carries still match.
+     */
+    private void diff(String attributeName, List<ASN1OctetString> values, List<Modification> modifications) {
+        Attribute currentAttribute = attributeDescriptions.resolve(currentEntry, attributeName);
+        Set<ASN1OctetString> currentValues = new LinkedHashSet<>();
+        if(currentAttribute != null){
+            currentValues.addAll(Arrays.asList(currentAttribute.getRawValues()));
+        }
+        Set<ASN1OctetString> newValues = new LinkedHashSet<>(values);
+
+        List<ASN1OctetString> removed = new ArrayList<>();
+        for(ASN1OctetString value : currentValues){
+            if(!newValues.contains(value)){
+                removed.add(value);
+            }
+        }
+        List<ASN1OctetString> added = new ArrayList<>();
+        for(ASN1OctetString value : newValues){
+            if(!currentValues.contains(value)){
+                added.add(value);
+            }
+        }
+
+        if(!removed.isEmpty()){
+            modifications.add(new Modification(ModificationType.DELETE, getDescription(currentAttribute),
+                    removed.toArray(new ASN1OctetString[0])));
+            incremental = true;
+        }
+        if(!added.isEmpty()){
+            modifications.add(new Modification(ModificationType.ADD, attributeName, added.toArray(new ASN1OctetString[0])));
+            incremental = true;
+        }
+    }
+
+    /**
+     * @return the description of the <code>attribute</code> without any range option (e.g.
+     * <code>member;range=0-1499</code>), which only describes how the values were returned.
+     */
+    private static String getDescription(Attribute attribute) {
+        StringBuilder description = new StringBuilder(attribute.getBaseName());
+        for (String option : attribute.getOptions()) {
+            if (!option.regionMatches(true, 0, RANGE_OPTION_PREFIX, 0, RANGE_OPTION_PREFIX.length())) {
+                description.append(';').append(option);
+            }
+        }
+        return description.toString();
+    }
+
 }
@@ -0,0 +1,365 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.lightblue.common.ldap.LdapConstant;
+import com.redhat.lightblue.common.ldap.LdapFieldNameTranslator;
+import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.eval.QueryEvaluationContext;
+import com.redhat.lightblue.metadata.ArrayField;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.FieldCursor;
+import com.redhat.lightblue.metadata.FieldTreeNode;
+import com.redhat.lightblue.metadata.PredefinedFields;
+import com.redhat.lightblue.metadata.SimpleArrayElement;
+import com.redhat.lightblue.metadata.SimpleField;
+import com.redhat.lightblue.metadata.Type;
+import com.redhat.lightblue.query.FieldProjection;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.ProjectionList;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+
+/**
+ * Precomputed plan of which fields a {@link Projection} made up only of field projections
+ * (ie. <code>{"field": "cn", "include": true}</code>) keeps, so that a {@link SearchResultEntry}
+ * can be written directly into its projected form. This skips building the complete document
+ * with {@link ResultTranslatorToJson} and then projecting it with a {@link Projector}. The
+ * {@link Projector} itself decides, once per field while compiling, whether each field is kept,
+ * so the results are the same.
+ *
+ * @author dcrissman
+ */
+public final class ProjectionPlan {
+
+    private final List<PlannedField> fields;
+
+    /**
+     * @param entityMetadata - {@link EntityMetadata}
+     * @param fieldNameTranslator - {@link LdapFieldNameTranslator}
+     * @param projection - {@link Projection} to plan for, including any fields excluded
+     * due to access restrictions.
+     * @return a {@link ProjectionPlan}, or <code>null</code> if the <code>projection</code>
+     * cannot be planned for and so must be evaluated by the {@link Projector}.
+     */
+    public static ProjectionPlan compile(EntityMetadata entityMetadata, LdapFieldNameTranslator fieldNameTranslator,
+            Projection projection) {
+        return compile(entityMetadata, fieldNameTranslator, projection, AttributeDescriptions.WITHOUT_SCHEMA);
+    }
+
+    /**
+     * @param entityMetadata - {@link EntityMetadata}
+     * @param fieldNameTranslator - {@link LdapFieldNameTranslator}
+     * @param projection - {@link Projection} to plan for, including any fields excluded
+     * due to access restrictions.
+     * @param attributeDescriptions - {@link AttributeDescriptions} used to find each attribute on an entry.
+     * @return a {@link ProjectionPlan}, or <code>null</code> if the <code>projection</code>
+     * cannot be planned for and so must be evaluated by the {@link Projector}.
+     */
+    public static ProjectionPlan compile(EntityMetadata entityMetadata, LdapFieldNameTranslator fieldNameTranslator,
+            Projection projection, AttributeDescriptions attributeDescriptions) {
+        if (!isPlainFieldProjection(projection)) {
+            return null;
+        }
+
+        Projector projector = Projector.getInstance(projection, entityMetadata);
+        QueryEvaluationContext ctx = new QueryEvaluationContext(JsonNodeFactory.instance.objectNode());
+        Path dnPath = fieldNameTranslator.translateAttributeName(LdapConstant.ATTRIBUTE_DN);
+
+        List<PlannedField> fields = new ArrayList<>();
+        FieldCursor cursor = entityMetadata.getFieldCursor();
+        if (cursor.firstChild()) {
+            do {
+                Path path = cursor.getCurrentPath();
+                FieldTreeNode node = cursor.getCurrentNode();
+                String fieldName = path.getLast();
+
+                if (dnPath.equals(path) || PredefinedFields.isFieldAnArrayCount(fieldName, entityMetadata.getFields())) {
+                    //Both are added separately.
+                    continue;
+                }
+                else if (node instanceof SimpleField) {
+                    if (!isIncluded(projector, path, ctx)) {
+                        continue;
+                    }
+                    if (PredefinedFields.isFieldObjectType(path.toString())) {
+                        fields.add(new ObjectTypeField(fieldName, ((SimpleField) node).getType(), entityMetadata.getEntityInfo().getName()));
+                    }
+                    else {
+                        fields.add(new ValueField(fieldName, fieldNameTranslator.translateFieldName(path), attributeDescriptions,
+                                ((SimpleField) node).getType()));
+                    }
+                }
+                else if ((node instanceof ArrayField) && (((ArrayField) node).getElement() instanceof SimpleArrayElement)) {
+                    boolean includeElements = isIncluded(projector, new Path(path, new Path("0")), ctx);
+                    Path countPath = path.mutableCopy().setLast(PredefinedFields.createArrayCountFieldName(fieldName)).immutableCopy();
+                    boolean includeCount = isIncluded(projector, countPath, ctx);
+                    if (includeElements || includeCount) {
+                        fields.add(new ArrayValueField(fieldName, fieldNameTranslator.translateFieldName(path), attributeDescriptions,
+                                ((ArrayField) node).getElement().getType(), includeElements, countPath.getLast(), includeCount));
+                    }
+                }
+                else {
+                    //Not representable in LDAP, let the ResultTranslatorToJson report it.
+                    return null;
+                }
+            } while (cursor.nextSibling());
+        }
+
+        if (dnPath.numSegments() != 1) {
+            return null;
+        }
+        if (isIncluded(projector, dnPath, ctx)) {
+            fields.add(new DNField(dnPath.getLast()));
+        }
+
+        return new ProjectionPlan(fields);
+    }
+
+    /*
+     * Recursive method!
+     */
+    private static boolean isPlainFieldProjection(Projection projection) {
+        if (projection instanceof ProjectionList) {
+            for (Projection item : ((ProjectionList) projection).getItems()) {
+                if (!isPlainFieldProjection(item)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        else if (projection instanceof FieldProjection) {
+            Path field = ((FieldProjection) projection).getField();
+            for (int i = 0; i < field.numSegments(); i++) {
+                if (field.isIndex(i)) {
+                    //Specific array elements are not planned for.
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isIncluded(Projector projector, Path path, QueryEvaluationContext ctx) {
+        switch (projector.project(path, ctx)) {
+            case explicit_inclusion:
+            case implicit_inclusion:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private ProjectionPlan(List<PlannedField> fields) {
+        this.fields = Collections.unmodifiableList(fields);
+    }
+
+    /**
+     * @return the projected document for the <code>entry</code>.
+     */
+    public JsonDoc translate(SearchResultEntry entry, JsonNodeFactory factory) {
+        DnErrorContext.push();
+        try {
+            ObjectNode root = factory.objectNode();
+            for (PlannedField field : fields) {
+                field.appendTo(entry, root, factory);
+            }
+            return new JsonDoc(root);
+        } catch (Error e) {
+            throw DnErrorContext.render(e, entry.getDN());
+        } finally {
+            DnErrorContext.pop();
+        }
+    }
+
+    /**
+     * Writes the projected document for the <code>entry</code>, as a json object, to the
+     * <code>generator</code>. The <code>generator</code> must have an
+     * {@link com.fasterxml.jackson.core.ObjectCodec}, as those created by an
+     * {@link com.fasterxml.jackson.databind.ObjectMapper} do.
+     */
+    public void write(SearchResultEntry entry, JsonGenerator generator, JsonNodeFactory factory) throws IOException {
+        DnErrorContext.push();
+        try {
+            generator.writeStartObject();
+            for (PlannedField field : fields) {
+                field.writeTo(entry, generator, factory);
+            }
+            generator.writeEndObject();
+        } catch (Error e) {
+            throw DnErrorContext.render(e, entry.getDN());
+        } finally {
+            DnErrorContext.pop();
+        }
+    }
+
+    private static abstract class PlannedField {
+
+        protected final String fieldName;
+
+        PlannedField(String fieldName) {
+            this.fieldName = fieldName;
+        }
+
+        /**
+         * @return the value of the field, or <code>null</code> if the <code>entry</code> does
+         * not have one.
+         */
+        abstract JsonNode toJson(SearchResultEntry entry, JsonNodeFactory factory);
+
+        void appendTo(SearchResultEntry entry, ObjectNode target, JsonNodeFactory factory) {
+            JsonNode value = toJson(entry, factory);
+            if (value != null) {
+                target.set(fieldName, value);
+            }
+        }
+
+        void writeTo(SearchResultEntry entry, JsonGenerator generator, JsonNodeFactory factory) throws IOException {
+            JsonNode value = toJson(entry, factory);
+            if (value != null) {
+                generator.writeFieldName(fieldName);
+                generator.writeTree(value);
+            }
+        }
+
+    }
+
+    private static class ValueField extends PlannedField {
+
+        private final String attributeName;
+        private final AttributeDescriptions attributeDescriptions;
+        private final Type type;
+
+        ValueField(String fieldName, String attributeName, AttributeDescriptions attributeDescriptions, Type type) {
+            super(fieldName);
+            this.attributeName = attributeName;
+            this.attributeDescriptions = attributeDescriptions;
+            this.type = type;
+        }
+
+        @Override
+        JsonNode toJson(SearchResultEntry entry, JsonNodeFactory factory) {
+            Attribute attr = attributeDescriptions.resolve(entry, attributeName);
+            if (attr == null) {
+                return null;
+            }
+            return type.toJson(factory, ResultTranslatorToJson.toValue(type, attr));
+        }
+
+    }
+
+    private static class ArrayValueField extends PlannedField {
+
+        private final String attributeName;
+        private final AttributeDescriptions attributeDescriptions;
+        private final Type elementType;
+        private final boolean includeElements;
+        private final String countFieldName;
+        private final boolean includeCount;
+
+        ArrayValueField(String fieldName, String attributeName, AttributeDescriptions attributeDescriptions, Type elementType,
+                boolean includeElements, String countFieldName, boolean includeCount) {
+            super(fieldName);
+            this.attributeName = attributeName;
+            this.attributeDescriptions = attributeDescriptions;
+            this.elementType = elementType;
+            this.includeElements = includeElements;
+            this.countFieldName = countFieldName;
+            this.includeCount = includeCount;
+        }
+
+        @Override
+        JsonNode toJson(SearchResultEntry entry, JsonNodeFactory factory) {
+            Attribute attr = attributeDescriptions.resolve(entry, attributeName);
+            if ((attr == null) || !includeElements) {
+                return null;
+            }
+            ArrayNode array = factory.arrayNode();
+            for (Object value : ResultTranslatorToJson.toValues(elementType, attr)) {
+                array.add(elementType.toJson(factory, value));
+            }
+            return array;
+        }
+
+        @Override
+        void appendTo(SearchResultEntry entry, ObjectNode target, JsonNodeFactory factory) {
+            super.appendTo(entry, target, factory);
+            Attribute attr = attributeDescriptions.resolve(entry, attributeName);
+            if (includeCount && (attr != null)) {
+                target.put(countFieldName, attr.size());
+            }
+        }
+
+        @Override
+        void writeTo(SearchResultEntry entry, JsonGenerator generator, JsonNodeFactory factory) throws IOException {
+            super.writeTo(entry, generator, factory);
+            Attribute attr = attributeDescriptions.resolve(entry, attributeName);
+            if (includeCount && (attr != null)) {
+                generator.writeNumberField(countFieldName, attr.size());
+            }
+        }
+
+    }
+
+    private static class ObjectTypeField extends PlannedField {
+
+        private final Type type;
+        private final String entityName;
+
+        ObjectTypeField(String fieldName, Type type, String entityName) {
+            super(fieldName);
+            this.type = type;
+            this.entityName = entityName;
+        }
+
+        @Override
+        JsonNode toJson(SearchResultEntry entry, JsonNodeFactory factory) {
+            return type.toJson(factory, entityName);
+        }
+
+    }
+
+    private static class DNField extends PlannedField {
+
+        DNField(String fieldName) {
+            super(fieldName);
+        }
+
+        @Override
+        JsonNode toJson(SearchResultEntry entry, JsonNodeFactory factory) {
+            return factory.textNode(entry.getDN());
+        }
+
+    }
+
+}
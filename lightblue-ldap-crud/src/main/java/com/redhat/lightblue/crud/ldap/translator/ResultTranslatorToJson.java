@@ -18,22 +18,29 @@
  */
 package com.redhat.lightblue.crud.ldap.translator;
 
+import java.text.ParseException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ContainerNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.redhat.lightblue.common.ldap.LdapConstant;
 import com.redhat.lightblue.common.ldap.LdapFieldNameTranslator;
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.FieldCursor;
+import com.redhat.lightblue.metadata.PredefinedFields;
 import com.redhat.lightblue.metadata.SimpleArrayElement;
 import com.redhat.lightblue.metadata.SimpleField;
 import com.redhat.lightblue.metadata.Type;
 import com.redhat.lightblue.metadata.translator.NonPersistedPredefinedFieldTranslatorToJson;
 import com.redhat.lightblue.metadata.types.BinaryType;
 import com.redhat.lightblue.metadata.types.DateType;
+import com.redhat.lightblue.metadata.types.IntegerType;
 import com.redhat.lightblue.metadata.types.StringType;
 import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonDoc;
@@ -50,23 +57,55 @@ public class ResultTranslatorToJson extends NonPersistedPredefinedFieldTranslato
 
     private final LdapFieldNameTranslator fieldNameTranslator;
     private final Path dnPath;
+    private final Set<Path> countOnlyArrays;
+    private final AttributeDescriptions attributeDescriptions;
 
     public ResultTranslatorToJson(JsonNodeFactory factory, EntityMetadata entityMetadata, LdapFieldNameTranslator fieldNameTranslator) {
+        this(factory, entityMetadata, fieldNameTranslator, Collections.<Path> emptySet());
+    }
+
+    /**
+     * @param factory - {@link JsonNodeFactory}
+     * @param entityMetadata - {@link EntityMetadata}
+     * @param fieldNameTranslator - {@link LdapFieldNameTranslator}
+     * @param countOnlyArrays - paths of array fields for which only the array count field is needed.
+     * The count is populated for these, but the array itself is never built.
+     */
+    public ResultTranslatorToJson(JsonNodeFactory factory, EntityMetadata entityMetadata, LdapFieldNameTranslator fieldNameTranslator,
+            Set<Path> countOnlyArrays) {
+        this(factory, entityMetadata, fieldNameTranslator, countOnlyArrays, AttributeDescriptions.WITHOUT_SCHEMA);
+    }
+
+    /**
+     * @param factory - {@link JsonNodeFactory}
+     * @param entityMetadata - {@link EntityMetadata}
+     * @param fieldNameTranslator - {@link LdapFieldNameTranslator}
+     * @param countOnlyArrays - paths of array fields for which only the array count field is needed.
+     * The count is populated for these, but the array itself is never built.
+     * @param attributeDescriptions - {@link AttributeDescriptions} used to find each attribute on an entry.
+     */
+    public ResultTranslatorToJson(JsonNodeFactory factory, EntityMetadata entityMetadata, LdapFieldNameTranslator fieldNameTranslator,
+            Set<Path> countOnlyArrays, AttributeDescriptions attributeDescriptions) {
         super(factory, entityMetadata);
         this.fieldNameTranslator = fieldNameTranslator;
+        this.countOnlyArrays = countOnlyArrays;
+        this.attributeDescriptions = attributeDescriptions;
         dnPath = fieldNameTranslator.translateAttributeName(LdapConstant.ATTRIBUTE_DN);
     }
 
     @Override
     public JsonDoc translate(SearchResultEntry entry){
-        Error.push(LdapConstant.ATTRIBUTE_DN + "=" + entry.getDN());
+        DnErrorContext.push();
         try{
             JsonDoc jdoc = super.translate(entry);
             jdoc.modify(dnPath, toJson(StringType.TYPE, entry.getDN()), true);
             return jdoc;
         }
+        catch(Error e){
+            throw DnErrorContext.render(e, entry.getDN());
+        }
         finally{
-            Error.pop();
+            DnErrorContext.pop();
         }
     }
 
@@ -79,19 +118,37 @@ public class ResultTranslatorToJson extends NonPersistedPredefinedFieldTranslato
             return;
         }
 
+        if(countOnlyArrays.contains(fieldPath) && (targetNode instanceof ObjectNode)){
+            Object attr = getValueFor(value, fieldPath);
+            if(attr != null){
+                ((ObjectNode) targetNode).set(
+                        PredefinedFields.createArrayCountFieldName(fieldPath.getLast()),
+                        toJson(IntegerType.TYPE, getSizeOf(attr)));
+            }
+            return;
+        }
+
         super.appendToJsonNode(value, targetNode, cursor);
     }
 
     @Override
     protected JsonNode translate(SimpleField field, Object o) {
-        Type type = field.getType();
-        Attribute attr = (Attribute) o;
+        return toJson(field.getType(), toValue(field.getType(), (Attribute) o));
+    }
 
+    /**
+     * @return the value of the <code>attr</code> in the form the {@link Type} expects.
+     */
+    static Object toValue(Type type, Attribute attr) {
         Object value = null;
         if(type instanceof DateType){
-            value = attr.getValueAsDate();
+            value = toDate(attr);
         }
         else if(type instanceof BinaryType){
+            /*
+             * Each value is decoded off the wire into its own array, which is returned as is. The
+             * resulting BinaryNode wraps it and base64 encodes only when written out.
+             */
             value = attr.getValueByteArray();
         }
         else{
@@ -102,7 +159,33 @@ public class ResultTranslatorToJson extends NonPersistedPredefinedFieldTranslato
             throw new NullPointerException("Unable to convert LDAP attribute to json resulting in a null value: " + attr.getName());
         }
 
-        return toJson(field.getType(), value);
+        return value;
+    }
+
+    /**
+     * @return the values of the <code>attr</code> in the form the element {@link Type} expects.
+     */
+    static List<? extends Object> toValues(Type elementType, Attribute attr) {
+        if(elementType instanceof BinaryType){
+            return Arrays.asList(attr.getValueByteArrays());
+        }
+        return Arrays.asList(attr.getValues());
+    }
+
+    /**
+     * Same as {@link Attribute#getValueAsDate()}, but decoded with {@link GeneralizedTime}.
+     */
+    private static Date toDate(Attribute attr){
+        String value = attr.getValue();
+        if(value == null){
+            return null;
+        }
+        try{
+            return GeneralizedTime.decode(value);
+        }
+        catch(ParseException e){
+            return null;
+        }
     }
 
     @Override
@@ -115,19 +198,18 @@ public class ResultTranslatorToJson extends NonPersistedPredefinedFieldTranslato
         }
 
         String attributeName = fieldNameTranslator.translateFieldName(path);
-        return ((SearchResultEntry) value).getAttribute(attributeName);
+        return attributeDescriptions.resolve((SearchResultEntry) value, attributeName);
     }
 
     @Override
-    protected List<String> getSimpleArrayValues(Object o, SimpleArrayElement simpleArrayElement) {
-        Attribute attr = (Attribute) o;
-        return Arrays.asList(attr.getValues());
+    protected List<? extends Object> getSimpleArrayValues(Object o, SimpleArrayElement simpleArrayElement) {
+        return toValues(simpleArrayElement.getType(), (Attribute) o);
     }
 
     @Override
     protected int getSizeOf(Object o) {
         Attribute attr = (Attribute) o;
-        return attr.getValues().length;
+        return attr.size();
     }
 
 }
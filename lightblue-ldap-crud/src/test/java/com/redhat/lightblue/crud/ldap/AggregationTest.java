@@ -0,0 +1,167 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchScope;
+
+@InMemoryLdapServer
+public class AggregationTest {
+
+    private static final String BASE_DN = "ou=aggregation,dc=example,dc=com";
+
+    @Rule
+    public LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance();
+
+    private LDAPConnection connection;
+
+    @Before
+    public void before() throws Exception {
+        connection = ldapServer.getLDAPConnection();
+        connection.add(BASE_DN,
+                new Attribute("objectClass", "top", "organizationalUnit"),
+                new Attribute("ou", "aggregation"));
+
+        addPerson("a", "sales");
+        addPerson("b", "sales");
+        addPerson("c", "sales", "support");
+        addPerson("d", "support");
+        addPerson("e");
+    }
+
+    @After
+    public void after() {
+        connection.close();
+    }
+
+    private void addPerson(String uid, String... departments) throws Exception {
+        Entry entry = new Entry("uid=" + uid + "," + BASE_DN,
+                new Attribute("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson"),
+                new Attribute("uid", uid),
+                new Attribute("cn", uid),
+                new Attribute("sn", "Aggregation"));
+        if (departments.length > 0) {
+            entry.addAttribute("departmentNumber", departments);
+        }
+        connection.add(entry);
+    }
+
+    private static SearchRequest request(String filter) throws Exception {
+        return new SearchRequest(BASE_DN, SearchScope.SUB, Filter.create(filter));
+    }
+
+    @Test
+    public void testIsPagedResultsSupported() throws Exception {
+        assertTrue(Aggregation.isPagedResultsSupported(connection.getRootDSE()));
+        assertFalse(Aggregation.isPagedResultsSupported(null));
+    }
+
+    @Test
+    public void testCountBySearch() throws Exception {
+        assertEquals(5, Aggregation.countBySearch(connection, request("(sn=Aggregation)")));
+        assertEquals(3, Aggregation.countBySearch(connection, request("(departmentNumber=sales)")));
+        assertEquals(0, Aggregation.countBySearch(connection, request("(uid=z)")));
+    }
+
+    @Test
+    public void testCountByPages() throws Exception {
+        assertEquals(5, Aggregation.countByPages(connection, request("(sn=Aggregation)"), 2));
+        assertEquals(2, Aggregation.countByPages(connection, request("(departmentNumber=support)"), 2));
+        assertEquals(5, Aggregation.countByPages(connection, request("(sn=Aggregation)"), Aggregation.DEFAULT_PAGE_SIZE));
+        assertEquals(0, Aggregation.countByPages(connection, request("(uid=z)"), 2));
+    }
+
+    /**
+     * The in-memory server maintains neither operational attribute.
+     */
+    @Test
+    public void testCountSubordinates_NotMaintained() throws Exception {
+        assertNull(Aggregation.countSubordinates(connection, BASE_DN));
+        assertNull(Aggregation.countSubordinates(connection, "ou=doesnotexist,dc=example,dc=com"));
+    }
+
+    @Test
+    public void testGetSubordinateCount() {
+        assertEquals(Long.valueOf(7), Aggregation.getSubordinateCount(
+                new Entry(BASE_DN, new Attribute(Aggregation.NUM_SUBORDINATES, "7"), new Attribute(Aggregation.HAS_SUBORDINATES, "TRUE"))));
+        assertEquals(Long.valueOf(0), Aggregation.getSubordinateCount(
+                new Entry(BASE_DN, new Attribute(Aggregation.HAS_SUBORDINATES, "FALSE"))));
+        assertNull(Aggregation.getSubordinateCount(
+                new Entry(BASE_DN, new Attribute(Aggregation.HAS_SUBORDINATES, "TRUE"))));
+        assertNull(Aggregation.getSubordinateCount(new Entry(BASE_DN)));
+    }
+
+    /**
+     * Entries with several values are counted under each, entries without a value under <code>null</code>.
+     */
+    @Test
+    public void testCountValues() throws Exception {
+        Map<String, Long> expected = new HashMap<>();
+        expected.put("sales", 3L);
+        expected.put("support", 2L);
+        expected.put(null, 1L);
+
+        assertEquals(expected, Aggregation.countValues(connection, request("(sn=Aggregation)"), "departmentNumber", null));
+    }
+
+    /**
+     * Values the server considers equal are counted together, under the first form seen.
+     */
+    @Test
+    public void testCountValues_Normalized() throws Exception {
+        addPerson("f", "SALES ");
+        addPerson("g", "Support");
+
+        Map<String, Long> counts = Aggregation.countValues(connection, request("(sn=Aggregation)"), "departmentNumber",
+                connection.getSchema());
+        assertEquals(3, counts.size());
+        assertEquals(Long.valueOf(1), counts.get(null));
+        assertEquals(8, counts.values().stream().mapToLong(Long::longValue).sum());
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            if (count.getKey() != null) {
+                assertEquals(count.getKey(), Long.valueOf(count.getKey().trim().equalsIgnoreCase("sales") ? 4 : 3), count.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testCountValues_NoMatches() throws Exception {
+        assertTrue(Aggregation.countValues(connection, request("(uid=z)"), "departmentNumber", null).isEmpty());
+    }
+
+}
@@ -0,0 +1,350 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static com.redhat.lightblue.util.JsonUtils.json;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.redhat.lightblue.ExecutionOptions;
+import com.redhat.lightblue.common.ldap.DBResolver;
+import com.redhat.lightblue.common.ldap.LdapConstant;
+import com.redhat.lightblue.common.ldap.LdapDataSourceOptions;
+import com.redhat.lightblue.common.ldap.LdapDataStore;
+import com.redhat.lightblue.common.ldap.LdapErrorCode;
+import com.redhat.lightblue.crud.CRUDDeleteResponse;
+import com.redhat.lightblue.crud.CRUDFindResponse;
+import com.redhat.lightblue.crud.CRUDInsertionResponse;
+import com.redhat.lightblue.crud.CRUDOperation;
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.crud.CRUDSaveResponse;
+import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.crud.DocumentStream;
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.redhat.lightblue.metadata.DataStore;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.test.MetadataUtil;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+
+@InMemoryLdapServer
+public class AsyncLdapCRUDControllerTest {
+
+    private static final String BASE_DN = "ou=async,dc=example,dc=com";
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance();
+
+    private LDAPConnectionPool pool;
+    private LdapDataSourceOptions options;
+    private AsyncLdapCRUDController controller;
+    private EntityMetadata md;
+    /** If set, connections are only handed out once it opens, or it times out. */
+    private volatile CountDownLatch connectionGate;
+
+    @Before
+    public void before() throws Exception {
+        pool = new LDAPConnectionPool(ldapServer.getLDAPConnection(), 2);
+        pool.add(BASE_DN,
+                new Attribute("objectClass", "top", "organizationalUnit"),
+                new Attribute("ou", "async"));
+
+        options = new LdapDataSourceOptions();
+        controller = new AsyncLdapCRUDController(new DBResolver() {
+
+            @Override
+            public LDAPConnection get(DataStore store) throws LDAPException {
+                CountDownLatch gate = connectionGate;
+                if (gate != null) {
+                    try {
+                        gate.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return pool.getConnection();
+            }
+
+            @Override
+            public LDAPConnectionPool getConnectionPool(DataStore store) {
+                return pool;
+            }
+
+            @Override
+            public LdapDataSourceOptions getOptions(DataStore store) {
+                return options;
+            }
+
+            @Override
+            public Map<String, Object> getLDAPConnectionsStatus() {
+                return new HashMap<>();
+            }
+
+        });
+
+        md = createMetadata(new LdapDataStore("test", BASE_DN, "uid"));
+    }
+
+    private static EntityMetadata createMetadata(LdapDataStore store) throws Exception {
+        return createMetadata(store, "{'type': 'string'}");
+    }
+
+    /**
+     * @param cnField - definition of the cn field.
+     */
+    private static EntityMetadata createMetadata(LdapDataStore store, String cnField) throws Exception {
+        EntityMetadata metadata = MetadataUtil.createEntityMetadata(LdapConstant.BACKEND, json((""
+                + "{'entityInfo': {'name': 'async', 'datastore': {'backend': 'ldap'}},"
+                + " 'schema': {'name': 'async', 'version': {'value': '1.0.0', 'changelog': 'test'}, 'status': {'value': 'active'},"
+                + "  'access': {'insert': ['anyone'], 'update': ['anyone'], 'delete': ['anyone'], 'find': ['anyone']},"
+                + "  'fields': {"
+                + "   'dn': {'type': 'string'},"
+                + "   'uid': {'type': 'string'},"
+                + "   'cn': " + cnField + ","
+                + "   'sn': {'type': 'string'},"
+                + "   'objectClass': {'type': 'array', 'items': {'type': 'string'}}"
+                + "}}}").replace('\'', '"')), null, null);
+        metadata.setDataStore(store);
+        return metadata;
+    }
+
+    @After
+    public void after() {
+        pool.close();
+    }
+
+    private CRUDOperationContext createContext(CRUDOperation operation, String... uids) throws Exception {
+        List<JsonDoc> documents = new ArrayList<>();
+        for (String uid : uids) {
+            documents.add(person(uid, uid + " Async"));
+        }
+        return createContext(operation, documents);
+    }
+
+    private CRUDOperationContext createContext(CRUDOperation operation, List<JsonDoc> documents) {
+        return createContext(operation, documents, md);
+    }
+
+    private static CRUDOperationContext createContext(CRUDOperation operation, List<JsonDoc> documents, EntityMetadata metadata) {
+        return new CRUDOperationContext(operation, "async", new Factory(), documents, new ExecutionOptions()) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public EntityMetadata getEntityMetadata(String entityName) {
+                return metadata;
+            }
+
+        };
+    }
+
+    private static JsonDoc person(String uid, String cn) throws Exception {
+        return new JsonDoc(json(("{'objectClass': ['top', 'person', 'organizationalPerson', 'inetOrgPerson'],"
+                + " 'uid': '" + uid + "', 'cn': '" + cn + "', 'sn': 'Async'}").replace('\'', '"')));
+    }
+
+    private static QueryExpression query(String query) throws Exception {
+        return QueryExpression.fromJson(json(query.replace('\'', '"')));
+    }
+
+    private List<DocCtx> findAll() throws Exception {
+        CRUDOperationContext ctx = createContext(CRUDOperation.FIND);
+        CRUDFindResponse response = controller.findAsync(ctx,
+                query("{'field': 'sn', 'op': '=', 'rvalue': 'Async'}"),
+                Projection.fromJson(json("{\"field\": \"*\", \"recursive\": true}")),
+                null, null, null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+
+        List<DocCtx> documents = new ArrayList<>();
+        DocumentStream<DocCtx> stream = ctx.getDocumentStream();
+        while (stream.hasNext()) {
+            documents.add(stream.next());
+        }
+        assertEquals(response.getSize(), documents.size());
+        return documents;
+    }
+
+    @Test
+    public void testInsertAsync() throws Exception {
+        CRUDOperationContext ctx = createContext(CRUDOperation.INSERT, "a", "b", "c");
+
+        CRUDInsertionResponse response = controller.insertAsync(ctx, null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertEquals(3, response.getNumInserted());
+        assertEquals(3, findAll().size());
+        assertNotNull(pool.getEntry("uid=b," + BASE_DN));
+    }
+
+    @Test
+    public void testInsertAsync_AlreadyExists() throws Exception {
+        controller.insertAsync(createContext(CRUDOperation.INSERT, "a"), null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.INSERT, "a", "b");
+        CRUDInsertionResponse response = controller.insertAsync(ctx, null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertEquals(1, response.getNumInserted());
+        assertEquals(1, ctx.getErrors().size());
+        assertEquals(LdapErrorCode.ERR_LDAP_UNSUCCESSFUL_RESPONSE, ctx.getErrors().get(0).getErrorCode());
+    }
+
+    @Test
+    public void testFindAsync() throws Exception {
+        controller.insertAsync(createContext(CRUDOperation.INSERT, "a", "b"), null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        List<DocCtx> documents = findAll();
+
+        assertEquals(2, documents.size());
+        for (DocCtx document : documents) {
+            assertEquals("Async", document.getOutputDocument().get(new Path("sn")).asText());
+        }
+    }
+
+    @Test
+    public void testSaveAsync() throws Exception {
+        controller.insertAsync(createContext(CRUDOperation.INSERT, "a"), null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.SAVE,
+                Arrays.asList(person("a", "Changed"), person("b", "b Async")));
+        CRUDSaveResponse response = controller.saveAsync(ctx, true, null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertEquals(2, response.getNumSaved());
+        assertEquals("Changed", pool.getEntry("uid=a," + BASE_DN).getAttributeValue("cn"));
+        assertNotNull(pool.getEntry("uid=b," + BASE_DN));
+    }
+
+    @Test
+    public void testSaveAsync_WithoutUpsert() throws Exception {
+        CRUDOperationContext ctx = createContext(CRUDOperation.SAVE, "a");
+
+        CRUDSaveResponse response = controller.saveAsync(ctx, false, null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertEquals(0, response.getNumSaved());
+        DocCtx document = ctx.getInputDocuments().get(0);
+        assertTrue(document.hasErrors());
+        assertEquals(LdapErrorCode.ERR_LDAP_SAVE_ERROR_INS_WITH_NO_UPSERT, document.getErrors().get(0).getErrorCode());
+        assertNull(pool.getEntry("uid=a," + BASE_DN));
+    }
+
+    @Test
+    public void testDeleteAsync() throws Exception {
+        controller.insertAsync(createContext(CRUDOperation.INSERT, "a", "b", "c"), null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.DELETE);
+        CRUDDeleteResponse response = controller.deleteAsync(ctx,
+                query("{'field': 'uid', 'op': '$in', 'values': ['a', 'c']}")).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertEquals(2, response.getNumDeleted());
+        assertEquals(1, findAll().size());
+        assertNotNull(pool.getEntry("uid=b," + BASE_DN));
+    }
+
+    /**
+     * Operations that cannot be sent asynchronously run on threads of their own, so none of them
+     * waits on a connection on the calling thread.
+     */
+    @Test
+    public void testBlockingOperations_DoNotBlockCaller() throws Exception {
+        controller.insertAsync(createContext(CRUDOperation.INSERT, "a"), null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        LdapDataStore store = (LdapDataStore) md.getDataStore();
+        store.setEntryCacheTtlMillis(60000);
+        store.setSubtreeDelete(true);
+        options.setTransactionalWrites(true);
+
+        connectionGate = new CountDownLatch(1);
+        CRUDOperationContext findCtx = createContext(CRUDOperation.FIND);
+        CompletableFuture<CRUDFindResponse> find = controller.findAsync(findCtx,
+                query("{'field': 'uid', 'op': '=', 'rvalue': 'a'}"), Projection.fromJson(json("{\"field\": \"cn\"}")),
+                null, null, null);
+        CRUDOperationContext insertCtx = createContext(CRUDOperation.INSERT, "b", "c");
+        CompletableFuture<CRUDInsertionResponse> insert = controller.insertAsync(insertCtx, null);
+        CRUDOperationContext saveCtx = createContext(CRUDOperation.SAVE, "d", "e");
+        CompletableFuture<CRUDSaveResponse> save = controller.saveAsync(saveCtx, true, null);
+        assertFalse(find.isDone());
+        assertFalse(insert.isDone());
+        assertFalse(save.isDone());
+        connectionGate.countDown();
+
+        assertEquals(1, find.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getSize());
+        assertEquals(2, insert.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getNumInserted());
+        assertEquals(2, save.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getNumSaved());
+        assertFalse(findCtx.getErrors().toString(), findCtx.hasErrors());
+        assertFalse(insertCtx.getErrors().toString(), insertCtx.hasErrors());
+        assertFalse(saveCtx.getErrors().toString(), saveCtx.hasErrors());
+
+        connectionGate = new CountDownLatch(1);
+        CRUDOperationContext deleteCtx = createContext(CRUDOperation.DELETE);
+        CompletableFuture<CRUDDeleteResponse> delete = controller.deleteAsync(deleteCtx,
+                query("{'field': 'sn', 'op': '=', 'rvalue': 'Async'}"));
+        assertFalse(delete.isDone());
+        connectionGate.countDown();
+
+        assertEquals(5, delete.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getNumDeleted());
+        assertFalse(deleteCtx.getErrors().toString(), deleteCtx.hasErrors());
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        options.setVirtualThreads(true);
+        options.setMaxConcurrentRequests(2);
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.INSERT, "a", "b", "c");
+        CRUDInsertionResponse response = controller.insertAsync(ctx, null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertEquals(3, response.getNumInserted());
+
+        assertEquals(3, findAll().size());
+
+        ctx = createContext(CRUDOperation.DELETE);
+        CRUDDeleteResponse deleteResponse = controller.deleteAsync(ctx,
+                query("{'field': 'uid', 'op': '=', 'rvalue': 'b'}")).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertEquals(1, deleteResponse.getNumDeleted());
+        assertEquals(2, findAll().size());
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static com.redhat.lightblue.util.JsonUtils.json;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.ExecutionOptions;
+import com.redhat.lightblue.common.ldap.DBResolver;
+import com.redhat.lightblue.common.ldap.LdapConstant;
+import com.redhat.lightblue.common.ldap.LdapDataSourceOptions;
+import com.redhat.lightblue.common.ldap.LdapDataStore;
+import com.redhat.lightblue.crud.CRUDFindResponse;
+import com.redhat.lightblue.crud.CRUDOperation;
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.redhat.lightblue.metadata.DataStore;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.test.MetadataUtil;
+import com.redhat.lightblue.util.JsonDoc;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+
+/**
+ * Load test comparing {@value #FINDS} concurrent {@link AsyncLdapCRUDController#findAsync(CRUDOperationContext,
+ * QueryExpression, Projection, com.redhat.lightblue.query.Sort, Long, Long)} calls with and without the
+ * datasource's virtualThreads option, which runs each find on a {@link BlockingOperationExecutor}.
+ * On JVMs without virtual threads the option falls back to platform threads.
+ */
+@InMemoryLdapServer
+public class BlockingOperationExecutorLoadTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlockingOperationExecutorLoadTest.class);
+
+    private static final String BASE_DN = "ou=load,dc=example,dc=com";
+    private static final int ENTRIES = 200;
+    private static final int FINDS = 2000;
+    private static final int CONNECTIONS = 8;
+    private static final int MAX_CONCURRENT_OPERATIONS = 64;
+
+    @Rule
+    public LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance();
+
+    private LDAPConnectionPool pool;
+    private LDAPConnection[] connections;
+    private EntityMetadata md;
+
+    @Before
+    public void before() throws Exception {
+        pool = new LDAPConnectionPool(ldapServer.getLDAPConnection(), CONNECTIONS);
+        pool.add(BASE_DN,
+                new Attribute("objectClass", "top", "organizationalUnit"),
+                new Attribute("ou", "load"));
+        for (int x = 0; x < ENTRIES; x++) {
+            pool.add("uid=user" + x + "," + BASE_DN,
+                    new Attribute("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson"),
+                    new Attribute("uid", "user" + x),
+                    new Attribute("cn", "User " + x),
+                    new Attribute("sn", "Load"));
+        }
+
+        //Connections are shared round robin, as the controller does not return them to the pool.
+        connections = new LDAPConnection[CONNECTIONS];
+        for (int x = 0; x < CONNECTIONS; x++) {
+            connections[x] = ldapServer.getLDAPConnection();
+        }
+
+        md = MetadataUtil.createEntityMetadata(LdapConstant.BACKEND, json((""
+                + "{'entityInfo': {'name': 'load', 'datastore': {'backend': 'ldap'}},"
+                + " 'schema': {'name': 'load', 'version': {'value': '1.0.0', 'changelog': 'test'}, 'status': {'value': 'active'},"
+                + "  'access': {'insert': ['anyone'], 'update': ['anyone'], 'delete': ['anyone'], 'find': ['anyone']},"
+                + "  'fields': {"
+                + "   'dn': {'type': 'string'},"
+                + "   'uid': {'type': 'string'},"
+                + "   'cn': {'type': 'string'},"
+                + "   'sn': {'type': 'string'},"
+                + "   'objectClass': {'type': 'array', 'items': {'type': 'string'}}"
+                + "}}}").replace('\'', '"')), null, null);
+        md.setDataStore(new LdapDataStore("test", BASE_DN, "uid"));
+    }
+
+    @After
+    public void after() {
+        for (LDAPConnection connection : connections) {
+            connection.close();
+        }
+        pool.close();
+    }
+
+    @Test
+    public void testConcurrentFinds() throws Exception {
+        long asyncMillis = runFinds(false);
+        LOGGER.info(FINDS + " concurrent finds without virtualThreads took " + asyncMillis + "ms");
+
+        long virtualMillis = runFinds(true);
+        if (BlockingOperationExecutor.isVirtualThreadsSupported()) {
+            LOGGER.info(FINDS + " concurrent finds with virtualThreads took " + virtualMillis + "ms");
+        }
+        else {
+            LOGGER.info(FINDS + " concurrent finds with virtualThreads, falling back to platform threads, took " + virtualMillis + "ms");
+        }
+    }
+
+    private long runFinds(boolean virtualThreads) throws Exception {
+        LdapDataSourceOptions options = new LdapDataSourceOptions();
+        options.setVirtualThreads(virtualThreads);
+        options.setMaxConcurrentRequests(MAX_CONCURRENT_OPERATIONS);
+        AsyncLdapCRUDController controller = createController(options);
+
+        Projection projection = Projection.fromJson(json("[{\"field\": \"uid\"}, {\"field\": \"cn\"}]"));
+        List<CRUDOperationContext> contexts = new ArrayList<>(FINDS);
+        List<CompletableFuture<CRUDFindResponse>> finds = new ArrayList<>(FINDS);
+
+        long start = System.nanoTime();
+        for (int x = 0; x < FINDS; x++) {
+            CRUDOperationContext ctx = createContext();
+            QueryExpression query = QueryExpression.fromJson(json(
+                    "{\"field\": \"uid\", \"op\": \"=\", \"rvalue\": \"user" + (x % ENTRIES) + "\"}"));
+            contexts.add(ctx);
+            finds.add(controller.findAsync(ctx, query, projection, null, null, null));
+        }
+        CompletableFuture.allOf(finds.toArray(new CompletableFuture<?>[0])).get(2, TimeUnit.MINUTES);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        for (int x = 0; x < FINDS; x++) {
+            assertFalse(contexts.get(x).getErrors().toString(), contexts.get(x).hasErrors());
+            assertEquals(1, finds.get(x).get().getSize());
+        }
+        return elapsedMillis;
+    }
+
+    private AsyncLdapCRUDController createController(LdapDataSourceOptions options) {
+        AtomicInteger next = new AtomicInteger();
+        return new AsyncLdapCRUDController(new DBResolver() {
+
+            @Override
+            public LDAPConnection get(DataStore store) throws LDAPException {
+                return connections[Math.floorMod(next.getAndIncrement(), CONNECTIONS)];
+            }
+
+            @Override
+            public LDAPConnectionPool getConnectionPool(DataStore store) {
+                return pool;
+            }
+
+            @Override
+            public LdapDataSourceOptions getOptions(DataStore store) {
+                return options;
+            }
+
+            @Override
+            public Map<String, Object> getLDAPConnectionsStatus() {
+                return new HashMap<>();
+            }
+
+        });
+    }
+
+    private CRUDOperationContext createContext() {
+        return new CRUDOperationContext(CRUDOperation.FIND, "load", new Factory(), new ArrayList<JsonDoc>(), new ExecutionOptions()) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public EntityMetadata getEntityMetadata(String entityName) {
+                return md;
+            }
+
+        };
+    }
+
+}
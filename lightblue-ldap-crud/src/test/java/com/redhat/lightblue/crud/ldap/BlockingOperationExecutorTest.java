@@ -0,0 +1,120 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class BlockingOperationExecutorTest {
+
+    private static boolean isVirtual(Thread thread) throws Exception {
+        return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+
+    @Test
+    public void testSubmit() throws Exception {
+        BlockingOperationExecutor executor = new BlockingOperationExecutor(false, 0);
+
+        Thread caller = Thread.currentThread();
+        Thread thread = executor.submit(() -> Thread.currentThread()).get(10, TimeUnit.SECONDS);
+
+        assertFalse(executor.isVirtual());
+        assertNotSame(caller, thread);
+    }
+
+    @Test
+    public void testSubmit_Failure() throws Exception {
+        BlockingOperationExecutor executor = new BlockingOperationExecutor(false, 1);
+
+        try {
+            executor.submit(() -> {
+                throw new IllegalStateException("fail");
+            }).get(10, TimeUnit.SECONDS);
+            fail("Expected the operation to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        //The permit of the failed operation must have been released.
+        assertEquals("ok", executor.submit(() -> "ok").get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSubmit_MaxConcurrentOperations() throws Exception {
+        BlockingOperationExecutor executor = new BlockingOperationExecutor(false, 3);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int x = 0; x < 30; x++) {
+            futures.add(executor.submit(() -> {
+                int now = running.incrementAndGet();
+                maxRunning.accumulateAndGet(now, Math::max);
+                Thread.sleep(5);
+                running.decrementAndGet();
+                return now;
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+        assertTrue("ran " + maxRunning.get() + " at once", maxRunning.get() <= 3);
+        assertTrue(maxRunning.get() >= 1);
+    }
+
+    @Test
+    public void testSubmit_VirtualThreads() throws Exception {
+        assumeTrue(BlockingOperationExecutor.isVirtualThreadsSupported());
+
+        BlockingOperationExecutor executor = new BlockingOperationExecutor(true, 2);
+        Thread thread = executor.submit(() -> Thread.currentThread()).get(10, TimeUnit.SECONDS);
+
+        assertTrue(executor.isVirtual());
+        assertTrue(isVirtual(thread));
+    }
+
+    @Test
+    public void testSubmit_VirtualThreadsUnsupported() throws Exception {
+        assumeFalse(BlockingOperationExecutor.isVirtualThreadsSupported());
+
+        BlockingOperationExecutor executor = new BlockingOperationExecutor(true, 2);
+
+        assertFalse(executor.isVirtual());
+        assertEquals("ok", executor.submit(() -> "ok").get(10, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxConcurrentOperations() {
+        new BlockingOperationExecutor(false, -1);
+    }
+
+}
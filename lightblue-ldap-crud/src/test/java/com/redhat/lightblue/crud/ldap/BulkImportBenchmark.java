@@ -0,0 +1,211 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static com.redhat.lightblue.util.JsonUtils.json;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.ExecutionOptions;
+import com.redhat.lightblue.common.ldap.DBResolver;
+import com.redhat.lightblue.common.ldap.LdapConstant;
+import com.redhat.lightblue.common.ldap.LdapDataSourceOptions;
+import com.redhat.lightblue.common.ldap.LdapDataStore;
+import com.redhat.lightblue.crud.CRUDOperation;
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.redhat.lightblue.metadata.DataStore;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.test.MetadataUtil;
+import com.redhat.lightblue.util.JsonDoc;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchScope;
+
+/**
+ * Measures loading {@value #DEFAULT_ENTRIES} entries into the in-memory server with
+ * {@link LdapCRUDController#bulkImport(CRUDOperationContext, BulkImport.Format, Reader, java.io.Writer)}.
+ * The NDJSON is generated as it is read, so only the server holds the entries in memory. Not run as
+ * part of the build, to run it:
+ * <pre>
+ * mvn test -pl lightblue-ldap-crud -Dtest=BulkImportBenchmark -DargLine=-Xmx4g
+ * </pre>
+ * Pass <code>-Dbenchmark.entries=n</code> to load a different number of entries.
+ *
+ * @author dcrissman
+ */
+@InMemoryLdapServer
+public class BulkImportBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkImportBenchmark.class);
+
+    private static final String BASE_DN = "ou=bulk,dc=example,dc=com";
+    private static final int DEFAULT_ENTRIES = 1000000;
+    private static final int CONNECTIONS = 8;
+
+    @Rule
+    public LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance();
+
+    private LDAPConnectionPool pool;
+    private LdapCRUDController controller;
+    private EntityMetadata md;
+
+    @Before
+    public void before() throws Exception {
+        pool = new LDAPConnectionPool(ldapServer.getLDAPConnection(), CONNECTIONS);
+        pool.add(BASE_DN,
+                new Attribute("objectClass", "top", "organizationalUnit"),
+                new Attribute("ou", "bulk"));
+
+        LdapDataSourceOptions options = new LdapDataSourceOptions();
+        options.setTranslationParallelism(Runtime.getRuntime().availableProcessors());
+        options.setImportParallelism(256);
+        options.setImportConnections(CONNECTIONS - 1);
+        controller = new LdapCRUDController(new DBResolver() {
+
+            @Override
+            public LDAPConnection get(DataStore store) throws LDAPException {
+                return pool.getConnection();
+            }
+
+            @Override
+            public LDAPConnectionPool getConnectionPool(DataStore store) {
+                return pool;
+            }
+
+            @Override
+            public LdapDataSourceOptions getOptions(DataStore store) {
+                return options;
+            }
+
+            @Override
+            public Map<String, Object> getLDAPConnectionsStatus() {
+                return new HashMap<>();
+            }
+
+        });
+
+        md = MetadataUtil.createEntityMetadata(LdapConstant.BACKEND, json((""
+                + "{'entityInfo': {'name': 'bulk', 'datastore': {'backend': 'ldap'}},"
+                + " 'schema': {'name': 'bulk', 'version': {'value': '1.0.0', 'changelog': 'test'}, 'status': {'value': 'active'},"
+                + "  'access': {'insert': ['anyone'], 'update': ['anyone'], 'delete': ['anyone'], 'find': ['anyone']},"
+                + "  'fields': {"
+                + "   'dn': {'type': 'string'},"
+                + "   'uid': {'type': 'string'},"
+                + "   'cn': {'type': 'string'},"
+                + "   'sn': {'type': 'string'},"
+                + "   'objectClass': {'type': 'array', 'items': {'type': 'string'}}"
+                + "}}}").replace('\'', '"')), null, null);
+        md.setDataStore(new LdapDataStore("test", BASE_DN, "uid"));
+    }
+
+    @After
+    public void after() {
+        pool.close();
+    }
+
+    @Test
+    public void testBulkImport() throws Exception {
+        int entries = Integer.getInteger("benchmark.entries", DEFAULT_ENTRIES);
+        CRUDOperationContext ctx = new CRUDOperationContext(CRUDOperation.INSERT, "bulk", new Factory(),
+                new ArrayList<JsonDoc>(), new ExecutionOptions()) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public EntityMetadata getEntityMetadata(String entityName) {
+                return md;
+            }
+
+        };
+
+        StringWriter deadLetter = new StringWriter();
+        BulkImport.Report report = controller.bulkImport(ctx, BulkImport.Format.NDJSON, new PersonReader(entries), deadLetter);
+        LOGGER.info("Imported " + entries + " entries: " + report);
+
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertEquals(deadLetter.toString(), entries, report.getImported());
+
+        LDAPConnection connection = pool.getConnection();
+        try {
+            assertEquals(entries, Aggregation.countBySearch(connection,
+                    new SearchRequest(BASE_DN, SearchScope.ONE, Filter.createEqualityFilter("sn", "Bulk"))));
+        } finally {
+            pool.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Generates one NDJSON person document per line as it is read.
+     */
+    private static final class PersonReader extends Reader {
+
+        private final int entries;
+        private int next;
+        private String line = "";
+        private int position;
+
+        PersonReader(int entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == line.length()) {
+                if (next == entries) {
+                    return -1;
+                }
+                line = "{\"objectClass\": [\"top\", \"person\", \"organizationalPerson\", \"inetOrgPerson\"],"
+                        + " \"uid\": \"user" + next + "\", \"cn\": \"User " + next + "\", \"sn\": \"Bulk\"}\n";
+                next++;
+                position = 0;
+            }
+            int read = Math.min(length, line.length() - position);
+            line.getChars(position, position + read, buffer, offset);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public void close() {
+            //Nothing to release.
+        }
+
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static com.redhat.lightblue.util.JsonUtils.json;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedAddResult;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldif.LDIFReader;
+
+@InMemoryLdapServer
+public class BulkImportTest {
+
+    private static final String BASE_DN = "ou=import,dc=example,dc=com";
+
+    @Rule
+    public LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance();
+
+    private LDAPConnection connection;
+    private LDAPConnectionPool pool;
+
+    @Before
+    public void before() throws Exception {
+        connection = ldapServer.getLDAPConnection();
+        //The pool adopts the connection, so it can be broken out from under the import.
+        pool = new LDAPConnectionPool(connection, 1, 2);
+        pool.add(BASE_DN,
+                new Attribute("objectClass", "top", "organizationalUnit"),
+                new Attribute("ou", "import"));
+    }
+
+    @After
+    public void after() {
+        pool.close();
+    }
+
+    private static Entry person(String record) throws Exception {
+        JsonNode node = json(record);
+        String uid = node.get("uid").asText();
+        return new Entry("uid=" + uid + "," + BASE_DN,
+                new Attribute("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson"),
+                new Attribute("uid", uid),
+                new Attribute("cn", node.get("cn").asText()),
+                new Attribute("sn", "Import"));
+    }
+
+    private static String people(int count) {
+        StringBuilder ndjson = new StringBuilder();
+        for (int x = 0; x < count; x++) {
+            ndjson.append("{\"uid\": \"user").append(x).append("\", \"cn\": \"User ").append(x).append("\"}\n");
+        }
+        return ndjson.toString();
+    }
+
+    private int countImported() throws Exception {
+        return pool.search(BASE_DN, SearchScope.ONE, "(sn=Import)", "1.1").getEntryCount();
+    }
+
+    @Test
+    public void testImportNdjson() throws Exception {
+        StringWriter deadLetter = new StringWriter();
+        BulkImport.Report report;
+        try (BulkImport bulkImport = new BulkImport(pool, 2, 4, 1, 3, 0)) {
+            report = bulkImport.run(new StringReader(people(10)), BulkImport.Format.NDJSON, BulkImportTest::person, deadLetter);
+        }
+
+        assertEquals(10, report.getRead());
+        assertEquals(10, report.getImported());
+        assertEquals(0, report.getRejected());
+        assertEquals("", deadLetter.toString());
+        assertEquals(10, countImported());
+        assertNotNull(pool.getEntry("uid=user7," + BASE_DN));
+    }
+
+    /**
+     * Invalid records and rejected adds are written to the dead letter along with why, and the rest are still imported.
+     */
+    @Test
+    public void testImportNdjson_DeadLetter() throws Exception {
+        pool.add("uid=user1," + BASE_DN,
+                new Attribute("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson"),
+                new Attribute("uid", "user1"),
+                new Attribute("cn", "User 1"),
+                new Attribute("sn", "Existing"));
+        String ndjson = "{\"uid\": \"user0\", \"cn\": \"User 0\"}\n"
+                + "\n"
+                + "{\"uid\": \"user1\", \"cn\": \"User 1\"}\n"
+                + "not json\n"
+                + "{\"uid\": \"user2\", \"cn\": \"User 2\"}\n";
+
+        StringWriter deadLetter = new StringWriter();
+        BulkImport.Report report;
+        try (BulkImport bulkImport = new BulkImport(pool, 2, 4, 1, 2, 0)) {
+            report = bulkImport.run(new StringReader(ndjson), BulkImport.Format.NDJSON, BulkImportTest::person, deadLetter);
+        }
+
+        assertEquals(4, report.getRead());
+        assertEquals(2, report.getImported());
+        assertEquals(2, report.getRejected());
+        assertEquals(2, countImported());
+
+        String[] rejections = deadLetter.toString().split("\n");
+        assertEquals(2, rejections.length);
+        JsonNode existing = json(rejections[0].contains("user1") ? rejections[0] : rejections[1]);
+        JsonNode invalid = json(rejections[0].contains("user1") ? rejections[1] : rejections[0]);
+        assertEquals(3, existing.get("line").asInt());
+        assertTrue(existing.get("error").asText(), existing.get("error").asText().contains("entry already exists"));
+        assertEquals("{\"uid\": \"user1\", \"cn\": \"User 1\"}", existing.get("record").asText());
+        assertEquals(4, invalid.get("line").asInt());
+        assertEquals("not json", invalid.get("record").asText());
+    }
+
+    @Test
+    public void testImportLdif() throws Exception {
+        String ldif = "version: 1\n"
+                + "# people to import\n"
+                + "dn: uid=a," + BASE_DN + "\n"
+                + "objectClass: top\n"
+                + "objectClass: person\n"
+                + "objectClass: organizationalPerson\n"
+                + "objectClass: inetOrgPerson\n"
+                + "uid: a\n"
+                + "cn: Folded\n"
+                + "  Name\n"
+                + "sn: Import\n"
+                + "\n"
+                + "\n"
+                + "dn: uid=b," + BASE_DN + "\n"
+                + "objectClass: top\n"
+                + "objectClass: person\n"
+                + "uid: b\n"
+                + "cn: b\n"
+                + "sn: Import\n"
+                + "\n"
+                + "dn: uid=a," + BASE_DN + "\n"
+                + "objectClass: top\n"
+                + "objectClass: person\n"
+                + "objectClass: organizationalPerson\n"
+                + "objectClass: inetOrgPerson\n"
+                + "uid: a\n"
+                + "cn: Duplicate\n"
+                + "sn: Import\n";
+
+        StringWriter deadLetter = new StringWriter();
+        BulkImport.Report report;
+        //One add at a time, so the duplicate is always the one rejected.
+        try (BulkImport bulkImport = new BulkImport(pool, 1, 1, 1, 10, 0)) {
+            report = bulkImport.run(new StringReader(ldif), BulkImport.Format.LDIF,
+                    (String record) -> LDIFReader.decodeEntry(record.split("\n")), deadLetter);
+        }
+
+        assertEquals(3, report.getRead());
+        assertEquals(2, report.getImported());
+        assertEquals(1, report.getRejected());
+        assertEquals("Folded Name", pool.getEntry("uid=a," + BASE_DN).getAttributeValue("cn"));
+        assertNotNull(pool.getEntry("uid=b," + BASE_DN));
+
+        //The rejected record can be fixed and imported again as is.
+        String rejected = deadLetter.toString();
+        assertTrue(rejected, rejected.startsWith("# line 21: dn=uid=a," + BASE_DN + ": 68 (entry already exists)"));
+        assertEquals("Duplicate", LDIFReader.decodeEntry(rejected.trim().split("\n")).getAttributeValue("cn"));
+    }
+
+    /**
+     * Adds sent over a connection that has been lost are retried once it has been replaced.
+     */
+    @Test
+    public void testImport_RetriesTransientFailures() throws Exception {
+        BulkImport.Report report;
+        try (BulkImport bulkImport = new BulkImport(pool, 1, 4, 1, 5, 3, 1)) {
+            connection.close();
+            report = bulkImport.run(new StringReader(people(20)), BulkImport.Format.NDJSON, BulkImportTest::person, new StringWriter());
+        }
+
+        assertEquals(20, report.getImported());
+        assertEquals(0, report.getRejected());
+        assertTrue(report.toString(), report.getRetried() > 0);
+        assertEquals(20, countImported());
+    }
+
+    @Test
+    public void testImport_RetriesExhausted() throws Exception {
+        StringWriter deadLetter = new StringWriter();
+        BulkImport.Report report;
+        try (BulkImport bulkImport = new BulkImport(pool, 1, 1, 1, 5, 0, 1)) {
+            connection.close();
+            report = bulkImport.run(new StringReader(people(3)), BulkImport.Format.NDJSON, BulkImportTest::person, deadLetter);
+        }
+
+        //Only the add sent before the connection was replaced is lost.
+        assertEquals(1, report.getRejected());
+        assertEquals(2, report.getImported());
+        assertTrue(deadLetter.toString(), deadLetter.toString().contains("server down"));
+    }
+
+    /**
+     * An add that timed out may still have been applied, in which case its retry finds the entry
+     * already exists.
+     */
+    @Test
+    public void testImport_RetryAfterAppliedTimeout() throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=example,dc=com");
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("default", 0));
+        config.setSchema(null);
+        config.addInMemoryOperationInterceptor(new InMemoryOperationInterceptor() {
+
+            private final Set<String> timedOut = Collections.synchronizedSet(new HashSet<String>());
+
+            @Override
+            public void processAddResult(InMemoryInterceptedAddResult result) {
+                //The first add of each entry is applied, but its result is lost.
+                if (timedOut.add(result.getRequest().getDN())) {
+                    result.setResult(new LDAPResult(result.getMessageID(), ResultCode.TIMEOUT));
+                }
+            }
+
+        });
+        InMemoryDirectoryServer server = new InMemoryDirectoryServer(config);
+        server.add(new Entry("dc=example,dc=com", new Attribute("objectClass", "top", "domain"), new Attribute("dc", "example")));
+        server.add(new Entry(BASE_DN, new Attribute("objectClass", "top", "organizationalUnit"), new Attribute("ou", "import")));
+        server.startListening();
+
+        StringWriter deadLetter = new StringWriter();
+        BulkImport.Report report;
+        LDAPConnectionPool timingOutPool = new LDAPConnectionPool(server.getConnection(), 1, 2);
+        try (BulkImport bulkImport = new BulkImport(timingOutPool, 1, 1, 1, 5, 3, 1)) {
+            report = bulkImport.run(new StringReader(people(5)), BulkImport.Format.NDJSON, BulkImportTest::person, deadLetter);
+        } finally {
+            timingOutPool.close();
+            server.shutDown(true);
+        }
+
+        assertEquals(deadLetter.toString(), 0, report.getRejected());
+        assertEquals(5, report.getImported());
+        assertEquals(5, report.getAlreadyAdded());
+        assertEquals(5, report.getRetried());
+    }
+
+    @Test
+    public void testReport() {
+        BulkImport.Report report = new BulkImport.Report(10, 8, 1, 3, 2, 2000000000L);
+        assertEquals(2000, report.getElapsedMillis());
+        assertEquals(4.0, report.getEntriesPerSecond(), 0.0);
+        assertEquals("Report [read=10, imported=8, alreadyAdded=1, retried=3, rejected=2, elapsedMillis=2000, entriesPerSecond=4]",
+                report.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBatchSize() throws Exception {
+        new BulkImport(pool, 1, 1, 1, 0, 0);
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.RootDSE;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.controls.ContentSyncInfoIntermediateResponse;
+import com.unboundid.ldap.sdk.controls.ContentSyncRequestControl;
+import com.unboundid.ldap.sdk.controls.ContentSyncState;
+import com.unboundid.ldap.sdk.controls.ContentSyncStateControl;
+import com.unboundid.ldap.sdk.controls.EntryChangeNotificationControl;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import com.unboundid.ldap.sdk.controls.PersistentSearchRequestControl;
+
+@InMemoryLdapServer
+public class CacheSyncTest {
+
+    private static final String BASE_DN = "dc=example,dc=com";
+    private static final String COOKIE_ID = "test:" + BASE_DN;
+
+    @Rule
+    public LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testGetSupportedMode() {
+        assertNull(CacheSync.getSupportedMode(null));
+        assertNull(CacheSync.getSupportedMode(rootDSE()));
+        assertEquals(CacheSync.Mode.PERSISTENT_SEARCH, CacheSync.getSupportedMode(
+                rootDSE(PersistentSearchRequestControl.PERSISTENT_SEARCH_REQUEST_OID)));
+        assertEquals(CacheSync.Mode.CONTENT_SYNC, CacheSync.getSupportedMode(
+                rootDSE(PersistentSearchRequestControl.PERSISTENT_SEARCH_REQUEST_OID, ContentSyncRequestControl.SYNC_REQUEST_OID)));
+    }
+
+    @Test
+    public void testContentSync_Entries() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        FileSyncCookieStore cookieStore = new FileSyncCookieStore(folder.getRoot().toPath());
+        CacheSync cacheSync = new CacheSync(null, BASE_DN, CacheSync.Mode.CONTENT_SYNC, cookieStore, COOKIE_ID, listener, 0);
+
+        cacheSync.handleEntry(syncEntry("uid=added," + BASE_DN, ContentSyncState.ADD, null));
+        cacheSync.handleEntry(syncEntry("uid=modified," + BASE_DN, ContentSyncState.MODIFY, null));
+        cacheSync.handleEntry(syncEntry("uid=present," + BASE_DN, ContentSyncState.PRESENT, null));
+        cacheSync.handleEntry(syncEntry("uid=deleted," + BASE_DN, ContentSyncState.DELETE, "cookie1"));
+
+        assertEquals(3, listener.changed.size());
+        assertEquals("uid=added," + BASE_DN, listener.changed.get(0));
+        assertEquals("uid=modified," + BASE_DN, listener.changed.get(1));
+        assertEquals("uid=deleted," + BASE_DN, listener.changed.get(2));
+        assertEquals(0, listener.resynchronized);
+
+        assertEquals("cookie1", cacheSync.getCookie().stringValue());
+        assertArrayEquals("cookie1".getBytes("UTF-8"), cookieStore.load(COOKIE_ID));
+    }
+
+    @Test
+    public void testContentSync_RefreshPresent() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        CacheSync cacheSync = new CacheSync(null, BASE_DN, CacheSync.Mode.CONTENT_SYNC, null, COOKIE_ID, listener, 0);
+
+        cacheSync.handleIntermediateResponse(ContentSyncInfoIntermediateResponse.createNewCookieResponse(
+                new ASN1OctetString("cookie1")));
+        assertEquals(0, listener.resynchronized);
+        assertEquals("cookie1", cacheSync.getCookie().stringValue());
+
+        cacheSync.handleIntermediateResponse(ContentSyncInfoIntermediateResponse.createRefreshPresentResponse(
+                new ASN1OctetString("cookie2"), true));
+        assertEquals(1, listener.resynchronized);
+        assertEquals("cookie2", cacheSync.getCookie().stringValue());
+    }
+
+    @Test
+    public void testContentSync_RefreshRequired() throws Exception {
+        FileSyncCookieStore cookieStore = new FileSyncCookieStore(folder.getRoot().toPath());
+        cookieStore.store(COOKIE_ID, "stale".getBytes("UTF-8"));
+
+        RecordingListener listener = new RecordingListener();
+        CacheSync cacheSync = new CacheSync(null, BASE_DN, CacheSync.Mode.CONTENT_SYNC, cookieStore, COOKIE_ID, listener, 0);
+        assertEquals("stale", cacheSync.getCookie().stringValue());
+
+        cacheSync.handleResult(new SearchResult(1, ResultCode.E_SYNC_REFRESH_REQUIRED, null, null, null, 0, 0, null));
+
+        assertEquals(1, listener.resynchronized);
+        assertNull(cacheSync.getCookie());
+        assertNull(cookieStore.load(COOKIE_ID));
+    }
+
+    @Test
+    public void testContentSync_ResumesFromStoredCookie() throws Exception {
+        FileSyncCookieStore cookieStore = new FileSyncCookieStore(folder.getRoot().toPath());
+        new CacheSync(null, BASE_DN, CacheSync.Mode.CONTENT_SYNC, cookieStore, COOKIE_ID, new RecordingListener(), 0)
+                .handleEntry(syncEntry("uid=added," + BASE_DN, ContentSyncState.ADD, "cookie1"));
+
+        //As if after a restart.
+        CacheSync cacheSync = new CacheSync(null, BASE_DN, CacheSync.Mode.CONTENT_SYNC, cookieStore, COOKIE_ID, new RecordingListener(), 0);
+        SearchRequest request = cacheSync.createSearchRequest();
+
+        ContentSyncRequestControl control = new ContentSyncRequestControl(request.getControl(ContentSyncRequestControl.SYNC_REQUEST_OID));
+        assertEquals("cookie1", control.getCookie().stringValue());
+        assertEquals(0L, request.getResponseTimeoutMillis(null));
+    }
+
+    @Test
+    public void testPersistentSearch_Entries() {
+        RecordingListener listener = new RecordingListener();
+        CacheSync cacheSync = new CacheSync(null, BASE_DN, CacheSync.Mode.PERSISTENT_SEARCH, null, COOKIE_ID, listener, 0);
+
+        cacheSync.handleEntry(new SearchResultEntry("uid=modified," + BASE_DN, new Attribute[0],
+                new EntryChangeNotificationControl(PersistentSearchChangeType.MODIFY, null, -1)));
+        cacheSync.handleEntry(new SearchResultEntry("uid=renamed," + BASE_DN, new Attribute[0],
+                new EntryChangeNotificationControl(PersistentSearchChangeType.MODIFY_DN, "uid=original," + BASE_DN, -1)));
+
+        assertEquals(3, listener.changed.size());
+        assertEquals("uid=modified," + BASE_DN, listener.changed.get(0));
+        assertEquals("uid=renamed," + BASE_DN, listener.changed.get(1));
+        assertEquals("uid=original," + BASE_DN, listener.changed.get(2));
+
+        assertTrue(cacheSync.createSearchRequest().hasControl(PersistentSearchRequestControl.PERSISTENT_SEARCH_REQUEST_OID));
+    }
+
+    /**
+     * The in-memory server supports neither control, so the search fails each time it is started,
+     * and each time the listener is told to resynchronize.
+     */
+    @Test(timeout = 10000)
+    public void testRetriesUntilClosed() throws Exception {
+        final CountDownLatch attempts = new CountDownLatch(3);
+        LDAPConnectionPool pool = new LDAPConnectionPool(ldapServer.getLDAPConnection(), 2);
+        try (CacheSync cacheSync = new CacheSync(pool, BASE_DN, CacheSync.Mode.PERSISTENT_SEARCH, null, COOKIE_ID,
+                new CacheSync.Listener() {
+
+                    @Override
+                    public void entryChanged(String dn) {}
+
+                    @Override
+                    public void resynchronize() {
+                        attempts.countDown();
+                    }
+
+                }, 10)) {
+            cacheSync.start();
+            assertTrue(attempts.await(5, TimeUnit.SECONDS));
+        } finally {
+            pool.close();
+        }
+    }
+
+    private static RootDSE rootDSE(String... supportedControls) {
+        Entry entry = new Entry("");
+        if (supportedControls.length > 0) {
+            entry.addAttribute("supportedControl", supportedControls);
+        }
+        return new RootDSE(entry);
+    }
+
+    private static SearchResultEntry syncEntry(String dn, ContentSyncState state, String cookie) {
+        Control control = new ContentSyncStateControl(state, UUID.randomUUID(),
+                (cookie == null) ? null : new ASN1OctetString(cookie));
+        return new SearchResultEntry(dn, new Attribute[0], control);
+    }
+
+    private static class RecordingListener implements CacheSync.Listener {
+
+        private final List<String> changed = new ArrayList<>();
+        private int resynchronized;
+
+        @Override
+        public void entryChanged(String dn) {
+            changed.add(dn);
+        }
+
+        @Override
+        public void resynchronize() {
+            resynchronized++;
+        }
+
+    }
+
+}
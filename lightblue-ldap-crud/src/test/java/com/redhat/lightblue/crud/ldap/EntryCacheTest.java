@@ -0,0 +1,198 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.redhat.lightblue.common.ldap.CacheEviction;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+
+public class EntryCacheTest {
+
+    private static final String[] ATTRIBUTES = new String[]{"cn", "sn"};
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private EntryCache createCache(int maxEntries, long maxBytes, CacheEviction eviction) {
+        return new EntryCache(1000, maxEntries, maxBytes, eviction, clock::get);
+    }
+
+    private static SearchResultEntry entry(String uid) {
+        return new SearchResultEntry("uid=" + uid + ",dc=example,dc=com", new Attribute[]{
+                new Attribute("cn", "Test " + uid), new Attribute("sn", "Test")});
+    }
+
+    private SearchResultEntry get(EntryCache cache, String uid) throws LDAPException {
+        return cache.get("uid=" + uid + ",dc=example,dc=com", ATTRIBUTES, () -> {
+            loads.incrementAndGet();
+            return entry(uid);
+        });
+    }
+
+    @Test
+    public void testGet_Hit() throws LDAPException {
+        EntryCache cache = createCache(10, Long.MAX_VALUE, CacheEviction.LRU);
+
+        SearchResultEntry first = get(cache, "a");
+        SearchResultEntry second = cache.get("UID=a, dc=Example,dc=com", new String[]{"SN", "cn"}, () -> {
+            throw new LDAPException(ResultCode.OTHER, "should have been cached");
+        });
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(EntryCache.estimateBytes(first), cache.getEstimatedBytes());
+    }
+
+    @Test
+    public void testGet_DifferentAttributes() throws LDAPException {
+        EntryCache cache = createCache(10, Long.MAX_VALUE, CacheEviction.LRU);
+
+        get(cache, "a");
+        cache.get("uid=a,dc=example,dc=com", new String[]{"cn"}, () -> entry("a"));
+
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testGet_Expired() throws LDAPException {
+        EntryCache cache = createCache(10, Long.MAX_VALUE, CacheEviction.LRU);
+
+        get(cache, "a");
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        get(cache, "a");
+        assertEquals(1, loads.get());
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        get(cache, "a");
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testGet_NotFoundIsNotCached() throws LDAPException {
+        EntryCache cache = createCache(10, Long.MAX_VALUE, CacheEviction.LRU);
+
+        assertNull(cache.get("uid=a,dc=example,dc=com", ATTRIBUTES, () -> null));
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEviction_LRU() throws LDAPException {
+        EntryCache cache = createCache(2, Long.MAX_VALUE, CacheEviction.LRU);
+
+        get(cache, "a");
+        get(cache, "b");
+        get(cache, "a");
+        get(cache, "c");
+        assertEquals(3, loads.get());
+
+        //b was used least recently.
+        get(cache, "a");
+        get(cache, "c");
+        assertEquals(3, loads.get());
+        get(cache, "b");
+        assertEquals(4, loads.get());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testEviction_LFU() throws LDAPException {
+        EntryCache cache = createCache(2, Long.MAX_VALUE, CacheEviction.LFU);
+
+        get(cache, "a");
+        get(cache, "a");
+        get(cache, "a");
+        get(cache, "b");
+        get(cache, "b");
+        get(cache, "c");
+        assertEquals(3, loads.get());
+
+        //b was used least often.
+        get(cache, "a");
+        get(cache, "c");
+        assertEquals(3, loads.get());
+        get(cache, "b");
+        assertEquals(4, loads.get());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testEviction_MaxBytes() throws LDAPException {
+        long entryBytes = EntryCache.estimateBytes(entry("a"));
+        EntryCache cache = createCache(10, entryBytes * 2, CacheEviction.LRU);
+
+        get(cache, "a");
+        get(cache, "b");
+        get(cache, "c");
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.getEstimatedBytes() <= entryBytes * 2);
+    }
+
+    @Test
+    public void testInvalidate() throws LDAPException {
+        EntryCache cache = createCache(10, Long.MAX_VALUE, CacheEviction.LFU);
+
+        get(cache, "a");
+        cache.get("uid=a,dc=example,dc=com", new String[]{"cn"}, () -> entry("a"));
+        get(cache, "b");
+
+        cache.invalidate("UID=A,DC=EXAMPLE,DC=COM");
+        assertEquals(1, cache.size());
+
+        get(cache, "a");
+        assertEquals(3, loads.get());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getEstimatedBytes());
+    }
+
+    @Test
+    public void testInvalidate_DuringLoad() throws LDAPException {
+        EntryCache cache = createCache(10, Long.MAX_VALUE, CacheEviction.LRU);
+
+        SearchResultEntry stale = cache.get("uid=a,dc=example,dc=com", ATTRIBUTES, () -> {
+            //A write lands while the old entry is being read.
+            cache.invalidate("uid=a,dc=example,dc=com");
+            return entry("a");
+        });
+
+        assertEquals("uid=a,dc=example,dc=com", stale.getDN());
+        assertEquals(0, cache.size());
+    }
+
+}
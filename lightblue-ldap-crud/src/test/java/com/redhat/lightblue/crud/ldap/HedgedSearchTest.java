@@ -0,0 +1,128 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.redhat.lightblue.common.ldap.LdapDataSourceOptions;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchScope;
+
+@InMemoryLdapServer
+public class HedgedSearchTest {
+
+    @Rule
+    public LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance();
+
+    private LDAPConnectionPool pool;
+
+    @Before
+    public void before() throws Exception {
+        pool = new LDAPConnectionPool(ldapServer.getLDAPConnection(), 2);
+    }
+
+    @After
+    public void after() {
+        pool.close();
+    }
+
+    private LdapDataSourceOptions createOptions(long minDelay) {
+        LdapDataSourceOptions options = new LdapDataSourceOptions();
+        options.setHedgeDelayPercentile(95.0);
+        options.setHedgeMinDelayMillis(minDelay);
+        return options;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHedgingNotEnabled() {
+        new HedgedSearch(pool, new LdapDataSourceOptions());
+    }
+
+    @Test
+    public void testGetHedgeDelayMillis() {
+        assertEquals(25, new HedgedSearch(pool, createOptions(25)).getHedgeDelayMillis());
+    }
+
+    /**
+     * The only other server is the same one, so the search should not be hedged
+     * but should still return all results.
+     */
+    @Test
+    public void testSearch_NoAlternateServer() throws Exception {
+        HedgedSearch hedgedSearch = new HedgedSearch(pool, createOptions(0));
+
+        LDAPConnection connection = pool.getConnection();
+        try {
+            SearchResult result = hedgedSearch.search(connection,
+                    new SearchRequest("dc=com", SearchScope.SUB, "(objectClass=domain)"));
+
+            assertEquals(ResultCode.SUCCESS, result.getResultCode());
+            assertEquals(2, result.getEntryCount());
+            assertEquals(2, result.getSearchEntries().size());
+        } finally {
+            pool.releaseConnection(connection);
+        }
+    }
+
+    @Test
+    public void testSearch_AnsweredBeforeDelay() throws Exception {
+        HedgedSearch hedgedSearch = new HedgedSearch(pool, createOptions(60000));
+
+        LDAPConnection connection = pool.getConnection();
+        try {
+            SearchResult result = hedgedSearch.search(connection,
+                    new SearchRequest("dc=example,dc=com", SearchScope.BASE, "(objectClass=*)"));
+
+            assertEquals(1, result.getEntryCount());
+            assertEquals("dc=example,dc=com", result.getSearchEntries().get(0).getDN());
+        } finally {
+            pool.releaseConnection(connection);
+        }
+    }
+
+    @Test
+    public void testSearch_Unsuccessful() throws Exception {
+        HedgedSearch hedgedSearch = new HedgedSearch(pool, createOptions(0));
+
+        LDAPConnection connection = pool.getConnection();
+        try {
+            hedgedSearch.search(connection,
+                    new SearchRequest("dc=doesnotexist,dc=com", SearchScope.SUB, "(objectClass=*)"));
+        } catch (LDAPSearchException e) {
+            assertEquals(ResultCode.NO_SUCH_OBJECT, e.getResultCode());
+            return;
+        } finally {
+            pool.releaseConnection(connection);
+        }
+        throw new AssertionError("Expected an LDAPSearchException");
+    }
+
+}
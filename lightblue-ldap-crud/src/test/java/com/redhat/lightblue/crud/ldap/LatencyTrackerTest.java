@@ -0,0 +1,65 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyTrackerTest {
+
+    @Test
+    public void testGetEstimate_NotEnoughSamples() {
+        LatencyTracker tracker = new LatencyTracker(95);
+        for (int x = 1; x < LatencyTracker.REFRESH_INTERVAL; x++) {
+            tracker.record(x);
+        }
+
+        assertEquals(0, tracker.getEstimate());
+    }
+
+    @Test
+    public void testGetEstimate() {
+        LatencyTracker tracker = new LatencyTracker(95);
+        for (int x = 1; x <= LatencyTracker.WINDOW_SIZE; x++) {
+            tracker.record(x);
+        }
+
+        assertEquals(973, tracker.getEstimate());
+    }
+
+    @Test
+    public void testGetEstimate_WindowSlides() {
+        LatencyTracker tracker = new LatencyTracker(50);
+        for (int x = 0; x < LatencyTracker.WINDOW_SIZE; x++) {
+            tracker.record(1000);
+        }
+        for (int x = 0; x < LatencyTracker.WINDOW_SIZE; x++) {
+            tracker.record(10);
+        }
+
+        assertEquals(10, tracker.getEstimate());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercentile() {
+        new LatencyTracker(100);
+    }
+
+}
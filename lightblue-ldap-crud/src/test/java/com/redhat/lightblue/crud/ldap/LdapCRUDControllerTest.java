@@ -0,0 +1,637 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static com.redhat.lightblue.util.JsonUtils.json;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.redhat.lightblue.ExecutionOptions;
+import com.redhat.lightblue.common.ldap.DBResolver;
+import com.redhat.lightblue.common.ldap.LdapConstant;
+import com.redhat.lightblue.common.ldap.LdapDataSourceOptions;
+import com.redhat.lightblue.common.ldap.LdapDataStore;
+import com.redhat.lightblue.common.ldap.LdapErrorCode;
+import com.redhat.lightblue.crud.CRUDFindResponse;
+import com.redhat.lightblue.crud.CRUDOperation;
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.crud.CRUDSaveResponse;
+import com.redhat.lightblue.crud.CrudConstants;
+import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.crud.DocumentStream;
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.crud.validator.DefaultFieldConstraintValidators;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.redhat.lightblue.metadata.DataStore;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.test.MetadataUtil;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+
+@InMemoryLdapServer
+public class LdapCRUDControllerTest {
+
+    private static final String BASE_DN = "ou=controller,dc=example,dc=com";
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance();
+
+    private LDAPConnectionPool pool;
+    private LdapDataSourceOptions options;
+    private LdapCRUDController controller;
+    private EntityMetadata md;
+
+    @Before
+    public void before() throws Exception {
+        pool = new LDAPConnectionPool(ldapServer.getLDAPConnection(), 2);
+        pool.add(BASE_DN,
+                new Attribute("objectClass", "top", "organizationalUnit"),
+                new Attribute("ou", "controller"));
+
+        options = new LdapDataSourceOptions();
+        controller = new LdapCRUDController(new DBResolver() {
+
+            @Override
+            public LDAPConnection get(DataStore store) throws LDAPException {
+                return pool.getConnection();
+            }
+
+            @Override
+            public LDAPConnectionPool getConnectionPool(DataStore store) {
+                return pool;
+            }
+
+            @Override
+            public LdapDataSourceOptions getOptions(DataStore store) {
+                return options;
+            }
+
+            @Override
+            public Map<String, Object> getLDAPConnectionsStatus() {
+                return new HashMap<>();
+            }
+
+        });
+
+        md = createMetadata(new LdapDataStore("test", BASE_DN, "uid"));
+    }
+
+    private static EntityMetadata createMetadata(LdapDataStore store) throws Exception {
+        return createMetadata(store, "{'type': 'string'}");
+    }
+
+    /**
+     * @param cnField - definition of the cn field.
+     */
+    private static EntityMetadata createMetadata(LdapDataStore store, String cnField) throws Exception {
+        EntityMetadata metadata = MetadataUtil.createEntityMetadata(LdapConstant.BACKEND, json((""
+                + "{'entityInfo': {'name': 'person', 'datastore': {'backend': 'ldap'}},"
+                + " 'schema': {'name': 'person', 'version': {'value': '1.0.0', 'changelog': 'test'}, 'status': {'value': 'active'},"
+                + "  'access': {'insert': ['anyone'], 'update': ['anyone'], 'delete': ['anyone'], 'find': ['anyone']},"
+                + "  'fields': {"
+                + "   'dn': {'type': 'string'},"
+                + "   'uid': {'type': 'string'},"
+                + "   'cn': " + cnField + ","
+                + "   'sn': {'type': 'string'},"
+                + "   'objectClass': {'type': 'array', 'items': {'type': 'string'}}"
+                + "}}}").replace('\'', '"')), null, null);
+        metadata.setDataStore(store);
+        return metadata;
+    }
+
+    @After
+    public void after() {
+        pool.close();
+    }
+
+    private CRUDOperationContext createContext(CRUDOperation operation, String... uids) throws Exception {
+        List<JsonDoc> documents = new ArrayList<>();
+        for (String uid : uids) {
+            documents.add(person(uid, uid + " Test"));
+        }
+        return createContext(operation, documents);
+    }
+
+    private CRUDOperationContext createContext(CRUDOperation operation, List<JsonDoc> documents) {
+        return createContext(operation, documents, md);
+    }
+
+    private static CRUDOperationContext createContext(CRUDOperation operation, List<JsonDoc> documents, EntityMetadata metadata) {
+        return new CRUDOperationContext(operation, "person", new Factory(), documents, new ExecutionOptions()) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public EntityMetadata getEntityMetadata(String entityName) {
+                return metadata;
+            }
+
+        };
+    }
+
+    private static JsonDoc person(String uid, String cn) throws Exception {
+        return new JsonDoc(json(("{'objectClass': ['top', 'person', 'organizationalPerson', 'inetOrgPerson'],"
+                + " 'uid': '" + uid + "', 'cn': '" + cn + "', 'sn': 'Test'}").replace('\'', '"')));
+    }
+
+    private static QueryExpression query(String query) throws Exception {
+        return QueryExpression.fromJson(json(query.replace('\'', '"')));
+    }
+
+    private List<DocCtx> findAll() throws Exception {
+        CRUDOperationContext ctx = createContext(CRUDOperation.FIND);
+        CRUDFindResponse response = controller.find(ctx,
+                query("{'field': 'sn', 'op': '=', 'rvalue': 'Test'}"),
+                Projection.fromJson(json("{\"field\": \"*\", \"recursive\": true}")),
+                null, null, null);
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+
+        List<DocCtx> documents = new ArrayList<>();
+        DocumentStream<DocCtx> stream = ctx.getDocumentStream();
+        while (stream.hasNext()) {
+            documents.add(stream.next());
+        }
+        assertEquals(response.getSize(), documents.size());
+        return documents;
+    }
+
+    @Test
+    public void testSave_TransactionAbortedByVersionAssertion() throws Exception {
+        LdapDataStore store = (LdapDataStore) md.getDataStore();
+        store.setVersionAttribute("sn");
+        options.setTransactionalWrites(true);
+        controller.insert(createContext(CRUDOperation.INSERT, "a", "b"), null);
+
+        //Someone else changes b after it was read.
+        pool.modify("uid=b," + BASE_DN, new Modification(ModificationType.REPLACE, "sn", "Other"));
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.SAVE, Arrays.asList(person("a", "Changed"), person("b", "Changed")));
+        CRUDSaveResponse response = controller.save(ctx, false,
+                Projection.fromJson(json("{\"field\": \"dn\"}")));
+
+        assertEquals(LdapErrorCode.ERR_LDAP_TRANSACTION_ABORTED, ctx.getErrors().get(0).getErrorCode());
+        assertEquals(0, response.getNumSaved());
+        List<DocCtx> documents = ctx.getInputDocuments();
+        assertFalse(documents.get(0).hasErrors());
+        assertEquals(LdapErrorCode.ERR_LDAP_CONCURRENT_UPDATE, documents.get(1).getErrors().get(0).getErrorCode());
+
+        //Nothing was written, so nothing is projected.
+        assertNull(documents.get(0).getOutputDocument().get(new Path("dn")));
+        assertEquals("a Test", findCn("a"));
+    }
+
+    @Test
+    public void testSave_ConcurrentSavesOfTheSameVersion() throws Exception {
+        LdapDataStore store = (LdapDataStore) md.getDataStore();
+        store.setVersionAttribute("sn");
+        JsonDoc read = person("a", "a Test");
+        read.modify(new Path("sn"), JsonNodeFactory.instance.textNode("1"), false);
+        controller.insert(createContext(CRUDOperation.INSERT, Arrays.asList(read)), null);
+
+        //Two writers both read version 1.
+        JsonDoc first = read.copy();
+        first.modify(new Path("cn"), JsonNodeFactory.instance.textNode("First"), false);
+        JsonDoc second = read.copy();
+        second.modify(new Path("cn"), JsonNodeFactory.instance.textNode("Second"), false);
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.SAVE, Arrays.asList(first));
+        assertEquals(1, controller.save(ctx, false, null).getNumSaved());
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertEquals("2", pool.getEntry("uid=a," + BASE_DN).getAttributeValue("sn"));
+
+        ctx = createContext(CRUDOperation.SAVE, Arrays.asList(second));
+        assertEquals(0, controller.save(ctx, false, null).getNumSaved());
+        assertEquals(LdapErrorCode.ERR_LDAP_CONCURRENT_UPDATE,
+                ctx.getInputDocuments().get(0).getErrors().get(0).getErrorCode());
+        assertEquals("First", findCn("a"));
+    }
+
+    @Test
+    public void testEntryCache() throws Exception {
+        LdapDataStore store = (LdapDataStore) md.getDataStore();
+        store.setEntryCacheTtlMillis(60000);
+        controller.insert(createContext(CRUDOperation.INSERT, "a", "b"), null);
+
+        assertEquals("a Test", findCn("a"));
+        assertEquals("a Test", findCn("a"));
+        EntryCache entryCache = controller.getEntryCache(store);
+        assertEquals(1, entryCache.getHits());
+        assertEquals(1, entryCache.getMisses());
+
+        //Saving through the controller invalidates the cached entry.
+        CRUDOperationContext ctx = createContext(CRUDOperation.SAVE, Arrays.asList(person("a", "Changed")));
+        controller.save(ctx, false, null);
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertEquals("Changed", findCn("a"));
+
+        //Missing entries are searched for, and not cached.
+        assertNull(findCn("z"));
+        assertEquals(1, entryCache.size());
+
+        ctx = createContext(CRUDOperation.DELETE);
+        controller.delete(ctx, query("{'field': 'uid', 'op': '=', 'rvalue': 'a'}"));
+        assertEquals(0, entryCache.size());
+        assertNull(findCn("a"));
+    }
+
+    /**
+     * Another entity, or version of it, over the same entries shares the caches, even though its
+     * datastore names the base DN differently and does not cache anything itself.
+     */
+    @Test
+    public void testEntryCache_SharedByDataStoresOfTheSameEntries() throws Exception {
+        LdapDataStore store = (LdapDataStore) md.getDataStore();
+        store.setEntryCacheTtlMillis(60000);
+        controller.insert(createContext(CRUDOperation.INSERT, "a"), null);
+        assertEquals("a Test", findCn("a"));
+
+        EntityMetadata other = createMetadata(new LdapDataStore("test", BASE_DN.toUpperCase(Locale.ROOT).replace(",", ", "), "uid"));
+        CRUDOperationContext ctx = createContext(CRUDOperation.SAVE, Arrays.asList(person("a", "Changed")), other);
+        controller.save(ctx, false, null);
+
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertEquals("Changed", findCn("a"));
+        assertEquals(2, controller.getEntryCache(store).getMisses());
+    }
+
+    @Test
+    public void testEntryCache_ReplacedWhenSettingsChange() throws Exception {
+        LdapDataStore store = (LdapDataStore) md.getDataStore();
+        store.setEntryCacheTtlMillis(60000);
+        EntryCache entryCache = controller.getEntryCache(store);
+        assertSame(entryCache, controller.getEntryCache(store));
+
+        store.setEntryCacheMaxEntries(store.getEntryCacheMaxEntries() + 1);
+        EntryCache replaced = controller.getEntryCache(store);
+
+        assertNotSame(entryCache, replaced);
+        assertSame(replaced, controller.getEntryCache(store));
+        String details = controller.checkHealth().details();
+        assertEquals(details.indexOf("EntryCache ["), details.lastIndexOf("EntryCache ["));
+    }
+
+    @Test
+    public void testCacheSync_Unsupported() throws Exception {
+        LdapDataStore store = (LdapDataStore) md.getDataStore();
+        store.setEntryCacheTtlMillis(60000);
+        options.setCacheSync(true);
+        controller.insert(createContext(CRUDOperation.INSERT, "a"), null);
+
+        //The in-memory server supports neither Content Synchronization nor persistent search, so caching carries on without it.
+        assertEquals("a Test", findCn("a"));
+        assertNull(controller.getCacheSync(store));
+        assertEquals(1, controller.getEntryCache(store).size());
+    }
+
+    @Test
+    public void testGetSchema_FailedReadIsRemembered() throws Exception {
+        LdapDataStore store = (LdapDataStore) md.getDataStore();
+        LDAPConnection closed = ldapServer.getLDAPConnection();
+        closed.close();
+        assertNull(controller.getSchema(store, closed));
+
+        //A working connection is not tried again until the failure expires.
+        LDAPConnection connection = ldapServer.getLDAPConnection();
+        try {
+            assertNull(controller.getSchema(store, connection));
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testNegativeLookupCache() throws Exception {
+        LdapDataStore store = (LdapDataStore) md.getDataStore();
+        store.setNegativeCacheTtlMillis(60000);
+
+        assertNull(findCn("a"));
+        NegativeLookupCache negativeLookupCache = controller.getNegativeLookupCache(store);
+        assertEquals(1, negativeLookupCache.size());
+
+        //Added behind the controller's back, so the lookups below never reach the directory.
+        pool.add("uid=a," + BASE_DN,
+                new Attribute("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson"),
+                new Attribute("uid", "a"),
+                new Attribute("cn", "a Direct"),
+                new Attribute("sn", "Direct"));
+        assertNull(findCn("a"));
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.SAVE, "a");
+        controller.save(ctx, false, null);
+        assertEquals(LdapErrorCode.ERR_LDAP_SAVE_ERROR_INS_WITH_NO_UPSERT,
+                ctx.getInputDocuments().get(0).getErrors().get(0).getErrorCode());
+        assertEquals(2, negativeLookupCache.getHits());
+
+        //Changes reported by the sync feed are forgotten.
+        controller.invalidateEntries(store, Arrays.asList("uid=a," + BASE_DN));
+        assertEquals("a Direct", findCn("a"));
+
+        //As are inserts through the controller.
+        assertNull(findCn("b"));
+        controller.insert(createContext(CRUDOperation.INSERT, "b"), null);
+        assertEquals("b Test", findCn("b"));
+    }
+
+    @Test
+    public void testCoalesceFinds() throws Exception {
+        options.setCoalesceFinds(true);
+        controller.insert(createContext(CRUDOperation.INSERT, "a"), null);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> finds = new ArrayList<>();
+            for (int x = 0; x < 8; x++) {
+                finds.add(executor.submit(() -> findCn("a")));
+            }
+            for (Future<String> find : finds) {
+                assertEquals("a Test", find.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        //However many of them overlapped, every find either searched or shared a search.
+        SingleFlight singleFlight = controller.getSingleFlight((LdapDataStore) md.getDataStore());
+        assertEquals(8, singleFlight.getSearches() + singleFlight.getCoalesced());
+    }
+
+    private String findCn(String uid) throws Exception {
+        CRUDOperationContext ctx = createContext(CRUDOperation.FIND);
+        CRUDFindResponse response = controller.find(ctx,
+                query("{'field': 'uid', 'op': '=', 'rvalue': '" + uid + "'}"),
+                Projection.fromJson(json("{\"field\": \"cn\"}")),
+                null, null, null);
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        if (response.getSize() == 0) {
+            return null;
+        }
+        return ctx.getDocumentStream().next().getOutputDocument().get(new Path("cn")).asText();
+    }
+
+    @Test
+    public void testQueryResultCache() throws Exception {
+        LdapDataStore store = (LdapDataStore) md.getDataStore();
+        store.setQueryCacheMaxStalenessMillis(60000);
+        controller.insert(createContext(CRUDOperation.INSERT, "a", "b"), null);
+
+        assertEquals(2, findAll().size());
+        assertEquals(2, findAll().size());
+        QueryResultCache.Statistics statistics = controller.getQueryResultCache(store).getStatistics();
+        assertEquals(1, statistics.getHits());
+        assertEquals(1, statistics.getMisses());
+        assertTrue(controller.checkHealth().details().contains("QueryResultCache [BaseDN: " + BASE_DN + ", Hits: 1"));
+
+        //Writing to the entity invalidates its cached results.
+        controller.insert(createContext(CRUDOperation.INSERT, "c"), null);
+        assertEquals(3, findAll().size());
+    }
+
+    @Test
+    public void testFind_ParallelTranslation() throws Exception {
+        options.setTranslationParallelism(4);
+        int entries = ParallelTranslation.MIN_SLICE_SIZE * 16;
+        for (int x = 0; x < entries; x++) {
+            pool.add("uid=user" + x + "," + BASE_DN,
+                    new Attribute("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson"),
+                    new Attribute("uid", "user" + x),
+                    new Attribute("cn", "User " + x),
+                    new Attribute("sn", "Test"));
+        }
+
+        //An array range is not a plain field projection, so every entry goes through ResultTranslatorToJson.
+        CRUDOperationContext ctx = createContext(CRUDOperation.FIND);
+        CRUDFindResponse response = controller.find(ctx,
+                query("{'field': 'sn', 'op': '=', 'rvalue': 'Test'}"),
+                Projection.fromJson(json(("[{'field': '*', 'recursive': true}, {'field': 'objectClass', 'range': [0, 0]}]").replace('\'', '"'))),
+                null, null, null);
+
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertEquals(entries, response.getSize());
+        DocumentStream<DocCtx> stream = ctx.getDocumentStream();
+        while (stream.hasNext()) {
+            JsonDoc document = stream.next().getOutputDocument();
+            assertEquals(document.toString(), 4, document.get(new Path("objectClass#")).asInt());
+            assertEquals(document.toString(), 1, document.get(new Path("objectClass")).size());
+        }
+    }
+
+    @Test
+    public void testCount() throws Exception {
+        controller.insert(createContext(CRUDOperation.INSERT, "a", "b", "c"), null);
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.FIND);
+        assertEquals(3, controller.count(ctx, query("{'field': 'sn', 'op': '=', 'rvalue': 'Test'}")).getSize());
+        assertEquals(1, controller.count(ctx, query("{'field': 'uid', 'op': '=', 'rvalue': 'b'}")).getSize());
+        assertEquals(3, controller.count(ctx, null).getSize());
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertFalse(ctx.getDocumentStream().hasNext());
+    }
+
+    @Test
+    public void testCountBy() throws Exception {
+        List<JsonDoc> documents = Arrays.asList(person("a", "Shared"), person("b", "Shared"), person("c", "Unique"));
+        controller.insert(createContext(CRUDOperation.INSERT, documents), null);
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.FIND);
+        Map<String, Long> counts = controller.countBy(ctx, query("{'field': 'sn', 'op': '=', 'rvalue': 'Test'}"), new Path("cn"));
+
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        Map<String, Long> expected = new HashMap<>();
+        expected.put("Shared", 2L);
+        expected.put("Unique", 1L);
+        assertEquals(expected, counts);
+    }
+
+    @Test
+    public void testCount_EntityFindAccess() throws Exception {
+        controller.insert(createContext(CRUDOperation.INSERT, "a"), null);
+        md.getAccess().getFind().setRoles("admin");
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.FIND);
+        assertEquals(0, controller.count(ctx, null).getSize());
+        assertEquals(LdapErrorCode.ERR_NO_FIND_ACCESS, ctx.getErrors().get(0).getErrorCode());
+
+        ctx = createContext(CRUDOperation.FIND);
+        assertTrue(controller.countBy(ctx, null, new Path("sn")).isEmpty());
+        assertEquals(LdapErrorCode.ERR_NO_FIND_ACCESS, ctx.getErrors().get(0).getErrorCode());
+    }
+
+    @Test
+    public void testCount_QueryFieldFindAccess() throws Exception {
+        controller.insert(createContext(CRUDOperation.INSERT, "a"), null);
+        EntityMetadata metadata = createMetadata(new LdapDataStore("test", BASE_DN, "uid"),
+                "{'type': 'string', 'access': {'find': ['admin']}}");
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.FIND, new ArrayList<JsonDoc>(), metadata);
+        assertEquals(0, controller.count(ctx, query("{'field': 'cn', 'op': '=', 'rvalue': 'a Test'}")).getSize());
+        assertEquals(LdapErrorCode.ERR_NO_FIELD_FIND_ACCESS, ctx.getErrors().get(0).getErrorCode());
+
+        ctx = createContext(CRUDOperation.FIND, new ArrayList<JsonDoc>(), metadata);
+        assertTrue(controller.countBy(ctx, query("{'field': 'cn', 'op': '=', 'rvalue': 'a Test'}"), new Path("sn")).isEmpty());
+        assertEquals(LdapErrorCode.ERR_NO_FIELD_FIND_ACCESS, ctx.getErrors().get(0).getErrorCode());
+
+        //Fields the caller may find by are still counted.
+        ctx = createContext(CRUDOperation.FIND, new ArrayList<JsonDoc>(), metadata);
+        assertEquals(1, controller.count(ctx, query("{'field': 'sn', 'op': '=', 'rvalue': 'Test'}")).getSize());
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        options.setExportPageSize(2);
+        controller.insert(createContext(CRUDOperation.INSERT, "a", "b", "c"), null);
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.FIND);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingExport.Checkpoint checkpoint = controller.export(ctx,
+                query("{'field': 'sn', 'op': '=', 'rvalue': 'Test'}"),
+                Projection.fromJson(json("{\"field\": \"cn\"}")),
+                out, null);
+
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertNull(checkpoint);
+        assertEquals("{\"cn\":\"a Test\"}\n{\"cn\":\"b Test\"}\n{\"cn\":\"c Test\"}\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testExport_EntityFindAccess() throws Exception {
+        controller.insert(createContext(CRUDOperation.INSERT, "a"), null);
+        md.getAccess().getFind().setRoles("admin");
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.FIND);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingExport.Checkpoint checkpoint = controller.export(ctx,
+                query("{'field': 'sn', 'op': '=', 'rvalue': 'Test'}"),
+                Projection.fromJson(json("{\"field\": \"cn\"}")),
+                out, null);
+
+        assertEquals(LdapErrorCode.ERR_NO_FIND_ACCESS, ctx.getErrors().get(0).getErrorCode());
+        assertNull(checkpoint);
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void testBulkImport() throws Exception {
+        options.setImportBatchSize(2);
+        String ndjson = person("a", "a Test").getRoot().toString() + "\n"
+                + "{\"objectClass\": [\"top\", \"person\"], \"cn\": \"No Uid\", \"sn\": \"Test\"}\n"
+                + person("b", "b Test").getRoot().toString() + "\n";
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.INSERT);
+        StringWriter deadLetter = new StringWriter();
+        BulkImport.Report report = controller.bulkImport(ctx, BulkImport.Format.NDJSON, new StringReader(ndjson), deadLetter);
+
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertEquals(3, report.getRead());
+        assertEquals(2, report.getImported());
+        assertEquals(1, report.getRejected());
+        assertTrue(deadLetter.toString(), deadLetter.toString().startsWith("{\"line\":2,"));
+        assertEquals(2, findAll().size());
+    }
+
+    @Test
+    public void testBulkImport_EntityInsertAccess() throws Exception {
+        md.getAccess().getInsert().setRoles("admin");
+
+        CRUDOperationContext ctx = createContext(CRUDOperation.INSERT);
+        StringWriter deadLetter = new StringWriter();
+        BulkImport.Report report = controller.bulkImport(ctx, BulkImport.Format.NDJSON,
+                new StringReader(person("a", "a Test").getRoot().toString()), deadLetter);
+
+        assertEquals(CrudConstants.ERR_NO_ACCESS, ctx.getErrors().get(0).getErrorCode());
+        assertEquals(0, report.getRead());
+        assertEquals(0, findAll().size());
+    }
+
+    @Test
+    public void testBulkImport_Constraints() throws Exception {
+        EntityMetadata metadata = createMetadata(new LdapDataStore("test", BASE_DN, "uid"),
+                "{'type': 'string', 'constraints': {'maxLength': 10}}");
+        Factory factory = new Factory();
+        factory.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
+        CRUDOperationContext ctx = new CRUDOperationContext(CRUDOperation.INSERT, "person", factory,
+                new ArrayList<JsonDoc>(), new ExecutionOptions()) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public EntityMetadata getEntityMetadata(String entityName) {
+                return metadata;
+            }
+
+        };
+        String ndjson = person("a", "a Test").getRoot().toString() + "\n"
+                + person("b", "b Far Too Long").getRoot().toString() + "\n";
+        String ldif = "dn: uid=c," + BASE_DN + "\n"
+                + "objectClass: top\nobjectClass: person\nobjectClass: organizationalPerson\nobjectClass: inetOrgPerson\n"
+                + "uid: c\ncn: c Far Too Long\nsn: Test\n";
+
+        StringWriter deadLetter = new StringWriter();
+        BulkImport.Report report = controller.bulkImport(ctx, BulkImport.Format.NDJSON, new StringReader(ndjson), deadLetter);
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertEquals(1, report.getImported());
+        assertEquals(1, report.getRejected());
+        assertTrue(deadLetter.toString(), deadLetter.toString().startsWith("{\"line\":2,"));
+
+        deadLetter = new StringWriter();
+        report = controller.bulkImport(ctx, BulkImport.Format.LDIF, new StringReader(ldif), deadLetter);
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertEquals(0, report.getImported());
+        assertEquals(1, report.getRejected());
+
+        assertEquals(1, findAll().size());
+    }
+
+}
@@ -0,0 +1,211 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedAddRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedExtendedRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.sdk.AddRequest;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.UpdatableLDAPRequest;
+import com.unboundid.ldap.sdk.extensions.EndTransactionExtendedRequest;
+
+@InMemoryLdapServer
+public class LdapTransactionTest {
+
+    @Rule
+    public LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance();
+
+    private static final long RESPONSE_TIMEOUT_MILLIS = 200;
+    private static final String STALLED_OU = "stalled";
+    private static final String REJECTED_OU = "rejected";
+
+    private LDAPConnection connection;
+    private volatile boolean stallAborts;
+
+    @Before
+    public void before() throws Exception {
+        connection = ldapServer.getLDAPConnection();
+    }
+
+    @After
+    public void after() {
+        connection.close();
+    }
+
+    private static AddRequest createAdd(String ou) {
+        return new AddRequest("ou=" + ou + ",dc=example,dc=com",
+                new Attribute("objectClass", "top", "organizationalUnit"),
+                new Attribute("ou", ou));
+    }
+
+    @Test
+    public void testIsSupported() throws Exception {
+        assertTrue(LdapTransaction.isSupported(connection.getRootDSE()));
+        assertFalse(LdapTransaction.isSupported(null));
+    }
+
+    @Test
+    public void testExecute_Commit() throws Exception {
+        List<UpdatableLDAPRequest> requests = Arrays.asList(
+                createAdd("txn1"),
+                createAdd("txn2"),
+                new ModifyRequest("ou=txn1,dc=example,dc=com",
+                        new Modification(ModificationType.ADD, "description", "updated")));
+
+        LdapTransaction.Result result = LdapTransaction.execute(connection, requests);
+
+        assertTrue(result.isCommitted());
+        assertEquals(-1, result.getFailedIndex());
+        assertNotNull(connection.getEntry("ou=txn2,dc=example,dc=com"));
+        assertEquals("updated", connection.getEntry("ou=txn1,dc=example,dc=com").getAttributeValue("description"));
+    }
+
+    @Test
+    public void testExecute_Abort() throws Exception {
+        List<AddRequest> requests = Arrays.asList(
+                createAdd("txn3"),
+                new AddRequest("ou=txn4,ou=doesnotexist,dc=example,dc=com",
+                        new Attribute("objectClass", "top", "organizationalUnit"),
+                        new Attribute("ou", "txn4")),
+                createAdd("txn5"));
+
+        LdapTransaction.Result result = LdapTransaction.execute(connection, requests);
+
+        assertFalse(result.isCommitted());
+        assertEquals(1, result.getFailedIndex());
+        assertEquals(ResultCode.NO_SUCH_OBJECT, result.getResult().getResultCode());
+        assertNull(connection.getEntry("ou=txn3,dc=example,dc=com"));
+        assertNull(connection.getEntry("ou=txn5,dc=example,dc=com"));
+    }
+
+    @Test
+    public void testExecute_AbortFailureIsSuppressed() throws Exception {
+        InMemoryDirectoryServer server = startStallingServer();
+        LDAPConnection stalledConnection = server.getConnection();
+        try {
+            stalledConnection.getConnectionOptions().setResponseTimeoutMillis(RESPONSE_TIMEOUT_MILLIS);
+
+            try {
+                //The abort is queued behind the stalled add, so it times out as well.
+                LdapTransaction.execute(stalledConnection, Arrays.asList(createAdd(STALLED_OU)));
+                fail("The stalled add should have timed out");
+            } catch (LDAPException e) {
+                assertEquals(ResultCode.TIMEOUT, e.getResultCode());
+                assertEquals(1, e.getSuppressed().length);
+                assertEquals(ResultCode.TIMEOUT, ((LDAPException) e.getSuppressed()[0]).getResultCode());
+            }
+        } finally {
+            stalledConnection.close();
+            server.shutDown(true);
+        }
+    }
+
+    @Test
+    public void testExecute_AbortFailureKeepsResult() throws Exception {
+        InMemoryDirectoryServer server = startStallingServer();
+        LDAPConnection stalledConnection = server.getConnection();
+        try {
+            stalledConnection.getConnectionOptions().setResponseTimeoutMillis(RESPONSE_TIMEOUT_MILLIS);
+            stallAborts = true;
+
+            LdapTransaction.Result result = LdapTransaction.execute(stalledConnection,
+                    Arrays.asList(createAdd("txn6"), createAdd(REJECTED_OU)));
+
+            assertFalse(result.isCommitted());
+            assertEquals(1, result.getFailedIndex());
+            assertEquals(ResultCode.UNWILLING_TO_PERFORM, result.getResult().getResultCode());
+        } finally {
+            stalledConnection.close();
+            server.shutDown(true);
+        }
+    }
+
+    /**
+     * @return a server that holds up adds of {@link #STALLED_OU}, and aborts if {@link #stallAborts}
+     * is set, for longer than {@link #RESPONSE_TIMEOUT_MILLIS}. Adds of {@link #REJECTED_OU} fail
+     * straight away, rather than when the transaction is committed.
+     */
+    private InMemoryDirectoryServer startStallingServer() throws LDAPException {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=example,dc=com");
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("default", 0));
+        config.setSchema(null);
+        config.addInMemoryOperationInterceptor(new InMemoryOperationInterceptor() {
+
+            @Override
+            public void processAddRequest(InMemoryInterceptedAddRequest request) throws LDAPException {
+                if (request.getRequest().getDN().startsWith("ou=" + STALLED_OU + ",")) {
+                    stall();
+                }
+                else if (request.getRequest().getDN().startsWith("ou=" + REJECTED_OU + ",")) {
+                    throw new LDAPException(ResultCode.UNWILLING_TO_PERFORM);
+                }
+            }
+
+            @Override
+            public void processExtendedRequest(InMemoryInterceptedExtendedRequest request) throws LDAPException {
+                if (stallAborts && EndTransactionExtendedRequest.END_TRANSACTION_REQUEST_OID.equals(request.getRequest().getOID())) {
+                    stall();
+                }
+            }
+
+        });
+
+        InMemoryDirectoryServer server = new InMemoryDirectoryServer(config);
+        server.add(new Entry("dc=example,dc=com", new Attribute("objectClass", "top", "domain"), new Attribute("dc", "example")));
+        server.startListening();
+        return server;
+    }
+
+    private static void stall() {
+        try {
+            Thread.sleep(RESPONSE_TIMEOUT_MILLIS * 5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static com.redhat.lightblue.util.JsonUtils.json;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.redhat.lightblue.crud.ldap.model.TrivialLdapFieldNameTranslator;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.Sort;
+import com.unboundid.ldap.sdk.controls.MatchedValuesFilter;
+
+public class MatchedValuesBuilderTest {
+
+    private List<MatchedValuesFilter> build(String projection, String sort) throws Exception {
+        return new MatchedValuesBuilder(new TrivialLdapFieldNameTranslator()).build(
+                Projection.fromJson(json(projection.replace('\'', '"'))),
+                (sort == null) ? null : Sort.fromJson(json(sort.replace('\'', '"'))));
+    }
+
+    @Test
+    public void testBuild_Equality() throws Exception {
+        List<MatchedValuesFilter> filters = build(
+                "[{'field':'cn'},{'field':'member','include':true,'match':{'field':'$this','op':'=','rvalue':'uid=a'}}]", null);
+
+        assertEquals(1, filters.size());
+        assertEquals(MatchedValuesFilter.createEqualityFilter("member", "uid=a").toString(), filters.get(0).toString());
+    }
+
+    @Test
+    public void testBuild_InAndOr() throws Exception {
+        List<MatchedValuesFilter> filters = build(
+                "{'field':'member','include':true,'match':{'$or':["
+                        + "{'field':'$this','op':'$in','values':['uid=a','uid=b']},"
+                        + "{'field':'$this','op':'=','rvalue':'uid=y'}]}}", null);
+
+        assertEquals(3, filters.size());
+        assertEquals(MatchedValuesFilter.createEqualityFilter("member", "uid=a").toString(), filters.get(0).toString());
+        assertEquals(MatchedValuesFilter.createEqualityFilter("member", "uid=b").toString(), filters.get(1).toString());
+        assertEquals(MatchedValuesFilter.createEqualityFilter("member", "uid=y").toString(), filters.get(2).toString());
+    }
+
+    @Test
+    public void testBuild_OrderingLeftToProjector() throws Exception {
+        assertTrue(build(
+                "{'field':'member','include':true,'match':{'field':'$this','op':'>=','rvalue':'uid=y'}}", null).isEmpty());
+        assertTrue(build(
+                "{'field':'member','include':true,'match':{'field':'$this','op':'<=','rvalue':'uid=b'}}", null).isEmpty());
+        assertTrue(build(
+                "{'field':'member','include':true,'match':{'$or':["
+                        + "{'field':'$this','op':'=','rvalue':'uid=a'},"
+                        + "{'field':'$this','op':'>=','rvalue':'uid=y'}]}}", null).isEmpty());
+    }
+
+    @Test
+    public void testBuild_UnsupportedMatch() throws Exception {
+        assertTrue(build(
+                "{'field':'member','include':true,'match':{'field':'$this','op':'!=','rvalue':'uid=a'}}", null).isEmpty());
+        assertTrue(build(
+                "{'field':'member','include':true,'match':{'$or':["
+                        + "{'field':'$this','op':'=','rvalue':'uid=a'},"
+                        + "{'field':'$this','regex':'uid=b.*'}]}}", null).isEmpty());
+    }
+
+    @Test
+    public void testBuild_ArrayOtherwiseIncluded() throws Exception {
+        assertTrue(build(
+                "[{'field':'member','include':true},{'field':'member','include':true,'match':{'field':'$this','op':'=','rvalue':'uid=a'}}]",
+                null).isEmpty());
+        assertTrue(build(
+                "[{'field':'*','include':true,'recursive':true},{'field':'member','include':true,'match':{'field':'$this','op':'=','rvalue':'uid=a'}}]",
+                null).isEmpty());
+    }
+
+    @Test
+    public void testBuild_ArrayCountIncluded() throws Exception {
+        assertTrue(build(
+                "[{'field':'member#','include':true},{'field':'member','include':true,'match':{'field':'$this','op':'=','rvalue':'uid=a'}}]",
+                null).isEmpty());
+    }
+
+    @Test
+    public void testBuild_ArraySorted() throws Exception {
+        assertTrue(build(
+                "{'field':'member','include':true,'match':{'field':'$this','op':'=','rvalue':'uid=a'}}",
+                "{'member':'$asc'}").isEmpty());
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class NegativeLookupCacheTest {
+
+    private static final String DN = "uid=missing,dc=example,dc=com";
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private NegativeLookupCache createCache(int maxEntries) {
+        return new NegativeLookupCache(1000, maxEntries, clock::get);
+    }
+
+    private static void putMissing(NegativeLookupCache cache, String dn) {
+        cache.putMissing(dn, cache.startLookup());
+    }
+
+    @Test
+    public void testRemembersMissing() {
+        NegativeLookupCache cache = createCache(10);
+        assertFalse(cache.isMissing(DN));
+
+        putMissing(cache, DN);
+        assertTrue(cache.isMissing(DN));
+        //However the DN is written.
+        assertTrue(cache.isMissing("UID=Missing, DC=Example, DC=Com"));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testExpires() {
+        NegativeLookupCache cache = createCache(10);
+        putMissing(cache, DN);
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertTrue(cache.isMissing(DN));
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertFalse(cache.isMissing(DN));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        NegativeLookupCache cache = createCache(10);
+        putMissing(cache, DN);
+        putMissing(cache, "uid=other,dc=example,dc=com");
+
+        cache.invalidate(DN);
+        assertFalse(cache.isMissing(DN));
+        assertTrue(cache.isMissing("uid=other,dc=example,dc=com"));
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * An entry created while it was being looked up must not be remembered as missing.
+     */
+    @Test
+    public void testInvalidatedDuringLookup() {
+        NegativeLookupCache cache = createCache(10);
+
+        long lookupStarted = cache.startLookup();
+        cache.invalidate(DN);
+        cache.putMissing(DN, lookupStarted);
+
+        assertFalse(cache.isMissing(DN));
+    }
+
+    @Test
+    public void testEvictsOldest() {
+        NegativeLookupCache cache = createCache(2);
+        putMissing(cache, "uid=a,dc=example,dc=com");
+        putMissing(cache, "uid=b,dc=example,dc=com");
+        putMissing(cache, "uid=c,dc=example,dc=com");
+
+        assertEquals(2, cache.size());
+        assertFalse(cache.isMissing("uid=a,dc=example,dc=com"));
+        assertTrue(cache.isMissing("uid=b,dc=example,dc=com"));
+        assertTrue(cache.isMissing("uid=c,dc=example,dc=com"));
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+
+public class ParallelTranslationTest {
+
+    private static List<SearchResultEntry> createEntries(int size) {
+        List<SearchResultEntry> entries = new ArrayList<>(size);
+        for (int x = 0; x < size; x++) {
+            entries.add(new SearchResultEntry("uid=user" + x + ",dc=example,dc=com", new Attribute[0]));
+        }
+        return entries;
+    }
+
+    @Test
+    public void testTranslate_KeepsOrder() {
+        List<SearchResultEntry> entries = createEntries(ParallelTranslation.MIN_SLICE_SIZE * 10 + 7);
+        Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        //Hold the first two slices until both have started, so more than one worker is used.
+        CountDownLatch started = new CountDownLatch(2);
+
+        List<String> translated = new ParallelTranslation(4).translate(entries, () -> {
+            started.countDown();
+            try {
+                started.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return (SearchResultEntry entry) -> {
+                threads.add(Thread.currentThread());
+                return entry.getDN();
+            };
+        });
+
+        assertEquals(entries.size(), translated.size());
+        for (int x = 0; x < entries.size(); x++) {
+            assertEquals(entries.get(x).getDN(), translated.get(x));
+        }
+        assertTrue(threads.size() > 1);
+        assertFalse(threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void testTranslate_SmallResultOnCallingThread() {
+        List<SearchResultEntry> entries = createEntries(ParallelTranslation.MIN_SLICE_SIZE);
+        Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+        List<String> translated = new ParallelTranslation(4).translate(entries, () -> (SearchResultEntry entry) -> {
+            threads.add(Thread.currentThread());
+            return entry.getDN();
+        });
+
+        assertEquals(entries.size(), translated.size());
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+    }
+
+    @Test
+    public void testTranslate_TranslatorPerSlice() {
+        List<SearchResultEntry> entries = createEntries(ParallelTranslation.MIN_SLICE_SIZE * 3);
+        Set<Object> translators = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+
+        new ParallelTranslation(3).translate(entries, () -> {
+            Object translator = new Object();
+            translators.add(translator);
+            return (SearchResultEntry entry) -> translator;
+        });
+
+        assertEquals(3, translators.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTranslate_Failure() {
+        List<SearchResultEntry> entries = createEntries(ParallelTranslation.MIN_SLICE_SIZE * 4);
+
+        new ParallelTranslation(4).translate(entries, () -> (SearchResultEntry entry) -> {
+            if (entry.getDN().startsWith("uid=user200,")) {
+                throw new IllegalStateException("fail");
+            }
+            return entry.getDN();
+        });
+    }
+
+    @Test
+    public void testPipeline_TranslatesWhileAdding() throws Exception {
+        List<SearchResultEntry> entries = createEntries(ParallelTranslation.MIN_SLICE_SIZE * 3 + 7);
+        CountDownLatch firstSliceTranslated = new CountDownLatch(ParallelTranslation.MIN_SLICE_SIZE);
+
+        ParallelTranslation.Pipeline<String> pipeline = new ParallelTranslation(2).start(() -> (SearchResultEntry entry) -> {
+            firstSliceTranslated.countDown();
+            return entry.getDN();
+        });
+        for (int x = 0; x < entries.size(); x++) {
+            if (x == ParallelTranslation.MIN_SLICE_SIZE) {
+                //The first full slice is translated before the rest have even arrived.
+                assertTrue(firstSliceTranslated.await(10, TimeUnit.SECONDS));
+            }
+            pipeline.add(entries.get(x));
+        }
+        List<String> translated = pipeline.finish();
+
+        assertEquals(entries.size(), translated.size());
+        for (int x = 0; x < entries.size(); x++) {
+            assertEquals(entries.get(x).getDN(), translated.get(x));
+        }
+    }
+
+    @Test
+    public void testPipeline_SmallResultOnCallingThread() {
+        Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+        ParallelTranslation.Pipeline<String> pipeline = new ParallelTranslation(4).start(() -> (SearchResultEntry entry) -> {
+            threads.add(Thread.currentThread());
+            return entry.getDN();
+        });
+        for (SearchResultEntry entry : createEntries(ParallelTranslation.MIN_SLICE_SIZE - 1)) {
+            pipeline.add(entry);
+        }
+
+        assertEquals(ParallelTranslation.MIN_SLICE_SIZE - 1, pipeline.finish().size());
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPipeline_Failure() {
+        ParallelTranslation.Pipeline<String> pipeline = new ParallelTranslation(4).start(() -> (SearchResultEntry entry) -> {
+            if (entry.getDN().startsWith("uid=user100,")) {
+                throw new IllegalStateException("fail");
+            }
+            return entry.getDN();
+        });
+        for (SearchResultEntry entry : createEntries(ParallelTranslation.MIN_SLICE_SIZE * 4)) {
+            pipeline.add(entry);
+        }
+        pipeline.finish();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        new ParallelTranslation(0);
+    }
+
+}
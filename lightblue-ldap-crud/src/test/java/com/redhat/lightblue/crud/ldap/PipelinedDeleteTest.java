@@ -0,0 +1,115 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchScope;
+
+@InMemoryLdapServer
+public class PipelinedDeleteTest {
+
+    private static final String BASE_DN = "ou=pipelined,dc=example,dc=com";
+
+    @Rule
+    public LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance();
+
+    private LDAPConnectionPool pool;
+    private LDAPConnection searchConnection;
+
+    @Before
+    public void before() throws Exception {
+        pool = new LDAPConnectionPool(ldapServer.getLDAPConnection(), 3);
+        searchConnection = pool.getConnection();
+
+        searchConnection.add(BASE_DN,
+                new Attribute("objectClass", "top", "organizationalUnit"),
+                new Attribute("ou", "pipelined"));
+        for (int x = 0; x < 50; x++) {
+            searchConnection.add("uid=user" + x + "," + BASE_DN,
+                    new Attribute("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson"),
+                    new Attribute("uid", "user" + x),
+                    new Attribute("cn", "user" + x),
+                    new Attribute("sn", "user" + x));
+        }
+    }
+
+    @After
+    public void after() {
+        pool.releaseConnection(searchConnection);
+        pool.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() throws Exception {
+        new PipelinedDelete(pool, 0, 1);
+    }
+
+    @Test
+    public void testDeleteMatching() throws Exception {
+        try (PipelinedDelete pipelinedDelete = new PipelinedDelete(pool, 8, 2)) {
+            SearchResult result = pipelinedDelete.deleteMatching(searchConnection,
+                    new SearchRequest(BASE_DN, SearchScope.ONE, "(objectClass=person)", SearchRequest.NO_ATTRIBUTES));
+
+            assertEquals(ResultCode.SUCCESS, result.getResultCode());
+            assertEquals(50, pipelinedDelete.getNumDeleted());
+            assertEquals(0, pipelinedDelete.getFailures().size());
+        }
+
+        assertEquals(0, searchConnection.search(BASE_DN, SearchScope.ONE, "(objectClass=*)").getEntryCount());
+    }
+
+    @Test
+    public void testDelete_FailuresAreRecordedPerDN() throws Exception {
+        try (PipelinedDelete pipelinedDelete = new PipelinedDelete(pool, 2, 1)) {
+            pipelinedDelete.delete(BASE_DN);
+            pipelinedDelete.delete("uid=user1," + BASE_DN);
+            pipelinedDelete.delete("uid=doesnotexist," + BASE_DN);
+            pipelinedDelete.awaitCompletion();
+
+            assertEquals(1, pipelinedDelete.getNumDeleted());
+            assertEquals(2, pipelinedDelete.getFailures().size());
+            for (PipelinedDelete.Failure failure : pipelinedDelete.getFailures()) {
+                if (BASE_DN.equals(failure.getDN())) {
+                    assertEquals(ResultCode.NOT_ALLOWED_ON_NONLEAF, failure.getResult().getResultCode());
+                }
+                else {
+                    assertEquals(ResultCode.NO_SUCH_OBJECT, failure.getResult().getResultCode());
+                }
+            }
+        }
+
+        assertNull(searchConnection.getEntry("uid=user1," + BASE_DN));
+    }
+
+}
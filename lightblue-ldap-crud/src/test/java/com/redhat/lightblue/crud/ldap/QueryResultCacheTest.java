@@ -0,0 +1,195 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.ServerSideSortRequestControl;
+import com.unboundid.ldap.sdk.controls.SortKey;
+
+public class QueryResultCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger searches = new AtomicInteger();
+
+    private QueryResultCache createCache(int maxResults, long maxBytes) {
+        return new QueryResultCache(1000, maxResults, maxBytes, clock::get);
+    }
+
+    private static SearchRequest request(String filter, String... attributes) throws LDAPException {
+        return new SearchRequest("dc=example,dc=com", SearchScope.SUB, Filter.create(filter), attributes);
+    }
+
+    private SearchResult get(QueryResultCache cache, SearchRequest request) throws LDAPException {
+        return cache.get(request, () -> {
+            searches.incrementAndGet();
+            return result(ResultCode.SUCCESS, new SearchResultEntry("uid=a,dc=example,dc=com",
+                    new Attribute[]{new Attribute("cn", "Test")}));
+        });
+    }
+
+    private static SearchResult result(ResultCode resultCode, SearchResultEntry... entries) {
+        return new SearchResult(1, resultCode, null, null, null, Arrays.asList(entries),
+                Collections.<SearchResultReference> emptyList(), entries.length, 0, null);
+    }
+
+    @Test
+    public void testGet_Hit() throws LDAPException {
+        QueryResultCache cache = createCache(10, Long.MAX_VALUE);
+
+        SearchResult first = get(cache, request("(uid=a)", "cn", "sn"));
+        SearchResult second = get(cache, new SearchRequest("DC=Example, DC=com", SearchScope.SUB, Filter.create("(UID=a)"), "SN", "cn"));
+
+        assertEquals(1, searches.get());
+        assertSame(first.getSearchEntries().get(0), second.getSearchEntries().get(0));
+        assertEquals(1, cache.getStatistics().getHits());
+        assertEquals(1, cache.getStatistics().getMisses());
+        assertEquals(0.5, cache.getStatistics().getHitRatio(), 0);
+        assertEquals(1, cache.getStatistics().getSize());
+    }
+
+    @Test
+    public void testCreateKey() throws LDAPException {
+        SearchRequest request = request("(uid=a)", "cn");
+        SearchRequest sorted = request("(uid=a)", "cn");
+        sorted.addControl(new ServerSideSortRequestControl(new SortKey("cn")));
+        SearchRequest reversed = request("(uid=a)", "cn");
+        reversed.addControl(new ServerSideSortRequestControl(new SortKey("cn", true)));
+        SearchRequest oneLevel = new SearchRequest("dc=example,dc=com", SearchScope.ONE, Filter.create("(uid=a)"), "cn");
+
+        assertEquals(QueryResultCache.createKey(request), QueryResultCache.createKey(request("(uid=A)", "CN")));
+        assertNotEquals(QueryResultCache.createKey(request), QueryResultCache.createKey(request("(uid=a)", "cn", "sn")));
+        assertNotEquals(QueryResultCache.createKey(request), QueryResultCache.createKey(sorted));
+        assertNotEquals(QueryResultCache.createKey(sorted), QueryResultCache.createKey(reversed));
+        assertNotEquals(QueryResultCache.createKey(request), QueryResultCache.createKey(oneLevel));
+    }
+
+    @Test
+    public void testCreateKey_IndependentOfDefaultLocale() throws LDAPException {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            //Lower casing "TITLE" in Turkish yields a dotless i.
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertEquals(QueryResultCache.createKey(request("(uid=a)", "title")),
+                    QueryResultCache.createKey(request("(uid=a)", "TITLE")));
+            assertEquals(EntryCache.normalize("uid=a,dc=example,dc=com"), EntryCache.normalize("UID=A,DC=EXAMPLE,DC=COM"));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void testGet_Stale() throws LDAPException {
+        QueryResultCache cache = createCache(10, Long.MAX_VALUE);
+
+        get(cache, request("(uid=a)"));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        get(cache, request("(uid=a)"));
+
+        assertEquals(2, searches.get());
+        assertEquals(1, cache.getStatistics().getSize());
+    }
+
+    @Test
+    public void testGet_FailureIsNotCached() throws LDAPException {
+        QueryResultCache cache = createCache(10, Long.MAX_VALUE);
+
+        cache.get(request("(uid=a)"), () -> result(ResultCode.SIZE_LIMIT_EXCEEDED));
+
+        assertEquals(0, cache.getStatistics().getSize());
+    }
+
+    @Test
+    public void testEviction() throws LDAPException {
+        QueryResultCache cache = createCache(2, Long.MAX_VALUE);
+
+        get(cache, request("(uid=a)"));
+        get(cache, request("(uid=b)"));
+        get(cache, request("(uid=a)"));
+        get(cache, request("(uid=c)"));
+
+        //(uid=b) was used least recently.
+        get(cache, request("(uid=a)"));
+        get(cache, request("(uid=c)"));
+        assertEquals(3, searches.get());
+        get(cache, request("(uid=b)"));
+        assertEquals(4, searches.get());
+
+        assertEquals(2, cache.getStatistics().getEvictions());
+        assertEquals(2, cache.getStatistics().getSize());
+    }
+
+    @Test
+    public void testEviction_MaxBytes() throws LDAPException {
+        QueryResultCache cache = createCache(10, 1);
+
+        get(cache, request("(uid=a)"));
+
+        assertEquals(0, cache.getStatistics().getSize());
+        assertEquals(0, cache.getStatistics().getEstimatedBytes());
+    }
+
+    @Test
+    public void testInvalidateAll() throws LDAPException {
+        QueryResultCache cache = createCache(10, Long.MAX_VALUE);
+
+        get(cache, request("(uid=a)"));
+        get(cache, request("(uid=b)"));
+        cache.invalidateAll();
+        get(cache, request("(uid=a)"));
+
+        assertEquals(3, searches.get());
+        assertEquals(1, cache.getStatistics().getInvalidations());
+        assertEquals(1, cache.getStatistics().getSize());
+    }
+
+    @Test
+    public void testInvalidateAll_DuringSearch() throws LDAPException {
+        QueryResultCache cache = createCache(10, Long.MAX_VALUE);
+
+        cache.get(request("(uid=a)"), () -> {
+            //A write lands while the search is running.
+            cache.invalidateAll();
+            return result(ResultCode.SUCCESS);
+        });
+
+        assertEquals(0, cache.getStatistics().getSize());
+    }
+
+}
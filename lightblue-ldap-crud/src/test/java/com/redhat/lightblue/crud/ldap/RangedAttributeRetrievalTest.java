@@ -0,0 +1,387 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static com.redhat.lightblue.util.JsonUtils.json;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.lightblue.ExecutionOptions;
+import com.redhat.lightblue.common.ldap.DBResolver;
+import com.redhat.lightblue.common.ldap.LdapConstant;
+import com.redhat.lightblue.common.ldap.LdapDataSourceOptions;
+import com.redhat.lightblue.common.ldap.LdapDataStore;
+import com.redhat.lightblue.crud.CRUDFindResponse;
+import com.redhat.lightblue.crud.CRUDOperation;
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.crud.CRUDSaveResponse;
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.metadata.DataStore;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.PredefinedFields;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.test.MetadataUtil;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSearchEntry;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSearchRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+
+public class RangedAttributeRetrievalTest {
+
+    private static final String BASE_DN = "dc=example,dc=com";
+    private static final String GROUP_DN = "cn=group," + BASE_DN;
+    private static final int RANGE_SIZE = 2;
+
+    private final LdapDataSourceOptions options = new LdapDataSourceOptions();
+    private final RangingInterceptor rangingInterceptor = new RangingInterceptor();
+    private InMemoryDirectoryServer server;
+    private LDAPConnection connection;
+
+    @Before
+    public void before() throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("default", 0));
+        config.setSchema(null);
+        config.addInMemoryOperationInterceptor(rangingInterceptor);
+
+        server = new InMemoryDirectoryServer(config);
+        server.add(new Entry(BASE_DN, new Attribute("objectClass", "top", "domain"), new Attribute("dc", "example")));
+        server.add(new Entry(GROUP_DN,
+                new Attribute("objectClass", "top", "groupOfNames"),
+                new Attribute("cn", "group"),
+                new Attribute("member", "uid=1", "uid=2", "uid=3", "uid=4", "uid=5")));
+        server.startListening();
+
+        connection = server.getConnection();
+    }
+
+    @After
+    public void after() {
+        connection.close();
+        server.shutDown(true);
+    }
+
+    @Test
+    public void testComplete() throws Exception {
+        SearchResult ranged = connection.search(new SearchRequest(BASE_DN, SearchScope.SUB, "(cn=group)", "cn", "member"));
+        assertNull(ranged.getSearchEntry(GROUP_DN).getAttribute("member"));
+        assertTrue(RangedAttributeRetrieval.hasRanges(ranged));
+
+        SearchResult result = RangedAttributeRetrieval.complete(connection, ranged);
+        assertFalse(RangedAttributeRetrieval.hasRanges(result));
+
+        assertEquals(1, result.getEntryCount());
+        SearchResultEntry entry = result.getSearchEntry(GROUP_DN);
+        assertEquals("group", entry.getAttributeValue("cn"));
+        assertArrayEquals(new String[]{"uid=1", "uid=2", "uid=3", "uid=4", "uid=5"},
+                entry.getAttribute("member").getValues());
+    }
+
+    @Test
+    public void testCompleteAsync() throws Exception {
+        SearchResult ranged = connection.search(new SearchRequest(BASE_DN, SearchScope.SUB, "(cn=group)", "cn", "member"));
+
+        SearchResult result = RangedAttributeRetrieval.completeAsync(connection, ranged).get(10, TimeUnit.SECONDS);
+
+        assertArrayEquals(new String[]{"uid=1", "uid=2", "uid=3", "uid=4", "uid=5"},
+                result.getSearchEntry(GROUP_DN).getAttribute("member").getValues());
+    }
+
+    @Test
+    public void testComplete_Failure() throws Exception {
+        SearchResult ranged = connection.search(new SearchRequest(BASE_DN, SearchScope.SUB, "(cn=group)", "cn", "member"));
+        connection.close();
+
+        try {
+            RangedAttributeRetrieval.complete(connection, ranged);
+            fail("The remaining ranges cannot be fetched over a closed connection");
+        } catch (LDAPException e) {
+            assertNotEquals(ResultCode.SUCCESS, e.getResultCode());
+        }
+    }
+
+    @Test
+    public void testComplete_NothingRanged() throws Exception {
+        SearchResult result = connection.search(new SearchRequest(BASE_DN, SearchScope.SUB, "(cn=group)", "cn"));
+
+        assertFalse(RangedAttributeRetrieval.hasRanges(result));
+        assertSame(result, RangedAttributeRetrieval.complete(connection, result));
+    }
+
+    @Test
+    public void testComplete_Entry() throws Exception {
+        SearchResultEntry ranged = connection.search(new SearchRequest(BASE_DN, SearchScope.SUB, "(cn=group)", "cn", "member"))
+                .getSearchEntry(GROUP_DN);
+        assertTrue(RangedAttributeRetrieval.hasRanges(ranged));
+
+        SearchResultEntry entry = RangedAttributeRetrieval.complete(connection, ranged, RangedAttributeRetrieval.ALL_VALUES);
+
+        assertFalse(RangedAttributeRetrieval.hasRanges(entry));
+        assertArrayEquals(new String[]{"uid=1", "uid=2", "uid=3", "uid=4", "uid=5"}, entry.getAttribute("member").getValues());
+    }
+
+    @Test
+    public void testComplete_KeepsOtherOptions() throws Exception {
+        server.add(new Entry("cn=tagged," + BASE_DN,
+                new Attribute("objectClass", "top", "groupOfNames"),
+                new Attribute("cn", "tagged"),
+                new Attribute("member;lang-en", "uid=1", "uid=2", "uid=3")));
+        SearchResult ranged = connection.search(new SearchRequest(BASE_DN, SearchScope.SUB, "(cn=tagged)", "member"));
+        assertEquals("member;lang-en;range=0-1", ranged.getSearchEntries().get(0).getAttributes().iterator().next().getName());
+
+        SearchResultEntry entry = RangedAttributeRetrieval.complete(connection, ranged).getSearchEntries().get(0);
+
+        assertArrayEquals(new String[]{"uid=1", "uid=2", "uid=3"}, entry.getAttribute("member;lang-en").getValues());
+        assertFalse(RangedAttributeRetrieval.hasRanges(entry));
+    }
+
+    @Test
+    public void testComplete_Selected() throws Exception {
+        SearchResultEntry ranged = connection.search(new SearchRequest(BASE_DN, SearchScope.SUB, "(cn=group)", "cn", "member"))
+                .getSearchEntry(GROUP_DN);
+
+        assertSame(ranged, RangedAttributeRetrieval.complete(connection, ranged,
+                (SearchResultEntry entry, Attribute attribute) -> RangedAttributeRetrieval.Retrieval.NONE));
+        assertEquals(0, rangingInterceptor.rangeRequests.get());
+
+        SearchResultEntry counted = RangedAttributeRetrieval.complete(connection, ranged,
+                (SearchResultEntry entry, Attribute attribute) -> RangedAttributeRetrieval.Retrieval.COUNT);
+        assertEquals(5, counted.getAttribute("member").size());
+        assertEquals("group", counted.getAttributeValue("cn"));
+    }
+
+    @Test
+    public void testFind() throws Exception {
+        CRUDOperationContext ctx = find("{'field': 'cn', 'op': '=', 'rvalue': 'group'}", "{'field': '*', 'recursive': true}");
+
+        JsonDoc document = ctx.getDocumentStream().next().getOutputDocument();
+        assertEquals(document.toString(), 5, document.get(new Path("member")).size());
+    }
+
+    @Test
+    public void testFind_StreamedTranslation() throws Exception {
+        options.setTranslationParallelism(2);
+        CRUDOperationContext ctx = find("{'field': 'cn', 'op': '=', 'rvalue': 'group'}", "{'field': '*', 'recursive': true}");
+
+        JsonDoc document = ctx.getDocumentStream().next().getOutputDocument();
+        assertEquals(document.toString(), 5, document.get(new Path("member")).size());
+    }
+
+    @Test
+    public void testFind_UnprojectedRangesAreNotRetrieved() throws Exception {
+        CRUDOperationContext ctx = find("{'array': 'member', 'contains': '$any', 'values': ['uid=1']}", "{'field': 'cn'}");
+
+        JsonDoc document = ctx.getDocumentStream().next().getOutputDocument();
+        assertEquals("group", document.get(new Path("cn")).asText());
+        assertNull(document.get(new Path("member")));
+        assertEquals(0, rangingInterceptor.rangeRequests.get());
+    }
+
+    @Test
+    public void testFind_CountOnly() throws Exception {
+        CRUDOperationContext ctx = find("{'field': 'cn', 'op': '=', 'rvalue': 'group'}", "[{'field': 'cn'}, {'field': 'member#'}]");
+
+        JsonDoc document = ctx.getDocumentStream().next().getOutputDocument();
+        assertEquals(document.toString(), 5, document.get(new Path("member#")).asInt());
+        assertNull(document.get(new Path("member")));
+    }
+
+    private CRUDOperationContext find(String query, String projection) throws Exception {
+        CRUDOperationContext ctx = createContext(CRUDOperation.FIND, new ArrayList<JsonDoc>());
+
+        CRUDFindResponse response = new LdapCRUDController(createDBResolver()).find(ctx,
+                QueryExpression.fromJson(json(query.replace('\'', '"'))),
+                Projection.fromJson(json(projection.replace('\'', '"'))),
+                null, null, null);
+
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertEquals(1, response.getSize());
+        return ctx;
+    }
+
+    @Test
+    public void testSave_DeletesRangedValues() throws Exception {
+        CRUDOperationContext ctx = createSaveContext();
+        CRUDSaveResponse response = new LdapCRUDController(createDBResolver()).save(ctx, false, null);
+
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertEquals(1, response.getNumSaved());
+        assertArrayEquals(new String[]{"uid=1", "uid=3", "uid=5"}, server.getEntry(GROUP_DN).getAttribute("member").getValues());
+    }
+
+    @Test
+    public void testSaveAsync_DeletesRangedValues() throws Exception {
+        CRUDOperationContext ctx = createSaveContext();
+        CRUDSaveResponse response = new AsyncLdapCRUDController(createDBResolver()).saveAsync(ctx, false, null)
+                .get(10, TimeUnit.SECONDS);
+
+        assertFalse(ctx.getErrors().toString(), ctx.hasErrors());
+        assertEquals(1, response.getNumSaved());
+        assertArrayEquals(new String[]{"uid=1", "uid=3", "uid=5"}, server.getEntry(GROUP_DN).getAttribute("member").getValues());
+    }
+
+    /**
+     * Saves the group without uid=2 and uid=4, both of which are only returned in later ranges.
+     */
+    private CRUDOperationContext createSaveContext() throws Exception {
+        return createContext(CRUDOperation.SAVE, Arrays.asList(new JsonDoc(json(("{'cn': 'group', 'objectClass': ['top', 'groupOfNames'],"
+                + " 'member': ['uid=1', 'uid=3', 'uid=5']}").replace('\'', '"')))));
+    }
+
+    private CRUDOperationContext createContext(CRUDOperation operation, List<JsonDoc> documents) throws Exception {
+        EntityMetadata md = MetadataUtil.createEntityMetadata(LdapConstant.BACKEND, json((""
+                + "{'entityInfo': {'name': 'group', 'datastore': {'backend': 'ldap'}},"
+                + " 'schema': {'name': 'group', 'version': {'value': '1.0.0', 'changelog': 'test'}, 'status': {'value': 'active'},"
+                + "  'access': {'insert': ['anyone'], 'update': ['anyone'], 'delete': ['anyone'], 'find': ['anyone']},"
+                + "  'fields': {"
+                + "   'dn': {'type': 'string'},"
+                + "   'cn': {'type': 'string'},"
+                + "   'member': {'type': 'array', 'items': {'type': 'string'}},"
+                + "   'objectClass': {'type': 'array', 'items': {'type': 'string'}}"
+                + "}}}").replace('\'', '"')), null, null);
+        md.setDataStore(new LdapDataStore("test", BASE_DN, "cn"));
+        //Adds the member# array count field.
+        PredefinedFields.ensurePredefinedFields(md);
+
+        return new CRUDOperationContext(operation, "group", new Factory(), documents, new ExecutionOptions()) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public EntityMetadata getEntityMetadata(String entityName) {
+                return md;
+            }
+
+        };
+    }
+
+    private DBResolver createDBResolver() {
+        return new DBResolver() {
+
+            @Override
+            public LDAPConnection get(DataStore store) throws LDAPException {
+                return connection;
+            }
+
+            @Override
+            public LDAPConnectionPool getConnectionPool(DataStore store) throws LDAPException {
+                return new LDAPConnectionPool(server.getConnection(), 1);
+            }
+
+            @Override
+            public LdapDataSourceOptions getOptions(DataStore store) {
+                return options;
+            }
+
+            @Override
+            public Map<String, Object> getLDAPConnectionsStatus() {
+                return new HashMap<>();
+            }
+
+        };
+    }
+
+    /**
+     * Emulates a server, such as Active Directory, that returns the member attribute
+     * {@link RangedAttributeRetrievalTest#RANGE_SIZE} values at a time.
+     */
+    private static class RangingInterceptor extends InMemoryOperationInterceptor {
+
+        private static final String RANGE_START = "rangeStart";
+
+        private final AtomicInteger rangeRequests = new AtomicInteger();
+
+        @Override
+        public void processSearchRequest(InMemoryInterceptedSearchRequest request) throws LDAPException {
+            List<String> attributes = new ArrayList<>();
+            for (String attribute : request.getRequest().getAttributeList()) {
+                int rangeOption = attribute.indexOf(";range=");
+                if (attribute.startsWith("member") && (rangeOption >= 0)) {
+                    String range = attribute.substring(rangeOption + ";range=".length());
+                    request.setProperty(RANGE_START, Integer.valueOf(range.substring(0, range.indexOf('-'))));
+                    attributes.add(attribute.substring(0, rangeOption));
+                    rangeRequests.incrementAndGet();
+                }
+                else {
+                    attributes.add(attribute);
+                }
+            }
+
+            SearchRequest searchRequest = request.getRequest().duplicate();
+            searchRequest.setAttributes(attributes);
+            request.setRequest(searchRequest);
+        }
+
+        @Override
+        public void processSearchEntry(InMemoryInterceptedSearchEntry entry) {
+            Entry ranged = entry.getSearchEntry().duplicate();
+            for (Attribute member : entry.getSearchEntry().getAttributes()) {
+                if (!member.getBaseName().equals("member")) {
+                    continue;
+                }
+
+                Integer start = (Integer) entry.getProperty(RANGE_START);
+                int from = (start == null) ? 0 : start;
+                String[] values = member.getValues();
+                int to = Math.min(from + RANGE_SIZE, values.length);
+
+                String range = (to == values.length) ? from + "-*" : from + "-" + (to - 1);
+
+                ranged.removeAttribute(member.getName());
+                ranged.addAttribute(new Attribute(member.getName() + ";range=" + range, Arrays.copyOfRange(values, from, to)));
+            }
+            entry.setSearchEntry(ranged);
+        }
+
+    }
+
+}
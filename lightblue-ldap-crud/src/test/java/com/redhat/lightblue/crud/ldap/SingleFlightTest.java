@@ -0,0 +1,182 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+
+public class SingleFlightTest {
+
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final AtomicInteger searches = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    private static SearchRequest request(String baseDN, String filter) throws LDAPException {
+        return new SearchRequest(baseDN, SearchScope.SUB, Filter.create(filter), "cn");
+    }
+
+    private static SearchResult result() {
+        return new SearchResult(1, ResultCode.SUCCESS, null, null, null,
+                Collections.singletonList(new SearchResultEntry("uid=a,dc=example,dc=com", new Attribute[]{new Attribute("cn", "Test")})),
+                Collections.<SearchResultReference> emptyList(), 1, 0, null);
+    }
+
+    private void awaitRelease() throws LDAPException {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            throw new LDAPException(ResultCode.LOCAL_ERROR, e);
+        }
+    }
+
+    /**
+     * Starts a search that does not complete until {@link #release} is counted down.
+     */
+    private Future<SearchResult> searchAsync(SearchRequest request) {
+        return executor.submit(() -> singleFlight.search(request, () -> {
+            searches.incrementAndGet();
+            awaitRelease();
+            return result();
+        }));
+    }
+
+    private void awaitCoalesced(long coalesced) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (singleFlight.getCoalesced() < coalesced) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Searches were not coalesced");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testCoalescesIdenticalSearches() throws Exception {
+        List<Future<SearchResult>> results = new ArrayList<>();
+        results.add(searchAsync(request("dc=example,dc=com", "(uid=a)")));
+        while (searches.get() == 0) {
+            Thread.sleep(5);
+        }
+        for (int x = 0; x < 7; x++) {
+            //Identical however it is written.
+            results.add(searchAsync(request("DC=Example, DC=Com", "(UID=a)")));
+        }
+        awaitCoalesced(7);
+        release.countDown();
+
+        SearchResult first = results.get(0).get();
+        for (Future<SearchResult> result : results) {
+            assertSame(first, result.get());
+        }
+        assertEquals(1, searches.get());
+        assertEquals(1, singleFlight.getSearches());
+        assertEquals(7, singleFlight.getCoalesced());
+    }
+
+    @Test
+    public void testDoesNotCacheCompletedSearches() throws Exception {
+        release.countDown();
+        searchAsync(request("dc=example,dc=com", "(uid=a)")).get();
+        searchAsync(request("dc=example,dc=com", "(uid=a)")).get();
+        searchAsync(request("dc=example,dc=com", "(uid=b)")).get();
+
+        assertEquals(3, searches.get());
+        assertEquals(0, singleFlight.getCoalesced());
+    }
+
+    @Test(timeout = 10000)
+    public void testFailureIsShared() throws Exception {
+        LDAPException failure = new LDAPException(ResultCode.BUSY);
+        Future<SearchResult> leader = executor.submit(() -> singleFlight.search(request("dc=example,dc=com", "(uid=a)"), () -> {
+            searches.incrementAndGet();
+            awaitRelease();
+            throw failure;
+        }));
+        while (searches.get() == 0) {
+            Thread.sleep(5);
+        }
+        Future<SearchResult> joiner = searchAsync(request("dc=example,dc=com", "(uid=a)"));
+        awaitCoalesced(1);
+        release.countDown();
+
+        for (Future<SearchResult> result : Arrays.asList(leader, joiner)) {
+            try {
+                result.get();
+                fail("Expected the search to fail");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+        assertEquals(1, searches.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testInvalidateAll() throws Exception {
+        Future<SearchResult> before = searchAsync(request("dc=example,dc=com", "(uid=a)"));
+        while (searches.get() == 0) {
+            Thread.sleep(5);
+        }
+
+        //A write happened, so later searches must not see the result of the one in flight.
+        singleFlight.invalidateAll();
+        Future<SearchResult> after = searchAsync(request("dc=example,dc=com", "(uid=a)"));
+        while (searches.get() < 2) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        before.get(5, TimeUnit.SECONDS);
+        after.get(5, TimeUnit.SECONDS);
+        assertEquals(2, singleFlight.getSearches());
+        assertEquals(0, singleFlight.getCoalesced());
+    }
+
+}
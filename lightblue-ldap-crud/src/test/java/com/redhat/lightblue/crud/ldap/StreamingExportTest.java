@@ -0,0 +1,242 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+
+@InMemoryLdapServer
+public class StreamingExportTest {
+
+    private static final String BASE_DN = "ou=export,dc=example,dc=com";
+    private static final int ENTRIES = 7;
+
+    @Rule
+    public LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance();
+
+    private LDAPConnection connection;
+    private SearchRequest request;
+
+    @Before
+    public void before() throws Exception {
+        connection = ldapServer.getLDAPConnection();
+        connection.add(BASE_DN,
+                new Attribute("objectClass", "top", "organizationalUnit"),
+                new Attribute("ou", "export"));
+        for (int x = 0; x < ENTRIES; x++) {
+            connection.add("uid=" + x + "," + BASE_DN,
+                    new Attribute("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson"),
+                    new Attribute("uid", String.valueOf(x)),
+                    new Attribute("cn", "Export " + x),
+                    new Attribute("sn", "Export"));
+        }
+
+        request = new SearchRequest(BASE_DN, SearchScope.SUB, Filter.create("(sn=Export)"), "uid");
+    }
+
+    @After
+    public void after() {
+        connection.close();
+    }
+
+    private static void writeUid(SearchResultEntry entry, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("uid", entry.getAttributeValue("uid"));
+        generator.writeEndObject();
+    }
+
+    private String exportAll() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingExport export = new StreamingExport(connection, StreamingExportTest::writeUid, ENTRIES);
+        export.export(request, out, null);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingExport export = new StreamingExport(connection, StreamingExportTest::writeUid, 3);
+
+        export.export(request, out, null);
+
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n", -1);
+        assertEquals(ENTRIES + 1, lines.length);
+        assertEquals("", lines[ENTRIES]);
+        for (int x = 0; x < ENTRIES; x++) {
+            assertEquals("{\"uid\":\"" + x + "\"}", lines[x]);
+        }
+        assertEquals(ENTRIES, export.getExported());
+        assertNull(export.getCheckpoint());
+    }
+
+    /**
+     * The writer fails part way through the second page, so only the entries before it are exported
+     * and the rest follow once resumed.
+     */
+    @Test
+    public void testExport_Resume() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingExport failing = new StreamingExport(connection, (SearchResultEntry entry, JsonGenerator generator) -> {
+            if ("4".equals(entry.getAttributeValue("uid"))) {
+                throw new IOException("disk full");
+            }
+            writeUid(entry, generator);
+        }, 3);
+
+        try {
+            failing.export(request, out, null);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        assertEquals(4, failing.getExported());
+        StreamingExport.Checkpoint checkpoint = failing.getCheckpoint();
+        assertNotNull(checkpoint);
+        assertNotNull(checkpoint.getCookie());
+        assertEquals("uid=3," + BASE_DN, checkpoint.getDN());
+
+        StreamingExport resumed = new StreamingExport(connection, StreamingExportTest::writeUid, 3);
+        resumed.export(request, out, checkpoint);
+
+        assertEquals(ENTRIES - 4, resumed.getExported());
+        assertNull(resumed.getCheckpoint());
+        assertEquals(exportAll(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Cookies the server no longer accepts cause the search to start over, skipping through the checkpointed DN.
+     */
+    @Test
+    public void testExport_ResumeWithRejectedCookie() throws Exception {
+        String all = exportAll();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingExport export = new StreamingExport(connection, StreamingExportTest::writeUid, 3);
+
+        export.export(request, out, new StreamingExport.Checkpoint(new byte[] {1, 2, 3}, "uid=4," + BASE_DN));
+
+        assertEquals(2, export.getExported());
+        assertEquals(all.substring(all.indexOf("{\"uid\":\"5\"}")), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Fails on the first entry of the second page, so the checkpoint is taken at a page boundary.
+     */
+    private StreamingExport.Checkpoint exportFirstPage(ByteArrayOutputStream out) throws Exception {
+        StreamingExport failing = new StreamingExport(connection, (SearchResultEntry entry, JsonGenerator generator) -> {
+            if ("3".equals(entry.getAttributeValue("uid"))) {
+                throw new IOException("disk full");
+            }
+            writeUid(entry, generator);
+        }, 3);
+
+        try {
+            failing.export(request, out, null);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        assertEquals(3, failing.getExported());
+        return failing.getCheckpoint();
+    }
+
+    @Test
+    public void testExport_ResumeAtPageBoundary() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingExport.Checkpoint checkpoint = exportFirstPage(out);
+        assertNotNull(checkpoint.getCookie());
+        assertEquals("uid=2," + BASE_DN, checkpoint.getDN());
+        assertFalse(checkpoint.isDNInPage());
+
+        StreamingExport resumed = new StreamingExport(connection, StreamingExportTest::writeUid, 3);
+        resumed.export(request, out, checkpoint);
+
+        assertEquals(ENTRIES - 3, resumed.getExported());
+        assertEquals(exportAll(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Starting over from a page boundary still skips every entry already written.
+     */
+    @Test
+    public void testExport_ResumeAtPageBoundaryWithRejectedCookie() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingExport.Checkpoint checkpoint = exportFirstPage(out);
+
+        StreamingExport resumed = new StreamingExport(connection, StreamingExportTest::writeUid, 3);
+        resumed.export(request, out, new StreamingExport.Checkpoint(new byte[] {1, 2, 3}, checkpoint.getDN(), checkpoint.isDNInPage()));
+
+        assertEquals(ENTRIES - 3, resumed.getExported());
+        assertEquals(exportAll(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testExport_CheckpointNoLongerMatches() throws Exception {
+        StreamingExport.Checkpoint checkpoint = new StreamingExport.Checkpoint(null, "uid=doesnotexist," + BASE_DN);
+        StreamingExport export = new StreamingExport(connection, StreamingExportTest::writeUid, 3);
+
+        try {
+            export.export(request, new ByteArrayOutputStream(), checkpoint);
+            fail("Expected LDAPException");
+        } catch (LDAPException e) {
+            assertEquals(ResultCode.NO_SUCH_OBJECT, e.getResultCode());
+        }
+        assertEquals(0, export.getExported());
+        assertEquals(checkpoint, export.getCheckpoint());
+    }
+
+    @Test
+    public void testCheckpoint() {
+        StreamingExport.Checkpoint checkpoint = new StreamingExport.Checkpoint(new byte[] {1}, "uid=1");
+        assertArrayEquals(new byte[] {1}, checkpoint.getCookie());
+        assertEquals("uid=1", checkpoint.getDN());
+        assertTrue(checkpoint.isDNInPage());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPageSize() {
+        new StreamingExport(connection, StreamingExportTest::writeUid, 0);
+    }
+
+}
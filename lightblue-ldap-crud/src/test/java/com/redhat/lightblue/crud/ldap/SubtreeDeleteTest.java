@@ -0,0 +1,183 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource;
+import com.redhat.lightblue.ldap.test.LdapServerExternalResource.InMemoryLdapServer;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchScope;
+
+@InMemoryLdapServer
+public class SubtreeDeleteTest {
+
+    private static final String PARENT_DN = "ou=parent,dc=example,dc=com";
+    private static final String CHILD_DN = "ou=child," + PARENT_DN;
+    private static final String GRANDCHILD_DN = "ou=grandchild," + CHILD_DN;
+    private static final String SIBLING_DN = "ou=sibling,dc=example,dc=com";
+
+    @Rule
+    public LdapServerExternalResource ldapServer = LdapServerExternalResource.createDefaultInstance();
+
+    private LDAPConnectionPool pool;
+    private LDAPConnection searchConnection;
+
+    @Before
+    public void before() throws Exception {
+        pool = new LDAPConnectionPool(ldapServer.getLDAPConnection(), 2);
+        searchConnection = pool.getConnection();
+
+        for (String dn : Arrays.asList(PARENT_DN, CHILD_DN, GRANDCHILD_DN, SIBLING_DN)) {
+            String ou = dn.substring(3, dn.indexOf(','));
+            searchConnection.add(dn,
+                    new Attribute("objectClass", "top", "organizationalUnit"),
+                    new Attribute("ou", ou));
+            for (int x = 0; x < 3; x++) {
+                searchConnection.add("ou=leaf" + x + "," + dn,
+                        new Attribute("objectClass", "top", "organizationalUnit"),
+                        new Attribute("ou", "leaf" + x));
+            }
+        }
+    }
+
+    @After
+    public void after() {
+        pool.releaseConnection(searchConnection);
+        pool.close();
+    }
+
+    @Test
+    public void testIsControlSupported() throws Exception {
+        assertTrue(SubtreeDelete.isControlSupported(searchConnection.getRootDSE()));
+        assertFalse(SubtreeDelete.isControlSupported(null));
+    }
+
+    @Test
+    public void testDelete_WithControl() throws Exception {
+        assertDelete(true);
+    }
+
+    @Test
+    public void testDelete_BottomUp() throws Exception {
+        assertDelete(false);
+    }
+
+    @Test
+    public void testDelete_BottomUp_PartialFailure() throws Exception {
+        //The grandchild cannot become a leaf, so neither can any of its ancestors.
+        try (PipelinedDelete pipelinedDelete = new FailingPipelinedDelete(pool, "ou=leaf0," + GRANDCHILD_DN, () -> {})) {
+            int numDeleted = new SubtreeDelete(searchConnection, pipelinedDelete, false).delete(
+                    Arrays.asList(PARENT_DN, CHILD_DN, "ou=leaf0," + CHILD_DN, "ou=leaf1," + PARENT_DN));
+
+            assertEquals(2, numDeleted);
+        }
+
+        assertNotNull(searchConnection.getEntry(CHILD_DN));
+        assertNull(searchConnection.getEntry("ou=leaf0," + CHILD_DN));
+        assertNull(searchConnection.getEntry("ou=leaf1," + PARENT_DN));
+    }
+
+    @Test
+    public void testDelete_WithControl_PartialFailure() throws Exception {
+        //The server removes one of the matched descendants before failing to remove the rest of the subtree.
+        String deletedDn = "ou=leaf1," + PARENT_DN;
+        try (PipelinedDelete pipelinedDelete = new FailingPipelinedDelete(pool, PARENT_DN, () -> deleteQuietly(deletedDn))) {
+            int numDeleted = new SubtreeDelete(searchConnection, pipelinedDelete, true).delete(
+                    Arrays.asList(PARENT_DN, CHILD_DN, deletedDn));
+
+            assertEquals(1, numDeleted);
+            assertEquals(1, pipelinedDelete.getFailures().size());
+        }
+
+        assertNotNull(searchConnection.getEntry(CHILD_DN));
+    }
+
+    private void deleteQuietly(String dn) {
+        try {
+            searchConnection.delete(dn);
+        } catch (LDAPException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Fails the delete of one DN, as a server that could not remove it would.
+     */
+    private static class FailingPipelinedDelete extends PipelinedDelete {
+
+        /** Critical control the server does not support, so that it rejects the request. */
+        private static final Control UNSUPPORTED = new Control("1.3.6.1.4.1.99999.1", true);
+
+        private final String failingDn;
+        private final Runnable beforeFailing;
+
+        FailingPipelinedDelete(LDAPConnectionPool pool, String failingDn, Runnable beforeFailing) throws LDAPException {
+            super(pool, 4, 1);
+            this.failingDn = failingDn;
+            this.beforeFailing = beforeFailing;
+        }
+
+        @Override
+        public void delete(String dn, Control... controls) {
+            if (dn.equalsIgnoreCase(failingDn)) {
+                beforeFailing.run();
+                super.delete(dn, UNSUPPORTED);
+            }
+            else {
+                super.delete(dn, controls);
+            }
+        }
+
+    }
+
+    /**
+     * The child is matched along with its ancestor, so it should only be deleted once, but
+     * still be counted. The sibling does not exist and so should be reported as a failure.
+     */
+    private void assertDelete(boolean useControl) throws Exception {
+        try (PipelinedDelete pipelinedDelete = new PipelinedDelete(pool, 4, 1)) {
+            int numDeleted = new SubtreeDelete(searchConnection, pipelinedDelete, useControl).delete(
+                    Arrays.asList(CHILD_DN, PARENT_DN, "ou=doesnotexist,dc=example,dc=com"));
+
+            assertEquals(2, numDeleted);
+            assertEquals(1, pipelinedDelete.getFailures().size());
+        }
+
+        assertNull(searchConnection.getEntry(PARENT_DN));
+        assertNull(searchConnection.getEntry(GRANDCHILD_DN));
+        assertEquals(4, searchConnection.search(SIBLING_DN, SearchScope.SUB, "(objectClass=*)").getEntryCount());
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.schema.Schema;
+
+public class AttributeDescriptionsTest {
+
+    private static final Schema SCHEMA = new Schema(new Entry("cn=schema",
+            new Attribute("attributeTypes",
+                    "( 2.5.4.3 NAME ( 'cn' 'commonName' ) SUP name )",
+                    "( 2.5.4.4 NAME ( 'sn' 'surname' ) SUP name )")));
+
+    @Test
+    public void testResolve_DifferentCase() {
+        Entry entry = new Entry("uid=john.doe,dc=example,dc=com", new Attribute("CN", "john"));
+
+        assertEquals("CN", AttributeDescriptions.WITHOUT_SCHEMA.resolve(entry, "cn").getName());
+    }
+
+    @Test
+    public void testResolve_WithOptions() {
+        Entry entry = new Entry("uid=john.doe,dc=example,dc=com", new Attribute("cn;lang-en", "john"));
+
+        assertEquals("cn;lang-en", AttributeDescriptions.WITHOUT_SCHEMA.resolve(entry, "CN").getName());
+    }
+
+    @Test
+    public void testResolve_PrefersWithoutOptions() {
+        Entry entry = new Entry("uid=john.doe,dc=example,dc=com",
+                new Attribute("commonName;lang-en", "john"),
+                new Attribute("commonName", "johnny"));
+
+        AttributeDescriptions descriptions = AttributeDescriptions.build(Arrays.asList("cn"), SCHEMA);
+
+        assertEquals("commonName", descriptions.resolve(entry, "cn").getName());
+    }
+
+    @Test
+    public void testResolve_SchemaAlias() {
+        Entry entry = new Entry("uid=john.doe,dc=example,dc=com", new Attribute("COMMONNAME", "john"));
+
+        AttributeDescriptions descriptions = AttributeDescriptions.build(Arrays.asList("cn"), SCHEMA);
+
+        assertEquals("COMMONNAME", descriptions.resolve(entry, "cn").getName());
+        assertNull(AttributeDescriptions.WITHOUT_SCHEMA.resolve(entry, "cn"));
+    }
+
+    @Test
+    public void testResolve_SchemaOid() {
+        Entry entry = new Entry("uid=john.doe,dc=example,dc=com", new Attribute("2.5.4.3", "john"));
+
+        AttributeDescriptions descriptions = AttributeDescriptions.build(Arrays.asList("cn"), SCHEMA);
+
+        assertEquals("2.5.4.3", descriptions.resolve(entry, "cn").getName());
+    }
+
+    @Test
+    public void testResolve_MetadataNameWithOptions() {
+        Entry entry = new Entry("uid=john.doe,dc=example,dc=com", new Attribute("userCertificate", "cert"));
+
+        AttributeDescriptions descriptions = AttributeDescriptions.build(Arrays.asList("userCertificate;binary"), null);
+
+        assertEquals("userCertificate", descriptions.resolve(entry, "userCertificate;binary").getName());
+    }
+
+    @Test
+    public void testResolve_Missing() {
+        Entry entry = new Entry("uid=john.doe,dc=example,dc=com", new Attribute("cn", "john"));
+
+        assertNull(AttributeDescriptions.build(Arrays.asList("sn"), SCHEMA).resolve(entry, "sn"));
+    }
+
+}
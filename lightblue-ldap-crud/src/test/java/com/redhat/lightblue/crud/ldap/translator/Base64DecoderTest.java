@@ -0,0 +1,67 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.junit.Test;
+
+public class Base64DecoderTest {
+
+    @Test
+    public void testDecode() {
+        Random random = new Random(42);
+        for (int length = 0; length < 64; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+
+            assertArrayEquals(bytes, Base64Decoder.decode(DatatypeConverter.printBase64Binary(bytes)));
+        }
+    }
+
+    @Test
+    public void testDecode_WhitespaceIgnored() {
+        assertArrayEquals("hello world".getBytes(), Base64Decoder.decode(" aGVsbG8g\r\nd29y bGQ= "));
+    }
+
+    @Test
+    public void testDecode_WithoutPadding() {
+        assertArrayEquals("hello".getBytes(), Base64Decoder.decode("aGVsbG8"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecode_InvalidCharacter() {
+        Base64Decoder.decode("aGVs*G8=");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecode_DataAfterPadding() {
+        Base64Decoder.decode("aGVsbG8=aGVs");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecode_InvalidLength() {
+        Base64Decoder.decode("aGVsb");
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.redhat.lightblue.util.Error;
+
+public class DnErrorContextTest {
+
+    @After
+    public void after() {
+        Error.reset();
+    }
+
+    @Test
+    public void testRender() {
+        Error.push("outer");
+        DnErrorContext.push();
+        Error.push("inner");
+        Error.push("a/b");
+        Error error = Error.get("code", "msg");
+
+        Error rendered = DnErrorContext.render(error, "uid=john.doe,dc=example,dc=com");
+
+        //Rendered in place, as each new Error is logged.
+        assertSame(error, rendered);
+        assertEquals("outer/dn=uid=john.doe,dc=example,dc=com/inner/a/b", rendered.getContext());
+        assertEquals("code", rendered.getErrorCode());
+        assertEquals("msg", rendered.getMsg());
+        assertSame(error.getStackTrace()[0], rendered.getStackTrace()[0]);
+    }
+
+    @Test
+    public void testRender_Nested() {
+        DnErrorContext.push();
+        DnErrorContext.push();
+        Error error = Error.get("code", "msg");
+
+        Error rendered = DnErrorContext.render(error, "uid=inner,dc=com");
+        assertEquals(DnErrorContext.PLACEHOLDER + "/dn=uid=inner,dc=com", rendered.getContext());
+
+        rendered = DnErrorContext.render(rendered, "uid=outer,dc=com");
+        assertEquals("dn=uid=outer,dc=com/dn=uid=inner,dc=com", rendered.getContext());
+    }
+
+    @Test
+    public void testRender_WithoutPlaceholder() {
+        Error.push("dn=?x");
+        Error error = Error.get("code", "msg");
+
+        assertSame(error, DnErrorContext.render(error, "uid=john.doe,dc=example,dc=com"));
+    }
+
+}
@@ -48,6 +48,7 @@ import com.redhat.lightblue.crud.ldap.model.TrivialLdapFieldNameTranslator;
 import com.redhat.lightblue.crud.ldap.translator.EntryTranslatorFromJsonTest.ParameterizedTests;
 import com.redhat.lightblue.crud.ldap.translator.EntryTranslatorFromJsonTest.SpecializedTests;
 import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.MetadataConstants;
 import com.redhat.lightblue.metadata.PredefinedFields;
 import com.redhat.lightblue.test.MetadataUtil;
 import com.redhat.lightblue.util.Constants;
@@ -142,6 +143,14 @@ public class EntryTranslatorFromJsonTest {
                     "1," + quote(arrayFieldName) + ":[{\"someField\":\"hello\"}]");
         }
 
+        @Test
+        public void testFieldIsBinary_InvalidBase64() throws Exception{
+            expectedEx.expect(com.redhat.lightblue.util.Error.class);
+            expectedEx.expectMessage("\"errorCode\":\"" + MetadataConstants.ERR_INCOMPATIBLE_VALUE + "\"");
+
+            buildEntry("testfield", "{\"type\": \"binary\"}", quote("not*base64"));
+        }
+
         /**
          * DN fields should never be defined as they are technically not attributes.
          */
@@ -0,0 +1,93 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.util.StaticUtils;
+
+/**
+ * Compares {@link GeneralizedTime} with the {@link StaticUtils} based path it replaced. Not run
+ * as part of the build, to run it:
+ * <pre>
+ * mvn test-compile exec:java -pl lightblue-ldap-crud -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.redhat.lightblue.crud.ldap.translator.GeneralizedTimeBenchmark
+ * </pre>
+ * Pass <code>-Dexec.args="-prof gc"</code> to also report allocation rates.
+ *
+ * @author dcrissman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneralizedTimeBenchmark {
+
+    private final Date date = new Date(1420834651570L);
+    private final String value = "20150109201731.570Z";
+    private final Attribute attribute = new Attribute("modifyTimestamp", value);
+
+    @Benchmark
+    public String encode_StaticUtils() {
+        return StaticUtils.encodeGeneralizedTime(date);
+    }
+
+    @Benchmark
+    public String encode_GeneralizedTime() {
+        return GeneralizedTime.encode(date);
+    }
+
+    @Benchmark
+    public Date decode_StaticUtils() {
+        return attribute.getValueAsDate();
+    }
+
+    @Benchmark
+    public Date decode_GeneralizedTime() throws ParseException {
+        return GeneralizedTime.decode(attribute.getValue());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder options = new OptionsBuilder();
+        options.include(GeneralizedTimeBenchmark.class.getSimpleName());
+        if ((args.length == 2) && "-prof".equals(args[0])) {
+            options.addProfiler(args[1]);
+        }
+        new Runner(options.build()).run();
+    }
+
+}
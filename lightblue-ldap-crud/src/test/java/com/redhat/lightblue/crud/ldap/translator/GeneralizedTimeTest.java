@@ -0,0 +1,98 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.unboundid.util.StaticUtils;
+
+public class GeneralizedTimeTest {
+
+    /** 1000-01-01 through 9999-12-31. */
+    private static final long MIN_MILLIS = -30610224000000L;
+    private static final long MAX_MILLIS = 253402300799999L;
+
+    @Test
+    public void testEncode_SameAsStaticUtils() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            Date date = new Date(MIN_MILLIS + (long) (random.nextDouble() * (MAX_MILLIS - MIN_MILLIS)));
+            assertEquals(StaticUtils.encodeGeneralizedTime(date), GeneralizedTime.encode(date));
+        }
+    }
+
+    @Test
+    public void testEncode_Boundaries() {
+        for (long millis : new long[]{0, -1, -12219292800001L, -12219292800000L, 951782400000L, 951868799999L, MAX_MILLIS, MAX_MILLIS + 1}) {
+            Date date = new Date(millis);
+            assertEquals(StaticUtils.encodeGeneralizedTime(date), GeneralizedTime.encode(date));
+        }
+    }
+
+    @Test
+    public void testDecode_RoundTrip() throws ParseException {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            Date date = new Date(MIN_MILLIS + (long) (random.nextDouble() * (MAX_MILLIS - MIN_MILLIS)));
+            String value = StaticUtils.encodeGeneralizedTime(date);
+            assertEquals(value, date, GeneralizedTime.decode(value));
+        }
+    }
+
+    @Test
+    public void testDecode_SameAsStaticUtils() throws ParseException {
+        for (String value : new String[]{
+                "20150109201731Z",
+                "20150109201731.5Z",
+                "20150109201731.57Z",
+                "20150109201731.570Z",
+                "20150109201731.5709Z",
+                "20000229235959.999Z",
+                "15821015000000.000Z",
+                "15820101000000.000Z",
+                "201501092017Z",
+                "2015010920Z",
+                "20150109201731.570+0100",
+                "20150109201731-0500"}) {
+            assertEquals(value, StaticUtils.decodeGeneralizedTime(value), GeneralizedTime.decode(value));
+        }
+    }
+
+    @Test(expected = ParseException.class)
+    public void testDecode_InvalidDay() throws ParseException {
+        GeneralizedTime.decode("20150230201731Z");
+    }
+
+    @Test(expected = ParseException.class)
+    public void testDecode_InvalidHour() throws ParseException {
+        GeneralizedTime.decode("20150109241731Z");
+    }
+
+    @Test(expected = ParseException.class)
+    public void testDecode_NotADate() throws ParseException {
+        GeneralizedTime.decode("not a date at all");
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import static com.redhat.lightblue.util.JsonUtils.json;
+import static com.redhat.lightblue.util.test.AbstractJsonNodeTest.loadJsonNode;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.redhat.lightblue.common.ldap.LdapConstant;
+import com.redhat.lightblue.crud.ldap.model.TrivialLdapFieldNameTranslator;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.test.MetadataUtil;
+import com.redhat.lightblue.util.JsonDoc;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.controls.AssertionRequestControl;
+import com.unboundid.ldap.sdk.controls.PermissiveModifyRequestControl;
+
+public class ModificationTranslatorFromJsonTest {
+
+    private static final String DN = "uid=someuid,dc=example,dc=com";
+    private static final String VERSION_ATTRIBUTE = "modifyTimestamp";
+
+    private static EntityMetadata createMetadata() throws Exception {
+        return MetadataUtil.createEntityMetadata(LdapConstant.BACKEND,
+                loadJsonNode("./metadata/modificationTranslatorTest-metadata.json"), null, null);
+    }
+
+    @Test
+    public void testTranslate_WithoutVersionAttribute() throws Exception {
+        ModifyRequest request = new ModificationTranslatorFromJson(createMetadata(), new TrivialLdapFieldNameTranslator())
+                .translate(new JsonDoc(json("{\"cn\": \"john\", \"modifyTimestamp\": \"20150101000000Z\"}")), DN);
+
+        assertEquals(2, request.getModifications().size());
+        assertEquals(0, request.getControls().length);
+    }
+
+    @Test
+    public void testTranslate_AssertsVersion() throws Exception {
+        ModifyRequest request = new ModificationTranslatorFromJson(createMetadata(), new TrivialLdapFieldNameTranslator(), VERSION_ATTRIBUTE)
+                .translate(new JsonDoc(json("{\"cn\": \"john\", \"modifyTimestamp\": \"20150101000000Z\"}")), DN);
+
+        assertEquals(1, request.getModifications().size());
+        Modification modification = request.getModifications().get(0);
+        assertEquals("cn", modification.getAttributeName());
+        assertEquals(ModificationType.REPLACE, modification.getModificationType());
+
+        AssertionRequestControl control = (AssertionRequestControl) request.getControl(AssertionRequestControl.ASSERTION_REQUEST_OID);
+        assertTrue(control.isCritical());
+        assertEquals("(modifyTimestamp=20150101000000Z)", control.getFilter().toString());
+    }
+
+    @Test
+    public void testTranslate_AdvancesVersion() throws Exception {
+        ModifyRequest request = new ModificationTranslatorFromJson(createMetadata(), new TrivialLdapFieldNameTranslator(), "cn")
+                .translate(new JsonDoc(json("{\"cn\": \"7\"}")), DN);
+
+        assertEquals(1, request.getModifications().size());
+        Modification modification = request.getModifications().get(0);
+        assertEquals(ModificationType.REPLACE, modification.getModificationType());
+        assertEquals("8", modification.getAttribute().getValue());
+
+        AssertionRequestControl control = (AssertionRequestControl) request.getControl(AssertionRequestControl.ASSERTION_REQUEST_OID);
+        assertEquals("(cn=7)", control.getFilter().toString());
+    }
+
+    @Test
+    public void testNextVersion() {
+        assertEquals("1", ModificationTranslatorFromJson.nextVersion("0"));
+        assertNotEquals("abc", ModificationTranslatorFromJson.nextVersion("abc"));
+        assertNotEquals(ModificationTranslatorFromJson.nextVersion("abc"), ModificationTranslatorFromJson.nextVersion("abc"));
+        assertNotEquals(Long.toString(Long.MIN_VALUE), ModificationTranslatorFromJson.nextVersion(Long.toString(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testTranslate_VersionNotProvided() throws Exception {
+        ModificationTranslatorFromJson translator = new ModificationTranslatorFromJson(
+                createMetadata(), new TrivialLdapFieldNameTranslator(), VERSION_ATTRIBUTE);
+
+        translator.translate(new JsonDoc(json("{\"cn\": \"john\", \"modifyTimestamp\": \"20150101000000Z\"}")), DN);
+        ModifyRequest request = translator.translate(new JsonDoc(json("{\"cn\": \"jane\"}")), DN);
+
+        assertEquals(1, request.getModifications().size());
+        assertNull(request.getControl(AssertionRequestControl.ASSERTION_REQUEST_OID));
+    }
+
+    @Test
+    public void testTranslate_ArrayReplacedWithoutCurrentEntry() throws Exception {
+        ModifyRequest request = new ModificationTranslatorFromJson(createMetadata(), new TrivialLdapFieldNameTranslator())
+                .translate(new JsonDoc(json("{\"member\": [\"a\", \"b\"]}")), DN);
+
+        assertEquals(1, request.getModifications().size());
+        Modification modification = request.getModifications().get(0);
+        assertEquals(ModificationType.REPLACE, modification.getModificationType());
+        assertArrayEquals(new String[]{"a", "b"}, modification.getValues());
+    }
+
+    @Test
+    public void testTranslate_ArrayDiffedAgainstCurrentEntry() throws Exception {
+        Entry current = new Entry(DN, new Attribute("member", "a", "b", "C"));
+
+        ModifyRequest request = new ModificationTranslatorFromJson(createMetadata(), new TrivialLdapFieldNameTranslator())
+                .translate(new JsonDoc(json("{\"member\": [\"a\", \"c\", \"d\"]}")), DN, current);
+
+        assertEquals(2, request.getModifications().size());
+
+        Modification delete = request.getModifications().get(0);
+        assertEquals(ModificationType.DELETE, delete.getModificationType());
+        assertArrayEquals(new String[]{"b", "C"}, delete.getValues());
+
+        Modification add = request.getModifications().get(1);
+        assertEquals(ModificationType.ADD, add.getModificationType());
+        assertArrayEquals(new String[]{"c", "d"}, add.getValues());
+
+        assertNotNull(request.getControl(PermissiveModifyRequestControl.PERMISSIVE_MODIFY_REQUEST_OID));
+    }
+
+    @Test
+    public void testTranslate_ArrayUnchanged() throws Exception {
+        Entry current = new Entry(DN, new Attribute("member", "a", "b"));
+
+        ModifyRequest request = new ModificationTranslatorFromJson(createMetadata(), new TrivialLdapFieldNameTranslator())
+                .translate(new JsonDoc(json("{\"cn\": \"john\", \"member\": [\"b\", \"a\"]}")), DN, current);
+
+        assertEquals(1, request.getModifications().size());
+        assertEquals("cn", request.getModifications().get(0).getAttributeName());
+        assertNull(request.getControl(PermissiveModifyRequestControl.PERMISSIVE_MODIFY_REQUEST_OID));
+    }
+
+    @Test
+    public void testTranslate_ArrayDiffedAgainstAttributeWithOptions() throws Exception {
+        Entry current = new Entry(DN, new Attribute("MEMBER;x-origin", "a", "b"));
+
+        ModifyRequest request = new ModificationTranslatorFromJson(createMetadata(), new TrivialLdapFieldNameTranslator(),
+                null, AttributeDescriptions.build(Arrays.asList("member"), null))
+                .translate(new JsonDoc(json("{\"member\": [\"a\"]}")), DN, current);
+
+        assertEquals(1, request.getModifications().size());
+        Modification delete = request.getModifications().get(0);
+        assertEquals(ModificationType.DELETE, delete.getModificationType());
+        assertEquals("MEMBER;x-origin", delete.getAttributeName());
+        assertArrayEquals(new String[]{"b"}, delete.getValues());
+    }
+
+    @Test
+    public void testTranslate_ArrayDiffedAgainstRangedAttribute() throws Exception {
+        Entry current = new Entry(DN, new Attribute("member;range=0-*", "a", "b", "c"));
+
+        ModifyRequest request = new ModificationTranslatorFromJson(createMetadata(), new TrivialLdapFieldNameTranslator(),
+                null, AttributeDescriptions.build(Arrays.asList("member"), null))
+                .translate(new JsonDoc(json("{\"member\": [\"a\", \"c\"]}")), DN, current);
+
+        assertEquals(1, request.getModifications().size());
+        Modification delete = request.getModifications().get(0);
+        assertEquals(ModificationType.DELETE, delete.getModificationType());
+        assertEquals("member", delete.getAttributeName());
+        assertArrayEquals(new String[]{"b"}, delete.getValues());
+    }
+
+}
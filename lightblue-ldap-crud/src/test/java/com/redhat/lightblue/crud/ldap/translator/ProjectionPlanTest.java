@@ -0,0 +1,152 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import static com.redhat.lightblue.util.JsonUtils.json;
+import static com.redhat.lightblue.util.test.AbstractJsonNodeTest.loadJsonNode;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.StringWriter;
+
+import org.json.JSONException;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.redhat.lightblue.common.ldap.LdapConstant;
+import com.redhat.lightblue.crud.ldap.model.TrivialLdapFieldNameTranslator;
+import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.test.MetadataUtil;
+import com.redhat.lightblue.util.JsonUtils;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+
+public class ProjectionPlanTest {
+
+    private final JsonNodeFactory factory = JsonNodeFactory.withExactBigDecimals(true);
+
+    private final SearchResultEntry entry = new SearchResultEntry(-1, "uid=john.doe,dc=example,dc=com", new Attribute[]{
+            new Attribute("uid", "john.doe"),
+            new Attribute("cn", "John Doe"),
+            new Attribute("employeeNumber", "42"),
+            new Attribute("modifyTimestamp", "20150109201731.570Z"),
+            new Attribute("photo", new byte[]{1, 2, 3}),
+            new Attribute("member", "uid=a,dc=example,dc=com", "uid=b,dc=example,dc=com")
+    });
+
+    private static EntityMetadata createMetadata() throws Exception {
+        return MetadataUtil.createEntityMetadata(LdapConstant.BACKEND,
+                loadJsonNode("./metadata/projectionPlanTest-metadata.json"), null, null);
+    }
+
+    private static Projection projection(String projection) throws Exception {
+        return Projection.fromJson(json(projection.replace('\'', '"')));
+    }
+
+    /**
+     * Asserts that the plan produces the same document as translating the entire entry and
+     * projecting it, both as a tree and when written to a generator.
+     */
+    private void assertSameAsProjector(String projectionJson) throws Exception {
+        EntityMetadata md = createMetadata();
+        Projection projection = projection(projectionJson);
+
+        String expected = Projector.getInstance(projection, md).project(
+                new ResultTranslatorToJson(factory, md, new TrivialLdapFieldNameTranslator()).translate(entry), factory).toString();
+
+        ProjectionPlan plan = ProjectionPlan.compile(md, new TrivialLdapFieldNameTranslator(), projection);
+        assertNotNull(projectionJson, plan);
+
+        assertJsonEquals(expected, plan.translate(entry, factory).toString());
+
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = JsonUtils.getObjectMapper().getFactory().createGenerator(writer)) {
+            plan.write(entry, generator, factory);
+        }
+        assertJsonEquals(expected, writer.toString());
+    }
+
+    private static void assertJsonEquals(String expected, String actual) throws JSONException {
+        JSONAssert.assertEquals(expected, actual, true);
+    }
+
+    @Test
+    public void testSimpleFields() throws Exception {
+        assertSameAsProjector("[{'field':'uid'},{'field':'cn'},{'field':'employeeNumber'}]");
+    }
+
+    @Test
+    public void testDateAndBinaryFields() throws Exception {
+        assertSameAsProjector("[{'field':'modifyTimestamp'},{'field':'photo'}]");
+    }
+
+    @Test
+    public void testArray() throws Exception {
+        assertSameAsProjector("{'field':'member'}");
+        assertSameAsProjector("{'field':'member','recursive':true}");
+        assertSameAsProjector("{'field':'member.*'}");
+        assertSameAsProjector("{'field':'member#'}");
+        assertSameAsProjector("[{'field':'member.*'},{'field':'member#'}]");
+    }
+
+    @Test
+    public void testAllFields() throws Exception {
+        assertSameAsProjector("{'field':'*'}");
+        assertSameAsProjector("{'field':'*','recursive':true}");
+    }
+
+    @Test
+    public void testPredefinedFields() throws Exception {
+        assertSameAsProjector("[{'field':'dn'},{'field':'objectType'}]");
+    }
+
+    @Test
+    public void testExclusions() throws Exception {
+        assertSameAsProjector("[{'field':'*','recursive':true},{'field':'photo','include':false}]");
+        assertSameAsProjector("[{'field':'cn'},{'field':'cn','include':false}]");
+    }
+
+    @Test
+    public void testMissingAttribute() throws Exception {
+        assertSameAsProjector("[{'field':'uid'},{'field':'cn'}]");
+        SearchResultEntry sparse = new SearchResultEntry(-1, "uid=jane.doe,dc=example,dc=com", new Attribute[]{
+                new Attribute("uid", "jane.doe")
+        });
+
+        ProjectionPlan plan = ProjectionPlan.compile(createMetadata(), new TrivialLdapFieldNameTranslator(),
+                projection("[{'field':'uid'},{'field':'cn'},{'field':'member','recursive':true}]"));
+
+        assertJsonEquals("{\"uid\":\"jane.doe\"}", plan.translate(sparse, factory).toString());
+    }
+
+    @Test
+    public void testCompile_NotPlainFieldProjection() throws Exception {
+        assertNull(ProjectionPlan.compile(createMetadata(), new TrivialLdapFieldNameTranslator(),
+                projection("{'field':'member','include':true,'match':{'field':'$this','op':'=','rvalue':'uid=a,dc=example,dc=com'}}")));
+        assertNull(ProjectionPlan.compile(createMetadata(), new TrivialLdapFieldNameTranslator(),
+                projection("{'field':'member','include':true,'range':[0,1]}")));
+        assertNull(ProjectionPlan.compile(createMetadata(), new TrivialLdapFieldNameTranslator(),
+                projection("{'field':'member.0'}")));
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ Copyright 2015 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.ldap.translator;
+
+import static com.redhat.lightblue.util.test.AbstractJsonNodeTest.loadJsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.redhat.lightblue.common.ldap.LdapConstant;
+import com.redhat.lightblue.crud.ldap.model.TrivialLdapFieldNameTranslator;
+import com.redhat.lightblue.test.MetadataUtil;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+
+/**
+ * Measures translating a search result of 100k entries with {@link ResultTranslatorToJson}. Not
+ * run as part of the build, to run it:
+ * <pre>
+ * mvn test-compile exec:java -pl lightblue-ldap-crud -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.redhat.lightblue.crud.ldap.translator.ResultTranslatorToJsonBenchmark
+ * </pre>
+ * Pass <code>-Dexec.args="-prof gc"</code> to also report allocation rates.
+ *
+ * @author dcrissman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultTranslatorToJsonBenchmark {
+
+    private static final int ENTRIES = 100000;
+
+    private final List<SearchResultEntry> entries = new ArrayList<>(ENTRIES);
+    private ResultTranslatorToJson translator;
+
+    @Setup
+    public void setup() throws Exception {
+        translator = new ResultTranslatorToJson(
+                JsonNodeFactory.withExactBigDecimals(true),
+                MetadataUtil.createEntityMetadata(LdapConstant.BACKEND,
+                        loadJsonNode("./metadata/projectionPlanTest-metadata.json"), null, null),
+                new TrivialLdapFieldNameTranslator());
+
+        for (int x = 0; x < ENTRIES; x++) {
+            entries.add(new SearchResultEntry(-1, "uid=user" + x + ",ou=people,dc=example,dc=com", new Attribute[]{
+                    new Attribute("uid", "user" + x),
+                    new Attribute("cn", "User " + x),
+                    new Attribute("employeeNumber", Integer.toString(x)),
+                    new Attribute("modifyTimestamp", "20150109201731.570Z"),
+                    new Attribute("member", "uid=a,dc=example,dc=com", "uid=b,dc=example,dc=com")
+            }));
+        }
+    }
+
+    @Benchmark
+    public void translate(Blackhole blackhole) {
+        for (SearchResultEntry entry : entries) {
+            blackhole.consume(translator.translate(entry));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder options = new OptionsBuilder();
+        options.include(ResultTranslatorToJsonBenchmark.class.getSimpleName());
+        if ((args.length == 2) && "-prof".equals(args[0])) {
+            options.addProfiler(args[1]);
+        }
+        new Runner(options.build()).run();
+    }
+
+}
@@ -23,6 +23,7 @@ import static org.junit.Assert.assertNotNull;
 
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.UUID;
 
@@ -350,6 +351,52 @@ public class ResultTranslatorToJsonTest {
                 true);
     }
 
+    /**
+     * Only the count is needed, so the array itself should never be built.
+     */
+    @Test
+    public void testTranslate_SimpleArrayElement_CountOnly() throws JSONException{
+        SearchResultEntry result = new SearchResultEntry(-1, "uid=john.doe,dc=example,dc=com", new Attribute[]{
+                new Attribute("objectClass", Arrays.asList("top", "person", "organizationalPerson", "inetOrgPerson"))
+        });
+
+        EntityMetadata md = fakeEntityMetadata("fakeMetadata",
+                new ArrayField("objectClass", new SimpleArrayElement(StringType.TYPE)),
+                new SimpleField("objectClass#", IntegerType.TYPE)
+                );
+
+        JsonDoc document = new ResultTranslatorToJson(factory, md, new TrivialLdapFieldNameTranslator(),
+                new HashSet<>(Arrays.asList(new Path("objectClass")))).translate(result);
+
+        assertNotNull(document);
+
+        JSONAssert.assertEquals(
+                "{\"objectClass#\":4,\"dn\":\"uid=john.doe,dc=example,dc=com\"}",
+                document.toString(),
+                true);
+    }
+
+    @Test
+    public void testTranslate_SimpleArrayElement_BinaryType() throws Exception{
+        byte[] bite1 = new byte[]{1, 2, 3};
+        byte[] bite2 = new byte[]{'a', 'b', 'c'};
+
+        SearchResultEntry result = new SearchResultEntry(-1, "uid=john.doe,dc=example,dc=com", new Attribute[]{
+                new Attribute("keys", bite1, bite2)
+        });
+
+        EntityMetadata md = fakeEntityMetadata("fakeMetadata",
+                new ArrayField("keys", new SimpleArrayElement(BinaryType.TYPE))
+                );
+
+        JsonDoc jsonDocument = new ResultTranslatorToJson(factory, md, new TrivialLdapFieldNameTranslator()).translate(result);
+
+        JsonNode keysNode = jsonDocument.get(new Path("keys"));
+        assertEquals(2, keysNode.size());
+        assertEquals(bite1, keysNode.get(0).binaryValue());
+        assertEquals(bite2, keysNode.get(1).binaryValue());
+    }
+
     @Test(expected = UnsupportedOperationException.class)
     public void testTranslate_UnknownArrayElement() throws JSONException{
         SearchResultEntry result = new SearchResultEntry(-1, "uid=john.doe,dc=example,dc=com", new Attribute[]{
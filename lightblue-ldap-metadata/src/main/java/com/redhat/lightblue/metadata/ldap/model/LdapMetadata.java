@@ -19,7 +19,11 @@
 package com.redhat.lightblue.metadata.ldap.model;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
@@ -37,6 +41,19 @@ public class LdapMetadata implements LdapFieldNameTranslator{
 
     private final BiMap<Path, String> fieldsToAttributes = HashBiMap.create();
 
+    /*
+     * Lookup tables compiled from fieldsToAttributes every time a mapping is added, so that
+     * translating a name never allocates. Mappings are only added while parsing, after which
+     * these are only ever read.
+     */
+    private volatile Map<Path, String> attributesByPath = Collections.emptyMap();
+    private volatile Map<String, String> attributesByFieldName = Collections.emptyMap();
+    private volatile Map<String, Path> pathsByAttribute = Collections.emptyMap();
+    private volatile Map<String, Path> pathsByLowerCaseAttribute = Collections.emptyMap();
+
+    /** Paths for attributes without a mapping, kept so the same instance is always returned. */
+    private final ConcurrentMap<String, Path> unmappedPaths = new ConcurrentHashMap<>();
+
     /**
      * Returns an unmodifiable copy of the internal collection of {@link FieldAttributeMapping}s.
      * @return a collection of {@link FieldAttributeMapping}s.
@@ -47,26 +64,40 @@ public class LdapMetadata implements LdapFieldNameTranslator{
 
     @Override
     public String translateFieldName(Path path){
-        String attributeName = fieldsToAttributes.get(path);
+        String attributeName = attributesByPath.get(path);
         if(attributeName != null){
             return attributeName;
         }
 
-        Path last = path.suffix(1);
-        attributeName = fieldsToAttributes.get(last);
+        String last = path.getLast();
+        attributeName = attributesByFieldName.get(last);
         if(attributeName != null){
             return attributeName;
         }
 
-        return last.toString();
+        return last;
     }
 
+    /**
+     * Attribute names are matched without regard to case, as LDAP does.
+     */
     @Override
     public Path translateAttributeName(String attributeName){
-        Path fieldPath = fieldsToAttributes.inverse().get(attributeName);
+        Path fieldPath = pathsByAttribute.get(attributeName);
+        if(fieldPath == null){
+            //toLowerCase returns the same instance if there is nothing to change.
+            fieldPath = pathsByLowerCaseAttribute.get(attributeName.toLowerCase(Locale.ENGLISH));
+        }
 
         if(fieldPath == null){
-            return new Path(attributeName);
+            fieldPath = unmappedPaths.get(attributeName);
+            if(fieldPath == null){
+                Path newPath = new Path(attributeName);
+                fieldPath = unmappedPaths.putIfAbsent(attributeName, newPath);
+                if(fieldPath == null){
+                    fieldPath = newPath;
+                }
+            }
         }
 
         return fieldPath;
@@ -76,8 +107,34 @@ public class LdapMetadata implements LdapFieldNameTranslator{
      * Adds a {@link FieldAttributeMapping} to this {@link LdapMetadata}.
      * @param fieldAttributeMapping - {@link FieldAttributeMapping}
      */
-    public void addFieldToAttribute(Path fieldPath, String attributeName){
+    public synchronized void addFieldToAttribute(Path fieldPath, String attributeName){
         fieldsToAttributes.put(fieldPath, attributeName);
+        compile();
+    }
+
+    private void compile(){
+        Map<Path, String> byPath = new HashMap<>();
+        Map<String, String> byFieldName = new HashMap<>();
+        Map<String, Path> byAttribute = new HashMap<>();
+        Map<String, Path> byLowerCaseAttribute = new HashMap<>();
+
+        for(Map.Entry<Path, String> entry : fieldsToAttributes.entrySet()){
+            Path path = entry.getKey().immutableCopy();
+            String attributeName = entry.getValue();
+
+            byPath.put(path, attributeName);
+            if(path.numSegments() == 1){
+                byFieldName.put(path.getLast(), attributeName);
+            }
+            byAttribute.put(attributeName, path);
+            byLowerCaseAttribute.put(attributeName.toLowerCase(Locale.ENGLISH), path);
+        }
+
+        attributesByPath = Collections.unmodifiableMap(byPath);
+        attributesByFieldName = Collections.unmodifiableMap(byFieldName);
+        pathsByAttribute = Collections.unmodifiableMap(byAttribute);
+        pathsByLowerCaseAttribute = Collections.unmodifiableMap(byLowerCaseAttribute);
+        unmappedPaths.clear();
     }
 
 }
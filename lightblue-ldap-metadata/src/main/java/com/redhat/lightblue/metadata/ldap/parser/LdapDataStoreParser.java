@@ -18,6 +18,9 @@
  */
 package com.redhat.lightblue.metadata.ldap.parser;
 
+import java.util.Locale;
+
+import com.redhat.lightblue.common.ldap.CacheEviction;
 import com.redhat.lightblue.common.ldap.LdapConstant;
 import com.redhat.lightblue.common.ldap.LdapDataStore;
 import com.redhat.lightblue.metadata.DataStore;
@@ -36,6 +39,17 @@ public class LdapDataStoreParser<T> implements DataStoreParser<T> {
     private final static String DATABASE = "database";
     private final static String BASEDN = "basedn";
     private final static String UNIQUE_FIELD = "uniqueattr";
+    private final static String SUBTREE_DELETE = "subtreedelete";
+    private final static String VERSION_ATTRIBUTE = "versionattr";
+    private final static String ENTRY_CACHE_TTL = "entrycachettl";
+    private final static String ENTRY_CACHE_MAX_ENTRIES = "entrycachemaxentries";
+    private final static String ENTRY_CACHE_MAX_BYTES = "entrycachemaxbytes";
+    private final static String ENTRY_CACHE_EVICTION = "entrycacheeviction";
+    private final static String QUERY_CACHE_MAX_STALENESS = "querycachemaxstaleness";
+    private final static String QUERY_CACHE_MAX_RESULTS = "querycachemaxresults";
+    private final static String QUERY_CACHE_MAX_BYTES = "querycachemaxbytes";
+    private final static String NEGATIVE_CACHE_TTL = "negativecachettl";
+    private final static String NEGATIVE_CACHE_MAX_ENTRIES = "negativecachemaxentries";
 
     @Override
     public LdapDataStore parse(String name, MetadataParser<T> p, T node) {
@@ -48,9 +62,94 @@ public class LdapDataStoreParser<T> implements DataStoreParser<T> {
         dataStore.setBaseDN(p.getRequiredStringProperty(node, BASEDN));
         dataStore.setUniqueAttribute(p.getRequiredStringProperty(node, UNIQUE_FIELD));
 
+        String subtreeDelete = getStringProperty(p, node, SUBTREE_DELETE);
+        if (subtreeDelete != null) {
+            dataStore.setSubtreeDelete(Boolean.parseBoolean(subtreeDelete));
+        }
+        dataStore.setVersionAttribute(getStringProperty(p, node, VERSION_ATTRIBUTE));
+
+        Long entryCacheTtl = getLongProperty(p, node, ENTRY_CACHE_TTL);
+        if (entryCacheTtl != null) {
+            dataStore.setEntryCacheTtlMillis(entryCacheTtl);
+        }
+        Integer entryCacheMaxEntries = getIntegerProperty(p, node, ENTRY_CACHE_MAX_ENTRIES);
+        if (entryCacheMaxEntries != null) {
+            dataStore.setEntryCacheMaxEntries(entryCacheMaxEntries);
+        }
+        Long entryCacheMaxBytes = getLongProperty(p, node, ENTRY_CACHE_MAX_BYTES);
+        if (entryCacheMaxBytes != null) {
+            dataStore.setEntryCacheMaxBytes(entryCacheMaxBytes);
+        }
+        String entryCacheEviction = getStringProperty(p, node, ENTRY_CACHE_EVICTION);
+        if (entryCacheEviction != null) {
+            try {
+                dataStore.setEntryCacheEviction(CacheEviction.valueOf(entryCacheEviction.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw Error.get(MetadataConstants.ERR_ILL_FORMED_METADATA, ENTRY_CACHE_EVICTION + "=" + entryCacheEviction);
+            }
+        }
+
+        Long queryCacheMaxStaleness = getLongProperty(p, node, QUERY_CACHE_MAX_STALENESS);
+        if (queryCacheMaxStaleness != null) {
+            dataStore.setQueryCacheMaxStalenessMillis(queryCacheMaxStaleness);
+        }
+        Integer queryCacheMaxResults = getIntegerProperty(p, node, QUERY_CACHE_MAX_RESULTS);
+        if (queryCacheMaxResults != null) {
+            dataStore.setQueryCacheMaxResults(queryCacheMaxResults);
+        }
+        Long queryCacheMaxBytes = getLongProperty(p, node, QUERY_CACHE_MAX_BYTES);
+        if (queryCacheMaxBytes != null) {
+            dataStore.setQueryCacheMaxBytes(queryCacheMaxBytes);
+        }
+
+        Long negativeCacheTtl = getLongProperty(p, node, NEGATIVE_CACHE_TTL);
+        if (negativeCacheTtl != null) {
+            dataStore.setNegativeCacheTtlMillis(negativeCacheTtl);
+        }
+        Integer negativeCacheMaxEntries = getIntegerProperty(p, node, NEGATIVE_CACHE_MAX_ENTRIES);
+        if (negativeCacheMaxEntries != null) {
+            dataStore.setNegativeCacheMaxEntries(negativeCacheMaxEntries);
+        }
+
         return dataStore;
     }
 
+    /**
+     * @return the value of the optional property as a {@link String}, or <code>null</code> if it is not set.
+     */
+    private static <T> String getStringProperty(MetadataParser<T> p, T node, String name) {
+        T property = p.getMapProperty(node, name);
+        if (property == null) {
+            return null;
+        }
+        Object value = p.asValue(property);
+        return (value == null) ? null : value.toString();
+    }
+
+    private static <T> Long getLongProperty(MetadataParser<T> p, T node, String name) {
+        String value = getStringProperty(p, node, name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw Error.get(MetadataConstants.ERR_ILL_FORMED_METADATA, name + "=" + value);
+        }
+    }
+
+    private static <T> Integer getIntegerProperty(MetadataParser<T> p, T node, String name) {
+        String value = getStringProperty(p, node, name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw Error.get(MetadataConstants.ERR_ILL_FORMED_METADATA, name + "=" + value);
+        }
+    }
+
     @Override
     public void convert(MetadataParser<T> p, T emptyNode, DataStore store) {
         if(!(store instanceof LdapDataStore)){
@@ -61,6 +160,27 @@ public class LdapDataStoreParser<T> implements DataStoreParser<T> {
         p.setMapProperty(emptyNode, DATABASE, p.asRepresentation(ds.getDatabase()));
         p.setMapProperty(emptyNode, BASEDN, p.asRepresentation(ds.getBaseDN()));
         p.setMapProperty(emptyNode, UNIQUE_FIELD, p.asRepresentation(ds.getUniqueAttribute()));
+        if (ds.isSubtreeDelete()) {
+            p.setMapProperty(emptyNode, SUBTREE_DELETE, p.asRepresentation(Boolean.TRUE));
+        }
+        if (ds.getVersionAttribute() != null) {
+            p.setMapProperty(emptyNode, VERSION_ATTRIBUTE, p.asRepresentation(ds.getVersionAttribute()));
+        }
+        if (ds.isEntryCacheEnabled()) {
+            p.setMapProperty(emptyNode, ENTRY_CACHE_TTL, p.asRepresentation(ds.getEntryCacheTtlMillis()));
+            p.setMapProperty(emptyNode, ENTRY_CACHE_MAX_ENTRIES, p.asRepresentation(ds.getEntryCacheMaxEntries()));
+            p.setMapProperty(emptyNode, ENTRY_CACHE_MAX_BYTES, p.asRepresentation(ds.getEntryCacheMaxBytes()));
+            p.setMapProperty(emptyNode, ENTRY_CACHE_EVICTION, p.asRepresentation(ds.getEntryCacheEviction().name().toLowerCase(Locale.ROOT)));
+        }
+        if (ds.isQueryCacheEnabled()) {
+            p.setMapProperty(emptyNode, QUERY_CACHE_MAX_STALENESS, p.asRepresentation(ds.getQueryCacheMaxStalenessMillis()));
+            p.setMapProperty(emptyNode, QUERY_CACHE_MAX_RESULTS, p.asRepresentation(ds.getQueryCacheMaxResults()));
+            p.setMapProperty(emptyNode, QUERY_CACHE_MAX_BYTES, p.asRepresentation(ds.getQueryCacheMaxBytes()));
+        }
+        if (ds.isNegativeCacheEnabled()) {
+            p.setMapProperty(emptyNode, NEGATIVE_CACHE_TTL, p.asRepresentation(ds.getNegativeCacheTtlMillis()));
+            p.setMapProperty(emptyNode, NEGATIVE_CACHE_MAX_ENTRIES, p.asRepresentation(ds.getNegativeCacheMaxEntries()));
+        }
     }
 
     @Override
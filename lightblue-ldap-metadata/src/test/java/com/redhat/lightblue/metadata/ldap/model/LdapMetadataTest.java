@@ -22,6 +22,7 @@ import static org.hamcrest.Matchers.hasItems;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 
 import java.util.HashSet;
@@ -106,6 +107,35 @@ public class LdapMetadataTest {
         assertEquals(attributeName, new LdapMetadata().translateAttributeName(attributeName).toString());
     }
 
+    @Test
+    public void testTranslateAttributeName_IgnoresCase(){
+        Path fieldName = new Path("fakeFieldName");
+
+        LdapMetadata metadata = new LdapMetadata();
+        metadata.addFieldToAttribute(fieldName, "fakeAttributeName");
+
+        assertEquals(fieldName, metadata.translateAttributeName("FAKEATTRIBUTENAME"));
+        assertEquals(fieldName, metadata.translateAttributeName("fakeattributename"));
+    }
+
+    @Test
+    public void testTranslateAttributeName_ReturnsSameInstance(){
+        LdapMetadata metadata = new LdapMetadata();
+        metadata.addFieldToAttribute(new Path("fakeFieldName"), "fakeAttributeName");
+
+        assertSame(metadata.translateAttributeName("fakeAttributeName"), metadata.translateAttributeName("fakeAttributeName"));
+        assertSame(metadata.translateAttributeName("unmapped"), metadata.translateAttributeName("unmapped"));
+    }
+
+    @Test
+    public void testTranslateAttributeName_MappingAddedLater(){
+        LdapMetadata metadata = new LdapMetadata();
+        assertEquals(new Path("fakeAttributeName"), metadata.translateAttributeName("fakeAttributeName"));
+
+        metadata.addFieldToAttribute(new Path("fakeFieldName"), "fakeAttributeName");
+        assertEquals(new Path("fakeFieldName"), metadata.translateAttributeName("fakeAttributeName"));
+    }
+
     @Test
     public void testGetFieldsToAttributes_AssertImmutable(){
         LdapMetadata metadata = new LdapMetadata();
@@ -21,7 +21,10 @@ package com.redhat.lightblue.metadata.ldap.parser;
 import static com.redhat.lightblue.util.JsonUtils.json;
 import static com.redhat.lightblue.util.test.AbstractJsonNodeTest.loadJsonNode;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 
@@ -32,6 +35,7 @@ import org.junit.rules.ExpectedException;
 import org.skyscreamer.jsonassert.JSONAssert;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.redhat.lightblue.common.ldap.CacheEviction;
 import com.redhat.lightblue.common.ldap.LdapConstant;
 import com.redhat.lightblue.common.ldap.LdapDataStore;
 import com.redhat.lightblue.test.MetadataUtil;
@@ -68,6 +72,35 @@ public class LdapDataStoreParserTest {
         assertEquals(DATABASE, store.getDatabase());
         assertEquals(BASE_DN, store.getBaseDN());
         assertEquals(UNIQUE_ATTRIBUTE, store.getUniqueAttribute());
+        assertFalse(store.isSubtreeDelete());
+        assertNull(store.getVersionAttribute());
+    }
+
+    @Test
+    public void testParse_OptionalProperties() throws IOException{
+        LdapDataStore store = new LdapDataStoreParser<JsonNode>().parse(
+                LdapConstant.BACKEND,
+                MetadataUtil.createJSONMetadataParser(LdapConstant.BACKEND, null),
+                json("{\"database\":\"" + DATABASE + "\",\"basedn\":\"" + BASE_DN + "\",\"uniqueattr\":\"" + UNIQUE_ATTRIBUTE + "\",\"subtreedelete\":true,\"versionattr\":\"modifyTimestamp\"}"));
+
+        assertNotNull(store);
+        assertTrue(store.isSubtreeDelete());
+        assertEquals("modifyTimestamp", store.getVersionAttribute());
+    }
+
+    @Test
+    public void testParse_EntryCache() throws IOException{
+        LdapDataStore store = new LdapDataStoreParser<JsonNode>().parse(
+                LdapConstant.BACKEND,
+                MetadataUtil.createJSONMetadataParser(LdapConstant.BACKEND, null),
+                json("{\"database\":\"" + DATABASE + "\",\"basedn\":\"" + BASE_DN + "\",\"uniqueattr\":\"" + UNIQUE_ATTRIBUTE + "\","
+                        + "\"entrycachettl\":60000,\"entrycachemaxentries\":500,\"entrycachemaxbytes\":1048576,\"entrycacheeviction\":\"lfu\"}"));
+
+        assertTrue(store.isEntryCacheEnabled());
+        assertEquals(60000, store.getEntryCacheTtlMillis());
+        assertEquals(500, store.getEntryCacheMaxEntries());
+        assertEquals(1048576, store.getEntryCacheMaxBytes());
+        assertEquals(CacheEviction.LFU, store.getEntryCacheEviction());
     }
 
     @Test
@@ -78,6 +111,30 @@ public class LdapDataStoreParserTest {
         new LdapDataStoreParser<JsonNode>().parse("fakebackend", null, null);
     }
 
+    @Test
+    public void testParse_IllFormedNumber() throws IOException{
+        expectedEx.expect(com.redhat.lightblue.util.Error.class);
+        expectedEx.expectMessage("{\"objectType\":\"error\",\"errorCode\":\"metadata:IllFormedMetadata\",\"msg\":\"entrycachemaxentries=lots\"}");
+
+        new LdapDataStoreParser<JsonNode>().parse(
+                LdapConstant.BACKEND,
+                MetadataUtil.createJSONMetadataParser(LdapConstant.BACKEND, null),
+                json("{\"database\":\"" + DATABASE + "\",\"basedn\":\"" + BASE_DN + "\",\"uniqueattr\":\"" + UNIQUE_ATTRIBUTE + "\","
+                        + "\"entrycachettl\":60000,\"entrycachemaxentries\":\"lots\"}"));
+    }
+
+    @Test
+    public void testParse_IllFormedEviction() throws IOException{
+        expectedEx.expect(com.redhat.lightblue.util.Error.class);
+        expectedEx.expectMessage("{\"objectType\":\"error\",\"errorCode\":\"metadata:IllFormedMetadata\",\"msg\":\"entrycacheeviction=random\"}");
+
+        new LdapDataStoreParser<JsonNode>().parse(
+                LdapConstant.BACKEND,
+                MetadataUtil.createJSONMetadataParser(LdapConstant.BACKEND, null),
+                json("{\"database\":\"" + DATABASE + "\",\"basedn\":\"" + BASE_DN + "\",\"uniqueattr\":\"" + UNIQUE_ATTRIBUTE + "\","
+                        + "\"entrycachettl\":60000,\"entrycacheeviction\":\"random\"}"));
+    }
+
     @Test
     public void testConvert() throws IOException, JSONException{
         LdapDataStore store = new LdapDataStore();
@@ -96,6 +153,108 @@ public class LdapDataStoreParserTest {
                 node.toString(), true);
     }
 
+    @Test
+    public void testConvert_OptionalProperties() throws IOException, JSONException{
+        LdapDataStore store = new LdapDataStore(DATABASE, BASE_DN, UNIQUE_ATTRIBUTE);
+        store.setSubtreeDelete(true);
+        store.setVersionAttribute("modifyTimestamp");
+
+        JsonNode node = json("{}");
+
+        new LdapDataStoreParser<JsonNode>().convert(
+                MetadataUtil.createJSONMetadataParser(LdapConstant.BACKEND, null),
+                node,
+                store);
+
+        JSONAssert.assertEquals("{\"database\":\"" + DATABASE + "\",\"basedn\":\"" + BASE_DN + "\",\"uniqueattr\":\"" + UNIQUE_ATTRIBUTE + "\",\"subtreedelete\":true,\"versionattr\":\"modifyTimestamp\"}",
+                node.toString(), true);
+    }
+
+    @Test
+    public void testParse_QueryCache() throws IOException{
+        LdapDataStore store = new LdapDataStoreParser<JsonNode>().parse(
+                LdapConstant.BACKEND,
+                MetadataUtil.createJSONMetadataParser(LdapConstant.BACKEND, null),
+                json("{\"database\":\"" + DATABASE + "\",\"basedn\":\"" + BASE_DN + "\",\"uniqueattr\":\"" + UNIQUE_ATTRIBUTE + "\","
+                        + "\"querycachemaxstaleness\":5000,\"querycachemaxresults\":200,\"querycachemaxbytes\":2097152}"));
+
+        assertTrue(store.isQueryCacheEnabled());
+        assertFalse(store.isEntryCacheEnabled());
+        assertEquals(5000, store.getQueryCacheMaxStalenessMillis());
+        assertEquals(200, store.getQueryCacheMaxResults());
+        assertEquals(2097152, store.getQueryCacheMaxBytes());
+    }
+
+    @Test
+    public void testConvert_QueryCache() throws IOException, JSONException{
+        LdapDataStore store = new LdapDataStore(DATABASE, BASE_DN, UNIQUE_ATTRIBUTE);
+        store.setQueryCacheMaxStalenessMillis(5000);
+        store.setQueryCacheMaxResults(200);
+        store.setQueryCacheMaxBytes(2097152);
+
+        JsonNode node = json("{}");
+
+        new LdapDataStoreParser<JsonNode>().convert(
+                MetadataUtil.createJSONMetadataParser(LdapConstant.BACKEND, null),
+                node,
+                store);
+
+        JSONAssert.assertEquals("{\"database\":\"" + DATABASE + "\",\"basedn\":\"" + BASE_DN + "\",\"uniqueattr\":\"" + UNIQUE_ATTRIBUTE + "\","
+                + "\"querycachemaxstaleness\":5000,\"querycachemaxresults\":200,\"querycachemaxbytes\":2097152}",
+                node.toString(), true);
+    }
+
+    @Test
+    public void testParse_NegativeCache() throws IOException{
+        LdapDataStore store = new LdapDataStoreParser<JsonNode>().parse(
+                LdapConstant.BACKEND,
+                MetadataUtil.createJSONMetadataParser(LdapConstant.BACKEND, null),
+                json("{\"database\":\"" + DATABASE + "\",\"basedn\":\"" + BASE_DN + "\",\"uniqueattr\":\"" + UNIQUE_ATTRIBUTE + "\","
+                        + "\"negativecachettl\":2000,\"negativecachemaxentries\":100}"));
+
+        assertTrue(store.isNegativeCacheEnabled());
+        assertEquals(2000, store.getNegativeCacheTtlMillis());
+        assertEquals(100, store.getNegativeCacheMaxEntries());
+    }
+
+    @Test
+    public void testConvert_NegativeCache() throws IOException, JSONException{
+        LdapDataStore store = new LdapDataStore(DATABASE, BASE_DN, UNIQUE_ATTRIBUTE);
+        store.setNegativeCacheTtlMillis(2000);
+        store.setNegativeCacheMaxEntries(100);
+
+        JsonNode node = json("{}");
+
+        new LdapDataStoreParser<JsonNode>().convert(
+                MetadataUtil.createJSONMetadataParser(LdapConstant.BACKEND, null),
+                node,
+                store);
+
+        JSONAssert.assertEquals("{\"database\":\"" + DATABASE + "\",\"basedn\":\"" + BASE_DN + "\",\"uniqueattr\":\"" + UNIQUE_ATTRIBUTE + "\","
+                + "\"negativecachettl\":2000,\"negativecachemaxentries\":100}",
+                node.toString(), true);
+    }
+
+    @Test
+    public void testConvert_EntryCache() throws IOException, JSONException{
+        LdapDataStore store = new LdapDataStore(DATABASE, BASE_DN, UNIQUE_ATTRIBUTE);
+        store.setEntryCacheTtlMillis(60000);
+        store.setEntryCacheMaxEntries(500);
+        store.setEntryCacheMaxBytes(1048576);
+        store.setEntryCacheEviction(CacheEviction.LFU);
+
+        JsonNode node = json("{}");
+
+        new LdapDataStoreParser<JsonNode>().convert(
+                MetadataUtil.createJSONMetadataParser(LdapConstant.BACKEND, null),
+                node,
+                store);
+
+        JSONAssert.assertEquals("{\"database\":\"" + DATABASE + "\",\"basedn\":\"" + BASE_DN + "\",\"uniqueattr\":\"" + UNIQUE_ATTRIBUTE + "\","
+                + "\"entrycachettl\":60000,\"entrycachemaxentries\":500,\"entrycachemaxbytes\":1048576,\"entrycacheeviction\":\"lfu\"}",
+                node.toString(), true);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testConvert_wrongStoreType(){
         new LdapDataStoreParser<JsonNode>().convert(null, null, new FakeDataStore("fake"));